@@ -104,6 +104,50 @@ public class LoggingThreadPoolExecutor extends ThreadPoolExecutor {
         return Executors.newSingleThreadExecutor();
     }
 
+    /**
+     * Indicates whether the running JVM supports virtual threads. When it doesn't, the
+     * <b>newVirtualThreadPerTaskExecutor()</b> methods return cached thread pools instead.
+     *
+     * @return Returns <b>true</b> if virtual threads are available.
+     */
+    public static boolean isVirtualThreadSupported() {
+        return VirtualThreads.SUPPORTED;
+    }
+
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        return newVirtualThreadPerTaskExecutor(null);
+    }
+
+    public static ExecutorService newVirtualThreadPerTaskExecutor(final ExceptionHandler first, final ExceptionHandler... others) {
+        return newVirtualThreadPerTaskExecutor(Lists.asList(first, others));
+    }
+
+    /**
+     * Creates an executor that runs each task on its own virtual thread, which suits tasks that spend most of their
+     * time blocked on I/O, such as JDBC or HTTP calls. When the logging executor is enabled, the executor is a logging
+     * executor with no core threads and no keep-alive, so each task gets a new virtual thread while the exception
+     * handlers and {@link #afterExecute(Runnable, Throwable)} logging work the same as for the other executors. If the
+     * JVM doesn't support virtual threads, this returns the same executor as {@link #newCachedThreadPool(List)}.
+     *
+     * @param handlers The exception handlers for the executor.
+     *
+     * @return The executor.
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor(final List<? extends ExceptionHandler> handlers) {
+        if (!VirtualThreads.SUPPORTED) {
+            _log.debug("Virtual threads aren't supported by this JVM, creating a cached thread pool instead.");
+            return newCachedThreadPool(handlers);
+        }
+        if (_useLoggingExecutor) {
+            final LoggingThreadPoolExecutor executor = new LoggingThreadPoolExecutor(0, Integer.MAX_VALUE, 0L, TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>(), VirtualThreads.newThreadFactory(VIRTUAL_THREAD_PREFIX));
+            if (handlers != null) {
+                executor.setExceptionHandlers(handlers);
+            }
+            return executor;
+        }
+        return VirtualThreads.newThreadPerTaskExecutor();
+    }
+
     public void setExceptionHandlers(final List<? extends ExceptionHandler> handlers) {
         _handlers.clear();
         _handlers.addAll(handlers);
@@ -166,8 +210,48 @@ public class LoggingThreadPoolExecutor extends ThreadPoolExecutor {
         return false;
     }
 
-    private static final Logger                   _log            = LoggerFactory.getLogger(LoggingThreadPoolExecutor.class);
-    private static final RejectedExecutionHandler DEFAULT_HANDLER = new AbortPolicy();
+    /**
+     * Locates the virtual thread API through reflection, so that this class still runs on JVMs that predate it.
+     */
+    private static class VirtualThreads {
+        static ThreadFactory newThreadFactory(final String prefix) {
+            try {
+                final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                final Object   builder      = Thread.class.getMethod("ofVirtual").invoke(null);
+                builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+                return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Unable to create a virtual thread factory", e);
+            }
+        }
+
+        static ExecutorService newThreadPerTaskExecutor() {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Unable to create a virtual thread per task executor", e);
+            }
+        }
+
+        private static boolean isSupported() {
+            try {
+                newThreadFactory(VIRTUAL_THREAD_PREFIX).newThread(new Runnable() {
+                    @Override
+                    public void run() {
+                    }
+                });
+                return true;
+            } catch (RuntimeException | LinkageError e) {
+                return false;
+            }
+        }
+
+        static final boolean SUPPORTED = isSupported();
+    }
+
+    private static final Logger                   _log                  = LoggerFactory.getLogger(LoggingThreadPoolExecutor.class);
+    private static final RejectedExecutionHandler DEFAULT_HANDLER       = new AbortPolicy();
+    private static final String                   VIRTUAL_THREAD_PREFIX = "nrg-virtual-";
     private static boolean _useLoggingExecutor = false;
 
     private final List<ExceptionHandler> _handlers = Lists.newArrayList();
@@ -0,0 +1,98 @@
+/*
+ * framework: org.nrg.framework.datacache.DataCacheChunk
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache;
+
+import org.nrg.framework.orm.hibernate.AbstractHibernateEntity;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * A chunk of a value written to the data cache as a stream. The item for a streamed value stores the ID of its
+ * stream in its {@link DataCacheItem#getValue() value column}, and the stream's content is split across consecutive
+ * chunks, so neither writing nor reading the value needs the whole value in memory. The {@link #isLastChunk() last
+ * chunk} marks the end of the stream, so a reader can tell a complete stream from one that was deleted while it was
+ * being read.
+ *
+ * Chunks aren't cached by Hibernate, since they're only read once per read of the stream.
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"stream", "chunk_index"}), indexes = @Index(name = "idx_data_cache_chunk_stream", columnList = "stream"))
+public class DataCacheChunk extends AbstractHibernateEntity {
+    @SuppressWarnings("unused")
+    public DataCacheChunk() {
+
+    }
+
+    public DataCacheChunk(final String stream, final int chunkIndex, final byte[] data, final boolean lastChunk) {
+        setStream(stream);
+        setChunkIndex(chunkIndex);
+        setData(data);
+        setLastChunk(lastChunk);
+    }
+
+    /**
+     * The ID of the stream this chunk belongs to.
+     *
+     * @return The stream ID.
+     */
+    @Column(nullable = false, length = 36)
+    public String getStream() {
+        return _stream;
+    }
+
+    public void setStream(final String stream) {
+        _stream = stream;
+    }
+
+    /**
+     * The position of this chunk in the stream, starting at 0.
+     *
+     * @return The chunk index.
+     */
+    @Column(name = "chunk_index")
+    public int getChunkIndex() {
+        return _chunkIndex;
+    }
+
+    public void setChunkIndex(final int chunkIndex) {
+        _chunkIndex = chunkIndex;
+    }
+
+    @Column(length = Integer.MAX_VALUE)
+    public byte[] getData() {
+        return _data;
+    }
+
+    public void setData(final byte[] data) {
+        _data = data;
+    }
+
+    /**
+     * Indicates whether this is the last chunk of the stream.
+     *
+     * @return Returns <b>true</b> if this is the last chunk.
+     */
+    public boolean isLastChunk() {
+        return _lastChunk;
+    }
+
+    public void setLastChunk(final boolean lastChunk) {
+        _lastChunk = lastChunk;
+    }
+
+    private String  _stream;
+    private int     _chunkIndex;
+    private byte[]  _data;
+    private boolean _lastChunk;
+}
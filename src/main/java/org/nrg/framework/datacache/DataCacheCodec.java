@@ -0,0 +1,52 @@
+/*
+ * framework: org.nrg.framework.datacache.DataCacheCodec
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Converts data cache values to and from their stored binary form. Codecs are registered with {@link DataCacheCodecs}
+ * under their {@link #getName() name}, which is stored with each entry so that the entry is always read with the codec
+ * that wrote it.
+ */
+public interface DataCacheCodec {
+    /**
+     * Gets the name of the codec. This is stored with each entry encoded by the codec, so it must not change once
+     * entries have been written.
+     *
+     * @return The name of the codec.
+     */
+    String getName();
+
+    /**
+     * Encodes the value.
+     *
+     * @param value The value to encode.
+     *
+     * @return The encoded value.
+     *
+     * @throws IOException When an error occurs encoding the value.
+     */
+    byte[] encode(final Serializable value) throws IOException;
+
+    /**
+     * Decodes a value encoded by this codec.
+     *
+     * @param data The encoded value.
+     * @param type The type of the value.
+     * @param <T>  The type of the value.
+     *
+     * @return The decoded value.
+     *
+     * @throws IOException When an error occurs decoding the value.
+     */
+    <T extends Serializable> T decode(final byte[] data, final Class<T> type) throws IOException;
+}
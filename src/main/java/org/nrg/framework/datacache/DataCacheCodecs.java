@@ -0,0 +1,194 @@
+/*
+ * framework: org.nrg.framework.datacache.DataCacheCodecs
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Manages the encodings used to store data cache values. An encoding is the name of a {@link DataCacheCodec}, or
+ * {@link #JSON} for the JSON produced by the data cache service's serializer, optionally followed by {@link
+ * #DEFLATE_SUFFIX} when the encoded value was compressed. The encoding is stored with each entry, so changing the
+ * {@link #setDefaultEncoding(String) default encoding} or {@link #setCompressionThreshold(int) compression threshold}
+ * only affects entries written afterwards.
+ *
+ * Compression is off by default. When a {@link #setCompressionThreshold(int) compression threshold} is set, encoded
+ * values that are at least that many bytes long are compressed with deflate, as long as that actually makes them
+ * smaller. Compressed JSON is stored in the item's data column instead of its value column, where nodes that predate
+ * the encoding column can't read it, so only turn compression on once every node sharing the database can read it.
+ */
+public class DataCacheCodecs {
+    public static final String JSON                          = "json";
+    /**
+     * The encoding of values written with {@link DataCacheService#putStream(String, DataCacheStreamWriter)}. These are
+     * stored as {@link DataCacheChunk chunks} rather than in the item, and also have this as their type.
+     */
+    public static final String STREAM                        = "stream";
+    public static final String DEFLATE_SUFFIX                = "+deflate";
+    public static final int    COMPRESSION_DISABLED          = -1;
+    public static final int    DEFAULT_COMPRESSION_THRESHOLD = COMPRESSION_DISABLED;
+
+    public DataCacheCodecs() {
+        register(new JavaSerializationDataCacheCodec());
+    }
+
+    /**
+     * Registers the codec under its name, replacing any codec previously registered with the same name.
+     *
+     * @param codec The codec to register.
+     */
+    public void register(final DataCacheCodec codec) {
+        if (StringUtils.isBlank(codec.getName()) || JSON.equals(codec.getName()) || STREAM.equals(codec.getName()) || codec.getName().contains("+")) {
+            throw new IllegalArgumentException("The codec name \"" + codec.getName() + "\" is blank, reserved, or contains '+'");
+        }
+        _codecs.put(codec.getName(), codec);
+    }
+
+    /**
+     * Gets the codec for the encoding.
+     *
+     * @param encoding The encoding, with or without the compression suffix.
+     *
+     * @return The codec, or null if the encoding is JSON or no codec is registered for it.
+     */
+    public DataCacheCodec getCodec(final String encoding) {
+        return _codecs.get(getCodecName(encoding));
+    }
+
+    public Set<String> getCodecNames() {
+        return Collections.unmodifiableSet(_codecs.keySet());
+    }
+
+    /**
+     * Sets the encoding used for new entries, either {@link #JSON} or the name of a registered codec.
+     *
+     * @param defaultEncoding The encoding to use.
+     */
+    public void setDefaultEncoding(final String defaultEncoding) {
+        if (!JSON.equals(defaultEncoding) && !_codecs.containsKey(defaultEncoding)) {
+            throw new IllegalArgumentException("There's no codec registered for the encoding " + defaultEncoding);
+        }
+        _defaultEncoding = defaultEncoding;
+    }
+
+    public String getDefaultEncoding() {
+        return _defaultEncoding;
+    }
+
+    /**
+     * Sets the length in bytes at or above which encoded values are compressed. A negative value, such as {@link
+     * #COMPRESSION_DISABLED}, disables compression, which is the default.
+     *
+     * @param compressionThreshold The compression threshold.
+     */
+    public void setCompressionThreshold(final int compressionThreshold) {
+        _compressionThreshold = compressionThreshold;
+    }
+
+    public int getCompressionThreshold() {
+        return _compressionThreshold;
+    }
+
+    /**
+     * Indicates whether an encoded value of the specified length should be compressed.
+     *
+     * @param length The length of the encoded value.
+     *
+     * @return Returns <b>true</b> if the value should be compressed.
+     */
+    public boolean shouldCompress(final int length) {
+        return isCompressionEnabled() && length >= _compressionThreshold;
+    }
+
+    public boolean isCompressionEnabled() {
+        return _compressionThreshold >= 0;
+    }
+
+    /**
+     * Compresses the encoded value if it {@link #shouldCompress(int) should be compressed} and compressing it makes it
+     * smaller.
+     *
+     * @param data The encoded value.
+     *
+     * @return The compressed value, or null if the value should be stored uncompressed.
+     */
+    public byte[] compressIfSmaller(final byte[] data) {
+        if (!shouldCompress(data.length)) {
+            return null;
+        }
+        final byte[] compressed = compress(data);
+        return compressed.length < data.length ? compressed : null;
+    }
+
+    public static boolean isJson(final String encoding) {
+        return encoding == null || JSON.equals(getCodecName(encoding));
+    }
+
+    public static boolean isCompressed(final String encoding) {
+        return encoding != null && encoding.endsWith(DEFLATE_SUFFIX);
+    }
+
+    public static String getCodecName(final String encoding) {
+        return isCompressed(encoding) ? encoding.substring(0, encoding.length() - DEFLATE_SUFFIX.length()) : encoding;
+    }
+
+    public static byte[] compress(final byte[] data) {
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            final ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+            final byte[]                buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                output.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static byte[] decompress(final byte[] data) throws IOException {
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            final ByteArrayOutputStream output = new ByteArrayOutputStream(data.length * 4);
+            final byte[]                buffer = new byte[BUFFER_SIZE];
+            while (!inflater.finished()) {
+                final int inflated = inflater.inflate(buffer);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("The compressed data cache value is truncated or corrupt");
+                }
+                output.write(buffer, 0, inflated);
+            }
+            return output.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("The compressed data cache value is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Map<String, DataCacheCodec> _codecs = new ConcurrentHashMap<>();
+
+    private volatile String _defaultEncoding      = JSON;
+    private volatile int    _compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+}
@@ -0,0 +1,140 @@
+/*
+ * framework: org.nrg.framework.datacache.DataCacheInvalidation
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * An invalidation sent between nodes over a {@link DataCacheInvalidationBus}. Each invalidation carries the ID of the
+ * node that sent it and a version number. Each node numbers its invalidations consecutively, so receivers can tell
+ * when they've missed one.
+ */
+public final class DataCacheInvalidation implements Serializable {
+    public enum Scope {
+        /**
+         * Invalidates the entry for a single key.
+         */
+        KEY,
+
+        /**
+         * Invalidates the entries for all values of a type, identified by class name.
+         */
+        TYPE,
+
+        /**
+         * Invalidates all entries.
+         */
+        ALL,
+
+        /**
+         * Invalidates nothing, but carries the sender's latest version so receivers can detect missed invalidations
+         * even when the sender isn't writing.
+         */
+        HEARTBEAT
+    }
+
+    /**
+     * Creates an invalidation.
+     *
+     * @param origin  The ID of the node sending the invalidation. This can't contain colons.
+     * @param version The sender's version number for the invalidation.
+     * @param scope   The scope of the invalidation.
+     * @param name    The invalidated key or type name, if any.
+     */
+    public DataCacheInvalidation(final String origin, final long version, final Scope scope, final String name) {
+        _origin = origin;
+        _version = version;
+        _scope = scope;
+        _name = StringUtils.defaultString(name);
+    }
+
+    /**
+     * Decodes an invalidation from the format produced by {@link #encode()}.
+     *
+     * @param encoded The encoded invalidation.
+     *
+     * @return The invalidation.
+     *
+     * @throws IllegalArgumentException When the value isn't an encoded invalidation.
+     */
+    public static DataCacheInvalidation decode(final String encoded) {
+        final String[] parts = encoded.split(SEPARATOR, 4);
+        if (parts.length < 3) {
+            throw new IllegalArgumentException("Not a valid data cache invalidation: " + encoded);
+        }
+        try {
+            return new DataCacheInvalidation(parts[0], Long.parseLong(parts[1]), Scope.valueOf(parts[2]), parts.length > 3 ? parts[3] : "");
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Not a valid data cache invalidation: " + encoded, e);
+        }
+    }
+
+    /**
+     * Encodes the invalidation as a string, for transports that send text.
+     *
+     * @return The encoded invalidation.
+     */
+    public String encode() {
+        return _origin + SEPARATOR + _version + SEPARATOR + _scope + SEPARATOR + _name;
+    }
+
+    public String getOrigin() {
+        return _origin;
+    }
+
+    public long getVersion() {
+        return _version;
+    }
+
+    public Scope getScope() {
+        return _scope;
+    }
+
+    /**
+     * The key for {@link Scope#KEY key} invalidations or the class name for {@link Scope#TYPE type} invalidations.
+     *
+     * @return The invalidated key or type.
+     */
+    public String getName() {
+        return _name;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof DataCacheInvalidation)) {
+            return false;
+        }
+        final DataCacheInvalidation that = (DataCacheInvalidation) other;
+        return _version == that._version && _origin.equals(that._origin) && _scope == that._scope && _name.equals(that._name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(_origin, _version, _scope, _name);
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+
+    private static final String SEPARATOR = ":";
+
+    private final String _origin;
+    private final long   _version;
+    private final Scope  _scope;
+    private final String _name;
+}
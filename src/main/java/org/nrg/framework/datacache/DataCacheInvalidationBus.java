@@ -0,0 +1,287 @@
+/*
+ * framework: org.nrg.framework.datacache.DataCacheInvalidationBus
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.nrg.framework.datacache.DataCacheInvalidation.Scope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the {@link NearCache near caches} on each node of a cluster consistent by broadcasting invalidations over a
+ * {@link DataCacheInvalidationTransport}. When a node writes a key, it broadcasts a key invalidation, and every other
+ * node removes that key from its registered near caches. Type invalidations remove all values of a class and are meant
+ * for changes that affect how a type is stored, e.g. changes to a custom serializer.
+ *
+ * Each node numbers its invalidations consecutively. Receivers track the last version seen from each node, and if one
+ * or more versions are skipped, e.g. because the transport dropped a message or a node failed to publish, they
+ * invalidate everything. Each node also sends a heartbeat with its latest version every {@link
+ * #setHeartbeatInterval(long) heartbeat interval}, so a missed invalidation is detected within that interval even if
+ * the sender doesn't write again. Nodes can therefore cache aggressively and still converge within a bounded delay.
+ *
+ * Invalidations can be {@link #broadcastKeyAsync(String) published from the bus's own thread}, along with the
+ * heartbeats, so callers finishing a transaction don't wait for the transport and transports that use the database
+ * don't run on a connection still bound to the caller's transaction.
+ */
+public class DataCacheInvalidationBus implements DataCacheInvalidationListener, InitializingBean, DisposableBean {
+    public static final long DEFAULT_HEARTBEAT_INTERVAL = 30L;
+
+    public DataCacheInvalidationBus(final DataCacheInvalidationTransport transport) {
+        _transport = transport;
+    }
+
+    /**
+     * Sets the number of seconds between heartbeats. Setting this to 0 disables heartbeats, in which case missed
+     * invalidations are only detected when the sender publishes its next invalidation. This must be set before the
+     * bus is started.
+     *
+     * @param heartbeatInterval The number of seconds between heartbeats.
+     */
+    public void setHeartbeatInterval(final long heartbeatInterval) {
+        _heartbeatInterval = heartbeatInterval;
+    }
+
+    public long getHeartbeatInterval() {
+        return _heartbeatInterval;
+    }
+
+    /**
+     * The ID of this node, which is unique to this instance of the bus.
+     *
+     * @return The node ID.
+     */
+    public String getNodeId() {
+        return _nodeId;
+    }
+
+    /**
+     * Registers a near cache to be invalidated when invalidations are received.
+     *
+     * @param nearCache The near cache.
+     */
+    public void register(final NearCache nearCache) {
+        _nearCaches.add(nearCache);
+    }
+
+    public void unregister(final NearCache nearCache) {
+        _nearCaches.remove(nearCache);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        _transport.start(this);
+        _scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("nrg-data-cache-invalidation-%d").setDaemon(true).build());
+        if (_heartbeatInterval > 0) {
+            _scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    _transport.publish(new DataCacheInvalidation(_nodeId, _version.get(), Scope.HEARTBEAT, null));
+                }
+            }, _heartbeatInterval, _heartbeatInterval, TimeUnit.SECONDS);
+        }
+        _log.info("Started the data cache invalidation bus for node {} with {}", _nodeId, _transport.getClass().getSimpleName());
+    }
+
+    /**
+     * Stops the heartbeats, waits briefly for invalidations queued by {@link #broadcastKeyAsync(String)} to be
+     * published, and stops the transport.
+     */
+    @Override
+    public void destroy() {
+        if (_scheduler != null) {
+            _scheduler.shutdown();
+            try {
+                if (!_scheduler.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                    _log.warn("Timed out publishing queued data cache invalidations, other nodes will detect the gap");
+                    _scheduler.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                _scheduler.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        _transport.stop();
+    }
+
+    /**
+     * Tells the other nodes to invalidate the key. This doesn't invalidate the key on this node.
+     *
+     * @param key The key to invalidate.
+     */
+    public void broadcastKey(final String key) {
+        publish(Scope.KEY, key);
+    }
+
+    /**
+     * Tells the other nodes to invalidate the key, publishing the invalidation from the bus's own thread. Invalidations
+     * are published in the order they're queued. If the bus isn't running, the invalidation is published on the
+     * calling thread.
+     *
+     * @param key The key to invalidate.
+     */
+    public void broadcastKeyAsync(final String key) {
+        final ScheduledExecutorService scheduler = _scheduler;
+        if (scheduler != null) {
+            try {
+                scheduler.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        broadcastKey(key);
+                    }
+                });
+                return;
+            } catch (RejectedExecutionException ignored) {
+                // The bus is shutting down, so publish the invalidation directly.
+            }
+        }
+        broadcastKey(key);
+    }
+
+    /**
+     * Invalidates all values of the class on this node and tells the other nodes to do the same.
+     *
+     * @param typeName The class name.
+     */
+    public void invalidateType(final String typeName) {
+        for (final NearCache nearCache : _nearCaches) {
+            nearCache.invalidateType(typeName);
+        }
+        publish(Scope.TYPE, typeName);
+    }
+
+    /**
+     * Invalidates all values on this node and tells the other nodes to do the same.
+     */
+    public void invalidateAll() {
+        invalidateLocally();
+        publish(Scope.ALL, null);
+    }
+
+    @Override
+    public void onInvalidation(final DataCacheInvalidation invalidation) {
+        if (_nodeId.equals(invalidation.getOrigin())) {
+            return;
+        }
+        _received.incrementAndGet();
+        if (isMissingVersions(invalidation)) {
+            _log.info("Missed one or more data cache invalidations from node {}, invalidating all cached values", invalidation.getOrigin());
+            _gaps.incrementAndGet();
+            invalidateLocally();
+            return;
+        }
+        switch (invalidation.getScope()) {
+            case KEY:
+                for (final NearCache nearCache : _nearCaches) {
+                    nearCache.invalidate(invalidation.getName());
+                }
+                break;
+            case TYPE:
+                for (final NearCache nearCache : _nearCaches) {
+                    nearCache.invalidateType(invalidation.getName());
+                }
+                break;
+            case ALL:
+                invalidateLocally();
+                break;
+            case HEARTBEAT:
+                break;
+        }
+    }
+
+    @Override
+    public void onMissedInvalidations() {
+        _log.info("The data cache invalidation transport may have missed invalidations, invalidating all cached values");
+        _gaps.incrementAndGet();
+        invalidateLocally();
+    }
+
+    /**
+     * Gets the number of invalidations published and received, and the number of times missed invalidations were
+     * detected.
+     *
+     * @return A map of statistic names and values.
+     */
+    public Map<String, Number> getMetrics() {
+        return ImmutableMap.<String, Number>of("published", _version.get(), "received", _received.get(), "gaps", _gaps.get(), "nodes", _versions.size());
+    }
+
+    private void publish(final Scope scope, final String name) {
+        _transport.publish(new DataCacheInvalidation(_nodeId, _version.incrementAndGet(), scope, name));
+    }
+
+    /**
+     * Records the invalidation's version as the latest from its node, and checks whether any versions between the
+     * previous latest version and this one were skipped. Invalidations delivered out of order don't count as gaps.
+     *
+     * There's no way to tell whether invalidations sent before the first one received from a node were missed, so the
+     * first invalidation from a node counts as a gap unless nothing has been cached yet. This means each node
+     * invalidates everything once when another node joins the cluster.
+     */
+    private boolean isMissingVersions(final DataCacheInvalidation invalidation) {
+        final long version  = invalidation.getVersion();
+        final long expected = invalidation.getScope() == Scope.HEARTBEAT ? version : version - 1;
+        while (true) {
+            final Long previous = _versions.putIfAbsent(invalidation.getOrigin(), version);
+            if (previous == null) {
+                return hasCachedValues();
+            }
+            if (previous >= version) {
+                return false;
+            }
+            if (_versions.replace(invalidation.getOrigin(), previous, version)) {
+                return previous < expected;
+            }
+        }
+    }
+
+    private boolean hasCachedValues() {
+        for (final NearCache nearCache : _nearCaches) {
+            if (nearCache.size() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void invalidateLocally() {
+        for (final NearCache nearCache : _nearCaches) {
+            nearCache.invalidateAll();
+        }
+    }
+
+    private static final Logger _log = LoggerFactory.getLogger(DataCacheInvalidationBus.class);
+
+    private static final long SHUTDOWN_TIMEOUT = 5L;
+
+    private final DataCacheInvalidationTransport _transport;
+    private final String                         _nodeId     = UUID.randomUUID().toString();
+    private final Set<NearCache>                 _nearCaches = new CopyOnWriteArraySet<>();
+    private final Map<String, Long>              _versions   = new ConcurrentHashMap<>();
+    private final AtomicLong                     _version    = new AtomicLong();
+    private final AtomicLong                     _received   = new AtomicLong();
+    private final AtomicLong                     _gaps       = new AtomicLong();
+
+    private          long                     _heartbeatInterval = DEFAULT_HEARTBEAT_INTERVAL;
+    private volatile ScheduledExecutorService _scheduler;
+}
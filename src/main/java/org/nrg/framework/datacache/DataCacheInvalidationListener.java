@@ -0,0 +1,28 @@
+/*
+ * framework: org.nrg.framework.datacache.DataCacheInvalidationListener
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache;
+
+/**
+ * Receives invalidations from a {@link DataCacheInvalidationTransport}.
+ */
+public interface DataCacheInvalidationListener {
+    /**
+     * Called for each invalidation received, including those sent by this node.
+     *
+     * @param invalidation The invalidation.
+     */
+    void onInvalidation(DataCacheInvalidation invalidation);
+
+    /**
+     * Called when the transport may have missed invalidations, e.g. after reconnecting to the database. Listeners
+     * should discard everything they've cached.
+     */
+    void onMissedInvalidations();
+}
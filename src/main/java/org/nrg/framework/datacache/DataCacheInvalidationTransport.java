@@ -0,0 +1,36 @@
+/*
+ * framework: org.nrg.framework.datacache.DataCacheInvalidationTransport
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache;
+
+/**
+ * Sends data cache invalidations between nodes for a {@link DataCacheInvalidationBus}. Transports don't have to
+ * guarantee delivery or ordering: the bus detects missed invalidations from the version numbers and falls back to
+ * invalidating everything.
+ */
+public interface DataCacheInvalidationTransport {
+    /**
+     * Starts receiving invalidations from other nodes.
+     *
+     * @param listener The listener to call with received invalidations.
+     */
+    void start(DataCacheInvalidationListener listener);
+
+    /**
+     * Sends the invalidation to all nodes. Implementations should log rather than throw when sending fails.
+     *
+     * @param invalidation The invalidation to send.
+     */
+    void publish(DataCacheInvalidation invalidation);
+
+    /**
+     * Stops receiving invalidations and releases any resources held by the transport.
+     */
+    void stop();
+}
@@ -15,13 +15,27 @@ import org.nrg.framework.orm.hibernate.AbstractHibernateEntity;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import java.util.Date;
 
 /**
  * Represents an entry in the NRG cache service. The entry is defined by a {@link #getKey() unique key}. The value is
  * always a {@link #getValue() simple string value} representing a serialized object, but {@link DataCacheService}
  * provides helper methods for de-serializing the
+ *
+ * Values are stored either as text in {@link #getValue() the value column} or, for binary or compressed encodings, as
+ * bytes in {@link #getData() the data column}. The {@link #getEncoding() encoding} identifies how the value was
+ * written, with null indicating uncompressed JSON in the value column.
+ *
+ * An entry may have an {@link #getExpires() expiration time}, after which it's treated as absent and eventually
+ * deleted by {@link DataCacheService#clean()}. The expiration time is indexed so that expired entries can be found
+ * without scanning the table.
  */
 @Entity
+@Table(indexes = @Index(name = "idx_data_cache_item_expires", columnList = "expires"))
 @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "nrg")
 public class DataCacheItem extends AbstractHibernateEntity {
     @SuppressWarnings("unused")
@@ -36,6 +50,12 @@ public class DataCacheItem extends AbstractHibernateEntity {
         setType(type);
     }
 
+    @SuppressWarnings("unused")
+    public DataCacheItem(final String key, final String value, final String type, final Date expires) {
+        this(key, value, type);
+        setExpires(expires);
+    }
+
     @Column(unique = true)
     public String getKey() {
         return _key;
@@ -62,7 +82,65 @@ public class DataCacheItem extends AbstractHibernateEntity {
         _type = type;
     }
 
+    /**
+     * The {@link DataCacheCodecs encoding} of the stored value. If this is null, the value is uncompressed JSON stored
+     * in the {@link #getValue() value column}.
+     *
+     * @return The encoding of the stored value.
+     */
+    public String getEncoding() {
+        return _encoding;
+    }
+
+    public void setEncoding(final String encoding) {
+        _encoding = encoding;
+    }
+
+    /**
+     * The stored value for binary or compressed encodings. This is null when the value is stored in the {@link
+     * #getValue() value column}.
+     *
+     * @return The encoded value.
+     */
+    @Column(length = Integer.MAX_VALUE)
+    public byte[] getData() {
+        return _data;
+    }
+
+    public void setData(final byte[] data) {
+        _data = data;
+    }
+
+    /**
+     * The time after which this entry should no longer be returned from the cache. If this is null, the entry never
+     * expires.
+     *
+     * @return The expiration time for the entry.
+     */
+    @Temporal(TemporalType.TIMESTAMP)
+    public Date getExpires() {
+        return _expires;
+    }
+
+    public void setExpires(final Date expires) {
+        _expires = expires;
+    }
+
+    /**
+     * Indicates whether this entry has expired as of the specified time.
+     *
+     * @param now The time to check.
+     *
+     * @return Returns <b>true</b> if the entry has an expiration time at or before the specified time.
+     */
+    public boolean isExpiredAt(final Date now) {
+        return _expires != null && !_expires.after(now);
+    }
+
     private String _key;
     private String _value;
     private String _type;
+    private String _encoding;
+    private byte[] _data;
+    private Date   _expires;
 }
@@ -0,0 +1,32 @@
+/*
+ * framework: org.nrg.framework.datacache.DataCacheLoader
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computes the value for a key that's missing from the data cache. See {@link DataCacheService#getOrCompute(String,
+ * DataCacheLoader, long, TimeUnit)}.
+ *
+ * @param <T> The type of the value.
+ */
+public interface DataCacheLoader<T extends Serializable> {
+    /**
+     * Computes the value for the key.
+     *
+     * @param key The cache key.
+     *
+     * @return The value, or null if there's no value for the key. Null values aren't cached.
+     *
+     * @throws Exception When an error occurs computing the value.
+     */
+    T load(String key) throws Exception;
+}
@@ -0,0 +1,33 @@
+/*
+ * framework: org.nrg.framework.datacache.DataCacheParserReader
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+import java.io.IOException;
+
+/**
+ * Reads JSON stored in the data cache as a stream with a Jackson streaming parser. See {@link
+ * DataCacheService#getParser(String, DataCacheParserReader)}.
+ *
+ * @param <R> The type of the result of reading the value.
+ */
+public interface DataCacheParserReader<R> {
+    /**
+     * Reads the value from the parser. The parser is only valid until this returns.
+     *
+     * @param parser The parser for the value.
+     *
+     * @return The result of reading the value.
+     *
+     * @throws IOException When an error occurs reading or parsing the value.
+     */
+    R read(JsonParser parser) throws IOException;
+}
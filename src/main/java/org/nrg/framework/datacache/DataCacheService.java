@@ -9,13 +9,215 @@
 
 package org.nrg.framework.datacache;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import org.nrg.framework.orm.hibernate.BaseHibernateService;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public interface DataCacheService extends BaseHibernateService<DataCacheItem> {
+    /**
+     * Puts the value into the cache with no time to live. If the key already has an entry that was put with a time to
+     * live, the entry is replaced and no longer expires. Use {@link #put(String, Serializable, long, TimeUnit)} to keep
+     * a time to live when updating the value.
+     *
+     * @param key   The cache key.
+     * @param value The value to cache.
+     * @param <T>   The type of the value.
+     *
+     * @return The ID of the cache entry.
+     */
     <T extends Serializable> long put(String key, T value);
+
+    /**
+     * Puts the value into the cache with the specified generic type. The value is read back as that type, rather than
+     * as its raw class, so that the type parameters of collections and maps are preserved. As with {@link
+     * #put(String, Serializable)}, the entry has no time to live, even if the entry it replaces had one.
+     *
+     * @param key   The cache key.
+     * @param value The value to cache.
+     * @param type  The type of the value.
+     * @param <T>   The type of the value.
+     *
+     * @return The ID of the cache entry.
+     */
+    <T extends Serializable> long put(String key, T value, TypeReference<T> type);
+
+    /**
+     * Puts the value into the cache for the specified time. Once the time has passed, the entry is no longer returned
+     * by {@link #get(String)} and is deleted the next time the cache is {@link #clean() cleaned}. If the key already has
+     * an entry, the entry is replaced and its time to live starts again from now.
+     *
+     * @param key        The cache key.
+     * @param value      The value to cache.
+     * @param timeToLive How long the entry should remain in the cache.
+     * @param unit       The unit for the time to live.
+     * @param <T>        The type of the value.
+     *
+     * @return The ID of the cache entry.
+     */
+    <T extends Serializable> long put(String key, T value, long timeToLive, TimeUnit unit);
+
+    /**
+     * Gets the value for the key. The returned value belongs to the caller: implementations that keep values in memory
+     * return copies of mutable values, so changing the returned value doesn't change the value other callers get.
+     * Values of immutable types, such as strings and boxed primitives, may be shared.
+     *
+     * @param key The cache key.
+     * @param <T> The type of the value.
+     *
+     * @return The value, or null if the key isn't in the cache or has expired.
+     */
     <T extends Serializable> T get(String key);
+
+    /**
+     * Gets the value for the key, computing it with the loader and putting it into the cache for the specified time if
+     * the key is missing, has expired, or was stored longer ago than the time to live. Concurrent calls for the same key
+     * share a single call to the loader, so a hot key that misses is only computed once per node. Values read from the
+     * cache belong to the caller, as with {@link #get(String)}.
+     *
+     * @param key        The cache key.
+     * @param loader     The loader that computes the value.
+     * @param timeToLive How long a computed value stays fresh.
+     * @param unit       The unit for the time to live.
+     * @param <T>        The type of the value.
+     *
+     * @return The cached or computed value, or null if the loader returned null.
+     */
+    <T extends Serializable> T getOrCompute(String key, DataCacheLoader<T> loader, long timeToLive, TimeUnit unit);
+
+    /**
+     * Works like {@link #getOrCompute(String, DataCacheLoader, long, TimeUnit)}, but once a value is stale, it's still
+     * returned for up to the specified stale time while the loader refreshes it in the background. Callers only wait
+     * for the loader when the key is missing or the value is older than both times combined.
+     *
+     * @param key        The cache key.
+     * @param loader     The loader that computes the value.
+     * @param timeToLive How long a computed value stays fresh.
+     * @param staleTime  How long a stale value is returned while it's refreshed.
+     * @param unit       The unit for the time to live and stale time.
+     * @param <T>        The type of the value.
+     *
+     * @return The cached or computed value, or null if the loader returned null.
+     */
+    <T extends Serializable> T getOrCompute(String key, DataCacheLoader<T> loader, long timeToLive, long staleTime, TimeUnit unit);
+
+    /**
+     * Removes the entry for the key. Values written with {@link #putStream(String, DataCacheStreamWriter)} are removed
+     * along with their chunks, but aren't read first, so null is returned for them as for missing keys.
+     *
+     * @param key The cache key.
+     * @param <T> The type of the value.
+     *
+     * @return The removed value, or null if the key wasn't in the cache, had expired, or held a streamed value.
+     */
     <T extends Serializable> T remove(String key);
+
+    /**
+     * Gets the values for all of the specified keys. Keys that aren't in the cache are left out of the returned map, as
+     * are keys that hold streamed values, which can only be read with {@link #getStream(String, DataCacheStreamReader)}
+     * or {@link #getParser(String, DataCacheParserReader)}. As with {@link #get(String)}, the returned values belong to
+     * the caller.
+     *
+     * @param keys The cache keys.
+     * @param <T>  The type of the values.
+     *
+     * @return The values keyed by cache key.
+     */
+    <T extends Serializable> Map<String, T> getAll(Collection<String> keys);
+
+    /**
+     * Puts all of the values into the cache, replacing any existing values for the keys. As with {@link
+     * #put(String, Serializable)}, the entries have no time to live, even if the entries they replace had one.
+     *
+     * @param values The values to cache keyed by cache key.
+     * @param <T>    The type of the values.
+     *
+     * @return The IDs of the cache entries keyed by cache key.
+     */
+    <T extends Serializable> Map<String, Long> putAll(Map<String, T> values);
+
+    /**
+     * Removes all of the specified keys from the cache.
+     *
+     * @param keys The cache keys.
+     * @param <T>  The type of the values.
+     *
+     * @return The values that were removed keyed by cache key.
+     */
+    <T extends Serializable> Map<String, T> removeAll(Collection<String> keys);
+
+    /**
+     * Puts a value into the cache by streaming it from the writer. The value is stored in chunks as it's written, so
+     * large values never need to be held in memory in full. Streamed values can only be read with {@link
+     * #getStream(String, DataCacheStreamReader)} or {@link #getParser(String, DataCacheParserReader)}, and can only be
+     * replaced by other streamed values until they expire.
+     *
+     * @param key    The cache key.
+     * @param writer The writer for the value.
+     *
+     * @return The ID of the cache entry.
+     */
+    long putStream(String key, DataCacheStreamWriter writer);
+
+    /**
+     * Puts a value into the cache for the specified time by streaming it from the writer. See {@link
+     * #putStream(String, DataCacheStreamWriter)} and {@link #put(String, Serializable, long, TimeUnit)}.
+     *
+     * @param key        The cache key.
+     * @param writer     The writer for the value.
+     * @param timeToLive How long the entry should remain in the cache.
+     * @param unit       The unit for the time to live.
+     *
+     * @return The ID of the cache entry.
+     */
+    long putStream(String key, DataCacheStreamWriter writer, long timeToLive, TimeUnit unit);
+
+    /**
+     * Reads a value that was {@link #putStream(String, DataCacheStreamWriter) put into the cache as a stream}. The
+     * value is loaded one chunk at a time as the reader reads it.
+     *
+     * @param key    The cache key.
+     * @param reader The reader for the value.
+     * @param <R>    The type of the result of reading the value.
+     *
+     * @return The result returned by the reader, or null if the key isn't in the cache.
+     */
+    <R> R getStream(String key, DataCacheStreamReader<R> reader);
+
+    /**
+     * Reads JSON that was {@link #putStream(String, DataCacheStreamWriter) put into the cache as a stream} with a
+     * Jackson streaming parser. Like {@link #getStream(String, DataCacheStreamReader)}, the value is loaded one chunk at
+     * a time as it's parsed.
+     *
+     * @param key    The cache key.
+     * @param reader The reader for the value.
+     * @param <R>    The type of the result of reading the value.
+     *
+     * @return The result returned by the reader, or null if the key isn't in the cache.
+     */
+    <R> R getParser(String key, DataCacheParserReader<R> reader);
+
+    /**
+     * Deletes all expired entries from the cache.
+     */
     void clean();
+
+    /**
+     * Deletes up to the specified number of expired entries from the cache.
+     *
+     * @param batchSize The maximum number of entries to delete.
+     *
+     * @return The number of entries deleted.
+     */
+    int clean(int batchSize);
+
+    /**
+     * Gets the hit, miss, and eviction statistics for the in-heap cache of deserialized values in front of the store.
+     *
+     * @return A map of statistic names and values.
+     */
+    Map<String, Number> getNearCacheMetrics();
 }
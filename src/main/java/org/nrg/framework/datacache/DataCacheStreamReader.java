@@ -0,0 +1,32 @@
+/*
+ * framework: org.nrg.framework.datacache.DataCacheStreamReader
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a value stored in the data cache as a stream. See {@link DataCacheService#getStream(String,
+ * DataCacheStreamReader)}.
+ *
+ * @param <R> The type of the result of reading the value.
+ */
+public interface DataCacheStreamReader<R> {
+    /**
+     * Reads the value from the input. The input is only valid until this returns.
+     *
+     * @param input The input to read the value from.
+     *
+     * @return The result of reading the value.
+     *
+     * @throws IOException When an error occurs reading the value.
+     */
+    R read(InputStream input) throws IOException;
+}
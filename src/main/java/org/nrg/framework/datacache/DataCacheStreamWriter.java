@@ -0,0 +1,27 @@
+/*
+ * framework: org.nrg.framework.datacache.DataCacheStreamWriter
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a value to the data cache as a stream. See {@link DataCacheService#putStream(String, DataCacheStreamWriter)}.
+ */
+public interface DataCacheStreamWriter {
+    /**
+     * Writes the value to the output. The output is closed by the data cache once this returns.
+     *
+     * @param output The output to write the value to.
+     *
+     * @throws IOException When an error occurs writing the value.
+     */
+    void write(OutputStream output) throws IOException;
+}
@@ -0,0 +1,235 @@
+/*
+ * framework: org.nrg.framework.datacache.DataCacheTypes
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import org.nrg.framework.services.SerializerService;
+
+/**
+ * Resolves the type names stored with data cache entries to Jackson types, along with a reader and writer for each
+ * type, and caches the results so that reading an entry doesn't repeat class loading or type construction.
+ *
+ * Type names are either class names or, for generic types, the canonical name of the Jackson type, e.g.
+ * <b>java.util.HashMap&lt;java.lang.String,java.lang.Integer&gt;</b>. Generic types can be {@link
+ * #register(TypeReference) registered} up front, but any canonical name can be resolved.
+ *
+ * Types are resolved with the thread's context class loader, so classes from plugins are found when the plugin's class
+ * loader is the context class loader. Threads that aren't started by the application, such as the common fork-join
+ * pool's, may have a context class loader that can't see the application's classes, so types that can't be found with
+ * the context class loader are resolved with the class loader that loaded this class instead. Work handed off to such
+ * threads should capture the caller's class loader with {@link #getClassLoader()} and pass it to {@link
+ * #resolve(String, ClassLoader)}.
+ *
+ * Resolved and registered types are cached separately for each class loader. The class loaders are weakly referenced
+ * and the types softly referenced, so caching a plugin's types doesn't prevent the plugin's class loader from being
+ * unloaded. A registered type that's been discarded is resolved again from its name when it's next used.
+ *
+ * When a {@link SerializerRegistry} is specified, the readers and writers use its custom serializers and deserializers.
+ * Changes to the registry take effect the next time a type is resolved. Serializers in the registry that can't be
+ * created are logged and skipped by the registry rather than failing every read and write.
+ */
+public class DataCacheTypes {
+    public DataCacheTypes(final SerializerService serializer) {
+        this(serializer, null);
+    }
+
+    public DataCacheTypes(final SerializerService serializer, final SerializerRegistry registry) {
+        _baseSerializer = _serializer = serializer;
+        _registry = registry;
+    }
+
+    /**
+     * Registers a generic type with the current thread's context class loader, so that values can be stored and read
+     * with its full type rather than just its raw class.
+     *
+     * @param reference The type reference.
+     *
+     * @return The type name for the type, to be stored with entries of the type.
+     */
+    public String register(final TypeReference<?> reference) {
+        final SerializerService current = _serializer;
+        final JavaType          type    = current.getTypeFactory().constructType(reference);
+        final String            name    = getTypeName(type);
+        _resolved.getUnchecked(getClassLoader()).put(name, new ResolvedType(current, type));
+        return name;
+    }
+
+    /**
+     * Gets the name to store for the type. This is the class name for non-generic types, which is compatible with
+     * entries stored before generic types were supported, and the canonical type name otherwise.
+     *
+     * @param type The type.
+     *
+     * @return The type name.
+     */
+    public static String getTypeName(final JavaType type) {
+        return type.containedTypeCount() == 0 ? type.getRawClass().getName() : type.toCanonical();
+    }
+
+    public String getTypeName(final TypeReference<?> reference) {
+        return getTypeName(_serializer.getTypeFactory().constructType(reference));
+    }
+
+    /**
+     * Gets the class loader used to resolve types on the current thread. This is the thread's context class loader, or
+     * the class loader that loaded this class if the thread has no context class loader.
+     *
+     * @return The class loader for the current thread.
+     */
+    public static ClassLoader getClassLoader() {
+        final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        return loader != null ? loader : DEFINING_LOADER;
+    }
+
+    /**
+     * Resolves the type name with the current thread's context class loader.
+     *
+     * @param typeName The type name.
+     *
+     * @return The resolved type.
+     *
+     * @throws ClassNotFoundException When the type or one of its parameters can't be found.
+     */
+    public ResolvedType resolve(final String typeName) throws ClassNotFoundException {
+        return resolve(typeName, getClassLoader());
+    }
+
+    /**
+     * Resolves the type name with the specified class loader, falling back to the class loader that loaded this class
+     * if the type can't be found.
+     *
+     * @param typeName The type name.
+     * @param loader   The class loader to resolve the type with.
+     *
+     * @return The resolved type.
+     *
+     * @throws ClassNotFoundException When the type or one of its parameters can't be found.
+     */
+    public ResolvedType resolve(final String typeName, final ClassLoader loader) throws ClassNotFoundException {
+        if (_registry != null && _registry.getModule() != _module) {
+            updateModule();
+        }
+        final Cache<String, ResolvedType> resolved = _resolved.getUnchecked(loader);
+        final SerializerService           current  = _serializer;
+        final ResolvedType                cached   = resolved.getIfPresent(typeName);
+        if (cached != null && cached._serializer == current) {
+            return cached;
+        }
+        final ResolvedType created;
+        try {
+            created = new ResolvedType(current, construct(typeName, loader));
+        } catch (ClassNotFoundException e) {
+            if (loader == DEFINING_LOADER) {
+                throw e;
+            }
+            final ResolvedType fallback = resolve(typeName, DEFINING_LOADER);
+            resolved.put(typeName, fallback);
+            return fallback;
+        }
+        resolved.put(typeName, created);
+        return created;
+    }
+
+    /**
+     * Indicates whether the type name has been resolved or registered with the class loader and is still cached.
+     *
+     * @param typeName The type name.
+     * @param loader   The class loader.
+     *
+     * @return Returns true if the resolved type is cached, false otherwise.
+     */
+    boolean isCached(final String typeName, final ClassLoader loader) {
+        final ResolvedType cached = _resolved.getUnchecked(loader).getIfPresent(typeName);
+        return cached != null && cached._serializer == _serializer;
+    }
+
+    /**
+     * Discards all cached types.
+     */
+    public void clear() {
+        _resolved.invalidateAll();
+    }
+
+    /**
+     * A type resolved from a stored type name, with a reader and writer for the type.
+     */
+    public class ResolvedType {
+        private ResolvedType(final SerializerService serializer, final JavaType type) {
+            _serializer = serializer;
+            _type = type;
+            _reader = serializer.getReader(type);
+            _writer = serializer.getWriter(type);
+        }
+
+        public JavaType getJavaType() {
+            return _type;
+        }
+
+        public Class<?> getRawClass() {
+            return _type.getRawClass();
+        }
+
+        public ObjectReader getReader() {
+            return _reader;
+        }
+
+        public ObjectWriter getWriter() {
+            return _writer;
+        }
+
+        private final SerializerService _serializer;
+        private final JavaType          _type;
+        private final ObjectReader      _reader;
+        private final ObjectWriter      _writer;
+    }
+
+    private synchronized void updateModule() {
+        final Module module = _registry.getModule();
+        if (module != _module) {
+            _serializer = module == null ? _baseSerializer : _baseSerializer.withModule(module);
+            _module = module;
+            clear();
+        }
+    }
+
+    private JavaType construct(final String typeName, final ClassLoader loader) throws ClassNotFoundException {
+        if (typeName.indexOf('<') < 0) {
+            return _serializer.getTypeFactory().constructType(Class.forName(typeName, true, loader));
+        }
+        try {
+            return _serializer.getTypeFactory().withClassLoader(loader).constructFromCanonical(typeName);
+        } catch (IllegalArgumentException e) {
+            throw new ClassNotFoundException("Unable to resolve the type " + typeName, e);
+        }
+    }
+
+    private static final ClassLoader DEFINING_LOADER = DataCacheTypes.class.getClassLoader();
+
+    private final SerializerService  _baseSerializer;
+    private final SerializerRegistry _registry;
+
+    private final LoadingCache<ClassLoader, Cache<String, ResolvedType>> _resolved = CacheBuilder.newBuilder().weakKeys().build(new CacheLoader<ClassLoader, Cache<String, ResolvedType>>() {
+        @Override
+        public Cache<String, ResolvedType> load(final ClassLoader loader) {
+            return CacheBuilder.newBuilder().softValues().build();
+        }
+    });
+
+    private volatile SerializerService _serializer;
+    private volatile Module            _module;
+}
@@ -0,0 +1,45 @@
+/*
+ * framework: org.nrg.framework.datacache.JacksonDataCacheCodec
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Encodes values with a Jackson object mapper. Binary formats are supported by passing in an object mapper built on
+ * the appropriate factory, e.g. <b>new JacksonDataCacheCodec("smile", new ObjectMapper(new SmileFactory()))</b> when
+ * the Jackson Smile data format is available.
+ */
+public class JacksonDataCacheCodec implements DataCacheCodec {
+    public JacksonDataCacheCodec(final String name, final ObjectMapper mapper) {
+        _name = name;
+        _mapper = mapper;
+    }
+
+    @Override
+    public String getName() {
+        return _name;
+    }
+
+    @Override
+    public byte[] encode(final Serializable value) throws IOException {
+        return _mapper.writeValueAsBytes(value);
+    }
+
+    @Override
+    public <T extends Serializable> T decode(final byte[] data, final Class<T> type) throws IOException {
+        return _mapper.readValue(data, type);
+    }
+
+    private final String       _name;
+    private final ObjectMapper _mapper;
+}
@@ -0,0 +1,43 @@
+/*
+ * framework: org.nrg.framework.datacache.JavaSerializationDataCacheCodec
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache;
+
+import java.io.*;
+
+/**
+ * Encodes values with standard Java serialization. This handles any serializable value, including types that don't
+ * map cleanly to JSON, at the cost of larger output for simple values.
+ */
+public class JavaSerializationDataCacheCodec implements DataCacheCodec {
+    public static final String NAME = "java";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] encode(final Serializable value) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public <T extends Serializable> T decode(final byte[] data, final Class<T> type) throws IOException {
+        try (final ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            return type.cast(input.readObject());
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Unable to decode a value of type " + type.getName(), e);
+        }
+    }
+}
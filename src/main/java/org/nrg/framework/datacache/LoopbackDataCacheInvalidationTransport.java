@@ -0,0 +1,69 @@
+/*
+ * framework: org.nrg.framework.datacache.LoopbackDataCacheInvalidationTransport
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Sends invalidations to the other transports connected to the same {@link Channel} in this JVM. Invalidations are
+ * delivered synchronously on the publishing thread. This is mainly useful for testing multiple buses in one process,
+ * or as a no-op transport for a single node.
+ */
+public class LoopbackDataCacheInvalidationTransport implements DataCacheInvalidationTransport {
+    /**
+     * Creates a transport on its own channel.
+     */
+    public LoopbackDataCacheInvalidationTransport() {
+        this(new Channel());
+    }
+
+    /**
+     * Creates a transport on the specified channel.
+     *
+     * @param channel The channel shared with the other transports.
+     */
+    public LoopbackDataCacheInvalidationTransport(final Channel channel) {
+        _channel = channel;
+    }
+
+    public Channel getChannel() {
+        return _channel;
+    }
+
+    @Override
+    public void start(final DataCacheInvalidationListener listener) {
+        _listener = listener;
+        _channel._transports.add(this);
+    }
+
+    @Override
+    public void publish(final DataCacheInvalidation invalidation) {
+        for (final LoopbackDataCacheInvalidationTransport transport : _channel._transports) {
+            transport._listener.onInvalidation(invalidation);
+        }
+    }
+
+    @Override
+    public void stop() {
+        _channel._transports.remove(this);
+    }
+
+    /**
+     * Connects transports in the same JVM.
+     */
+    public static class Channel {
+        private final List<LoopbackDataCacheInvalidationTransport> _transports = new CopyOnWriteArrayList<>();
+    }
+
+    private final Channel _channel;
+
+    private volatile DataCacheInvalidationListener _listener;
+}
@@ -0,0 +1,341 @@
+/*
+ * framework: org.nrg.framework.datacache.NearCache
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.MapMaker;
+import org.apache.commons.lang3.SerializationException;
+import org.apache.commons.lang3.SerializationUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded in-heap cache of deserialized data cache values, used in front of the persistent store so that reads of
+ * hot keys skip both the database and deserialization. Entries are weighed by the length of their serialized form, and
+ * the least recently used entries are evicted once the total weight exceeds the configured maximum.
+ *
+ * Values loaded from the store are only cached if no key has been invalidated since the load began (see {@link
+ * #getGeneration()} and {@link #put(String, Serializable, int, long)}), so a read that races with a write can't put a
+ * stale value back into the cache after the write has invalidated it.
+ *
+ * Entries can be given an expiration time, after which they're treated as absent, and the time the value was last
+ * stored, so callers can tell how fresh a value is (see {@link #getEntry(String)}).
+ *
+ * Cached values can't be handed straight to callers, who may modify them. Use {@link #copy(String, Serializable)} to
+ * get a value that's safe to return. Values of immutable types are returned as is, while other values are copied with
+ * Java serialization. Values that can't be serialized aren't cached at all. Copying can be turned off with {@link
+ * #setCopyOnRead(boolean)} when every caller treats the values as read-only.
+ */
+public class NearCache {
+    public static final long DEFAULT_MAXIMUM_WEIGHT = 16 * 1024 * 1024;
+
+    public NearCache() {
+        this(DEFAULT_MAXIMUM_WEIGHT);
+    }
+
+    /**
+     * Creates a near cache that holds entries up to the specified total weight, which is the sum of the lengths of the
+     * entries' serialized values. A maximum weight of 0 disables the near cache.
+     *
+     * @param maximumWeight The maximum total weight of the cached entries.
+     */
+    public NearCache(final long maximumWeight) {
+        _maximumWeight = maximumWeight;
+        _cache = CacheBuilder.newBuilder().maximumWeight(maximumWeight).weigher(new Weigher<String, Entry>() {
+            @Override
+            public int weigh(final String key, final Entry entry) {
+                return entry.getWeight();
+            }
+        }).recordStats().build();
+    }
+
+    /**
+     * Gets the cached value for the key.
+     *
+     * @param key The cache key.
+     * @param <T> The type of the value.
+     *
+     * @return The cached value, or null if the key isn't cached.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Serializable> T get(final String key) {
+        final Entry entry = getEntry(key);
+        return entry == null ? null : (T) entry.getValue();
+    }
+
+    /**
+     * Gets a copy of a cached value that the caller can safely modify. Values of immutable types, such as strings,
+     * boxed primitives, and enums, aren't copied, nor is any value when {@link #isCopyOnRead() copy on read} is off. If
+     * the value can't be copied, the key is removed from the near cache, so the value is no longer shared, and values
+     * of the same class aren't cached again.
+     *
+     * @param key   The cache key.
+     * @param value The cached value.
+     * @param <T>   The type of the value.
+     *
+     * @return A copy of the value, or the value itself if it doesn't need to be copied.
+     */
+    public <T extends Serializable> T copy(final String key, final T value) {
+        if (value == null || !_copyOnRead || isImmutable(value)) {
+            return value;
+        }
+        try {
+            return SerializationUtils.clone(value);
+        } catch (SerializationException e) {
+            if (_uncopyable.add(value.getClass())) {
+                _log.warn("Unable to copy a value of the class {} from the near cache, values of that class won't be cached", value.getClass().getName(), e);
+            }
+            _cache.invalidate(key);
+            return value;
+        }
+    }
+
+    /**
+     * Gets the cache entry for the key, which includes the time the value was stored along with the value.
+     *
+     * @param key The cache key.
+     *
+     * @return The cache entry, or null if the key isn't cached.
+     */
+    public Entry getEntry(final String key) {
+        final Entry entry = _cache.getIfPresent(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpiredAt(System.currentTimeMillis())) {
+            _cache.invalidate(key);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Gets the current invalidation generation. Call this before loading a value from the store and pass the result to
+     * {@link #put(String, Serializable, int, long)} once the value is loaded.
+     *
+     * @return The current generation.
+     */
+    public long getGeneration() {
+        return _generation.get();
+    }
+
+    /**
+     * Caches the value for the key, unless an entry has been invalidated since the specified generation.
+     *
+     * @param key        The cache key.
+     * @param value      The deserialized value.
+     * @param weight     The weight of the value, usually the length of its serialized form.
+     * @param generation The generation returned by {@link #getGeneration()} before the value was loaded.
+     *
+     * @return Returns <b>true</b> if the value was cached.
+     */
+    public boolean put(final String key, final Serializable value, final int weight, final long generation) {
+        return put(key, value, weight, 0, generation);
+    }
+
+    /**
+     * Caches the value for the key until the specified expiration time, unless an entry has been invalidated since the
+     * specified generation.
+     *
+     * @param key        The cache key.
+     * @param value      The deserialized value.
+     * @param weight     The weight of the value, usually the length of its serialized form.
+     * @param expires    The time in milliseconds since the epoch after which the value is no longer returned, or 0 if
+     *                   the value doesn't expire.
+     * @param generation The generation returned by {@link #getGeneration()} before the value was loaded.
+     *
+     * @return Returns <b>true</b> if the value was cached.
+     */
+    public boolean put(final String key, final Serializable value, final int weight, final long expires, final long generation) {
+        return put(key, value, weight, expires, 0, generation);
+    }
+
+    /**
+     * Caches the value for the key until the specified expiration time, unless an entry has been invalidated since the
+     * specified generation.
+     *
+     * @param key        The cache key.
+     * @param value      The deserialized value.
+     * @param weight     The weight of the value, usually the length of its serialized form.
+     * @param expires    The time in milliseconds since the epoch after which the value is no longer returned, or 0 if
+     *                   the value doesn't expire.
+     * @param updated    The time in milliseconds since the epoch when the value was stored, or 0 if it's not known.
+     * @param generation The generation returned by {@link #getGeneration()} before the value was loaded.
+     *
+     * @return Returns <b>true</b> if the value was cached.
+     */
+    public boolean put(final String key, final Serializable value, final int weight, final long expires, final long updated, final long generation) {
+        if (value == null || _maximumWeight == 0 || _uncopyable.contains(value.getClass())) {
+            return false;
+        }
+        final Entry entry = new Entry(value, key.length() + weight, expires, updated);
+        synchronized (_generation) {
+            if (_generation.get() != generation) {
+                return false;
+            }
+            _cache.put(key, entry);
+        }
+        return true;
+    }
+
+    /**
+     * Removes the cached value for the key, if any.
+     *
+     * @param key The cache key.
+     */
+    public void invalidate(final String key) {
+        synchronized (_generation) {
+            _generation.incrementAndGet();
+            _cache.invalidate(key);
+        }
+    }
+
+    /**
+     * Removes all cached values of the specified class. Generic type names, such as those used for values stored with
+     * a type reference, match on their raw class.
+     *
+     * @param typeName The class name.
+     */
+    public void invalidateType(final String typeName) {
+        final String className = StringUtils.substringBefore(typeName, "<");
+        synchronized (_generation) {
+            _generation.incrementAndGet();
+            final Iterator<Entry> entries = _cache.asMap().values().iterator();
+            while (entries.hasNext()) {
+                if (entries.next().getValue().getClass().getName().equals(className)) {
+                    entries.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all cached values.
+     */
+    public void invalidateAll() {
+        synchronized (_generation) {
+            _generation.incrementAndGet();
+            _cache.invalidateAll();
+        }
+    }
+
+    public long getMaximumWeight() {
+        return _maximumWeight;
+    }
+
+    public boolean isCopyOnRead() {
+        return _copyOnRead;
+    }
+
+    /**
+     * Sets whether {@link #copy(String, Serializable)} copies values of mutable types. This is on by default. Turn it
+     * off only if no caller modifies the values it gets from the cache, since they're then shared by every caller.
+     *
+     * @param copyOnRead Whether to copy values of mutable types.
+     */
+    public void setCopyOnRead(final boolean copyOnRead) {
+        _copyOnRead = copyOnRead;
+    }
+
+    public long size() {
+        return _cache.size();
+    }
+
+    public CacheStats getStats() {
+        return _cache.stats();
+    }
+
+    /**
+     * Gets a snapshot of the near cache statistics, suitable for display or export to a monitoring system.
+     *
+     * @return A map of statistic names and values.
+     */
+    public Map<String, Number> getMetrics() {
+        final CacheStats stats = getStats();
+        return ImmutableMap.<String, Number>builder()
+                           .put("size", size())
+                           .put("maximumWeight", getMaximumWeight())
+                           .put("hits", stats.hitCount())
+                           .put("misses", stats.missCount())
+                           .put("hitRate", stats.hitRate())
+                           .put("evictions", stats.evictionCount())
+                           .build();
+    }
+
+    /**
+     * A cached value along with its weight, expiration time, and the time it was stored.
+     */
+    public static final class Entry {
+        public Entry(final Serializable value, final int weight, final long expires, final long updated) {
+            _value = value;
+            _weight = weight;
+            _expires = expires;
+            _updated = updated;
+        }
+
+        public Serializable getValue() {
+            return _value;
+        }
+
+        public int getWeight() {
+            return _weight;
+        }
+
+        /**
+         * The time in milliseconds since the epoch when the value was stored, or 0 if it's not known.
+         *
+         * @return The time the value was stored.
+         */
+        public long getUpdated() {
+            return _updated;
+        }
+
+        boolean isExpiredAt(final long now) {
+            return _expires > 0 && _expires <= now;
+        }
+
+        private final Serializable _value;
+        private final int          _weight;
+        private final long         _expires;
+        private final long         _updated;
+    }
+
+    private static boolean isImmutable(final Serializable value) {
+        final Class<?> type = value.getClass();
+        return IMMUTABLE_TYPES.contains(type) || value instanceof Enum || type.getName().startsWith("java.time.");
+    }
+
+    private static final Logger _log = LoggerFactory.getLogger(NearCache.class);
+
+    private static final Set<Class<?>> IMMUTABLE_TYPES = ImmutableSet.<Class<?>>of(String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class, BigInteger.class, BigDecimal.class, UUID.class);
+
+    private final long                 _maximumWeight;
+    private final Cache<String, Entry> _cache;
+    private final AtomicLong           _generation = new AtomicLong();
+    private final Set<Class<?>>        _uncopyable = Collections.newSetFromMap(new MapMaker().weakKeys().<Class<?>, Boolean>makeMap());
+
+    private volatile boolean _copyOnRead = true;
+}
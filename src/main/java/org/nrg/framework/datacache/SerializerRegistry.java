@@ -9,12 +9,44 @@
 
 package org.nrg.framework.datacache;
 
+import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.apache.commons.lang3.ClassUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class SerializerRegistry extends HashMap<Class<?>, String> {
+/**
+ * Maps classes to the names of the custom {@link JsonSerializer} classes used to store them in the data cache, along
+ * with any custom {@link JsonDeserializer deserializers} used to read them back. The registry is safe to use from
+ * concurrent threads.
+ *
+ * Lookups are memoized for each class: the first lookup for a class walks its superclasses and interfaces for the
+ * nearest registered class and instantiates the serializer, and later lookups return the same instance. Changing the
+ * registry discards the memoized lookups. This includes changes made with the {@link ConcurrentMap} methods such as
+ * {@link #putIfAbsent(Class, String)}, {@link #replace(Class, String)}, and the compute and merge methods, and changes
+ * made through the {@link #keySet()}, {@link #values()}, and {@link #entrySet()} views.
+ *
+ * The registry is a {@link ConcurrentMap} backed by a {@link ConcurrentHashMap}, but unlike a plain concurrent map it
+ * accepts nulls where a {@link java.util.HashMap} would give a sensible answer: looking up or removing a null class
+ * returns null or false, and registering a null serializer or deserializer name removes the registration for the class.
+ * Registering a null class still throws a {@link NullPointerException}.
+ *
+ * A registered class that can't be instantiated, e.g. because it can't be found or isn't a serializer, fails lookups for
+ * the classes it's registered for, but is logged and left out of the {@link #getModule() module} so that it doesn't
+ * prevent the other serializers from being used.
+ */
+public class SerializerRegistry extends AbstractMap<Class<?>, String> implements ConcurrentMap<Class<?>, String> {
     public SerializerRegistry() {
 
     }
@@ -22,23 +54,372 @@ public class SerializerRegistry extends HashMap<Class<?>, String> {
         putAll(seed);
     }
 
+    @Override
+    public int size() {
+        return _serializerClasses.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return _serializerClasses.isEmpty();
+    }
+
+    @Override
+    public String get(final Object clazz) {
+        return clazz == null ? null : _serializerClasses.get(clazz);
+    }
+
+    @Override
+    public boolean containsKey(final Object clazz) {
+        return clazz != null && _serializerClasses.containsKey(clazz);
+    }
+
+    @Override
+    public boolean containsValue(final Object serializer) {
+        return serializer != null && _serializerClasses.containsValue(serializer);
+    }
+
+    @Override
+    public String put(final Class<?> clazz, final String serializer) {
+        try {
+            return serializer == null ? _serializerClasses.remove(checkClass(clazz)) : _serializerClasses.put(checkClass(clazz), serializer);
+        } finally {
+            reset();
+        }
+    }
+
+    @Override
+    public void putAll(final Map<? extends Class<?>, ? extends String> serializers) {
+        try {
+            for (final Map.Entry<? extends Class<?>, ? extends String> entry : serializers.entrySet()) {
+                if (entry.getValue() == null) {
+                    _serializerClasses.remove(checkClass(entry.getKey()));
+                } else {
+                    _serializerClasses.put(checkClass(entry.getKey()), entry.getValue());
+                }
+            }
+        } finally {
+            reset();
+        }
+    }
+
+    @Override
+    public String remove(final Object clazz) {
+        if (clazz == null) {
+            return null;
+        }
+        try {
+            return _serializerClasses.remove(clazz);
+        } finally {
+            reset();
+        }
+    }
+
+    @Override
+    public void clear() {
+        _serializerClasses.clear();
+        _deserializerClasses.clear();
+        reset();
+    }
+
+    /**
+     * Registers the serializer for the class if there isn't one registered already. A null serializer registers
+     * nothing.
+     */
+    @Override
+    public String putIfAbsent(final Class<?> clazz, final String serializer) {
+        if (serializer == null) {
+            return get(checkClass(clazz));
+        }
+        final String existing = _serializerClasses.putIfAbsent(checkClass(clazz), serializer);
+        if (existing == null) {
+            reset();
+        }
+        return existing;
+    }
+
+    @Override
+    public boolean remove(final Object clazz, final Object serializer) {
+        if (clazz == null || serializer == null || !_serializerClasses.remove(clazz, serializer)) {
+            return false;
+        }
+        reset();
+        return true;
+    }
+
+    /**
+     * Replaces the serializer for the class if it's currently the expected serializer. A null replacement removes the
+     * registration for the class.
+     */
+    @Override
+    public boolean replace(final Class<?> clazz, final String expected, final String serializer) {
+        if (serializer == null) {
+            return remove(clazz, expected);
+        }
+        if (clazz == null || expected == null || !_serializerClasses.replace(clazz, expected, serializer)) {
+            return false;
+        }
+        reset();
+        return true;
+    }
+
+    /**
+     * Replaces the serializer for the class if one is registered. A null replacement removes the registration for the
+     * class.
+     */
+    @Override
+    public String replace(final Class<?> clazz, final String serializer) {
+        if (clazz == null) {
+            return null;
+        }
+        if (serializer == null) {
+            return remove(clazz);
+        }
+        final String existing = _serializerClasses.replace(clazz, serializer);
+        if (existing != null) {
+            reset();
+        }
+        return existing;
+    }
+
+    /**
+     * Gets the registrations. Removing entries from this view or its iterator and setting entry values change the
+     * registry, as they would for any other map. The {@link #keySet()} and {@link #values()} views are built on this
+     * view.
+     */
+    @Override
+    public Set<Map.Entry<Class<?>, String>> entrySet() {
+        return _entries;
+    }
+
+    /**
+     * Registers a custom deserializer for the class. Unlike serializers, deserializers are only used for the exact
+     * class they're registered for, since the stored type of an entry is always the concrete class.
+     *
+     * @param clazz        The class to deserialize.
+     * @param deserializer The name of the {@link JsonDeserializer} class, or null to remove the registered deserializer.
+     *
+     * @return The name of the deserializer previously registered for the class, if any.
+     */
+    public String putDeserializer(final Class<?> clazz, final String deserializer) {
+        try {
+            return deserializer == null ? _deserializerClasses.remove(checkClass(clazz)) : _deserializerClasses.put(checkClass(clazz), deserializer);
+        } finally {
+            reset();
+        }
+    }
+
+    /**
+     * Gets the serializer registered for the class or its nearest registered superclass or interface.
+     *
+     * @param clazz The class to serialize.
+     * @param <T>   The type to serialize.
+     *
+     * @return The serializer, or null if there's no serializer registered for the class.
+     *
+     * @throws ClassNotFoundException When the registered serializer class can't be found.
+     * @throws IllegalAccessException When the registered serializer class can't be accessed.
+     * @throws InstantiationException When the registered serializer class isn't a serializer or can't be instantiated.
+     */
     @SuppressWarnings("unchecked")
     public <T> JsonSerializer<? extends T> getSerializer(Class<? extends T> clazz) throws ClassNotFoundException, IllegalAccessException, InstantiationException {
-        if (containsKey(clazz)) {
-            if (_cache.containsKey(clazz)) {
-                return (JsonSerializer<? extends T>) _cache.get(clazz);
+        if (clazz == null) {
+            return null;
+        }
+        final Object cached = _serializers.get(clazz);
+        if (cached != null) {
+            return cached == NONE ? null : (JsonSerializer<? extends T>) cached;
+        }
+        final long              version    = _version.get();
+        final Class<?>          registered = findRegisteredClass(clazz);
+        final JsonSerializer<?> serializer = registered == null ? null : getSerializerInstance(registered);
+        if (_version.get() == version) {
+            _serializers.put(clazz, serializer == null ? NONE : serializer);
+        }
+        return (JsonSerializer<? extends T>) serializer;
+    }
+
+    /**
+     * Gets the deserializer registered for the class.
+     *
+     * @param clazz The class to deserialize.
+     * @param <T>   The type to deserialize.
+     *
+     * @return The deserializer, or null if there's no deserializer registered for the class.
+     *
+     * @throws ClassNotFoundException When the registered deserializer class can't be found.
+     * @throws IllegalAccessException When the registered deserializer class can't be accessed.
+     * @throws InstantiationException When the registered deserializer class isn't a deserializer or can't be instantiated.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> JsonDeserializer<? extends T> getDeserializer(Class<? extends T> clazz) throws ClassNotFoundException, IllegalAccessException, InstantiationException {
+        if (clazz == null) {
+            return null;
+        }
+        final Object cached = _deserializers.get(clazz);
+        if (cached != null) {
+            return cached == NONE ? null : (JsonDeserializer<? extends T>) cached;
+        }
+        final long                version      = _version.get();
+        final String              name         = _deserializerClasses.get(clazz);
+        final JsonDeserializer<?> deserializer = name == null ? null : instantiate(clazz, name, JsonDeserializer.class);
+        if (_version.get() == version) {
+            _deserializers.put(clazz, deserializer == null ? NONE : deserializer);
+        }
+        return (JsonDeserializer<? extends T>) deserializer;
+    }
+
+    /**
+     * Gets a Jackson module with all of the registered serializers and deserializers. The same module instance is
+     * returned until the registry is changed. Registered classes that can't be instantiated are logged and left out of
+     * the module.
+     *
+     * @return The module, or null if there are no serializers or deserializers registered.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Module getModule() {
+        if (isEmpty() && _deserializerClasses.isEmpty()) {
+            return null;
+        }
+        final Module cached = _module;
+        if (cached != null) {
+            return cached;
+        }
+        final long         version = _version.get();
+        final SimpleModule module  = new SimpleModule(MODULE_NAME);
+        for (final Class<?> clazz : keySet()) {
+            try {
+                module.addSerializer((Class) clazz, (JsonSerializer) getSerializerInstance(clazz));
+            } catch (ClassNotFoundException | IllegalAccessException | InstantiationException | RuntimeException e) {
+                _log.error("Unable to create the serializer " + get(clazz) + " registered for the class " + clazz.getName() + ", it won't be used by the data cache", e);
             }
-            Class<?> serializer = Class.forName(get(clazz));
-            if (JsonSerializer.class.isAssignableFrom(serializer)) {
-                JsonSerializer<?> instance = serializer.asSubclass(JsonSerializer.class).newInstance();
-                _cache.put(clazz, instance);
-                return (JsonSerializer<? extends T>) instance;
-            } else {
-                throw new InstantiationException("The class configured to serialize " + clazz.getName() + " is " + serializer.getName() + ", which is not a valid implementation or extension of the " + JsonSerializer.class.getName() + " class");
+        }
+        for (final Class<?> clazz : _deserializerClasses.keySet()) {
+            try {
+                module.addDeserializer((Class) clazz, (JsonDeserializer) getDeserializer(clazz));
+            } catch (ClassNotFoundException | IllegalAccessException | InstantiationException | RuntimeException e) {
+                _log.error("Unable to create the deserializer " + _deserializerClasses.get(clazz) + " registered for the class " + clazz.getName() + ", it won't be used by the data cache", e);
+            }
+        }
+        // Don't keep the module if the registry changed while it was being built.
+        if (_version.get() == version) {
+            _module = module;
+        }
+        return module;
+    }
+
+    private Class<?> findRegisteredClass(final Class<?> clazz) {
+        for (Class<?> current = clazz; current != null; current = current.getSuperclass()) {
+            if (containsKey(current)) {
+                return current;
+            }
+        }
+        for (final Class<?> implemented : ClassUtils.getAllInterfaces(clazz)) {
+            if (containsKey(implemented)) {
+                return implemented;
             }
         }
         return null;
     }
 
-    private Map<Class<?>, JsonSerializer<?>> _cache = new HashMap<>();
+    private JsonSerializer<?> getSerializerInstance(final Class<?> registered) throws ClassNotFoundException, IllegalAccessException, InstantiationException {
+        final JsonSerializer<?> existing = _instances.get(registered);
+        if (existing != null) {
+            return existing;
+        }
+        final JsonSerializer<?> created = instantiate(registered, get(registered), JsonSerializer.class);
+        final JsonSerializer<?> raced   = _instances.putIfAbsent(registered, created);
+        return raced != null ? raced : created;
+    }
+
+    private static Class<?> checkClass(final Class<?> clazz) {
+        if (clazz == null) {
+            throw new NullPointerException("A serializer or deserializer can't be registered for a null class");
+        }
+        return clazz;
+    }
+
+    private static <T> T instantiate(final Class<?> clazz, final String name, final Class<T> expected) throws ClassNotFoundException, IllegalAccessException, InstantiationException {
+        final Class<?> implementation = Class.forName(name);
+        if (!expected.isAssignableFrom(implementation)) {
+            throw new InstantiationException("The class configured for " + clazz.getName() + " is " + implementation.getName() + ", which is not a valid implementation or extension of the " + expected.getName() + " class");
+        }
+        return implementation.asSubclass(expected).newInstance();
+    }
+
+    private class EntrySet extends AbstractSet<Map.Entry<Class<?>, String>> {
+        @Override
+        public Iterator<Map.Entry<Class<?>, String>> iterator() {
+            final Iterator<Map.Entry<Class<?>, String>> iterator = _serializerClasses.entrySet().iterator();
+            return new Iterator<Map.Entry<Class<?>, String>>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public Map.Entry<Class<?>, String> next() {
+                    final Map.Entry<Class<?>, String> entry = iterator.next();
+                    return new SimpleEntry<Class<?>, String>(entry) {
+                        @Override
+                        public String setValue(final String serializer) {
+                            super.setValue(serializer);
+                            return put(getKey(), serializer);
+                        }
+
+                        private static final long serialVersionUID = 1L;
+                    };
+                }
+
+                @Override
+                public void remove() {
+                    iterator.remove();
+                    reset();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return _serializerClasses.size();
+        }
+
+        @Override
+        public boolean contains(final Object object) {
+            return object instanceof Map.Entry && _serializerClasses.entrySet().contains(object);
+        }
+
+        @Override
+        public boolean remove(final Object object) {
+            return object instanceof Map.Entry && SerializerRegistry.this.remove(((Map.Entry<?, ?>) object).getKey(), ((Map.Entry<?, ?>) object).getValue());
+        }
+
+        @Override
+        public void clear() {
+            SerializerRegistry.this.clear();
+        }
+    }
+
+    private void reset() {
+        _version.incrementAndGet();
+        _serializers.clear();
+        _deserializers.clear();
+        _instances.clear();
+        _module = null;
+    }
+
+    private static final Logger _log = LoggerFactory.getLogger(SerializerRegistry.class);
+
+    private static final String MODULE_NAME = "nrg-data-cache-serializers";
+    private static final Object NONE        = new Object();
+
+    private final ConcurrentMap<Class<?>, String>  _serializerClasses   = new ConcurrentHashMap<>();
+    private final Set<Map.Entry<Class<?>, String>> _entries             = new EntrySet();
+    private final Map<Class<?>, String>            _deserializerClasses = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Object>            _serializers         = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Object>            _deserializers       = new ConcurrentHashMap<>();
+    private final Map<Class<?>, JsonSerializer<?>> _instances           = new ConcurrentHashMap<>();
+    private final AtomicLong                       _version             = new AtomicLong();
+
+    private volatile Module _module;
 }
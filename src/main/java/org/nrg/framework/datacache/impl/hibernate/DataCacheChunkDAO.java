@@ -0,0 +1,92 @@
+/*
+ * framework: org.nrg.framework.datacache.impl.hibernate.DataCacheChunkDAO
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache.impl.hibernate;
+
+import com.google.common.collect.Iterables;
+import org.hibernate.Session;
+import org.nrg.framework.datacache.DataCacheChunk;
+import org.nrg.framework.datacache.DataCacheCodecs;
+import org.nrg.framework.orm.hibernate.AbstractHibernateDAO;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+@Repository
+public class DataCacheChunkDAO extends AbstractHibernateDAO<DataCacheChunk> {
+    /**
+     * Inserts a chunk, then flushes the session and evicts the chunk so its data doesn't stay in the session.
+     *
+     * @param stream     The ID of the stream.
+     * @param chunkIndex The position of the chunk in the stream.
+     * @param data       The chunk's data.
+     * @param lastChunk  Whether this is the last chunk of the stream.
+     */
+    public void write(final String stream, final int chunkIndex, final byte[] data, final boolean lastChunk) {
+        final Session        session = getSession();
+        final DataCacheChunk chunk   = new DataCacheChunk(stream, chunkIndex, data, lastChunk);
+        session.save(chunk);
+        session.flush();
+        session.evict(chunk);
+    }
+
+    /**
+     * Gets a chunk of a stream. The chunk isn't attached to the session.
+     *
+     * @param stream     The ID of the stream.
+     * @param chunkIndex The position of the chunk in the stream.
+     *
+     * @return The chunk, or null if the stream has no chunk at that position.
+     */
+    public DataCacheChunk read(final String stream, final int chunkIndex) {
+        final Object[] row = (Object[]) getSession().createQuery("select data, lastChunk from DataCacheChunk where stream = :stream and chunkIndex = :chunkIndex")
+                                                    .setParameter("stream", stream)
+                                                    .setParameter("chunkIndex", chunkIndex)
+                                                    .uniqueResult();
+        return row == null ? null : new DataCacheChunk(stream, chunkIndex, (byte[]) row[0], (Boolean) row[1]);
+    }
+
+    /**
+     * Deletes all of the chunks of the specified streams, using one statement for every {@link
+     * DataCacheItemDAO#MAX_KEYS_PER_QUERY} streams.
+     *
+     * @param streams The IDs of the streams to delete.
+     *
+     * @return The number of chunks deleted.
+     */
+    public int deleteByStreams(final Collection<String> streams) {
+        int deleted = 0;
+        for (final List<String> chunk : Iterables.partition(new LinkedHashSet<>(streams), DataCacheItemDAO.MAX_KEYS_PER_QUERY)) {
+            deleted += getSession().createQuery("delete from DataCacheChunk where stream in (:streams)").setParameterList("streams", chunk).executeUpdate();
+        }
+        return deleted;
+    }
+
+    /**
+     * Deletes the chunks of up to the specified number of streams that no data cache entry refers to. These are left
+     * behind when an expired streamed value is replaced with a value that isn't streamed by an upsert, which doesn't
+     * read the entry it replaces, or when two streams are written to the same key at the same time. Chunks of streams
+     * that are still being written aren't visible outside of the writer's transaction, so they're not deleted.
+     *
+     * @param maxStreams The maximum number of streams to delete.
+     *
+     * @return The number of streams whose chunks were deleted. If this equals the maximum, there may be more.
+     */
+    public int deleteOrphans(final int maxStreams) {
+        @SuppressWarnings("unchecked")
+        final List<String> streams = getSession().createQuery("select distinct chunk.stream from DataCacheChunk chunk where not exists (select item.id from DataCacheItem item where item.encoding = :encoding and item.value = chunk.stream)")
+                                                 .setParameter("encoding", DataCacheCodecs.STREAM)
+                                                 .setMaxResults(maxStreams)
+                                                 .list();
+        deleteByStreams(streams);
+        return streams.size();
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * framework: org.nrg.framework.datacache.impl.hibernate.DataCacheChunkInputStream
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache.impl.hibernate;
+
+import org.nrg.framework.datacache.DataCacheChunk;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a stream from the data cache one chunk at a time, loading each chunk when the previous one has been read. If a
+ * chunk is missing before the last chunk has been read, the stream was removed or replaced while it was being read,
+ * and reading fails rather than returning a truncated value.
+ */
+class DataCacheChunkInputStream extends InputStream {
+    DataCacheChunkInputStream(final DataCacheChunkDAO dao, final String key, final String stream) {
+        _dao = dao;
+        _key = key;
+        _stream = stream;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return _chunk[_position++] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] data, final int offset, final int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        final int copied = Math.min(length, _chunk.length - _position);
+        System.arraycopy(_chunk, _position, data, offset, copied);
+        _position += copied;
+        return copied;
+    }
+
+    @Override
+    public int available() {
+        return _chunk == null ? 0 : _chunk.length - _position;
+    }
+
+    @Override
+    public void close() {
+        _chunk = null;
+        _lastChunk = true;
+    }
+
+    /**
+     * Loads chunks until there's unread data or the last chunk has been read.
+     *
+     * @return Returns <b>true</b> if there's unread data, <b>false</b> at the end of the stream.
+     *
+     * @throws IOException When a chunk is missing.
+     */
+    private boolean fill() throws IOException {
+        while (_chunk == null || _position == _chunk.length) {
+            if (_lastChunk) {
+                return false;
+            }
+            final DataCacheChunk chunk = _dao.read(_stream, _chunkIndex);
+            if (chunk == null) {
+                throw new IOException("The " + _key + " cache item was removed or replaced while it was being read");
+            }
+            _chunk = chunk.getData() == null ? EMPTY : chunk.getData();
+            _position = 0;
+            _lastChunk = chunk.isLastChunk();
+            _chunkIndex++;
+        }
+        return true;
+    }
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final DataCacheChunkDAO _dao;
+    private final String            _key;
+    private final String            _stream;
+
+    private byte[]  _chunk;
+    private int     _position;
+    private int     _chunkIndex;
+    private boolean _lastChunk;
+}
@@ -0,0 +1,92 @@
+/*
+ * framework: org.nrg.framework.datacache.impl.hibernate.DataCacheChunkOutputStream
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache.impl.hibernate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Writes a stream to the data cache as chunks of a fixed size. Only one chunk is held in memory at a time. Each full
+ * chunk is written when the next byte arrives, so the chunk written when the stream is closed holds the end of the
+ * data and can be marked as the last chunk. An empty stream is stored as a single empty chunk.
+ */
+class DataCacheChunkOutputStream extends OutputStream {
+    DataCacheChunkOutputStream(final DataCacheChunkDAO dao, final String stream, final int chunkSize) {
+        _dao = dao;
+        _stream = stream;
+        _buffer = new byte[chunkSize];
+    }
+
+    @Override
+    public void write(final int value) throws IOException {
+        checkOpen();
+        if (_count == _buffer.length) {
+            writeChunk(false);
+        }
+        _buffer[_count++] = (byte) value;
+    }
+
+    @Override
+    public void write(final byte[] data, final int offset, final int length) throws IOException {
+        checkOpen();
+        int position  = offset;
+        int remaining = length;
+        while (remaining > 0) {
+            if (_count == _buffer.length) {
+                writeChunk(false);
+            }
+            final int copied = Math.min(remaining, _buffer.length - _count);
+            System.arraycopy(data, position, _buffer, _count, copied);
+            _count += copied;
+            position += copied;
+            remaining -= copied;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!_closed) {
+            _closed = true;
+            writeChunk(true);
+        }
+    }
+
+    /**
+     * The number of bytes written to the stream.
+     *
+     * @return The length of the stream.
+     */
+    long getLength() {
+        return _length + _count;
+    }
+
+    private void writeChunk(final boolean lastChunk) {
+        // The DAO flushes each chunk as it's written, so a full buffer can be reused once the chunk's been written.
+        _dao.write(_stream, _chunks++, _count == _buffer.length ? _buffer : Arrays.copyOf(_buffer, _count), lastChunk);
+        _length += _count;
+        _count = 0;
+    }
+
+    private void checkOpen() throws IOException {
+        if (_closed) {
+            throw new IOException("The data cache stream " + _stream + " has already been closed");
+        }
+    }
+
+    private final DataCacheChunkDAO _dao;
+    private final String            _stream;
+    private final byte[]            _buffer;
+
+    private int     _count;
+    private int     _chunks;
+    private long    _length;
+    private boolean _closed;
+}
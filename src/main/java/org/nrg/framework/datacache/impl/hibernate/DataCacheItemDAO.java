@@ -9,13 +9,219 @@
 
 package org.nrg.framework.datacache.impl.hibernate;
 
+import com.google.common.collect.Iterables;
+import com.google.common.hash.Hashing;
+import org.hibernate.Session;
+import org.hibernate.dialect.PostgreSQL81Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.jdbc.Work;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.type.StandardBasicTypes;
 import org.nrg.framework.orm.hibernate.AbstractHibernateDAO;
+import org.nrg.framework.datacache.DataCacheCodecs;
 import org.nrg.framework.datacache.DataCacheItem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Repository;
 
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+
 @Repository
 public class DataCacheItemDAO extends AbstractHibernateDAO<DataCacheItem> {
+    /**
+     * The maximum number of values in a single <b>IN</b> clause. Larger lists are split across multiple queries.
+     */
+    public static final int MAX_KEYS_PER_QUERY = 500;
+
     public DataCacheItem getByKey(final String key) {
         return findByUniqueProperty("key", key);
     }
+
+    /**
+     * Gets the entry for the key from the database, bypassing the query cache. Use this to see values written by other
+     * nodes, e.g. after waiting for {@link #lock(String) the lock on a key}.
+     *
+     * @param key The key to find.
+     *
+     * @return The entry for the key, or null if there's no entry.
+     */
+    public DataCacheItem getByKeyUncached(final String key) {
+        return (DataCacheItem) getCriteriaForType().setCacheable(false).add(Restrictions.eq("key", key)).uniqueResult();
+    }
+
+    /**
+     * Indicates whether {@link #lock(String)} takes database locks on this database. Only PostgreSQL supports this.
+     *
+     * @return Returns <b>true</b> if keys can be locked.
+     */
+    public boolean isLockSupported() {
+        return ((SessionFactoryImplementor) getSession().getSessionFactory()).getDialect() instanceof PostgreSQL81Dialect;
+    }
+
+    /**
+     * Takes a database advisory lock on the key that's held until the current transaction ends, waiting for any other
+     * transaction holding the lock to end first. Locks aren't tied to an entry, so keys that aren't in the cache yet can
+     * be locked. The lock is identified by a 64-bit hash of the key, so two keys occasionally share a lock.
+     *
+     * @param key The key to lock.
+     *
+     * @return Returns <b>true</b> if the key was locked, <b>false</b> if {@link #isLockSupported() locks aren't
+     *         supported} on this database.
+     */
+    public boolean lock(final String key) {
+        if (!isLockSupported()) {
+            return false;
+        }
+        final long lock = Hashing.murmur3_128().hashString(LOCK_NAMESPACE + key, StandardCharsets.UTF_8).asLong();
+        getSession().createSQLQuery("SELECT 1 FROM (SELECT pg_advisory_xact_lock(:lock)) AS locked").setParameter("lock", lock, StandardBasicTypes.LONG).uniqueResult();
+        return true;
+    }
+
+    /**
+     * Gets the entries for the specified keys, using one query for every {@link #MAX_KEYS_PER_QUERY} keys. Keys with no
+     * entry are ignored.
+     *
+     * @param keys The keys to find.
+     *
+     * @return The entries for the keys.
+     */
+    @SuppressWarnings("unchecked")
+    public List<DataCacheItem> getByKeys(final Collection<String> keys) {
+        final List<DataCacheItem> items = new ArrayList<>(keys.size());
+        for (final List<String> chunk : Iterables.partition(new LinkedHashSet<>(keys), MAX_KEYS_PER_QUERY)) {
+            items.addAll(getCriteriaForType().add(Restrictions.in("key", chunk)).list());
+        }
+        return items;
+    }
+
+    /**
+     * Finds the IDs of entries that have expired as of the specified time, in order of expiration. This uses the index
+     * on the expiration time, so it doesn't scan the table.
+     *
+     * @param now   The time to check.
+     * @param limit The maximum number of IDs to return.
+     *
+     * @return The IDs of the expired entries.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Long> findExpiredIds(final Date now, final int limit) {
+        return getCriteriaForType().add(Restrictions.le("expires", now))
+                                   .setProjection(Projections.id())
+                                   .addOrder(Order.asc("expires"))
+                                   .setMaxResults(limit)
+                                   .list();
+    }
+
+    /**
+     * Gets the stream IDs of the {@link DataCacheCodecs#STREAM streamed} entries among the entries with the specified
+     * IDs.
+     *
+     * @param ids The IDs of the entries.
+     *
+     * @return The stream IDs of the streamed entries.
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> findStreams(final List<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return getSession().createQuery("select item.value from DataCacheItem item where item.id in (:ids) and item.encoding = :encoding")
+                           .setParameterList("ids", ids)
+                           .setParameter("encoding", DataCacheCodecs.STREAM)
+                           .list();
+    }
+
+    /**
+     * Deletes the entries with the specified IDs with a single bulk delete.
+     *
+     * @param ids The IDs of the entries to delete.
+     *
+     * @return The number of entries deleted.
+     */
+    public int deleteByIds(final List<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return getSession().createQuery("delete from DataCacheItem where id in (:ids)").setParameterList("ids", ids).executeUpdate();
+    }
+
+    /**
+     * Indicates whether entries can be written with {@link #upsert(DataCacheItem)} on this database.
+     *
+     * @return Returns <b>true</b> if the database supports upserts.
+     */
+    public boolean isUpsertSupported() {
+        return getUpsert() != null;
+    }
+
+    /**
+     * Inserts or updates the entry for the item's key with a single statement. The item itself isn't attached to the
+     * session, and any instance of the entry already in the session is evicted so it's reloaded on the next read.
+     *
+     * @param item The item to write.
+     *
+     * @return The ID of the entry, or null if there's an unexpired entry for the key with a different type.
+     *
+     * @throws UnsupportedOperationException When the database doesn't support upserts.
+     */
+    public Long upsert(final DataCacheItem item) {
+        final DataCacheItemUpsert upsert = getUpsert();
+        if (upsert == null) {
+            throw new UnsupportedOperationException("Upserts aren't supported on this database");
+        }
+        final Session session = getSession();
+        final Long    id      = upsert.upsert(session, item, new Date());
+        if (id != null) {
+            session.evict(session.load(DataCacheItem.class, id));
+        }
+        return id;
+    }
+
+    private DataCacheItemUpsert getUpsert() {
+        if (!_upsertResolved) {
+            synchronized (this) {
+                if (!_upsertResolved) {
+                    _upsert = resolveUpsert();
+                    _upsertResolved = true;
+                }
+            }
+        }
+        return _upsert;
+    }
+
+    private DataCacheItemUpsert resolveUpsert() {
+        final Session                   session = getSession();
+        final SessionFactoryImplementor factory = (SessionFactoryImplementor) session.getSessionFactory();
+        final int[]                     version = new int[2];
+        session.doWork(new Work() {
+            @Override
+            public void execute(final Connection connection) throws SQLException {
+                final DatabaseMetaData metadata = connection.getMetaData();
+                version[0] = metadata.getDatabaseMajorVersion();
+                version[1] = metadata.getDatabaseMinorVersion();
+            }
+        });
+        final DataCacheItemUpsert upsert = DataCacheItemUpsert.forDialect(factory.getDialect(), version[0], version[1], (AbstractEntityPersister) factory.getClassMetadata(DataCacheItem.class));
+        _log.info("Data cache entries will be written with {}", upsert == null ? "a query followed by an insert or update" : upsert.getClass().getSimpleName() + " upserts");
+        return upsert;
+    }
+
+    private static final Logger _log = LoggerFactory.getLogger(DataCacheItemDAO.class);
+
+    private static final String LOCK_NAMESPACE = "nrg-data-cache:";
+
+    private volatile boolean             _upsertResolved;
+    private          DataCacheItemUpsert _upsert;
 }
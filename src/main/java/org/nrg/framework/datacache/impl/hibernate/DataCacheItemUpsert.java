@@ -0,0 +1,167 @@
+/*
+ * framework: org.nrg.framework.datacache.impl.hibernate.DataCacheItemUpsert
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache.impl.hibernate;
+
+import org.apache.commons.text.StringSubstitutor;
+import org.hibernate.SQLQuery;
+import org.hibernate.Session;
+import org.hibernate.action.internal.BulkOperationCleanupAction;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.PostgreSQL81Dialect;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.type.StandardBasicTypes;
+import org.nrg.framework.datacache.DataCacheItem;
+import org.nrg.framework.orm.hibernate.HibernateUtils;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Inserts or updates a data cache entry with a single native statement, so that concurrent writers to the same key
+ * don't race between checking for the key and inserting it. An existing entry is only replaced if it has the same type
+ * as the new value or has expired, matching the checks made when updating an entry through the session.
+ *
+ * Use {@link #forDialect(Dialect, int, int, AbstractEntityPersister)} to get the implementation for the database.
+ * PostgreSQL 9.5 and later use <b>INSERT ... ON CONFLICT ... DO UPDATE</b>, while H2 uses <b>MERGE</b>. Other databases
+ * aren't supported, in which case entries are written through the session as before.
+ */
+public abstract class DataCacheItemUpsert {
+    /**
+     * Gets the upsert implementation for the database.
+     *
+     * @param dialect      The Hibernate dialect for the database.
+     * @param majorVersion The major version of the database.
+     * @param minorVersion The minor version of the database.
+     * @param persister    The persister for {@link DataCacheItem}, used to get the table and column names.
+     *
+     * @return The upsert implementation, or null if the database doesn't support upserts.
+     */
+    public static DataCacheItemUpsert forDialect(final Dialect dialect, final int majorVersion, final int minorVersion, final AbstractEntityPersister persister) {
+        if (dialect instanceof PostgreSQL81Dialect && (majorVersion > 9 || majorVersion == 9 && minorVersion >= 5)) {
+            return new PostgreSQL(persister);
+        }
+        if (dialect instanceof H2Dialect) {
+            return new H2(persister);
+        }
+        return null;
+    }
+
+    /**
+     * Inserts or updates the entry for the item's key with the item's value, type, encoding, and expiration time.
+     *
+     * @param session The current session.
+     * @param item    The item to write.
+     * @param now     The current time, used for the timestamps and to check whether an existing entry has expired.
+     *
+     * @return The ID of the entry, or null if there's an unexpired entry for the key with a different type.
+     */
+    public abstract Long upsert(Session session, DataCacheItem item, Date now);
+
+    protected DataCacheItemUpsert(final AbstractEntityPersister persister) {
+        _persister = persister;
+
+        _names.put("table", persister.getTableName());
+        _names.put("id", persister.getIdentifierColumnNames()[0]);
+        for (final String property : PROPERTIES) {
+            _names.put(property, persister.getPropertyColumnNames(property)[0]);
+        }
+    }
+
+    protected AbstractEntityPersister getPersister() {
+        return _persister;
+    }
+
+    /**
+     * Replaces the <b>${property}</b> placeholders in the SQL with the corresponding column names, along with
+     * <b>${table}</b> and <b>${id}</b>.
+     *
+     * @param sql The SQL with placeholders.
+     *
+     * @return The SQL with the table and column names.
+     */
+    protected String resolve(final String sql) {
+        return StringSubstitutor.replace(sql, _names);
+    }
+
+    protected static SQLQuery bind(final SQLQuery query, final DataCacheItem item, final Date now) {
+        query.setParameter("key", item.getKey(), StandardBasicTypes.STRING);
+        query.setParameter("value", item.getValue(), StandardBasicTypes.STRING);
+        query.setParameter("type", item.getType(), StandardBasicTypes.STRING);
+        query.setParameter("encoding", item.getEncoding(), StandardBasicTypes.STRING);
+        query.setParameter("data", item.getData(), StandardBasicTypes.BINARY);
+        query.setParameter("expires", item.getExpires(), StandardBasicTypes.TIMESTAMP);
+        query.setParameter("now", now, StandardBasicTypes.TIMESTAMP);
+        query.setParameter("disabled", HibernateUtils.DEFAULT_DATE, StandardBasicTypes.TIMESTAMP);
+        return query;
+    }
+
+    /**
+     * Uses <b>INSERT ... ON CONFLICT ... DO UPDATE ... RETURNING</b>, so the write and the returned ID take a single
+     * round trip. The conflicting row is only updated when the type check passes, so no ID is returned otherwise.
+     */
+    private static class PostgreSQL extends DataCacheItemUpsert {
+        PostgreSQL(final AbstractEntityPersister persister) {
+            super(persister);
+            _sql = resolve("INSERT INTO ${table} AS existing (${key}, ${value}, ${type}, ${encoding}, ${data}, ${expires}, ${enabled}, ${created}, ${timestamp}, ${disabled}) " +
+                           "VALUES (:key, :value, :type, :encoding, :data, :expires, TRUE, :now, :now, :disabled) " +
+                           "ON CONFLICT (${key}) DO UPDATE SET ${value} = EXCLUDED.${value}, ${type} = EXCLUDED.${type}, ${encoding} = EXCLUDED.${encoding}, " +
+                           "${data} = EXCLUDED.${data}, ${expires} = EXCLUDED.${expires}, ${timestamp} = EXCLUDED.${timestamp} " +
+                           "WHERE existing.${type} = EXCLUDED.${type} OR existing.${expires} <= EXCLUDED.${timestamp} " +
+                           "RETURNING ${id}");
+        }
+
+        @Override
+        public Long upsert(final Session session, final DataCacheItem item, final Date now) {
+            final Object id = bind(session.createSQLQuery(_sql), item, now).uniqueResult();
+            // The statement is run as a query to get the returned ID, so Hibernate doesn't know it changed the table.
+            // This invalidates the cached entries and queries for the table as executeUpdate() would.
+            ((SessionImplementor) session).getActionQueue().addAction(new BulkOperationCleanupAction((SessionImplementor) session, getPersister()));
+            return id == null ? null : ((Number) id).longValue();
+        }
+
+        private final String _sql;
+    }
+
+    /**
+     * Uses <b>MERGE ... KEY</b> with a query as the source, so the row is only merged when the type check passes. H2
+     * runs in the same process, so getting the ID with a second statement doesn't add a round trip.
+     */
+    private static class H2 extends DataCacheItemUpsert {
+        H2(final AbstractEntityPersister persister) {
+            super(persister);
+            _sql = resolve("MERGE INTO ${table} (${key}, ${value}, ${type}, ${encoding}, ${data}, ${expires}, ${enabled}, ${created}, ${timestamp}, ${disabled}) KEY (${key}) " +
+                           "SELECT :key, :value, :type, :encoding, :data, :expires, " +
+                           "COALESCE((SELECT ${enabled} FROM ${table} WHERE ${key} = :key), TRUE), " +
+                           "COALESCE((SELECT ${created} FROM ${table} WHERE ${key} = :key), :now), :now, " +
+                           "COALESCE((SELECT ${disabled} FROM ${table} WHERE ${key} = :key), :disabled) FROM DUAL " +
+                           "WHERE NOT EXISTS (SELECT 1 FROM ${table} WHERE ${key} = :key AND ${type} <> :type AND (${expires} IS NULL OR ${expires} > :now))");
+            _idSql = resolve("SELECT ${id} FROM ${table} WHERE ${key} = :key");
+        }
+
+        @Override
+        public Long upsert(final Session session, final DataCacheItem item, final Date now) {
+            if (bind(session.createSQLQuery(_sql), item, now).addSynchronizedEntityClass(DataCacheItem.class).executeUpdate() == 0) {
+                return null;
+            }
+            return ((Number) session.createSQLQuery(_idSql).setParameter("key", item.getKey(), StandardBasicTypes.STRING).uniqueResult()).longValue();
+        }
+
+        private final String _sql;
+        private final String _idSql;
+    }
+
+    private static final String[] PROPERTIES = {"key", "value", "type", "encoding", "data", "expires", "enabled", "created", "timestamp", "disabled"};
+
+    private final AbstractEntityPersister _persister;
+    private final Map<String, String>     _names = new HashMap<>();
+}
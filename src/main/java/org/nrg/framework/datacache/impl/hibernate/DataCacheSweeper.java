@@ -0,0 +1,135 @@
+/*
+ * framework: org.nrg.framework.datacache.impl.hibernate.DataCacheSweeper
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache.impl.hibernate;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.nrg.framework.datacache.DataCacheService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Periodically deletes expired entries from the data cache. Each sweep deletes expired entries in batches through
+ * {@link DataCacheService#clean(int)}, so each batch is deleted in its own short transaction, until there are no more
+ * expired entries or the maximum number of batches per sweep is reached. Any entries left over are picked up by the
+ * next sweep.
+ */
+@Component
+public class DataCacheSweeper implements InitializingBean, DisposableBean {
+    public static final long DEFAULT_SWEEP_INTERVAL      = 300L;
+    public static final int  DEFAULT_BATCH_SIZE          = 500;
+    public static final int  DEFAULT_MAX_BATCHES_PER_RUN = 100;
+
+    @Autowired
+    public DataCacheSweeper(final DataCacheService service) {
+        _service = service;
+    }
+
+    /**
+     * Sets the number of seconds between sweeps. Setting this to 0 disables the sweeper. This must be set before the
+     * sweeper is started.
+     *
+     * @param sweepInterval The number of seconds between sweeps.
+     */
+    public void setSweepInterval(final long sweepInterval) {
+        _sweepInterval = sweepInterval;
+    }
+
+    public long getSweepInterval() {
+        return _sweepInterval;
+    }
+
+    public void setBatchSize(final int batchSize) {
+        _batchSize = batchSize;
+    }
+
+    public int getBatchSize() {
+        return _batchSize;
+    }
+
+    public void setMaxBatchesPerRun(final int maxBatchesPerRun) {
+        _maxBatchesPerRun = maxBatchesPerRun;
+    }
+
+    public int getMaxBatchesPerRun() {
+        return _maxBatchesPerRun;
+    }
+
+    public long getDeletedCount() {
+        return _deleted.get();
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (_sweepInterval <= 0) {
+            _log.info("The data cache sweeper is disabled, expired entries will only be deleted when clean() is called");
+            return;
+        }
+        _scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("nrg-data-cache-sweeper-%d").setDaemon(true).build());
+        _scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                sweep();
+            }
+        }, _sweepInterval, _sweepInterval, TimeUnit.SECONDS);
+        _log.info("Started the data cache sweeper with an interval of {} seconds and a batch size of {}", _sweepInterval, _batchSize);
+    }
+
+    @Override
+    public void destroy() {
+        if (_scheduler != null) {
+            _scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Deletes expired entries from the cache.
+     *
+     * @return The number of entries deleted.
+     */
+    public int sweep() {
+        int total = 0;
+        try {
+            for (int batch = 0; batch < _maxBatchesPerRun; batch++) {
+                final int deleted = _service.clean(_batchSize);
+                total += deleted;
+                if (deleted < _batchSize) {
+                    break;
+                }
+            }
+        } catch (RuntimeException e) {
+            _log.error("An error occurred deleting expired data cache entries", e);
+        }
+        if (total > 0) {
+            _deleted.addAndGet(total);
+            _log.debug("Deleted {} expired data cache entries", total);
+        }
+        return total;
+    }
+
+    private static final Logger _log = LoggerFactory.getLogger(DataCacheSweeper.class);
+
+    private final DataCacheService _service;
+    private final AtomicLong       _deleted = new AtomicLong();
+
+    private long _sweepInterval    = DEFAULT_SWEEP_INTERVAL;
+    private int  _batchSize        = DEFAULT_BATCH_SIZE;
+    private int  _maxBatchesPerRun = DEFAULT_MAX_BATCHES_PER_RUN;
+
+    private ScheduledExecutorService _scheduler;
+}
@@ -9,9 +9,22 @@
 
 package org.nrg.framework.datacache.impl.hibernate;
 
-import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.lang3.StringUtils;
+import org.nrg.framework.datacache.DataCacheCodec;
+import org.nrg.framework.datacache.DataCacheCodecs;
+import org.nrg.framework.datacache.DataCacheInvalidationBus;
 import org.nrg.framework.datacache.DataCacheItem;
+import org.nrg.framework.datacache.DataCacheLoader;
+import org.nrg.framework.datacache.DataCacheParserReader;
 import org.nrg.framework.datacache.DataCacheService;
+import org.nrg.framework.datacache.DataCacheStreamReader;
+import org.nrg.framework.datacache.DataCacheStreamWriter;
+import org.nrg.framework.datacache.DataCacheTypes;
+import org.nrg.framework.datacache.NearCache;
 import org.nrg.framework.datacache.SerializerRegistry;
 import org.nrg.framework.exceptions.NrgServiceError;
 import org.nrg.framework.exceptions.NrgServiceRuntimeException;
@@ -19,106 +32,1033 @@ import org.nrg.framework.orm.hibernate.AbstractHibernateEntityService;
 import org.nrg.framework.services.SerializerService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 @Service
-public class HibernateDataCacheService extends AbstractHibernateEntityService<DataCacheItem, DataCacheItemDAO> implements DataCacheService {
+public class HibernateDataCacheService extends AbstractHibernateEntityService<DataCacheItem, DataCacheItemDAO> implements DataCacheService, DisposableBean {
+    public static final int  DEFAULT_CLEAN_BATCH_SIZE           = 500;
+    public static final int  WRITE_BATCH_SIZE                   = 50;
+    public static final int  PARALLEL_DESERIALIZATION_THRESHOLD = 64;
+    public static final int  DEFAULT_CHUNK_SIZE                 = 256 * 1024;
+    public static final int  DEFAULT_REFRESH_THREADS            = 4;
+    public static final long DEFAULT_ORPHAN_SWEEP_INTERVAL      = 3600000L;
+
+    /**
+     * Sets the registry of custom serializers. Values of the registered classes are written and read with the custom
+     * serializers and deserializers instead of the serializer service's defaults.
+     *
+     * @param serializers The serializer registry.
+     */
     @Autowired
     public void getSerializerRegistry(final SerializerRegistry serializers) {
         _serializers = serializers;
+        updateTypes();
     }
 
     @Autowired
     public void getSerializerService(final SerializerService serializerService) {
         _serializerService = serializerService;
+        updateTypes();
+    }
+
+    @Autowired
+    public void setChunkDao(final DataCacheChunkDAO chunkDao) {
+        _chunkDao = chunkDao;
+    }
+
+    /**
+     * Sets the transaction manager used by {@link #getOrCompute(String, DataCacheLoader, long, long, TimeUnit)}, which
+     * manages its own transactions so that no database connection is held while callers wait for a value. The
+     * transactions use the default propagation, <b>PROPAGATION_REQUIRED</b>, so when the caller already has a
+     * transaction, e.g. from a <b>@Transactional</b> method, they join it instead: the caller's connection stays open
+     * while the value is computed, and values are only committed when the caller's transaction is.
+     *
+     * @param transactionManager The transaction manager.
+     */
+    @Autowired
+    public void setTransactionManager(final PlatformTransactionManager transactionManager) {
+        _transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Sets whether {@link #getOrCompute(String, DataCacheLoader, long, long, TimeUnit)} locks the key in the database
+     * while it computes a value, so that only one node in a cluster computes the value at a time and the others use
+     * the value it computed. This holds a database connection while the value is computed. Only PostgreSQL supports
+     * locking keys, so on other databases values are computed once per node. This is off by default.
+     *
+     * The lock is held until the transaction it's taken in ends. When {@link #getOrCompute(String, DataCacheLoader,
+     * long, long, TimeUnit)} is called inside an existing transaction, that's the caller's transaction, so the key stays
+     * locked, and other nodes wait for it, until the caller's transaction ends rather than just until the value is
+     * stored.
+     *
+     * @param nodeLocking Whether to lock keys across nodes.
+     */
+    public void setNodeLocking(final boolean nodeLocking) {
+        _nodeLocking = nodeLocking;
+    }
+
+    public boolean isNodeLocking() {
+        return _nodeLocking;
+    }
+
+    /**
+     * Sets the executor used to refresh stale values in the background. By default, a pool of {@link
+     * #DEFAULT_REFRESH_THREADS} daemon threads is used, which is shut down when the service is destroyed. An executor
+     * set here belongs to the caller, who is responsible for shutting it down.
+     *
+     * @param refreshExecutor The executor to use.
+     */
+    public void setRefreshExecutor(final Executor refreshExecutor) {
+        _refreshExecutor = refreshExecutor;
+        _defaultRefreshExecutor.shutdown();
+    }
+
+    /**
+     * Shuts down the default refresh executor, if it's in use. Refreshes that are already running are interrupted.
+     */
+    @Override
+    public void destroy() {
+        _defaultRefreshExecutor.shutdownNow();
+    }
+
+    /**
+     * Sets the minimum number of milliseconds between sweeps for chunks that no entry refers to any more. Chunks are
+     * normally deleted along with their entries, so orphaned chunks are rare and {@link #clean(int)} only looks for
+     * them this often. The default is {@link #DEFAULT_ORPHAN_SWEEP_INTERVAL}.
+     *
+     * @param orphanSweepInterval The number of milliseconds between sweeps.
+     */
+    public void setOrphanSweepInterval(final long orphanSweepInterval) {
+        _orphanSweepInterval = orphanSweepInterval;
+    }
+
+    public long getOrphanSweepInterval() {
+        return _orphanSweepInterval;
+    }
+
+    /**
+     * Sets the number of bytes stored in each chunk of values written with {@link #putStream(String,
+     * DataCacheStreamWriter)}. This is also the most memory used to buffer a streamed value while it's written.
+     *
+     * @param chunkSize The chunk size in bytes.
+     */
+    public void setChunkSize(final int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("The chunk size must be at least 1 byte");
+        }
+        _chunkSize = chunkSize;
+    }
+
+    public int getChunkSize() {
+        return _chunkSize;
+    }
+
+    /**
+     * Sets the codecs used to encode values stored in the database. By default, values are stored as uncompressed JSON
+     * in the value column, which every node can read. See {@link DataCacheCodecs} before turning on compression.
+     *
+     * @param codecs The codecs to use.
+     */
+    @Autowired(required = false)
+    public void setCodecs(final DataCacheCodecs codecs) {
+        _codecs = codecs;
+    }
+
+    /**
+     * Sets the in-heap cache of deserialized values used in front of the database. By default, a near cache with
+     * {@link NearCache#DEFAULT_MAXIMUM_WEIGHT the default maximum weight} is used. Values read from the near cache are
+     * returned through {@link NearCache#copy(String, Serializable)}, so callers get their own copies of mutable values
+     * unless {@link NearCache#setCopyOnRead(boolean) copy on read} is turned off.
+     *
+     * @param nearCache The near cache to use.
+     */
+    @Autowired(required = false)
+    public void setNearCache(final NearCache nearCache) {
+        if (_invalidationBus != null) {
+            _invalidationBus.unregister(_nearCache);
+            _invalidationBus.register(nearCache);
+        }
+        _nearCache = nearCache;
+    }
+
+    /**
+     * Sets the bus used to keep the near caches on other nodes consistent with writes on this node. Without a bus,
+     * values cached on other nodes aren't invalidated when they're changed on this node, so a bus should be set
+     * whenever more than one node shares the database.
+     *
+     * @param invalidationBus The invalidation bus to use.
+     */
+    @Autowired(required = false)
+    public void setInvalidationBus(final DataCacheInvalidationBus invalidationBus) {
+        _invalidationBus = invalidationBus;
+        invalidationBus.register(_nearCache);
     }
 
     @Override
     @Transactional
     public <T extends Serializable> long put(final String key, final T value) {
-        if (_log.isDebugEnabled()) {
-            _log.debug("Putting an entry for the key " + key + ": " + value.getClass());
+        return put(key, value, value.getClass().getName(), null);
+    }
+
+    /**
+     * Puts the value into the cache with its full generic type, so that it's read back with that type rather than just
+     * its raw class, e.g. as a map of strings to integers rather than a map of strings to whatever the JSON contains.
+     */
+    @Override
+    @Transactional
+    public <T extends Serializable> long put(final String key, final T value, final TypeReference<T> type) {
+        return put(key, value, _types.register(type), null);
+    }
+
+    @Override
+    @Transactional
+    public <T extends Serializable> long put(final String key, final T value, final long timeToLive, final TimeUnit unit) {
+        return put(key, value, value.getClass().getName(), new Date(System.currentTimeMillis() + unit.toMillis(timeToLive)));
+    }
+
+    @Override
+    @Transactional
+    public <T extends Serializable> T get(final String key) {
+        final T cached = _nearCache.get(key);
+        if (cached != null) {
+            return _nearCache.copy(key, cached);
+        }
+        final long          generation = _nearCache.getGeneration();
+        final DataCacheItem item       = getDao().getByKey(key);
+        if (item == null || item.isExpiredAt(new Date())) {
+            // Expired entries are left for clean() to delete, so reads don't have to write.
+            return null;
         }
+        final DecodedValue decoded = decode(item);
+        cache(item, decoded, generation);
+        //noinspection unchecked
+        return _nearCache.copy(key, (T) decoded.getValue());
+    }
+
+    @Override
+    public <T extends Serializable> T getOrCompute(final String key, final DataCacheLoader<T> loader, final long timeToLive, final TimeUnit unit) {
+        return getOrCompute(key, loader, timeToLive, 0, unit);
+    }
+
+    /**
+     * Gets the value from the near cache or the database, and if it's missing or too old, computes it. Only one call to
+     * the loader for a key runs at a time on this node, and other callers for the key wait for its result. This isn't
+     * transactional: reads and writes run in their own short transactions, so callers waiting for a value don't hold
+     * database connections. That only holds when the caller isn't in a transaction already; see {@link
+     * #setTransactionManager(PlatformTransactionManager)}.
+     *
+     * A loader can call this for other keys, but not for the key it's loading, since it would wait for itself.
+     *
+     * @throws NrgServiceRuntimeException When called from a loader on this thread for the key the loader is loading.
+     */
+    @Override
+    public <T extends Serializable> T getOrCompute(final String key, final DataCacheLoader<T> loader, final long timeToLive, final long staleTime, final TimeUnit unit) {
+        if (LOADING.get().contains(key)) {
+            throw new NrgServiceRuntimeException(NrgServiceError.UnsupportedFeature, "The loader for the " + key + " cache item called getOrCompute() for the same key, which would wait for the loader to finish.");
+        }
+        final long            freshFor = unit.toMillis(timeToLive);
+        final long            staleFor = unit.toMillis(staleTime);
+        final NearCache.Entry entry    = getEntry(key);
+        if (entry != null) {
+            final long age = System.currentTimeMillis() - entry.getUpdated();
+            if (age < freshFor) {
+                //noinspection unchecked
+                return _nearCache.copy(key, (T) entry.getValue());
+            }
+            if (age < freshFor + staleFor) {
+                refresh(key, loader, freshFor, staleFor);
+                //noinspection unchecked
+                return _nearCache.copy(key, (T) entry.getValue());
+            }
+        }
+        return compute(key, loader, freshFor, staleFor);
+    }
+
+    @Override
+    @Transactional
+    public <T extends Serializable> T remove(final String key) {
         DataCacheItem item = getDao().getByKey(key);
         if (item != null) {
-            if (!item.getType().equals(value.getClass().getName())) {
-                // TODO: I don't know if this is the right thing to do here. Need to manage new inserts vs updates.
-                throw new NrgServiceRuntimeException(NrgServiceError.AlreadyInitialized, "The " + key + " cache item has already been initialized with a different data type.");
+            final T deserialized = item.isExpiredAt(new Date()) || isStream(item) ? null : this.<T>deserialize(item);
+            if (isStream(item)) {
+                _chunkDao.deleteByStreams(Collections.singletonList(item.getValue()));
             }
-            if (_log.isDebugEnabled()) {
-                _log.debug("Updating the value for entry " + key);
+            getDao().delete(item);
+            invalidate(key);
+            return deserialized;
+        }
+        return null;
+    }
+
+    /**
+     * Gets the values for all of the keys, checking the near cache first and loading the rest from the database with
+     * as few queries as possible. Keys that aren't in the cache, have expired, or hold streamed values are left out of
+     * the returned map.
+     */
+    @Override
+    @Transactional
+    public <T extends Serializable> Map<String, T> getAll(final Collection<String> keys) {
+        final Map<String, T> values  = new LinkedHashMap<>();
+        final Set<String>    missing = new LinkedHashSet<>();
+        for (final String key : keys) {
+            final T cached = _nearCache.get(key);
+            if (cached != null) {
+                values.put(key, _nearCache.copy(key, cached));
+            } else {
+                missing.add(key);
             }
-            item.setValue(serialize(value));
-            getDao().update(item);
-        } else {
-            item = newEntity(key, serialize(value), value.getClass().getName());
-            if (_log.isDebugEnabled()) {
-                _log.debug("Creating new entry for key " + key);
+        }
+        if (missing.isEmpty()) {
+            return values;
+        }
+        final long                generation = _nearCache.getGeneration();
+        final List<DataCacheItem> items      = new ArrayList<>();
+        for (final DataCacheItem item : getDao().getByKeys(missing)) {
+            if (isStream(item)) {
+                _log.debug("Leaving the streamed value for the key {} out of getAll()", item.getKey());
+            } else {
+                items.add(item);
+            }
+        }
+        final Map<String, DecodedValue> loaded = deserializeAll(items);
+        for (final DataCacheItem item : items) {
+            final DecodedValue decoded = loaded.get(item.getKey());
+            if (decoded != null) {
+                cache(item, decoded, generation);
+                //noinspection unchecked
+                values.put(item.getKey(), _nearCache.copy(item.getKey(), (T) decoded.getValue()));
             }
         }
-        return item.getId();
+        return values;
     }
 
+    /**
+     * Puts all of the values into the cache. Existing entries for the keys are loaded with as few queries as possible,
+     * then updated, while new entries are inserted with the session flushed every {@link #WRITE_BATCH_SIZE} entries.
+     */
     @Override
     @Transactional
-    public <T extends Serializable> T get(final String key) {
-        DataCacheItem item = getDao().getByKey(key);
+    public <T extends Serializable> Map<String, Long> putAll(final Map<String, T> values) {
+        final Map<String, DataCacheItem> existing = new HashMap<>();
+        for (final DataCacheItem item : getDao().getByKeys(values.keySet())) {
+            existing.put(item.getKey(), item);
+        }
+        final Map<String, Long> ids     = new LinkedHashMap<>();
+        int                     written = 0;
+        for (final Map.Entry<String, T> entry : values.entrySet()) {
+            final String key   = entry.getKey();
+            final T      value = entry.getValue();
+            final DataCacheItem encoded = new DataCacheItem(key, null, value.getClass().getName());
+            encode(encoded, value, value.getClass().getName());
+            DataCacheItem item = existing.get(key);
+            if (item != null) {
+                update(item, encoded);
+            } else {
+                item = encoded;
+                getDao().create(item);
+            }
+            ids.put(key, item.getId());
+            if (++written % WRITE_BATCH_SIZE == 0) {
+                getDao().flush();
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Removes all of the keys from the cache with as few queries as possible. Streamed values are removed along with
+     * their chunks, but aren't included in the returned map.
+     */
+    @Override
+    @Transactional
+    public <T extends Serializable> Map<String, T> removeAll(final Collection<String> keys) {
+        final List<DataCacheItem> items   = getDao().getByKeys(keys);
+        final List<DataCacheItem> values  = new ArrayList<>(items.size());
+        final List<String>        streams = new ArrayList<>();
+        final List<Long>          ids     = new ArrayList<>(items.size());
+        for (final DataCacheItem item : items) {
+            if (isStream(item)) {
+                streams.add(item.getValue());
+            } else {
+                values.add(item);
+            }
+            ids.add(item.getId());
+        }
+        final Map<String, T> removed = getValues(deserializeAll(values));
+        for (final List<Long> chunk : Lists.partition(ids, DataCacheItemDAO.MAX_KEYS_PER_QUERY)) {
+            getDao().deleteByIds(chunk);
+        }
+        _chunkDao.deleteByStreams(streams);
+        for (final DataCacheItem item : items) {
+            invalidate(item.getKey());
+        }
+        return removed;
+    }
+
+    @Override
+    @Transactional
+    public long putStream(final String key, final DataCacheStreamWriter writer) {
+        return putStream(key, writer, null);
+    }
+
+    @Override
+    @Transactional
+    public long putStream(final String key, final DataCacheStreamWriter writer, final long timeToLive, final TimeUnit unit) {
+        return putStream(key, writer, new Date(System.currentTimeMillis() + unit.toMillis(timeToLive)));
+    }
+
+    @Override
+    @Transactional
+    public <R> R getStream(final String key, final DataCacheStreamReader<R> reader) {
+        final DataCacheItem item = getStreamItem(key);
         if (item == null) {
             return null;
         }
-        return deserialize(item);
+        try (final InputStream input = new DataCacheChunkInputStream(_chunkDao, key, item.getValue())) {
+            return reader.read(input);
+        } catch (IOException e) {
+            throw new NrgServiceRuntimeException(e);
+        }
     }
 
     @Override
     @Transactional
-    public <T extends Serializable> T remove(final String key) {
-        DataCacheItem item = getDao().getByKey(key);
-        if (item != null) {
-            T deserialized = deserialize(item);
-            getDao().delete(item);
-            return deserialized;
+    public <R> R getParser(final String key, final DataCacheParserReader<R> reader) {
+        final DataCacheItem item = getStreamItem(key);
+        if (item == null) {
+            return null;
+        }
+        try (final InputStream input = new DataCacheChunkInputStream(_chunkDao, key, item.getValue());
+             final JsonParser parser = _serializerService.createParser(input)) {
+            return reader.read(parser);
+        } catch (IOException e) {
+            throw new NrgServiceRuntimeException(e);
         }
-        return null;
     }
 
+    /**
+     * Deletes all expired entries, in batches of {@link #DEFAULT_CLEAN_BATCH_SIZE}. This runs in a single transaction,
+     * so {@link DataCacheSweeper} calls {@link #clean(int)} instead to delete each batch in its own transaction.
+     */
     @Override
     @Transactional
     public void clean() {
-        // TODO: Implement cache maintenance settings to drive the cache persistence parameters.
+        int deleted;
+        int total = 0;
+        do {
+            deleted = clean(DEFAULT_CLEAN_BATCH_SIZE);
+            total += deleted;
+        } while (deleted == DEFAULT_CLEAN_BATCH_SIZE);
+        _log.debug("Deleted {} expired data cache entries", total);
+    }
+
+    /**
+     * Deletes up to the specified number of expired entries, along with the chunks of any streamed values. Once there
+     * are fewer expired entries than the batch size, the chunks of up to the same number of streams that no entry
+     * refers to any more are deleted too, at most once every {@link #setOrphanSweepInterval(long) orphan sweep
+     * interval}. If that finds a full batch, the next call looks for more.
+     */
+    @Override
+    @Transactional
+    public int clean(final int batchSize) {
+        final List<Long>   expired = getDao().findExpiredIds(new Date(), batchSize);
+        final List<String> streams = getDao().findStreams(expired);
+        final int          deleted = getDao().deleteByIds(expired);
+        _chunkDao.deleteByStreams(streams);
+        final long now = System.currentTimeMillis();
+        if (deleted < batchSize && now - _lastOrphanSweep >= _orphanSweepInterval) {
+            final int orphans = _chunkDao.deleteOrphans(batchSize);
+            if (orphans < batchSize) {
+                _lastOrphanSweep = now;
+            }
+            _log.debug("Deleted the chunks of {} orphaned data cache streams", orphans);
+        }
+        return deleted;
+    }
+
+    @Override
+    public Map<String, Number> getNearCacheMetrics() {
+        return _nearCache.getMetrics();
     }
 
-    private <T extends Serializable> String serialize(final T value) throws NrgServiceRuntimeException {
+    private <T extends Serializable> long put(final String key, final T value, final String typeName, final Date expires) {
+        if (_log.isDebugEnabled()) {
+            _log.debug("Putting an entry for the key " + key + ": " + value.getClass());
+        }
+        final DataCacheItem item = new DataCacheItem(key, null, typeName, expires);
+        encode(item, value, typeName);
+        return write(item);
+    }
+
+    /**
+     * Gets the entry for the key from the near cache, or loads it from the database into the near cache.
+     *
+     * @param key The cache key.
+     *
+     * @return The entry, or null if the key isn't in the cache or has expired.
+     */
+    private NearCache.Entry getEntry(final String key) {
+        final NearCache.Entry cached = _nearCache.getEntry(key);
+        if (cached != null) {
+            return cached;
+        }
+        return _transactionTemplate.execute(new TransactionCallback<NearCache.Entry>() {
+            @Override
+            public NearCache.Entry doInTransaction(final TransactionStatus status) {
+                final long          generation = _nearCache.getGeneration();
+                final DataCacheItem item       = getDao().getByKey(key);
+                if (item == null || item.isExpiredAt(new Date())) {
+                    return null;
+                }
+                final DecodedValue decoded = decode(item);
+                cache(item, decoded, generation);
+                return toEntry(item, decoded);
+            }
+        });
+    }
+
+    /**
+     * Computes the value for the key, or waits for the value if it's already being computed on this node.
+     */
+    private <T extends Serializable> T compute(final String key, final DataCacheLoader<T> loader, final long freshFor, final long staleFor) {
+        final FutureTask<Serializable> task    = newLoad(key, loader, freshFor, staleFor);
+        final Future<Serializable>     running = _loads.putIfAbsent(key, task);
+        if (running != null) {
+            return await(running);
+        }
+        try {
+            task.run();
+        } finally {
+            _loads.remove(key, task);
+        }
+        return await(task);
+    }
+
+    /**
+     * Starts computing the value for the key in the background, unless it's already being computed on this node.
+     */
+    private <T extends Serializable> void refresh(final String key, final DataCacheLoader<T> loader, final long freshFor, final long staleFor) {
+        if (_loads.containsKey(key)) {
+            return;
+        }
+        final FutureTask<Serializable> task = newLoad(key, loader, freshFor, staleFor);
+        if (_loads.putIfAbsent(key, task) != null) {
+            return;
+        }
+        final ClassLoader callerLoader = DataCacheTypes.getClassLoader();
+        try {
+            _refreshExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // Run the load with the caller's class loader so the value's type can be resolved on this thread.
+                    final Thread      thread = Thread.currentThread();
+                    final ClassLoader loader = thread.getContextClassLoader();
+                    thread.setContextClassLoader(callerLoader);
+                    try {
+                        task.run();
+                        task.get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (ExecutionException e) {
+                        _log.warn("Unable to refresh the " + key + " cache item", e.getCause());
+                    } finally {
+                        thread.setContextClassLoader(loader);
+                        _loads.remove(key, task);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            _loads.remove(key, task);
+            _log.warn("Unable to schedule a refresh of the " + key + " cache item", e);
+        }
+    }
+
+    private <T extends Serializable> FutureTask<Serializable> newLoad(final String key, final DataCacheLoader<T> loader, final long freshFor, final long staleFor) {
+        return new FutureTask<>(new Callable<Serializable>() {
+            @Override
+            public Serializable call() {
+                return load(key, loader, freshFor, staleFor);
+            }
+        });
+    }
+
+    /**
+     * Calls the loader and puts its value into the cache, unless a fresh value was stored since the caller checked.
+     * With {@link #setNodeLocking(boolean) node locking}, the key is locked in the database first and the check is
+     * made once the lock is held, so a value computed by another node while this one waited is used instead.
+     */
+    private <T extends Serializable> T load(final String key, final DataCacheLoader<T> loader, final long freshFor, final long staleFor) {
+        if (_nodeLocking) {
+            return _transactionTemplate.execute(new TransactionCallback<T>() {
+                @Override
+                public T doInTransaction(final TransactionStatus status) {
+                    getDao().lock(key);
+                    final T current = getFresh(key, freshFor);
+                    return current != null ? current : store(key, callLoader(key, loader), freshFor, staleFor);
+                }
+            });
+        }
+        final T current = _transactionTemplate.execute(new TransactionCallback<T>() {
+            @Override
+            public T doInTransaction(final TransactionStatus status) {
+                return getFresh(key, freshFor);
+            }
+        });
+        if (current != null) {
+            return current;
+        }
+        final T value = callLoader(key, loader);
+        return _transactionTemplate.execute(new TransactionCallback<T>() {
+            @Override
+            public T doInTransaction(final TransactionStatus status) {
+                return store(key, value, freshFor, staleFor);
+            }
+        });
+    }
+
+    /**
+     * Gets the value for the key from the database if it was stored less than the specified time ago.
+     */
+    private <T extends Serializable> T getFresh(final String key, final long freshFor) {
+        final DataCacheItem item = getDao().getByKeyUncached(key);
+        final Date          now  = new Date();
+        if (item == null || item.isExpiredAt(now) || now.getTime() - item.getTimestamp().getTime() >= freshFor) {
+            return null;
+        }
+        return deserialize(item);
+    }
+
+    private <T extends Serializable> T store(final String key, final T value, final long freshFor, final long staleFor) {
+        if (value != null) {
+            put(key, value, value.getClass().getName(), new Date(System.currentTimeMillis() + freshFor + staleFor));
+        }
+        return value;
+    }
+
+    /**
+     * Calls the loader, recording that the key is being loaded on this thread so that re-entrant calls to {@link
+     * #getOrCompute(String, DataCacheLoader, long, long, TimeUnit)} for the key fail instead of waiting forever.
+     */
+    private static <T extends Serializable> T callLoader(final String key, final DataCacheLoader<T> loader) {
+        final Set<String> loading = LOADING.get();
+        final boolean     added   = loading.add(key);
         try {
-            JsonSerializer<? extends Serializable> serializer = _serializers.getSerializer(value.getClass());
-            // If there's no special serializer for this class...
-            if (serializer == null) {
-                return _serializerService.toJson(value);
+            return loader.load(key);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new NrgServiceRuntimeException(NrgServiceError.Unknown, "Unable to compute the value for the " + key + " cache item", e);
+        } finally {
+            if (added) {
+                loading.remove(key);
             }
-        } catch (IOException | ClassNotFoundException | IllegalAccessException | InstantiationException e) {
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Serializable> T await(final Future<Serializable> load) {
+        try {
+            return (T) load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NrgServiceRuntimeException(NrgServiceError.Unknown, "Interrupted while waiting for a data cache value to be computed", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new NrgServiceRuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Writes the value to chunks under a new stream ID, then points the entry for the key at the new stream and deletes
+     * the chunks of the stream it replaced, if any. Everything happens in the caller's transaction, so readers keep
+     * seeing the previous stream until the new one is committed.
+     */
+    private long putStream(final String key, final DataCacheStreamWriter writer, final Date expires) {
+        final String stream = UUID.randomUUID().toString();
+        try (final DataCacheChunkOutputStream output = new DataCacheChunkOutputStream(_chunkDao, stream, _chunkSize)) {
+            writer.write(output);
+            if (_log.isDebugEnabled()) {
+                _log.debug("Streamed " + output.getLength() + " bytes for the key " + key);
+            }
+        } catch (IOException e) {
             throw new NrgServiceRuntimeException(e);
         }
-        return null;
+        final DataCacheItem existing = getDao().getByKey(key);
+        final String        previous = existing != null && isStream(existing) ? existing.getValue() : null;
+        final DataCacheItem item     = new DataCacheItem(key, stream, DataCacheCodecs.STREAM, expires);
+        item.setEncoding(DataCacheCodecs.STREAM);
+        final long id = write(item);
+        if (previous != null) {
+            _chunkDao.deleteByStreams(Collections.singletonList(previous));
+        }
+        return id;
     }
 
-    private <T extends Serializable> T deserialize(final DataCacheItem item) {
-        if (item == null) {
+    /**
+     * Writes the encoded item, replacing the value of the existing entry for its key if that entry has the same type
+     * or has expired.
+     *
+     * @param written The encoded item.
+     *
+     * @return The ID of the entry.
+     */
+    private long write(final DataCacheItem written) {
+        final String key = written.getKey();
+        if (getDao().isUpsertSupported()) {
+            final Long id = getDao().upsert(written);
+            if (id == null) {
+                throw getTypeMismatchException(key);
+            }
+            invalidate(key);
+            return id;
+        }
+        final DataCacheItem item = getDao().getByKey(key);
+        if (item != null) {
+            update(item, written);
+            return item.getId();
+        }
+        create(written);
+        if (_log.isDebugEnabled()) {
+            _log.debug("Creating new entry for key " + key);
+        }
+        return written.getId();
+    }
+
+    private void update(final DataCacheItem item, final DataCacheItem written) {
+        final String key      = item.getKey();
+        final String typeName = written.getType();
+        if (!item.getType().equals(typeName) && item.isExpiredAt(new Date())) {
+            // An expired entry is treated as absent, so it can be replaced by a value of a different type.
+            item.setType(typeName);
+        }
+        if (!item.getType().equals(typeName)) {
+            // TODO: I don't know if this is the right thing to do here. Need to manage new inserts vs updates.
+            throw getTypeMismatchException(key);
+        }
+        if (_log.isDebugEnabled()) {
+            _log.debug("Updating the value for entry " + key);
+        }
+        if (isStream(item) && !StringUtils.equals(item.getValue(), written.getValue())) {
+            // The replaced stream's chunks go with it.
+            _chunkDao.deleteByStreams(Collections.singletonList(item.getValue()));
+        }
+        item.setValue(written.getValue());
+        item.setData(written.getData());
+        item.setEncoding(written.getEncoding());
+        item.setExpires(written.getExpires());
+        getDao().update(item);
+        invalidate(key);
+    }
+
+    /**
+     * Gets the unexpired entry for a streamed value.
+     *
+     * @param key The cache key.
+     *
+     * @return The entry, or null if the key isn't in the cache.
+     *
+     * @throws NrgServiceRuntimeException When the value for the key wasn't streamed.
+     */
+    private DataCacheItem getStreamItem(final String key) {
+        final DataCacheItem item = getDao().getByKey(key);
+        if (item == null || item.isExpiredAt(new Date())) {
             return null;
         }
+        if (!isStream(item)) {
+            throw new NrgServiceRuntimeException(NrgServiceError.UnsupportedFeature, "The " + key + " cache item wasn't stored as a stream, so it can't be read as one.");
+        }
+        return item;
+    }
+
+    /**
+     * Deserializes the items, splitting the work across the common fork-join pool when there are at least {@link
+     * #PARALLEL_DESERIALIZATION_THRESHOLD} items. Expired items are skipped.
+     *
+     * @param items The items to deserialize.
+     * @param <T>   The type of the values.
+     *
+     * @return The deserialized values keyed by cache key, in the same order as the items.
+     */
+    private Map<String, DecodedValue> deserializeAll(final List<DataCacheItem> items) {
+        final Date                now     = new Date();
+        final List<DataCacheItem> current = new ArrayList<>(items.size());
+        for (final DataCacheItem item : items) {
+            if (!item.isExpiredAt(now)) {
+                current.add(item);
+            }
+        }
+        final Map<String, DecodedValue> values = new LinkedHashMap<>();
+        if (current.size() < PARALLEL_DESERIALIZATION_THRESHOLD) {
+            for (final DataCacheItem item : current) {
+                values.put(item.getKey(), decode(item));
+            }
+            return values;
+        }
+
+        // The common pool's threads may not be able to see the caller's classes, so the tasks use the caller's loader.
+        final ClassLoader                               loader    = DataCacheTypes.getClassLoader();
+        final int                                       chunkSize = (current.size() + PARALLELISM - 1) / PARALLELISM;
+        final List<Callable<Map<String, DecodedValue>>> tasks     = new ArrayList<>();
+        for (final List<DataCacheItem> chunk : Lists.partition(current, chunkSize)) {
+            tasks.add(new Callable<Map<String, DecodedValue>>() {
+                @Override
+                public Map<String, DecodedValue> call() {
+                    final Map<String, DecodedValue> deserialized = new LinkedHashMap<>();
+                    for (final DataCacheItem item : chunk) {
+                        deserialized.put(item.getKey(), decode(item, loader));
+                    }
+                    return deserialized;
+                }
+            });
+        }
+        try {
+            for (final Future<Map<String, DecodedValue>> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                values.putAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NrgServiceRuntimeException(NrgServiceError.Unknown, "Interrupted while deserializing data cache entries", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof NrgServiceRuntimeException ? (NrgServiceRuntimeException) e.getCause() : new NrgServiceRuntimeException(e.getCause());
+        }
+        return values;
+    }
+
+    /**
+     * Removes the key from the near cache now and again once the current transaction completes, so that a concurrent
+     * read of the old value from the database can't repopulate the near cache before the change is committed. Once the
+     * change is committed, the other nodes are told to invalidate the key too. That's handed to the invalidation bus's
+     * thread, since the committed transaction's connection is still bound to this thread and a transport that writes to
+     * the database would otherwise run on it.
+     *
+     * @param key The key to invalidate.
+     */
+    private void invalidate(final String key) {
+        _nearCache.invalidate(key);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    if (_invalidationBus != null) {
+                        _invalidationBus.broadcastKeyAsync(key);
+                    }
+                }
+
+                @Override
+                public void afterCompletion(final int status) {
+                    _nearCache.invalidate(key);
+                }
+            });
+        } else if (_invalidationBus != null) {
+            _invalidationBus.broadcastKey(key);
+        }
+    }
+
+    private static NrgServiceRuntimeException getTypeMismatchException(final String key) {
+        return new NrgServiceRuntimeException(NrgServiceError.AlreadyInitialized, "The " + key + " cache item has already been initialized with a different data type.");
+    }
+
+    private void updateTypes() {
+        if (_serializerService != null) {
+            _types = new DataCacheTypes(_serializerService, _serializers);
+        }
+    }
+
+    /**
+     * Serializes the value to JSON. The writer for the type includes any custom serializer registered for the value's
+     * class or one of its superclasses or interfaces.
+     *
+     * @param value    The value to serialize.
+     * @param typeName The name of the value's type.
+     *
+     * @return The serialized value.
+     */
+    private <T extends Serializable> String serialize(final T value, final String typeName) throws NrgServiceRuntimeException {
+        try {
+            return _types.resolve(typeName).getWriter().writeValueAsString(value);
+        } catch (IOException | ClassNotFoundException e) {
+            throw new NrgServiceRuntimeException(e);
+        }
+    }
+
+    private <T extends Serializable> T deserialize(final DataCacheItem item) {
+        //noinspection unchecked
+        return item == null ? null : (T) decode(item).getValue();
+    }
+
+    /**
+     * Deserializes the item's value, keeping the length of its uncompressed serialized form to weigh it by in the near
+     * cache.
+     *
+     * @param item The item to deserialize.
+     *
+     * @return The deserialized value and its serialized length.
+     */
+    private DecodedValue decode(final DataCacheItem item) {
+        return decode(item, DataCacheTypes.getClassLoader());
+    }
+
+    /**
+     * Deserializes the item's value, resolving its type with the specified class loader.
+     *
+     * @param item   The item to deserialize.
+     * @param loader The class loader to resolve the item's type with.
+     *
+     * @return The deserialized value and its serialized length.
+     */
+    private DecodedValue decode(final DataCacheItem item, final ClassLoader loader) {
+        if (isStream(item)) {
+            throw new NrgServiceRuntimeException(NrgServiceError.UnsupportedFeature, "The " + item.getKey() + " cache item was stored as a stream, so it can only be read with getStream() or getParser().");
+        }
+        final String encoding = item.getEncoding();
         try {
+            final DataCacheTypes.ResolvedType type = _types.resolve(item.getType(), loader);
+            if (!DataCacheCodecs.isCompressed(encoding) && DataCacheCodecs.isJson(encoding)) {
+                return new DecodedValue(type.getReader().<Serializable>readValue(item.getValue()), item.getValue().length());
+            }
+            final byte[] data = DataCacheCodecs.isCompressed(encoding) ? DataCacheCodecs.decompress(item.getData()) : item.getData();
+            if (DataCacheCodecs.isJson(encoding)) {
+                return new DecodedValue(type.getReader().<Serializable>readValue(data), data.length);
+            }
+            final DataCacheCodec codec = _codecs.getCodec(encoding);
+            if (codec == null) {
+                throw new NrgServiceRuntimeException(NrgServiceError.ConfigurationError, "The " + item.getKey() + " cache item has the encoding " + encoding + ", but there's no codec registered for that encoding.");
+            }
             //noinspection unchecked
-            return (T) _serializerService.deserializeJson(item.getValue(), Class.forName(item.getType()));
+            return new DecodedValue(codec.decode(data, (Class<Serializable>) type.getRawClass()), data.length);
         } catch (IOException | ClassNotFoundException e) {
             throw new NrgServiceRuntimeException(e);
         }
     }
 
+    /**
+     * Encodes the value with the default encoding, compressing it if compression is enabled, the encoded value is over
+     * the compression threshold, and compressing it makes it smaller. Uncompressed JSON is stored in the item's value
+     * column, anything else in its data column.
+     *
+     * @param item     The item to store the encoded value in.
+     * @param value    The value to encode.
+     * @param typeName The name of the value's type.
+     */
+    private <T extends Serializable> void encode(final DataCacheItem item, final T value, final String typeName) {
+        final String encoding = _codecs.getDefaultEncoding();
+        if (DataCacheCodecs.isJson(encoding)) {
+            final String json       = serialize(value, typeName);
+            final byte[] compressed = _codecs.isCompressionEnabled() ? _codecs.compressIfSmaller(json.getBytes(StandardCharsets.UTF_8)) : null;
+            item.setEncoding(compressed == null ? null : encoding + DataCacheCodecs.DEFLATE_SUFFIX);
+            item.setValue(compressed == null ? json : null);
+            item.setData(compressed);
+            return;
+        }
+        final byte[] data;
+        try {
+            data = _codecs.getCodec(encoding).encode(value);
+        } catch (IOException e) {
+            throw new NrgServiceRuntimeException(e);
+        }
+        final byte[] compressed = _codecs.compressIfSmaller(data);
+        item.setEncoding(compressed == null ? encoding : encoding + DataCacheCodecs.DEFLATE_SUFFIX);
+        item.setData(compressed == null ? data : compressed);
+        item.setValue(null);
+    }
+
+    private void cache(final DataCacheItem item, final DecodedValue decoded, final long generation) {
+        _nearCache.put(item.getKey(), decoded.getValue(), decoded.getLength(), item.getExpires() == null ? 0 : item.getExpires().getTime(), item.getTimestamp() == null ? 0 : item.getTimestamp().getTime(), generation);
+    }
+
+    private static NearCache.Entry toEntry(final DataCacheItem item, final DecodedValue decoded) {
+        return new NearCache.Entry(decoded.getValue(), decoded.getLength(), item.getExpires() == null ? 0 : item.getExpires().getTime(), item.getTimestamp() == null ? 0 : item.getTimestamp().getTime());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Serializable> Map<String, T> getValues(final Map<String, DecodedValue> decoded) {
+        final Map<String, T> values = new LinkedHashMap<>();
+        for (final Map.Entry<String, DecodedValue> entry : decoded.entrySet()) {
+            values.put(entry.getKey(), (T) entry.getValue().getValue());
+        }
+        return values;
+    }
+
+    private static boolean isStream(final DataCacheItem item) {
+        return DataCacheCodecs.STREAM.equals(item.getEncoding());
+    }
+
+    /**
+     * A deserialized value along with the length of its uncompressed serialized form, which is its weight in the near
+     * cache. Compressed values are weighed by their uncompressed length, since that's closer to the heap they take up.
+     */
+    private static final class DecodedValue {
+        DecodedValue(final Serializable value, final int length) {
+            _value = value;
+            _length = length;
+        }
+
+        Serializable getValue() {
+            return _value;
+        }
+
+        int getLength() {
+            return _length;
+        }
+
+        private final Serializable _value;
+        private final int          _length;
+    }
+
     private static final Logger _log = LoggerFactory.getLogger(HibernateDataCacheService.class);
 
+    private static final int PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    private static final ThreadLocal<Set<String>> LOADING = new ThreadLocal<Set<String>>() {
+        @Override
+        protected Set<String> initialValue() {
+            return new HashSet<>();
+        }
+    };
+
     private SerializerRegistry _serializers;
     private SerializerService  _serializerService;
+    private DataCacheTypes     _types;
+    private NearCache          _nearCache = new NearCache();
+    private DataCacheCodecs    _codecs    = new DataCacheCodecs();
+    private DataCacheChunkDAO  _chunkDao;
+    private int                _chunkSize = DEFAULT_CHUNK_SIZE;
+
+    private          long _orphanSweepInterval = DEFAULT_ORPHAN_SWEEP_INTERVAL;
+    private volatile long _lastOrphanSweep;
+
+    private final ConcurrentMap<String, Future<Serializable>> _loads                  = new ConcurrentHashMap<>();
+    private final ExecutorService                             _defaultRefreshExecutor = Executors.newFixedThreadPool(DEFAULT_REFRESH_THREADS, new ThreadFactoryBuilder().setNameFormat("nrg-data-cache-refresh-%d").setDaemon(true).build());
+
+    private TransactionTemplate _transactionTemplate;
+    private boolean             _nodeLocking;
+    private Executor            _refreshExecutor = _defaultRefreshExecutor;
+
+    private DataCacheInvalidationBus _invalidationBus;
 }
@@ -0,0 +1,204 @@
+/*
+ * framework: org.nrg.framework.datacache.impl.jdbc.PolledDataCacheInvalidationTransport
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache.impl.jdbc;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.nrg.framework.datacache.DataCacheInvalidation;
+import org.nrg.framework.datacache.DataCacheInvalidationListener;
+import org.nrg.framework.datacache.DataCacheInvalidationTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends invalidations by inserting them into a table, which each node polls for invalidations newer than its last
+ * poll. This works with any database that supports <b>CREATE TABLE IF NOT EXISTS</b>, and invalidations survive
+ * connection failures, at the cost of up to one {@link #setPollInterval(long) poll interval} of delay.
+ *
+ * Rows are found by their creation time rather than an increasing ID, since IDs aren't necessarily committed in order.
+ * Each poll looks back over the {@link #setLookBack(long) look-back period} before the previous poll, to pick up
+ * invalidations that were committed late or stamped by a node with a slightly slow clock, and skips invalidations
+ * it's already delivered. Rows older than the {@link #setRetention(long) retention period} are deleted.
+ */
+public class PolledDataCacheInvalidationTransport implements DataCacheInvalidationTransport {
+    public static final String DEFAULT_TABLE         = "data_cache_invalidation";
+    public static final long   DEFAULT_POLL_INTERVAL = 1000L;
+    public static final long   DEFAULT_LOOK_BACK     = 30000L;
+    public static final long   DEFAULT_RETENTION     = 600000L;
+
+    public PolledDataCacheInvalidationTransport(final DataSource dataSource) {
+        this(dataSource, DEFAULT_TABLE);
+    }
+
+    /**
+     * Creates the transport.
+     *
+     * @param dataSource The data source for the database shared by the nodes.
+     * @param table      The name of the invalidation table, which is created if it doesn't exist.
+     */
+    public PolledDataCacheInvalidationTransport(final DataSource dataSource, final String table) {
+        if (!table.matches("[a-zA-Z_][a-zA-Z0-9_]*")) {
+            throw new IllegalArgumentException("The table name must be a valid unquoted identifier: " + table);
+        }
+        _template = new JdbcTemplate(dataSource);
+        _table = table;
+    }
+
+    /**
+     * Sets the number of milliseconds between polls. This must be set before the transport is started.
+     *
+     * @param pollInterval The number of milliseconds between polls.
+     */
+    public void setPollInterval(final long pollInterval) {
+        _pollInterval = pollInterval;
+    }
+
+    public long getPollInterval() {
+        return _pollInterval;
+    }
+
+    /**
+     * Sets the number of milliseconds before the previous poll that each poll looks back for invalidations. This
+     * should cover the longest transaction that writes to the data cache plus the clock skew between nodes.
+     *
+     * @param lookBack The number of milliseconds to look back.
+     */
+    public void setLookBack(final long lookBack) {
+        _lookBack = lookBack;
+    }
+
+    public long getLookBack() {
+        return _lookBack;
+    }
+
+    /**
+     * Sets the number of milliseconds invalidations are kept in the table. This must be longer than the look-back
+     * period.
+     *
+     * @param retention The number of milliseconds to keep invalidations.
+     */
+    public void setRetention(final long retention) {
+        _retention = retention;
+    }
+
+    public long getRetention() {
+        return _retention;
+    }
+
+    @Override
+    public void start(final DataCacheInvalidationListener listener) {
+        _listener = listener;
+        createTable();
+        _delivered = CacheBuilder.newBuilder().expireAfterWrite(_lookBack * 2 + _pollInterval, TimeUnit.MILLISECONDS).build();
+        _lastPoll = System.currentTimeMillis();
+        _scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("nrg-data-cache-poller-%d").setDaemon(true).build());
+        _scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                poll();
+            }
+        }, _pollInterval, _pollInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void publish(final DataCacheInvalidation invalidation) {
+        // Names that don't fit in the table are sent as invalidations of all entries.
+        final boolean fits = invalidation.getName().length() <= MAX_NAME_LENGTH;
+        try {
+            _template.update("INSERT INTO " + _table + " (origin, version, scope, name, created) VALUES (?, ?, ?, ?, ?)",
+                             invalidation.getOrigin(), invalidation.getVersion(), fits ? invalidation.getScope().name() : DataCacheInvalidation.Scope.ALL.name(), fits ? invalidation.getName() : null, System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            _log.warn("Unable to store the data cache invalidation {}", invalidation, e);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (_scheduler != null) {
+            _scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Delivers the invalidations stored since the last poll, then deletes expired invalidations. This is called on the
+     * transport's schedule, but can also be called directly.
+     *
+     * If polling fails, the next successful poll looks back from the last successful poll, so nothing is missed unless
+     * polling fails for longer than the retention period. In that case the listener is told it missed invalidations.
+     */
+    public synchronized void poll() {
+        final long now = System.currentTimeMillis();
+        try {
+            final List<DataCacheInvalidation> invalidations = _template.query("SELECT origin, version, scope, name FROM " + _table + " WHERE created >= ? ORDER BY created, version", INVALIDATION_MAPPER, _lastPoll - _lookBack);
+            for (final DataCacheInvalidation invalidation : invalidations) {
+                final String id = invalidation.getOrigin() + ":" + invalidation.getVersion();
+                if (_delivered.getIfPresent(id) == null) {
+                    _delivered.put(id, Boolean.TRUE);
+                    _listener.onInvalidation(invalidation);
+                }
+            }
+            if (_failed) {
+                _failed = false;
+                if (now - _lastPoll > _retention - _lookBack) {
+                    _listener.onMissedInvalidations();
+                }
+            }
+            _lastPoll = now;
+            if (now - _lastPrune > _retention / 10) {
+                _template.update("DELETE FROM " + _table + " WHERE created < ?", now - _retention);
+                _lastPrune = now;
+            }
+        } catch (RuntimeException e) {
+            _failed = true;
+            _log.warn("Unable to poll for data cache invalidations", e);
+        }
+    }
+
+    private void createTable() {
+        _template.execute("CREATE TABLE IF NOT EXISTS " + _table + " (origin VARCHAR(64) NOT NULL, version BIGINT NOT NULL, scope VARCHAR(16) NOT NULL, name VARCHAR(" + MAX_NAME_LENGTH + "), created BIGINT NOT NULL, PRIMARY KEY (origin, version))");
+        _template.execute("CREATE INDEX IF NOT EXISTS idx_" + _table + "_created ON " + _table + " (created)");
+    }
+
+    private static final Logger _log = LoggerFactory.getLogger(PolledDataCacheInvalidationTransport.class);
+
+    private static final int MAX_NAME_LENGTH = 4096;
+
+    private static final RowMapper<DataCacheInvalidation> INVALIDATION_MAPPER = new RowMapper<DataCacheInvalidation>() {
+        @Override
+        public DataCacheInvalidation mapRow(final ResultSet results, final int row) throws SQLException {
+            return new DataCacheInvalidation(results.getString("origin"), results.getLong("version"), DataCacheInvalidation.Scope.valueOf(results.getString("scope")), results.getString("name"));
+        }
+    };
+
+    private final JdbcTemplate _template;
+    private final String       _table;
+
+    private long _pollInterval = DEFAULT_POLL_INTERVAL;
+    private long _lookBack     = DEFAULT_LOOK_BACK;
+    private long _retention    = DEFAULT_RETENTION;
+
+    private volatile DataCacheInvalidationListener _listener;
+    private          Cache<String, Boolean>        _delivered;
+    private          ScheduledExecutorService      _scheduler;
+    private          long                          _lastPoll;
+    private          long                          _lastPrune;
+    private          boolean                       _failed;
+}
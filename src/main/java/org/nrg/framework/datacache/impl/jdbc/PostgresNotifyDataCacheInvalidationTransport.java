@@ -0,0 +1,147 @@
+/*
+ * framework: org.nrg.framework.datacache.impl.jdbc.PostgresNotifyDataCacheInvalidationTransport
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache.impl.jdbc;
+
+import org.nrg.framework.datacache.DataCacheInvalidation;
+import org.nrg.framework.datacache.DataCacheInvalidationListener;
+import org.nrg.framework.datacache.DataCacheInvalidationTransport;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Sends invalidations with PostgreSQL's <b>NOTIFY</b> and receives them with <b>LISTEN</b> on a dedicated connection.
+ * Notifications are delivered within milliseconds, but they aren't stored, so invalidations sent while the listening
+ * connection is down are lost. The transport reports that to the listener after reconnecting.
+ *
+ * Notification payloads are limited to 8000 bytes, so invalidations for longer keys are sent as invalidations of all
+ * entries.
+ */
+public class PostgresNotifyDataCacheInvalidationTransport implements DataCacheInvalidationTransport {
+    public static final String DEFAULT_CHANNEL         = "nrg_data_cache_invalidation";
+    public static final int    MAX_PAYLOAD_LENGTH      = 7999;
+    public static final int    DEFAULT_POLL_TIMEOUT    = 500;
+    public static final long   DEFAULT_RECONNECT_DELAY = 5000L;
+
+    public PostgresNotifyDataCacheInvalidationTransport(final DataSource dataSource) {
+        this(dataSource, DEFAULT_CHANNEL);
+    }
+
+    /**
+     * Creates the transport.
+     *
+     * @param dataSource The data source for the PostgreSQL database.
+     * @param channel    The notification channel. This must be a valid unquoted identifier.
+     */
+    public PostgresNotifyDataCacheInvalidationTransport(final DataSource dataSource, final String channel) {
+        if (!channel.matches("[a-zA-Z_][a-zA-Z0-9_]*")) {
+            throw new IllegalArgumentException("The notification channel must be a valid unquoted identifier: " + channel);
+        }
+        _dataSource = dataSource;
+        _template = new JdbcTemplate(dataSource);
+        _channel = channel;
+    }
+
+    @Override
+    public void start(final DataCacheInvalidationListener listener) {
+        _listener = listener;
+        _running = true;
+        _thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                listen();
+            }
+        }, "nrg-data-cache-listener-" + _channel);
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    @Override
+    public void publish(final DataCacheInvalidation invalidation) {
+        String payload = invalidation.encode();
+        if (payload.getBytes(StandardCharsets.UTF_8).length > MAX_PAYLOAD_LENGTH) {
+            payload = new DataCacheInvalidation(invalidation.getOrigin(), invalidation.getVersion(), DataCacheInvalidation.Scope.ALL, null).encode();
+        }
+        try {
+            _template.queryForObject("SELECT pg_notify(?, ?)::text", String.class, _channel, payload);
+        } catch (RuntimeException e) {
+            _log.warn("Unable to send the data cache invalidation {}", payload, e);
+        }
+    }
+
+    @Override
+    public void stop() {
+        _running = false;
+        if (_thread != null) {
+            _thread.interrupt();
+        }
+    }
+
+    private void listen() {
+        boolean reconnecting = false;
+        while (_running) {
+            try (final Connection connection = _dataSource.getConnection()) {
+                try (final Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + _channel);
+                }
+                if (reconnecting) {
+                    _listener.onMissedInvalidations();
+                }
+                _log.debug("Listening for data cache invalidations on the {} channel", _channel);
+                final PGConnection postgres = connection.unwrap(PGConnection.class);
+                while (_running) {
+                    final PGNotification[] notifications = postgres.getNotifications(DEFAULT_POLL_TIMEOUT);
+                    if (notifications != null) {
+                        for (final PGNotification notification : notifications) {
+                            receive(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (!_running) {
+                    return;
+                }
+                _log.warn("Lost the connection listening for data cache invalidations, reconnecting in {} ms", DEFAULT_RECONNECT_DELAY, e);
+                reconnecting = true;
+                try {
+                    Thread.sleep(DEFAULT_RECONNECT_DELAY);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void receive(final String payload) {
+        try {
+            _listener.onInvalidation(DataCacheInvalidation.decode(payload));
+        } catch (IllegalArgumentException e) {
+            _log.warn("Ignoring an invalid notification on the {} channel: {}", _channel, payload);
+        }
+    }
+
+    private static final Logger _log = LoggerFactory.getLogger(PostgresNotifyDataCacheInvalidationTransport.class);
+
+    private final DataSource   _dataSource;
+    private final JdbcTemplate _template;
+    private final String       _channel;
+
+    private volatile DataCacheInvalidationListener _listener;
+    private volatile boolean                       _running;
+    private          Thread                        _thread;
+}
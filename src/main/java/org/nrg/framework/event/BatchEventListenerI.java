@@ -0,0 +1,33 @@
+/*
+ * framework: org.nrg.framework.event.BatchEventListenerI
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.event;
+
+import java.util.List;
+
+/**
+ * The Interface BatchEventListenerI.
+ * 
+ * This interface is implemented by listeners that can handle a number of events in a single call. Batch listeners are
+ * registered with the NrgEventService for a particular event class, and optionally a description, and receive all of
+ * the events of that class (or any subclass) triggered through a single call to the service's <b>triggerEvents()</b>
+ * method. A batch listener that's also registered as a consumer on the event bus isn't sent those events again.
+ *
+ * @param <T> The type of event handled by the listener.
+ */
+public interface BatchEventListenerI<T extends EventI> {
+
+	/**
+	 * Handles the events.
+	 *
+	 * @param events The events, in the order in which they were triggered.
+	 */
+	void handleEvents(List<T> events);
+
+}
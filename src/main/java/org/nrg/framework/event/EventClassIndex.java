@@ -0,0 +1,234 @@
+/*
+ * framework: org.nrg.framework.event.EventClassIndex
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.event;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The Class EventClassIndex.
+ *
+ * This reads the event class indexes generated by the event class annotation processor. Each jar containing classes
+ * annotated with {@link EventClass} has a single index resource at {@link #INDEX_RESOURCE}, which describes all of the
+ * event classes in the jar along with their {@link Filterable} methods. The indexes are read once, with one resource
+ * read per jar, so the cost of loading the index doesn't depend on the number of event classes.
+ */
+public final class EventClassIndex {
+
+	/** The path of the index resource in each jar. */
+	public static final String INDEX_RESOURCE = "META-INF/xnat/event/event-index.json";
+
+	/** The current version of the index format. */
+	public static final int INDEX_VERSION = 1;
+
+	/** The index attribute containing the version. */
+	public static final String VERSION = "version";
+
+	/** The index attribute containing the event class entries. */
+	public static final String EVENTS = "events";
+
+	/** The event class attribute containing the filterable method entries. */
+	public static final String FILTERABLES = "filterables";
+
+	/**
+	 * Gets the index of all event classes available to the context class loader. The index is loaded on first access.
+	 *
+	 * @return the event class index
+	 */
+	public static EventClassIndex getInstance() {
+		return InstanceHolder.INSTANCE;
+	}
+
+	/**
+	 * Loads the indexes available to the specified class loader.
+	 *
+	 * @param classLoader the class loader
+	 *
+	 * @return the event class index
+	 */
+	public static EventClassIndex load(final ClassLoader classLoader) {
+		final Map<String, Entry> entries = new LinkedHashMap<>();
+		try {
+			final Enumeration<URL> resources = classLoader.getResources(INDEX_RESOURCE);
+			while (resources.hasMoreElements()) {
+				final URL resource = resources.nextElement();
+				try (final InputStream input = resource.openStream()) {
+					final JsonNode index   = MAPPER.readTree(input);
+					final int      version = index.path(VERSION).asInt(0);
+					if (version < 1 || version > INDEX_VERSION) {
+						_log.warn("The event class index {} has unsupported version {}, skipping", resource, version);
+						continue;
+					}
+					for (final JsonNode event : index.path(EVENTS)) {
+						final Entry entry = new Entry(event);
+						entries.put(entry.getClassName(), entry);
+					}
+				} catch (IOException e) {
+					_log.error("An error occurred reading the event class index {}", resource, e);
+				}
+			}
+		} catch (IOException e) {
+			_log.error("An error occurred locating event class indexes", e);
+		}
+		return new EventClassIndex(entries);
+	}
+
+	/**
+	 * Gets the event classes.
+	 *
+	 * @return the event classes
+	 */
+	public List<Entry> getEventClasses() {
+		return Collections.unmodifiableList(new ArrayList<>(_entries.values()));
+	}
+
+	/**
+	 * Gets the entry for the event class with the specified name.
+	 *
+	 * @param className the class name
+	 *
+	 * @return the entry, or null if the class isn't in the index
+	 */
+	public Entry getEventClass(final String className) {
+		return _entries.get(className);
+	}
+
+	/**
+	 * The index entry for an event class.
+	 */
+	public static final class Entry {
+		private Entry(final JsonNode node) {
+			_className = node.path(EventClass.EVENT_CLASS).asText();
+			_name = node.path(EventClass.EVENT_NAME).asText();
+			_description = node.path(EventClass.EVENT_DESC).asText();
+			_defaultEventIds = toList(node.path(EventClass.EVENT_DEFAULTIDS));
+			_includeValuesFromDatabase = node.path(EventClass.EVENT_INCLUDEFROMDATABASE).asBoolean(true);
+			final List<FilterableEntry> filterables = new ArrayList<>();
+			for (final JsonNode filterable : node.path(FILTERABLES)) {
+				filterables.add(new FilterableEntry(filterable));
+			}
+			_filterables = Collections.unmodifiableList(filterables);
+		}
+
+		public String getClassName() {
+			return _className;
+		}
+
+		public String getName() {
+			return _name;
+		}
+
+		public String getDescription() {
+			return _description;
+		}
+
+		public List<String> getDefaultEventIds() {
+			return _defaultEventIds;
+		}
+
+		public boolean isIncludeValuesFromDatabase() {
+			return _includeValuesFromDatabase;
+		}
+
+		public List<FilterableEntry> getFilterables() {
+			return _filterables;
+		}
+
+		private final String                _className;
+		private final String                _name;
+		private final String                _description;
+		private final List<String>          _defaultEventIds;
+		private final boolean               _includeValuesFromDatabase;
+		private final List<FilterableEntry> _filterables;
+	}
+
+	/**
+	 * The index entry for a {@link Filterable} method of an event class.
+	 */
+	public static final class FilterableEntry {
+		private FilterableEntry(final JsonNode node) {
+			_method = node.path("method").asText();
+			_property = node.path("property").asText();
+			_initialValues = toList(node.path("initialValues"));
+			_defaultValue = node.path("defaultValue").asText();
+			_filterRequired = node.path("filterRequired").asBoolean(false);
+			_includeValuesFromDatabase = node.path("includeValuesFromDatabase").asBoolean(true);
+		}
+
+		public String getMethod() {
+			return _method;
+		}
+
+		public String getProperty() {
+			return _property;
+		}
+
+		public List<String> getInitialValues() {
+			return _initialValues;
+		}
+
+		public String getDefaultValue() {
+			return _defaultValue;
+		}
+
+		public boolean isFilterRequired() {
+			return _filterRequired;
+		}
+
+		public boolean isIncludeValuesFromDatabase() {
+			return _includeValuesFromDatabase;
+		}
+
+		private final String       _method;
+		private final String       _property;
+		private final List<String> _initialValues;
+		private final String       _defaultValue;
+		private final boolean      _filterRequired;
+		private final boolean      _includeValuesFromDatabase;
+	}
+
+	private EventClassIndex(final Map<String, Entry> entries) {
+		_entries = Collections.unmodifiableMap(entries);
+	}
+
+	private static List<String> toList(final JsonNode node) {
+		final List<String> values = new ArrayList<>();
+		for (final JsonNode value : node) {
+			values.add(value.asText());
+		}
+		return Collections.unmodifiableList(values);
+	}
+
+	private static class InstanceHolder {
+		private static final EventClassIndex INSTANCE = load(Thread.currentThread().getContextClassLoader() != null ? Thread.currentThread().getContextClassLoader() : EventClassIndex.class.getClassLoader());
+	}
+
+	/** The logger. */
+	private static final Logger _log = LoggerFactory.getLogger(EventClassIndex.class);
+
+	/** The mapper used to read the indexes. */
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	/** The entries, keyed by event class name. */
+	private final Map<String, Entry> _entries;
+}
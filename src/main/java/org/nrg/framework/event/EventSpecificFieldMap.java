@@ -0,0 +1,189 @@
+/*
+ * framework: org.nrg.framework.event.EventSpecificFieldMap
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.event;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.nrg.framework.event.entities.EventSpecificFields;
+
+/**
+ * The Class EventSpecificFieldMap.
+ *
+ * This is a compact, immutable map of event-specific field names and values. The field names are interned and
+ * stored in a sorted array with the corresponding values in a parallel array, so lookups are done by binary search
+ * and the map carries no per-entry objects. This is used by {@link StructuredEvent} as the primary representation of
+ * its event-specific fields, with the {@link EventSpecificFields} entities only created when they're needed for
+ * persistence.
+ */
+public final class EventSpecificFieldMap extends AbstractMap<String, String> implements Serializable {
+
+	/** The empty map. */
+	public static final EventSpecificFieldMap EMPTY = new EventSpecificFieldMap(new String[0], new String[0]);
+
+	/**
+	 * Creates a field map containing the entries in the submitted map. Entries with null keys are ignored.
+	 *
+	 * @param fields the fields
+	 *
+	 * @return the field map
+	 */
+	public static EventSpecificFieldMap copyOf(final Map<String, String> fields) {
+		if (fields == null || fields.isEmpty()) {
+			return EMPTY;
+		}
+		if (fields instanceof EventSpecificFieldMap) {
+			return (EventSpecificFieldMap) fields;
+		}
+		final TreeMap<String, String> sorted = new TreeMap<>();
+		for (final Map.Entry<String, String> entry : fields.entrySet()) {
+			if (entry.getKey() != null) {
+				sorted.put(entry.getKey(), entry.getValue());
+			}
+		}
+		return fromSorted(sorted);
+	}
+
+	/**
+	 * Creates a field map from the submitted field entities. Entities with null field names are ignored. If more than
+	 * one entity has the same field name, the value of the last one is used.
+	 *
+	 * @param fields the fields
+	 *
+	 * @return the field map
+	 */
+	public static EventSpecificFieldMap fromEntities(final Collection<EventSpecificFields> fields) {
+		if (fields == null || fields.isEmpty()) {
+			return EMPTY;
+		}
+		final TreeMap<String, String> sorted = new TreeMap<>();
+		for (final EventSpecificFields field : fields) {
+			if (field != null && field.getFieldName() != null) {
+				sorted.put(field.getFieldName(), field.getFieldVal());
+			}
+		}
+		return fromSorted(sorted);
+	}
+
+	/**
+	 * Creates new field entities for the entries in this map.
+	 *
+	 * @return the event specific field entities
+	 */
+	public Set<EventSpecificFields> toEntities() {
+		final Set<EventSpecificFields> entities = new LinkedHashSet<>(_names.length * 4 / 3 + 1);
+		for (int index = 0; index < _names.length; index++) {
+			entities.add(new EventSpecificFields(_names[index], _values[index]));
+		}
+		return entities;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractMap#get(java.lang.Object)
+	 */
+	@Override
+	public String get(final Object key) {
+		final int index = indexOf(key);
+		return index < 0 ? null : _values[index];
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractMap#containsKey(java.lang.Object)
+	 */
+	@Override
+	public boolean containsKey(final Object key) {
+		return indexOf(key) >= 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractMap#size()
+	 */
+	@Override
+	public int size() {
+		return _names.length;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractMap#entrySet()
+	 */
+	@Override
+	public Set<Map.Entry<String, String>> entrySet() {
+		return new AbstractSet<Map.Entry<String, String>>() {
+			@Override
+			public Iterator<Map.Entry<String, String>> iterator() {
+				return new Iterator<Map.Entry<String, String>>() {
+					@Override
+					public boolean hasNext() {
+						return _index < _names.length;
+					}
+
+					@Override
+					public Map.Entry<String, String> next() {
+						if (!hasNext()) {
+							throw new NoSuchElementException();
+						}
+						final int index = _index++;
+						return new SimpleImmutableEntry<>(_names[index], _values[index]);
+					}
+
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException("Event specific field maps are immutable");
+					}
+
+					private int _index;
+				};
+			}
+
+			@Override
+			public int size() {
+				return _names.length;
+			}
+		};
+	}
+
+	private EventSpecificFieldMap(final String[] names, final String[] values) {
+		_names = names;
+		_values = values;
+	}
+
+	private static EventSpecificFieldMap fromSorted(final TreeMap<String, String> sorted) {
+		final String[] names  = new String[sorted.size()];
+		final String[] values = new String[sorted.size()];
+		int index = 0;
+		for (final Map.Entry<String, String> entry : sorted.entrySet()) {
+			names[index] = entry.getKey().intern();
+			values[index++] = entry.getValue();
+		}
+		return new EventSpecificFieldMap(names, values);
+	}
+
+	private int indexOf(final Object key) {
+		return key instanceof String ? Arrays.binarySearch(_names, key) : -1;
+	}
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 3377529307153402624L;
+
+	/** The sorted field names. */
+	private final String[] _names;
+
+	/** The field values, parallel to the field names. */
+	private final String[] _values;
+}
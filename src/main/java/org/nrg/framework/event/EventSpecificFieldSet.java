@@ -0,0 +1,140 @@
+/*
+ * framework: org.nrg.framework.event.EventSpecificFieldSet
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.event;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.nrg.framework.event.entities.EventSpecificFields;
+
+/**
+ * The Class EventSpecificFieldSet.
+ *
+ * This is the set of event specific field entities for a {@link StructuredEvent} whose fields were set as a map. The
+ * entities are only created when the set is first used, which normally happens when the event is persisted, so events
+ * that are never persisted only carry the compact {@link EventSpecificFieldMap}. Changes made through the set discard
+ * the map, which is rebuilt from the entities when next requested. Changes made directly to the field entities in the
+ * set aren't tracked.
+ *
+ * The set's methods are synchronized. As with {@link java.util.Collections#synchronizedSet(Set)}, callers iterating
+ * over the set while other threads may change it must synchronize on the set.
+ */
+final class EventSpecificFieldSet extends AbstractSet<EventSpecificFields> implements Serializable {
+
+	/**
+	 * Instantiates a new event specific field set.
+	 *
+	 * @param map the fields
+	 */
+	EventSpecificFieldSet(final EventSpecificFieldMap map) {
+		_map = map;
+	}
+
+	/**
+	 * Gets the fields as a map.
+	 *
+	 * @return the fields as a map
+	 */
+	synchronized EventSpecificFieldMap asMap() {
+		if (_map == null) {
+			_map = EventSpecificFieldMap.fromEntities(_entities);
+		}
+		return _map;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractCollection#iterator()
+	 */
+	@Override
+	public synchronized Iterator<EventSpecificFields> iterator() {
+		final Iterator<EventSpecificFields> iterator = getEntities().iterator();
+		return new Iterator<EventSpecificFields>() {
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public EventSpecificFields next() {
+				return iterator.next();
+			}
+
+			@Override
+			public void remove() {
+				synchronized (EventSpecificFieldSet.this) {
+					iterator.remove();
+					_map = null;
+				}
+			}
+		};
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractCollection#size()
+	 */
+	@Override
+	public synchronized int size() {
+		return _entities == null ? _map.size() : _entities.size();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractCollection#add(java.lang.Object)
+	 */
+	@Override
+	public synchronized boolean add(final EventSpecificFields field) {
+		if (!getEntities().add(field)) {
+			return false;
+		}
+		_map = null;
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractCollection#remove(java.lang.Object)
+	 */
+	@Override
+	public synchronized boolean remove(final Object field) {
+		if (!getEntities().remove(field)) {
+			return false;
+		}
+		_map = null;
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.AbstractCollection#clear()
+	 */
+	@Override
+	public synchronized void clear() {
+		getEntities().clear();
+		_map = EventSpecificFieldMap.EMPTY;
+	}
+
+	/**
+	 * Gets the field entities, creating them from the map on first use.
+	 */
+	private Set<EventSpecificFields> getEntities() {
+		if (_entities == null) {
+			_entities = _map.toEntities();
+		}
+		return _entities;
+	}
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = -6925385316482650115L;
+
+	/** The fields as a map, or null if the entities have changed since the map was built. */
+	private EventSpecificFieldMap _map;
+
+	/** The field entities, or null if they haven't been created yet. */
+	private Set<EventSpecificFields> _entities;
+}
@@ -0,0 +1,51 @@
+/*
+ * framework: org.nrg.framework.event.FilterableAccessor
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.event;
+
+import java.util.List;
+
+/**
+ * The Interface FilterableAccessor.
+ *
+ * Provides the values of the {@link Filterable} properties of an event class. Implementations are generated by the
+ * event class annotation processor for each class annotated with {@link EventClass}, so that the values can be read
+ * with direct method calls rather than reflection. Use {@link FilterableAccessors#forClass(Class)} to get the accessor
+ * for a class, which falls back to a reflection-based accessor when no generated accessor is available.
+ *
+ * @param <T> the event type
+ */
+public interface FilterableAccessor<T> {
+
+	/**
+	 * Gets the event class.
+	 *
+	 * @return the event class
+	 */
+	Class<T> getEventClass();
+
+	/**
+	 * Gets the names of the filterable properties of the event class.
+	 *
+	 * @return the property names
+	 */
+	List<String> getProperties();
+
+	/**
+	 * Gets the value of a filterable property from the event.
+	 *
+	 * @param event the event
+	 * @param property the property name
+	 *
+	 * @return the property value
+	 *
+	 * @throws IllegalArgumentException if the property isn't a filterable property of the event class
+	 */
+	Object getValue(T event, String property);
+}
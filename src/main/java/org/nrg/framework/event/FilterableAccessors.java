@@ -0,0 +1,192 @@
+/*
+ * framework: org.nrg.framework.event.FilterableAccessors
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.event;
+
+import java.beans.Introspector;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.annotation.AnnotationUtils;
+
+/**
+ * The Class FilterableAccessors.
+ *
+ * Locates the {@link FilterableAccessor} for event classes. The generated accessor for a class is used when it's
+ * available. Otherwise, an accessor that reads the {@link Filterable} methods reflectively is created. Accessors are
+ * created once per class and cached.
+ */
+public final class FilterableAccessors {
+
+	/** The suffix appended to the event class name to form the name of its generated accessor. */
+	public static final String ACCESSOR_SUFFIX = "_FilterableAccessor";
+
+	/**
+	 * Gets the accessor for the event class.
+	 *
+	 * @param <T> the event type
+	 * @param eventClass the event class
+	 *
+	 * @return the accessor
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> FilterableAccessor<T> forClass(final Class<T> eventClass) {
+		final FilterableAccessor<?> cached = ACCESSORS.get(eventClass);
+		if (cached != null) {
+			return (FilterableAccessor<T>) cached;
+		}
+		FilterableAccessor<T> accessor = getGeneratedAccessor(eventClass);
+		if (accessor == null) {
+			accessor = new ReflectiveFilterableAccessor<>(eventClass);
+		}
+		final FilterableAccessor<?> existing = ACCESSORS.putIfAbsent(eventClass, accessor);
+		return existing != null ? (FilterableAccessor<T>) existing : accessor;
+	}
+
+	/**
+	 * Indicates whether the accessor for the event class was generated at compile time.
+	 *
+	 * @param eventClass the event class
+	 *
+	 * @return true, if the class has a generated accessor
+	 */
+	public static boolean isGenerated(final Class<?> eventClass) {
+		return !(forClass(eventClass) instanceof ReflectiveFilterableAccessor);
+	}
+
+	/**
+	 * Gets the name of the generated accessor class for an event class. The accessor is in the same package as the
+	 * event class. For nested classes, the names of the enclosing classes are included, separated by underscores.
+	 *
+	 * @param binaryName the binary name of the event class
+	 *
+	 * @return the accessor class name
+	 */
+	public static String getAccessorClassName(final String binaryName) {
+		final int    lastDot = binaryName.lastIndexOf('.');
+		final String simple  = binaryName.substring(lastDot + 1).replace('$', '_');
+		return (lastDot < 0 ? "" : binaryName.substring(0, lastDot + 1)) + simple + ACCESSOR_SUFFIX;
+	}
+
+	/**
+	 * Gets the property name for a getter method name.
+	 *
+	 * @param method the method name
+	 *
+	 * @return the property name
+	 */
+	public static String getPropertyName(final String method) {
+		if (method.startsWith("get") && method.length() > 3) {
+			return Introspector.decapitalize(method.substring(3));
+		}
+		if (method.startsWith("is") && method.length() > 2) {
+			return Introspector.decapitalize(method.substring(2));
+		}
+		return method;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> FilterableAccessor<T> getGeneratedAccessor(final Class<T> eventClass) {
+		final String name = getAccessorClassName(eventClass.getName());
+		try {
+			final Class<?> accessorClass = Class.forName(name, true, eventClass.getClassLoader());
+			if (!FilterableAccessor.class.isAssignableFrom(accessorClass)) {
+				_log.warn("Found the class {} for the event class {}, but it doesn't implement FilterableAccessor", name, eventClass.getName());
+				return null;
+			}
+			return (FilterableAccessor<T>) accessorClass.newInstance();
+		} catch (ClassNotFoundException e) {
+			_log.debug("No generated filterable accessor found for the event class {}, using reflection", eventClass.getName());
+			return null;
+		} catch (ReflectiveOperationException | LinkageError e) {
+			_log.warn("Unable to create the generated filterable accessor {} for the event class {}, using reflection", name, eventClass.getName(), e);
+			return null;
+		}
+	}
+
+	private FilterableAccessors() {
+	}
+
+	/**
+	 * The reflection-based accessor used when no generated accessor is available.
+	 *
+	 * @param <T> the event type
+	 */
+	private static final class ReflectiveFilterableAccessor<T> implements FilterableAccessor<T> {
+		ReflectiveFilterableAccessor(final Class<T> eventClass) {
+			_eventClass = eventClass;
+			final Map<String, Method> methods = new LinkedHashMap<>();
+			for (final Method method : eventClass.getMethods()) {
+				if (method.getParameterTypes().length > 0 || method.getReturnType() == Void.TYPE || Modifier.isStatic(method.getModifiers())) {
+					continue;
+				}
+				if (AnnotationUtils.findAnnotation(method, Filterable.class) != null) {
+					final String property = getPropertyName(method.getName());
+					if (!methods.containsKey(property)) {
+						methods.put(property, method);
+					}
+				}
+			}
+			_methods = methods;
+			_properties = Collections.unmodifiableList(new ArrayList<>(methods.keySet()));
+		}
+
+		@Override
+		public Class<T> getEventClass() {
+			return _eventClass;
+		}
+
+		@Override
+		public List<String> getProperties() {
+			return _properties;
+		}
+
+		@Override
+		public Object getValue(final T event, final String property) {
+			final Method method = _methods.get(property);
+			if (method == null) {
+				throw new IllegalArgumentException("The property " + property + " isn't a filterable property of the event class " + _eventClass.getName());
+			}
+			try {
+				return method.invoke(event);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException("Unable to access the filterable method " + method, e);
+			} catch (InvocationTargetException e) {
+				final Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new IllegalStateException("An error occurred calling the filterable method " + method, cause);
+			}
+		}
+
+		private final Class<T>            _eventClass;
+		private final Map<String, Method> _methods;
+		private final List<String>        _properties;
+	}
+
+	/** The logger. */
+	private static final Logger _log = LoggerFactory.getLogger(FilterableAccessors.class);
+
+	/** The accessors, keyed by event class. */
+	private static final ConcurrentMap<Class<?>, FilterableAccessor<?>> ACCESSORS = new ConcurrentHashMap<>();
+}
@@ -15,8 +15,6 @@ import java.util.Set;
 
 import org.nrg.framework.event.StructuredEventI;
 import org.nrg.framework.event.entities.EventSpecificFields;
-import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 
 /**
  * The Abstract Class StructuredEvent.
@@ -154,7 +152,9 @@ public abstract class StructuredEvent implements Serializable, StructuredEventI
 	}
 	
 	/**
-	 * Gets the event specific fields.
+	 * Gets the event specific fields. If the fields were set with {@link #setEventSpecificFieldsAsMap(Map)}, the
+	 * field entities are created when the returned set is first used, which normally happens only when the event is
+	 * persisted.
 	 *
 	 * @return the event specific fields
 	 */
@@ -177,25 +177,20 @@ public abstract class StructuredEvent implements Serializable, StructuredEventI
 	 * @param eventSpecificMap the event specific map
 	 */
 	public void setEventSpecificFieldsAsMap(Map<String,String> eventSpecificMap) {
-		final Set<EventSpecificFields> eventSpecificFields = Sets.newHashSet();
-    	for (final String eventKey : eventSpecificMap.keySet()) {
-    		final EventSpecificFields ef = new EventSpecificFields(eventKey,eventSpecificMap.get(eventKey));
-    		eventSpecificFields.add(ef);
-    	}
-		this.eventSpecificFields = eventSpecificFields;
+		this.eventSpecificFields = new EventSpecificFieldSet(EventSpecificFieldMap.copyOf(eventSpecificMap));
 	}
 	
 	/**
-	 * Gets the event specific fields as map.
+	 * Gets the event specific fields as map. The returned map is immutable: use {@link
+	 * #setEventSpecificFieldsAsMap(Map)} to change the event specific fields. If the fields were set as a map, the
+	 * same map is returned until the field set is changed. Otherwise, e.g. when the fields were loaded from the
+	 * database, the map is built from the field entities on each call.
 	 *
 	 * @return the event specific fields as map
 	 */
 	public Map<String,String> getEventSpecificFieldsAsMap() {
-		final Map<String,String> eventSpecificFieldMap = Maps.newHashMap();
-		for (final EventSpecificFields fields : eventSpecificFields) {
-			eventSpecificFieldMap.put(fields.getFieldName(), fields.getFieldVal());
-		}
-		return eventSpecificFieldMap;
+		final Set<EventSpecificFields> fields = eventSpecificFields;
+		return fields instanceof EventSpecificFieldSet ? ((EventSpecificFieldSet) fields).asMap() : EventSpecificFieldMap.fromEntities(fields);
 	}
 
 }
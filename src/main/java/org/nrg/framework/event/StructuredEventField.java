@@ -0,0 +1,68 @@
+/*
+ * framework: org.nrg.framework.event.StructuredEventField
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.event;
+
+/**
+ * Enumerates the standard fields of the {@link StructuredEventI} interface, providing a uniform way to extract
+ * field values when events need to be keyed, indexed, or matched on a configurable set of fields.
+ */
+public enum StructuredEventField {
+	SRC_EVENT_CLASS {
+		@Override
+		public Object getValue(final StructuredEventI event) {
+			return event.getSrcEventClass();
+		}
+	},
+	SRC_STRINGIFIED_ID {
+		@Override
+		public Object getValue(final StructuredEventI event) {
+			return event.getSrcStringifiedId();
+		}
+	},
+	EVENT_ID {
+		@Override
+		public Object getValue(final StructuredEventI event) {
+			return event.getEventId();
+		}
+	},
+	USER_ID {
+		@Override
+		public Object getValue(final StructuredEventI event) {
+			return event.getUserId();
+		}
+	},
+	EXTERNAL_ID {
+		@Override
+		public Object getValue(final StructuredEventI event) {
+			return event.getExternalId();
+		}
+	},
+	ENTITY_ID {
+		@Override
+		public Object getValue(final StructuredEventI event) {
+			return event.getEntityId();
+		}
+	},
+	ENTITY_TYPE {
+		@Override
+		public Object getValue(final StructuredEventI event) {
+			return event.getEntityType();
+		}
+	};
+
+	/**
+	 * Gets the value of this field from the event.
+	 *
+	 * @param event the event
+	 *
+	 * @return the field value, which may be null
+	 */
+	public abstract Object getValue(final StructuredEventI event);
+}
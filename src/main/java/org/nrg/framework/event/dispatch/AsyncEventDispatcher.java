@@ -0,0 +1,393 @@
+/*
+ * framework: org.nrg.framework.event.dispatch.AsyncEventDispatcher
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.event.dispatch;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Dispatches event notifications on a fixed set of dispatcher threads rather than on the thread that triggered the
+ * event. Notifications are placed on a bounded ring buffer (an {@link ArrayBlockingQueue}) and drained by the
+ * dispatcher threads in batches of up to {@link #getBatchSize()} notifications. When the buffer is full, the
+ * configured {@link BackpressurePolicy} determines whether the submitting thread blocks, the oldest pending
+ * notification is discarded, or the submitting thread runs the notification itself.
+ *
+ * Once {@link #shutdown(long, TimeUnit)} has been called, any further submissions are run on the caller thread.
+ * Notifications that were already queued are still dispatched by the dispatcher threads, but these are daemon threads:
+ * if the shutdown times out and the JVM then exits, the notifications still queued at that point are lost. The return
+ * value of {@link #shutdown(long, TimeUnit)} indicates whether that could happen.
+ */
+public class AsyncEventDispatcher implements DisposableBean {
+    public static final int DEFAULT_CAPACITY           = 8192;
+    public static final int DEFAULT_DISPATCHER_THREADS = 2;
+    public static final int DEFAULT_BATCH_SIZE         = 64;
+
+    public static final long DEFAULT_SHUTDOWN_TIMEOUT = 5000L;
+
+    public static final String DEFAULT_THREAD_NAME_FORMAT = "nrg-event-dispatcher-%d";
+
+    public AsyncEventDispatcher() {
+        this(DEFAULT_CAPACITY, DEFAULT_DISPATCHER_THREADS, DEFAULT_BATCH_SIZE, BackpressurePolicy.Default);
+    }
+
+    public AsyncEventDispatcher(final int capacity, final int dispatcherThreads, final int batchSize, final BackpressurePolicy policy) {
+        this(capacity, dispatcherThreads, batchSize, policy, DEFAULT_THREAD_NAME_FORMAT);
+    }
+
+    /**
+     * Creates a dispatcher whose threads are named using the specified format, which should contain a single
+     * <b>%d</b> for the thread index.
+     *
+     * @param capacity          The maximum number of pending notifications.
+     * @param dispatcherThreads The number of dispatcher threads.
+     * @param batchSize         The maximum number of notifications drained by a thread at once.
+     * @param policy            What to do when the queue is full.
+     * @param threadNameFormat  The format for the dispatcher thread names.
+     */
+    public AsyncEventDispatcher(final int capacity, final int dispatcherThreads, final int batchSize, final BackpressurePolicy policy, final String threadNameFormat) {
+        if (capacity < 1 || dispatcherThreads < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("The capacity, number of dispatcher threads, and batch size must all be greater than zero.");
+        }
+        _queue = new ArrayBlockingQueue<>(capacity);
+        _capacity = capacity;
+        _batchSize = batchSize;
+        _policy = policy == null ? BackpressurePolicy.Default : policy;
+        _threads = new ArrayList<>(dispatcherThreads);
+
+        final ThreadFactory factory = new ThreadFactoryBuilder().setNameFormat(threadNameFormat).setDaemon(true).build();
+        for (int index = 0; index < dispatcherThreads; index++) {
+            final Thread thread = factory.newThread(new Drainer());
+            _threads.add(thread);
+            thread.start();
+        }
+        _log.info("Started asynchronous event dispatcher with {} threads, capacity {}, batch size {}, and backpressure policy {}", dispatcherThreads, capacity, batchSize, _policy);
+    }
+
+    /**
+     * Submits the notification for dispatch. Depending on the backpressure policy and the state of the queue, this
+     * may block, discard an older notification, or run the notification on the calling thread.
+     *
+     * @param notification The notification to be dispatched.
+     */
+    public void submit(final Runnable notification) {
+        _submitted.incrementAndGet();
+        final PendingNotification pending = new PendingNotification(notification);
+        final boolean             queued;
+        switch (_policy) {
+            case BLOCK:
+                queued = put(pending);
+                break;
+
+            case DROP_OLDEST:
+                queued = offerDroppingOldest(pending);
+                break;
+
+            case CALLER_RUNS:
+            default:
+                queued = offer(pending);
+                break;
+        }
+        if (!queued) {
+            runOnCaller(notification);
+        }
+    }
+
+    /**
+     * Stops accepting notifications onto the queue and waits up to the specified time for the dispatcher threads to
+     * drain the notifications that are already queued.
+     *
+     * @param timeout The maximum time to wait.
+     * @param unit    The unit for the timeout value.
+     *
+     * @return Returns <b>true</b> if all queued notifications were dispatched before the timeout elapsed.
+     */
+    public boolean shutdown(final long timeout, final TimeUnit unit) {
+        // Once the write lock is released, no call to submit() can queue another notification, so the dispatcher
+        // threads can stop as soon as the queue is empty.
+        _lifecycle.writeLock().lock();
+        try {
+            _shutdown = true;
+        } finally {
+            _lifecycle.writeLock().unlock();
+        }
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (final Thread thread : _threads) {
+            final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                break;
+            }
+            try {
+                thread.join(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        final int abandoned = _queue.size();
+        if (abandoned > 0) {
+            _log.warn("The asynchronous event dispatcher shut down with {} notifications still queued.", abandoned);
+        }
+        return abandoned == 0;
+    }
+
+    /**
+     * Shuts down the dispatcher, waiting up to {@link #DEFAULT_SHUTDOWN_TIMEOUT} milliseconds for queued notifications
+     * to be dispatched.
+     */
+    @Override
+    public void destroy() {
+        shutdown(DEFAULT_SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isShutdown() {
+        return _shutdown;
+    }
+
+    public int getCapacity() {
+        return _capacity;
+    }
+
+    public int getBatchSize() {
+        return _batchSize;
+    }
+
+    public BackpressurePolicy getPolicy() {
+        return _policy;
+    }
+
+    public int getQueueDepth() {
+        return _queue.size();
+    }
+
+    public long getSubmittedCount() {
+        return _submitted.get();
+    }
+
+    public long getDispatchedCount() {
+        return _dispatched.get();
+    }
+
+    public long getDroppedCount() {
+        return _dropped.get();
+    }
+
+    public long getCallerRunsCount() {
+        return _callerRuns.get();
+    }
+
+    public long getFailedCount() {
+        return _failed.get();
+    }
+
+    public long getBatchCount() {
+        return _batches.get();
+    }
+
+    /**
+     * Gets the average time in microseconds between a notification being queued and it being dispatched.
+     *
+     * @return The average queue latency in microseconds.
+     */
+    public long getAverageLatencyMicros() {
+        final long dispatched = _dispatched.get();
+        return dispatched == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(_totalLatency.get() / dispatched);
+    }
+
+    /**
+     * Gets the maximum time in microseconds between a notification being queued and it being dispatched.
+     *
+     * @return The maximum queue latency in microseconds.
+     */
+    public long getMaxLatencyMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(_maxLatency.get());
+    }
+
+    /**
+     * Gets a snapshot of the dispatcher's metrics, suitable for display or export to a monitoring system.
+     *
+     * @return A map of metric names and values.
+     */
+    public Map<String, Number> getMetrics() {
+        return ImmutableMap.<String, Number>builder()
+                           .put("capacity", getCapacity())
+                           .put("queueDepth", getQueueDepth())
+                           .put("submitted", getSubmittedCount())
+                           .put("dispatched", getDispatchedCount())
+                           .put("dropped", getDroppedCount())
+                           .put("callerRuns", getCallerRunsCount())
+                           .put("failed", getFailedCount())
+                           .put("batches", getBatchCount())
+                           .put("averageLatencyMicros", getAverageLatencyMicros())
+                           .put("maxLatencyMicros", getMaxLatencyMicros())
+                           .build();
+    }
+
+    /**
+     * Queues the notification, waiting for space if the queue is full. The lifecycle lock is only held for one poll
+     * interval at a time so that {@link #shutdown(long, TimeUnit)} isn't blocked indefinitely by a full queue.
+     *
+     * @param pending The notification to queue.
+     *
+     * @return Returns <b>true</b> if the notification was queued, <b>false</b> if the dispatcher has been shut down or
+     *         the calling thread was interrupted.
+     */
+    private boolean put(final PendingNotification pending) {
+        while (true) {
+            _lifecycle.readLock().lock();
+            try {
+                if (_shutdown) {
+                    return false;
+                }
+                if (_queue.offer(pending, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                _log.warn("Interrupted while waiting to queue an event notification, running it on the calling thread instead.");
+                return false;
+            } finally {
+                _lifecycle.readLock().unlock();
+            }
+        }
+    }
+
+    private boolean offerDroppingOldest(final PendingNotification pending) {
+        _lifecycle.readLock().lock();
+        try {
+            if (_shutdown) {
+                return false;
+            }
+            while (!_queue.offer(pending)) {
+                final PendingNotification dropped = _queue.poll();
+                if (dropped != null) {
+                    _dropped.incrementAndGet();
+                    _log.warn("The event dispatch queue is full, dropped the oldest pending notification (queued {} ms ago).", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - dropped.getQueued()));
+                }
+            }
+            return true;
+        } finally {
+            _lifecycle.readLock().unlock();
+        }
+    }
+
+    private boolean offer(final PendingNotification pending) {
+        _lifecycle.readLock().lock();
+        try {
+            return !_shutdown && _queue.offer(pending);
+        } finally {
+            _lifecycle.readLock().unlock();
+        }
+    }
+
+    private void runOnCaller(final Runnable notification) {
+        _callerRuns.incrementAndGet();
+        run(notification);
+    }
+
+    private void run(final Runnable notification) {
+        try {
+            notification.run();
+        } catch (Throwable e) {
+            _failed.incrementAndGet();
+            _log.error("An error occurred dispatching an event notification", e);
+        }
+    }
+
+    private void recordLatency(final long latency) {
+        _totalLatency.addAndGet(latency);
+        long current;
+        while (latency > (current = _maxLatency.get()) && !_maxLatency.compareAndSet(current, latency)) {
+            // Spin until the max is updated or another thread records a larger value.
+        }
+    }
+
+    private class Drainer implements Runnable {
+        @Override
+        public void run() {
+            final List<PendingNotification> batch = new ArrayList<>(_batchSize);
+            while (!_shutdown || !_queue.isEmpty()) {
+                try {
+                    final PendingNotification first = _queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    _queue.drainTo(batch, _batchSize - 1);
+                    _batches.incrementAndGet();
+                    for (final PendingNotification pending : batch) {
+                        recordLatency(System.nanoTime() - pending.getQueued());
+                        _dispatched.incrementAndGet();
+                        AsyncEventDispatcher.this.run(pending.getNotification());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    _log.warn("Event dispatcher thread {} was interrupted and is stopping.", Thread.currentThread().getName());
+                    return;
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    private static class PendingNotification {
+        PendingNotification(final Runnable notification) {
+            _notification = notification;
+            _queued = System.nanoTime();
+        }
+
+        Runnable getNotification() {
+            return _notification;
+        }
+
+        long getQueued() {
+            return _queued;
+        }
+
+        private final Runnable _notification;
+        private final long     _queued;
+    }
+
+    private static final Logger _log = LoggerFactory.getLogger(AsyncEventDispatcher.class);
+
+    private static final long POLL_INTERVAL = 250L;
+
+    private final BlockingQueue<PendingNotification> _queue;
+    private final int                                _capacity;
+    private final int                                _batchSize;
+    private final BackpressurePolicy                 _policy;
+    private final List<Thread>                       _threads;
+    private final ReadWriteLock                      _lifecycle = new ReentrantReadWriteLock();
+
+    private final AtomicLong _submitted    = new AtomicLong();
+    private final AtomicLong _dispatched   = new AtomicLong();
+    private final AtomicLong _dropped      = new AtomicLong();
+    private final AtomicLong _callerRuns   = new AtomicLong();
+    private final AtomicLong _failed       = new AtomicLong();
+    private final AtomicLong _batches      = new AtomicLong();
+    private final AtomicLong _totalLatency = new AtomicLong();
+    private final AtomicLong _maxLatency   = new AtomicLong();
+
+    private volatile boolean _shutdown;
+}
@@ -0,0 +1,32 @@
+/*
+ * framework: org.nrg.framework.event.dispatch.BackpressurePolicy
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.event.dispatch;
+
+/**
+ * Indicates what should happen when work is submitted to a bounded queue that is already full.
+ */
+public enum BackpressurePolicy {
+    /**
+     * The submitting thread blocks until space is available in the queue.
+     */
+    BLOCK,
+
+    /**
+     * The oldest queued item is discarded to make room for the newly submitted item.
+     */
+    DROP_OLDEST,
+
+    /**
+     * The submitting thread performs the work itself, bypassing the queue.
+     */
+    CALLER_RUNS;
+
+    public static final BackpressurePolicy Default = BLOCK;
+}
@@ -0,0 +1,226 @@
+/*
+ * framework: org.nrg.framework.event.dispatch.BulkheadConsumer
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.event.dispatch;
+
+import com.google.common.collect.ImmutableMap;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.bus.Event;
+import reactor.fn.Consumer;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Isolates an event bus consumer from the thread that notifies it and from every other consumer. Events accepted by
+ * the bulkhead are placed on the consumer's own bounded queue and handled by at most the configured number of threads
+ * dedicated to that consumer, so a slow consumer only delays its own events. When the queue is full, the configured
+ * {@link BackpressurePolicy} determines what happens to the event. The default for bulkheads is {@link
+ * BackpressurePolicy#DROP_OLDEST}, so that a stalled consumer never blocks the thread publishing the event. Consumers
+ * that can't lose events should choose {@link BackpressurePolicy#BLOCK} or {@link BackpressurePolicy#CALLER_RUNS}
+ * explicitly, accepting that publishers may then be slowed down by the consumer.
+ *
+ * The time taken by the consumer to handle each event is sampled. Whenever handling an event takes longer than the
+ * slow consumer threshold, the bulkhead logs a warning, at most once per {@link #WARNING_INTERVAL} milliseconds, with
+ * the consumer's 99th percentile handling time. The percentiles are also available through {@link #getMetrics()}.
+ *
+ * @param <T> The type of event handled by the consumer.
+ */
+public class BulkheadConsumer<T extends Event<?>> implements Consumer<T> {
+    public static final int                DEFAULT_QUEUE_CAPACITY        = 1024;
+    public static final int                DEFAULT_CONCURRENCY           = 1;
+    public static final BackpressurePolicy DEFAULT_POLICY                = BackpressurePolicy.DROP_OLDEST;
+    public static final long               DEFAULT_SLOW_THRESHOLD_MILLIS = 1000L;
+    public static final int                SAMPLE_SIZE                   = 1024;
+    public static final long               WARNING_INTERVAL              = 60000L;
+
+    public BulkheadConsumer(final String name, final Consumer<T> delegate) {
+        this(name, delegate, DEFAULT_QUEUE_CAPACITY, DEFAULT_CONCURRENCY, DEFAULT_POLICY, DEFAULT_SLOW_THRESHOLD_MILLIS);
+    }
+
+    public BulkheadConsumer(final String name, final Consumer<T> delegate, final int queueCapacity, final int concurrency, final BackpressurePolicy policy, final long slowThresholdMillis) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("You must specify the consumer to isolate.");
+        }
+        _name = name;
+        _delegate = delegate;
+        _concurrency = concurrency;
+        _slowThreshold = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+        // The name is escaped because it becomes part of the thread name format.
+        _dispatcher = new AsyncEventDispatcher(queueCapacity, concurrency, 1, policy == null ? DEFAULT_POLICY : policy, "nrg-bulkhead-" + StringUtils.replace(name, "%", "%%") + "-%d");
+    }
+
+    /**
+     * Queues the event for handling by the isolated consumer.
+     *
+     * @param event The event to handle.
+     */
+    @Override
+    public void accept(final T event) {
+        _dispatcher.submit(new Runnable() {
+            @Override
+            public void run() {
+                handle(event);
+            }
+        });
+    }
+
+    /**
+     * Stops accepting events onto the queue and waits up to the specified time for the queued events to be handled.
+     *
+     * @param timeout The maximum time to wait.
+     * @param unit    The unit for the timeout value.
+     *
+     * @return Returns <b>true</b> if all queued events were handled before the timeout elapsed.
+     */
+    public boolean shutdown(final long timeout, final TimeUnit unit) {
+        return _dispatcher.shutdown(timeout, unit);
+    }
+
+    public String getName() {
+        return _name;
+    }
+
+    public Consumer<T> getDelegate() {
+        return _delegate;
+    }
+
+    public int getConcurrency() {
+        return _concurrency;
+    }
+
+    public BackpressurePolicy getPolicy() {
+        return _dispatcher.getPolicy();
+    }
+
+    public long getSlowThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(_slowThreshold);
+    }
+
+    public int getQueueDepth() {
+        return _dispatcher.getQueueDepth();
+    }
+
+    public long getHandledCount() {
+        return _handled.get();
+    }
+
+    public long getSlowCount() {
+        return _slow.get();
+    }
+
+    public long getMaxHandlingMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(_maxHandling.get());
+    }
+
+    /**
+     * Gets the handling time at the specified percentile over the most recent {@link #SAMPLE_SIZE} events.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     *
+     * @return The handling time in microseconds, or 0 if no events have been handled.
+     */
+    public long getHandlingPercentileMicros(final double percentile) {
+        final int count = (int) Math.min(_handled.get(), SAMPLE_SIZE);
+        if (count == 0) {
+            return 0;
+        }
+        final long[] samples = new long[count];
+        for (int index = 0; index < count; index++) {
+            samples[index] = _samples.get(index);
+        }
+        Arrays.sort(samples);
+        final int rank = (int) Math.ceil(Math.max(0, Math.min(100, percentile)) / 100 * count) - 1;
+        return TimeUnit.NANOSECONDS.toMicros(samples[Math.max(0, rank)]);
+    }
+
+    public long getP99HandlingMicros() {
+        return getHandlingPercentileMicros(99);
+    }
+
+    /**
+     * Indicates whether the consumer's 99th percentile handling time is over the slow consumer threshold.
+     *
+     * @return Returns <b>true</b> if the consumer is slow.
+     */
+    public boolean isSlow() {
+        return _handled.get() > 0 && TimeUnit.MICROSECONDS.toNanos(getP99HandlingMicros()) >= _slowThreshold;
+    }
+
+    /**
+     * Gets a snapshot of the bulkhead's metrics, suitable for display or export to a monitoring system.
+     *
+     * @return A map of metric names and values.
+     */
+    public Map<String, Number> getMetrics() {
+        return ImmutableMap.<String, Number>builder()
+                           .put("capacity", _dispatcher.getCapacity())
+                           .put("concurrency", getConcurrency())
+                           .put("queueDepth", getQueueDepth())
+                           .put("submitted", _dispatcher.getSubmittedCount())
+                           .put("handled", getHandledCount())
+                           .put("dropped", _dispatcher.getDroppedCount())
+                           .put("callerRuns", _dispatcher.getCallerRunsCount())
+                           .put("failed", _dispatcher.getFailedCount())
+                           .put("slow", getSlowCount())
+                           .put("averageQueueLatencyMicros", _dispatcher.getAverageLatencyMicros())
+                           .put("p50HandlingMicros", getHandlingPercentileMicros(50))
+                           .put("p99HandlingMicros", getP99HandlingMicros())
+                           .put("maxHandlingMicros", getMaxHandlingMicros())
+                           .build();
+    }
+
+    private void handle(final T event) {
+        final long start = System.nanoTime();
+        try {
+            _delegate.accept(event);
+        } finally {
+            recordHandling(System.nanoTime() - start);
+        }
+    }
+
+    private void recordHandling(final long elapsed) {
+        _samples.set((int) (_sampleIndex.getAndIncrement() % SAMPLE_SIZE), elapsed);
+        _handled.incrementAndGet();
+        long current;
+        while (elapsed > (current = _maxHandling.get()) && !_maxHandling.compareAndSet(current, elapsed)) {
+            // Spin until the max is updated or another thread records a larger value.
+        }
+        if (elapsed < _slowThreshold) {
+            return;
+        }
+        _slow.incrementAndGet();
+        final long now         = System.currentTimeMillis();
+        final long lastWarning = _lastWarning.get();
+        if (now - lastWarning >= WARNING_INTERVAL && _lastWarning.compareAndSet(lastWarning, now)) {
+            _log.warn("The event consumer {} took {} ms to handle an event, over the slow consumer threshold of {} ms. Its p99 handling time is {} us with {} events queued and {} slow events in total.",
+                      _name, TimeUnit.NANOSECONDS.toMillis(elapsed), getSlowThresholdMillis(), getP99HandlingMicros(), getQueueDepth(), _slow.get());
+        }
+    }
+
+    private static final Logger _log = LoggerFactory.getLogger(BulkheadConsumer.class);
+
+    private final String               _name;
+    private final Consumer<T>          _delegate;
+    private final int                  _concurrency;
+    private final long                 _slowThreshold;
+    private final AsyncEventDispatcher _dispatcher;
+
+    private final AtomicLongArray _samples     = new AtomicLongArray(SAMPLE_SIZE);
+    private final AtomicLong      _sampleIndex = new AtomicLong();
+    private final AtomicLong      _handled     = new AtomicLong();
+    private final AtomicLong      _slow        = new AtomicLong();
+    private final AtomicLong      _maxHandling = new AtomicLong();
+    private final AtomicLong      _lastWarning = new AtomicLong();
+}
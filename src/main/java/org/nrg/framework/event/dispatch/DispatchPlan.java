@@ -0,0 +1,89 @@
+/*
+ * framework: org.nrg.framework.event.dispatch.DispatchPlan
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.event.dispatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.bus.Event;
+import reactor.bus.registry.Registration;
+import reactor.fn.Consumer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Caches the consumer registrations that match a particular event bus key so that events sent to that key can be
+ * delivered by iterating over the cached consumers instead of having the event bus registry select the matching
+ * consumers for each event. A plan is built for a particular registry generation: when consumers are registered or
+ * unregistered, the owner of the plan should increment its generation so that the plan is rebuilt on next use.
+ *
+ * Consumers are invoked on the calling thread in the order returned by the registry. This bypasses the event bus's
+ * dispatcher and router, so any routing customizations on the bus aren't applied. Exceptions thrown by a consumer are
+ * logged rather than passed to the event bus's error handler, and don't prevent delivery to the remaining consumers.
+ */
+public class DispatchPlan {
+    public DispatchPlan(final Object key, final List<? extends Registration<?, ?>> registrations, final long generation) {
+        _key = key;
+        _registrations = Collections.unmodifiableList(new ArrayList<>(registrations));
+        _generation = generation;
+    }
+
+    public Object getKey() {
+        return _key;
+    }
+
+    public long getGeneration() {
+        return _generation;
+    }
+
+    public int size() {
+        return _registrations.size();
+    }
+
+    /**
+     * Delivers the event to each of the consumers in the plan.
+     *
+     * @param event The event to deliver.
+     *
+     * @return Returns <b>true</b> if the plan is still valid after delivery, <b>false</b> if any of the registrations
+     *         were found to be cancelled or cancelled themselves after use, in which case the plan should be rebuilt.
+     */
+    @SuppressWarnings("unchecked")
+    public boolean dispatch(final Event<?> event) {
+        boolean valid = true;
+        event.setKey(_key);
+        for (final Registration<?, ?> registration : _registrations) {
+            if (registration.isCancelled()) {
+                valid = false;
+                continue;
+            }
+            if (registration.isPaused()) {
+                continue;
+            }
+            try {
+                ((Consumer<Event<?>>) registration.getObject()).accept(event);
+            } catch (Throwable e) {
+                _log.error("An error occurred in consumer {} handling an event for key {}", registration.getObject(), _key, e);
+            }
+            if (registration.isCancelAfterUse()) {
+                registration.cancel();
+                valid = false;
+            }
+        }
+        return valid;
+    }
+
+    private static final Logger _log = LoggerFactory.getLogger(DispatchPlan.class);
+
+    private final Object                   _key;
+    private final List<Registration<?, ?>> _registrations;
+    private final long                     _generation;
+}
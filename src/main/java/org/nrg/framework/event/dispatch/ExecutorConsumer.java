@@ -0,0 +1,55 @@
+/*
+ * framework: org.nrg.framework.event.dispatch.ExecutorConsumer
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.event.dispatch;
+
+import org.nrg.framework.concurrency.LoggingThreadPoolExecutor;
+import reactor.bus.Event;
+import reactor.fn.Consumer;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Hands each event to an executor for handling by the wrapped consumer, so that the notifying thread doesn't wait for
+ * the consumer. Unlike {@link BulkheadConsumer}, there's no queue or concurrency limit of its own: the executor decides
+ * how events are run. This is intended for consumers that block on I/O, combined with the executor from {@link
+ * LoggingThreadPoolExecutor#newVirtualThreadPerTaskExecutor()} so that each event is handled on its own virtual thread.
+ *
+ * @param <T> The type of event handled by the consumer.
+ */
+public class ExecutorConsumer<T extends Event<?>> implements Consumer<T> {
+    public ExecutorConsumer(final Consumer<T> delegate, final Executor executor) {
+        if (delegate == null || executor == null) {
+            throw new IllegalArgumentException("You must specify both the consumer and the executor.");
+        }
+        _delegate = delegate;
+        _executor = executor;
+    }
+
+    @Override
+    public void accept(final T event) {
+        _executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                _delegate.accept(event);
+            }
+        });
+    }
+
+    public Consumer<T> getDelegate() {
+        return _delegate;
+    }
+
+    public Executor getExecutor() {
+        return _executor;
+    }
+
+    private final Consumer<T> _delegate;
+    private final Executor    _executor;
+}
@@ -0,0 +1,310 @@
+/*
+ * framework: org.nrg.framework.event.dispatch.StructuredEventCoalescer
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.event.dispatch;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.nrg.framework.event.StructuredEventField;
+import org.nrg.framework.event.StructuredEventI;
+import org.nrg.framework.services.NrgEventService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.bus.Event;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sits in front of {@link NrgEventService} and collapses structured events that are considered duplicates within a
+ * short window into a single delivery. Two events are duplicates when they have the same class, are triggered with the
+ * same description, and have the same values for the configured {@link StructuredEventField key fields}.
+ *
+ * The first event for a key opens a window. The window is closed and a single event delivered when either the window
+ * time elapses or the number of events in the window reaches the configured maximum count, whichever happens first.
+ * The delivered event is the most recent event received in the window. The number of events collapsed into the
+ * delivery is set on the reactor event's headers as {@link #COALESCED_COUNT_HEADER} and can be retrieved with {@link
+ * #getCoalescedCount(Event)}.
+ *
+ * Once the coalescer has been {@link #shutdown() shut down}, events are no longer held and are delivered as they're
+ * triggered.
+ */
+public class StructuredEventCoalescer {
+    public static final String COALESCED_COUNT_HEADER = "x-nrg-coalesced-count";
+
+    public static final Set<StructuredEventField> DEFAULT_KEY_FIELDS = ImmutableSet.of(StructuredEventField.EVENT_ID, StructuredEventField.ENTITY_TYPE, StructuredEventField.ENTITY_ID);
+
+    /**
+     * Creates a coalescer keyed on the {@link #DEFAULT_KEY_FIELDS default key fields}.
+     *
+     * @param eventService The service to which coalesced events are delivered.
+     * @param windowMillis The maximum time in milliseconds that an event is held before delivery.
+     * @param maxCount     The maximum number of events that are collapsed into a single delivery.
+     */
+    public StructuredEventCoalescer(final NrgEventService eventService, final long windowMillis, final int maxCount) {
+        this(eventService, DEFAULT_KEY_FIELDS, windowMillis, maxCount);
+    }
+
+    /**
+     * Creates a coalescer keyed on the specified fields.
+     *
+     * @param eventService The service to which coalesced events are delivered.
+     * @param keyFields    The fields used to determine whether two events are duplicates.
+     * @param windowMillis The maximum time in milliseconds that an event is held before delivery.
+     * @param maxCount     The maximum number of events that are collapsed into a single delivery.
+     */
+    public StructuredEventCoalescer(final NrgEventService eventService, final Set<StructuredEventField> keyFields, final long windowMillis, final int maxCount) {
+        if (windowMillis < 1 || maxCount < 1) {
+            throw new IllegalArgumentException("The window time and maximum count must both be greater than zero.");
+        }
+        _eventService = eventService;
+        _keyFields = keyFields.toArray(new StructuredEventField[0]);
+        _windowMillis = windowMillis;
+        _maxCount = maxCount;
+        _scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("nrg-event-coalescer-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Gets the number of events that were collapsed into the specified event. Events that didn't pass through a
+     * coalescer return 1.
+     *
+     * @param event The event to check.
+     *
+     * @return The number of events collapsed into the event.
+     */
+    public static int getCoalescedCount(final Event<?> event) {
+        final Event.Headers headers = event.getHeaders();
+        return headers == null ? 1 : NumberUtils.toInt(headers.get(COALESCED_COUNT_HEADER), 1);
+    }
+
+    /**
+     * Trigger event.
+     *
+     * @param event the event
+     */
+    public void trigger(final StructuredEventI event) {
+        trigger(null, event, false);
+    }
+
+    /**
+     * Trigger event.
+     *
+     * @param description          the event desc
+     * @param event                the event
+     * @param notifyClassListeners Notify class listeners?
+     */
+    public void trigger(final String description, final StructuredEventI event, final boolean notifyClassListeners) {
+        final CoalescingKey key = new CoalescingKey(description, notifyClassListeners, event);
+        _received.incrementAndGet();
+        while (true) {
+            final Window window = _windows.get(key);
+            if (window == null) {
+                final Window created = new Window(key, event);
+                if (_windows.putIfAbsent(key, created) == null) {
+                    if (_maxCount == 1 || !schedule(created)) {
+                        deliver(created);
+                    }
+                    return;
+                }
+            } else if (window.add(event)) {
+                if (window.getCount() >= _maxCount) {
+                    deliver(window);
+                }
+                return;
+            }
+            // The window was closed or replaced while we were looking at it, so try again.
+        }
+    }
+
+    /**
+     * Immediately delivers all events that are currently held in open windows.
+     */
+    public void flush() {
+        for (final Window window : new ArrayList<>(_windows.values())) {
+            deliver(window);
+        }
+    }
+
+    /**
+     * Delivers all held events and stops the coalescer's scheduler. Events triggered after this are delivered
+     * immediately.
+     */
+    public void shutdown() {
+        _scheduler.shutdownNow();
+        flush();
+    }
+
+    public long getReceivedCount() {
+        return _received.get();
+    }
+
+    public long getDeliveredCount() {
+        return _delivered.get();
+    }
+
+    public int getOpenWindowCount() {
+        return _windows.size();
+    }
+
+    /**
+     * Schedules the window's delivery when its time elapses.
+     *
+     * @param window The window to schedule.
+     *
+     * @return Returns <b>false</b> if the coalescer has been shut down, in which case the window must be delivered by
+     *         the caller.
+     */
+    private boolean schedule(final Window window) {
+        if (_scheduler.isShutdown()) {
+            return false;
+        }
+        try {
+            _scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(window);
+                }
+            }, _windowMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (RejectedExecutionException e) {
+            // The coalescer was shut down after the check above.
+            return false;
+        }
+    }
+
+    private void deliver(final Window window) {
+        final StructuredEventI event = window.close();
+        if (event == null) {
+            return;
+        }
+        _windows.remove(window.getKey(), window);
+        _delivered.incrementAndGet();
+
+        final int           count   = window.getCount();
+        final Event<Object> wrapped = Event.<Object>wrap(event);
+        wrapped.getHeaders().set(COALESCED_COUNT_HEADER, Integer.toString(count));
+        _log.debug("Delivering {} coalesced into a single event: {}", count, event);
+
+        final CoalescingKey key = window.getKey();
+        try {
+            if (StringUtils.isNotBlank(key.getDescription())) {
+                _eventService.triggerEvent(key.getDescription(), wrapped, key.isNotifyClassListeners());
+            } else {
+                _eventService.triggerEvent(wrapped);
+            }
+        } catch (Throwable e) {
+            _log.error("An error occurred delivering a coalesced event: {}", event, e);
+        }
+    }
+
+    private class CoalescingKey {
+        CoalescingKey(final String description, final boolean notifyClassListeners, final StructuredEventI event) {
+            _description = description;
+            _notifyClassListeners = notifyClassListeners;
+            _eventClass = event.getClass();
+            _values = new Object[_keyFields.length];
+            for (int index = 0; index < _keyFields.length; index++) {
+                _values[index] = _keyFields[index].getValue(event);
+            }
+            _hashCode = 31 * (31 * (31 * _eventClass.hashCode() + (_description == null ? 0 : _description.hashCode())) + (_notifyClassListeners ? 1 : 0)) + Arrays.hashCode(_values);
+        }
+
+        String getDescription() {
+            return _description;
+        }
+
+        boolean isNotifyClassListeners() {
+            return _notifyClassListeners;
+        }
+
+        @Override
+        public boolean equals(final Object object) {
+            if (this == object) {
+                return true;
+            }
+            if (!(object instanceof CoalescingKey)) {
+                return false;
+            }
+            final CoalescingKey other = (CoalescingKey) object;
+            return _eventClass == other._eventClass && _notifyClassListeners == other._notifyClassListeners && StringUtils.equals(_description, other._description) && Arrays.equals(_values, other._values);
+        }
+
+        @Override
+        public int hashCode() {
+            return _hashCode;
+        }
+
+        private final String   _description;
+        private final boolean  _notifyClassListeners;
+        private final Class<?> _eventClass;
+        private final Object[] _values;
+        private final int      _hashCode;
+    }
+
+    private static class Window {
+        Window(final CoalescingKey key, final StructuredEventI event) {
+            _key = key;
+            _latest = event;
+            _count = 1;
+        }
+
+        CoalescingKey getKey() {
+            return _key;
+        }
+
+        synchronized int getCount() {
+            return _count;
+        }
+
+        synchronized boolean add(final StructuredEventI event) {
+            if (_closed) {
+                return false;
+            }
+            _latest = event;
+            _count++;
+            return true;
+        }
+
+        synchronized StructuredEventI close() {
+            if (_closed) {
+                return null;
+            }
+            _closed = true;
+            return _latest;
+        }
+
+        private final CoalescingKey _key;
+
+        private StructuredEventI _latest;
+        private int              _count;
+        private boolean          _closed;
+    }
+
+    private static final Logger _log = LoggerFactory.getLogger(StructuredEventCoalescer.class);
+
+    private final ConcurrentMap<CoalescingKey, Window> _windows   = new ConcurrentHashMap<>();
+    private final AtomicLong                           _received  = new AtomicLong();
+    private final AtomicLong                           _delivered = new AtomicLong();
+
+    private final NrgEventService          _eventService;
+    private final StructuredEventField[]   _keyFields;
+    private final long                     _windowMillis;
+    private final int                      _maxCount;
+    private final ScheduledExecutorService _scheduler;
+}
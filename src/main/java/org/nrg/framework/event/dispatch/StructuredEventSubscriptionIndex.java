@@ -0,0 +1,343 @@
+/*
+ * framework: org.nrg.framework.event.dispatch.StructuredEventSubscriptionIndex
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.event.dispatch;
+
+import com.google.common.collect.ImmutableMap;
+import org.apache.commons.lang3.ClassUtils;
+import org.nrg.framework.event.StructuredEvent;
+import org.nrg.framework.event.StructuredEventField;
+import org.nrg.framework.event.StructuredEventI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.bus.Event;
+import reactor.fn.Consumer;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Matches structured events against a large number of subscriptions, where each subscription is a conjunction of
+ * equality predicates over {@link StructuredEventField structured event fields}, event-specific fields, and optionally
+ * the event class. Instead of testing each subscription against each event, the predicates are decomposed into
+ * postings lists keyed by field and value. Matching an event looks up the postings for each of the event's field
+ * values and counts the number of predicates satisfied for each subscription that appears in them: a subscription
+ * matches when all of its predicates are satisfied. The cost of matching an event is therefore proportional to the
+ * number of subscriptions with at least one satisfied predicate, not the total number of subscriptions. Subscriptions
+ * with no predicates match every event.
+ *
+ * The index is also a reactor consumer, so it can be registered with {@link
+ * org.nrg.framework.services.NrgEventService#registerListener(reactor.bus.selector.Selector, Consumer)} to fan events
+ * out to the matching subscriptions with a single event bus registration. Subscriptions are expected to change much
+ * less often than events are matched, so the postings are kept in an immutable snapshot that's rebuilt whenever a
+ * subscription is added or cancelled.
+ */
+public class StructuredEventSubscriptionIndex implements Consumer<Event<?>> {
+    /**
+     * Creates a subscription that's matched on the specified field values.
+     *
+     * @param fields  The structured event fields and the values they must have. Values are compared by their string
+     *                representations.
+     * @param handler The handler to invoke with matching events.
+     *
+     * @return The new subscription.
+     */
+    public Subscription subscribe(final Map<StructuredEventField, ?> fields, final Consumer<StructuredEventI> handler) {
+        return subscribe(null, fields, Collections.<String, String>emptyMap(), handler);
+    }
+
+    /**
+     * Creates a subscription that's matched on the specified event class and field values.
+     *
+     * @param eventClass          The class of events to match. Events that are instances of a subclass are matched.
+     *                            Null matches any class.
+     * @param fields              The structured event fields and the values they must have. Values are compared by
+     *                            their string representations.
+     * @param eventSpecificFields The event-specific fields and the values they must have.
+     * @param handler             The handler to invoke with matching events.
+     *
+     * @return The new subscription.
+     */
+    public Subscription subscribe(final Class<? extends StructuredEventI> eventClass, final Map<StructuredEventField, ?> fields, final Map<String, String> eventSpecificFields, final Consumer<StructuredEventI> handler) {
+        final Map<StructuredEventField, String> fieldValues = new EnumMap<>(StructuredEventField.class);
+        for (final Map.Entry<StructuredEventField, ?> entry : fields.entrySet()) {
+            if (entry.getValue() == null) {
+                throw new IllegalArgumentException("The value for the subscription field " + entry.getKey() + " can't be null");
+            }
+            fieldValues.put(entry.getKey(), entry.getValue().toString());
+        }
+        final Subscription subscription = new Subscription(eventClass, fieldValues, ImmutableMap.copyOf(eventSpecificFields), handler);
+        synchronized (_subscriptions) {
+            _subscriptions.add(subscription);
+            rebuild();
+        }
+        return subscription;
+    }
+
+    /**
+     * Finds the subscriptions that match the event.
+     *
+     * @param event The event to match.
+     *
+     * @return The matching subscriptions.
+     */
+    public List<Subscription> match(final StructuredEventI event) {
+        final Postings           postings = _postings;
+        final List<Subscription> matches  = new ArrayList<>(Arrays.asList(postings.getUnconditional()));
+
+        final Map<Subscription, int[]> counts = new HashMap<>();
+        for (final String className : getClassNames(event.getClass())) {
+            count(postings.getClassPostings().get(className), counts, matches);
+        }
+        for (final Map.Entry<StructuredEventField, Map<String, Subscription[]>> field : postings.getFieldPostings().entrySet()) {
+            final Object value = field.getKey().getValue(event);
+            if (value != null) {
+                count(field.getValue().get(value.toString()), counts, matches);
+            }
+        }
+        if (!postings.getEventSpecificPostings().isEmpty() && event instanceof StructuredEvent) {
+            for (final Map.Entry<String, String> entry : ((StructuredEvent) event).getEventSpecificFieldsAsMap().entrySet()) {
+                final Map<String, Subscription[]> values = postings.getEventSpecificPostings().get(entry.getKey());
+                if (values != null && entry.getValue() != null) {
+                    count(values.get(entry.getValue()), counts, matches);
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Delivers the event to the handler of each matching subscription. Exceptions thrown by a handler are logged and
+     * don't prevent delivery to the remaining handlers.
+     *
+     * @param event The event to deliver.
+     *
+     * @return The number of subscriptions the event was delivered to.
+     */
+    public int deliver(final StructuredEventI event) {
+        final List<Subscription> matches = match(event);
+        for (final Subscription subscription : matches) {
+            try {
+                subscription.getHandler().accept(event);
+            } catch (Throwable e) {
+                _log.error("An error occurred in the handler for subscription {} handling the event {}", subscription, event, e);
+            }
+        }
+        return matches.size();
+    }
+
+    /**
+     * Delivers structured events from the event bus to the matching subscriptions. Events with other types of data are
+     * ignored.
+     *
+     * @param event The event bus event.
+     */
+    @Override
+    public void accept(final Event<?> event) {
+        if (event.getData() instanceof StructuredEventI) {
+            deliver((StructuredEventI) event.getData());
+        }
+    }
+
+    public int getSubscriptionCount() {
+        return _postings.getSize();
+    }
+
+    /**
+     * A subscription in the index.
+     */
+    public final class Subscription {
+        private Subscription(final Class<? extends StructuredEventI> eventClass, final Map<StructuredEventField, String> fields, final Map<String, String> eventSpecificFields, final Consumer<StructuredEventI> handler) {
+            _eventClass = eventClass;
+            _fields = Collections.unmodifiableMap(fields);
+            _eventSpecificFields = eventSpecificFields;
+            _handler = handler;
+            _predicateCount = (eventClass != null ? 1 : 0) + fields.size() + eventSpecificFields.size();
+        }
+
+        public Class<? extends StructuredEventI> getEventClass() {
+            return _eventClass;
+        }
+
+        public Map<StructuredEventField, String> getFields() {
+            return _fields;
+        }
+
+        public Map<String, String> getEventSpecificFields() {
+            return _eventSpecificFields;
+        }
+
+        public Consumer<StructuredEventI> getHandler() {
+            return _handler;
+        }
+
+        /**
+         * Removes the subscription from the index.
+         */
+        public void cancel() {
+            synchronized (_subscriptions) {
+                if (_subscriptions.remove(this)) {
+                    rebuild();
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Subscription{eventClass=" + (_eventClass == null ? "*" : _eventClass.getName()) + ", fields=" + _fields + ", eventSpecificFields=" + _eventSpecificFields + "}";
+        }
+
+        private int getPredicateCount() {
+            return _predicateCount;
+        }
+
+        private final Class<? extends StructuredEventI> _eventClass;
+        private final Map<StructuredEventField, String> _fields;
+        private final Map<String, String>               _eventSpecificFields;
+        private final Consumer<StructuredEventI>        _handler;
+        private final int                               _predicateCount;
+    }
+
+    private static void count(final Subscription[] candidates, final Map<Subscription, int[]> counts, final List<Subscription> matches) {
+        if (candidates == null) {
+            return;
+        }
+        for (final Subscription candidate : candidates) {
+            int[] count = counts.get(candidate);
+            if (count == null) {
+                count = new int[1];
+                counts.put(candidate, count);
+            }
+            if (++count[0] == candidate.getPredicateCount()) {
+                matches.add(candidate);
+            }
+        }
+    }
+
+    private List<String> getClassNames(final Class<?> eventClass) {
+        final List<String> cached = _classNames.get(eventClass);
+        if (cached != null) {
+            return cached;
+        }
+        final List<String> names = new ArrayList<>();
+        names.add(eventClass.getName());
+        for (final Class<?> superclass : ClassUtils.getAllSuperclasses(eventClass)) {
+            names.add(superclass.getName());
+        }
+        for (final Class<?> iface : ClassUtils.getAllInterfaces(eventClass)) {
+            names.add(iface.getName());
+        }
+        final List<String> unmodifiable = Collections.unmodifiableList(names);
+        final List<String> existing     = _classNames.putIfAbsent(eventClass, unmodifiable);
+        return existing != null ? existing : unmodifiable;
+    }
+
+    /**
+     * Rebuilds the postings snapshot from the current subscriptions. Must be called while holding the lock on the
+     * subscriptions list.
+     */
+    private void rebuild() {
+        final List<Subscription>                                          unconditional  = new ArrayList<>();
+        final Map<String, List<Subscription>>                             classes        = new HashMap<>();
+        final Map<StructuredEventField, Map<String, List<Subscription>>> fields         = new EnumMap<>(StructuredEventField.class);
+        final Map<String, Map<String, List<Subscription>>>                eventSpecifics = new HashMap<>();
+        for (final Subscription subscription : _subscriptions) {
+            if (subscription.getPredicateCount() == 0) {
+                unconditional.add(subscription);
+                continue;
+            }
+            if (subscription.getEventClass() != null) {
+                addPosting(classes, subscription.getEventClass().getName(), subscription);
+            }
+            for (final Map.Entry<StructuredEventField, String> field : subscription.getFields().entrySet()) {
+                if (!fields.containsKey(field.getKey())) {
+                    fields.put(field.getKey(), new HashMap<String, List<Subscription>>());
+                }
+                addPosting(fields.get(field.getKey()), field.getValue(), subscription);
+            }
+            for (final Map.Entry<String, String> field : subscription.getEventSpecificFields().entrySet()) {
+                if (!eventSpecifics.containsKey(field.getKey())) {
+                    eventSpecifics.put(field.getKey(), new HashMap<String, List<Subscription>>());
+                }
+                addPosting(eventSpecifics.get(field.getKey()), field.getValue(), subscription);
+            }
+        }
+
+        final Map<StructuredEventField, Map<String, Subscription[]>> fieldPostings = new EnumMap<>(StructuredEventField.class);
+        for (final Map.Entry<StructuredEventField, Map<String, List<Subscription>>> field : fields.entrySet()) {
+            fieldPostings.put(field.getKey(), freeze(field.getValue()));
+        }
+        final Map<String, Map<String, Subscription[]>> eventSpecificPostings = new HashMap<>();
+        for (final Map.Entry<String, Map<String, List<Subscription>>> field : eventSpecifics.entrySet()) {
+            eventSpecificPostings.put(field.getKey(), freeze(field.getValue()));
+        }
+        _postings = new Postings(_subscriptions.size(), unconditional.toArray(new Subscription[0]), freeze(classes), fieldPostings, eventSpecificPostings);
+    }
+
+    private static void addPosting(final Map<String, List<Subscription>> postings, final String value, final Subscription subscription) {
+        List<Subscription> subscriptions = postings.get(value);
+        if (subscriptions == null) {
+            subscriptions = new ArrayList<>();
+            postings.put(value, subscriptions);
+        }
+        subscriptions.add(subscription);
+    }
+
+    private static Map<String, Subscription[]> freeze(final Map<String, List<Subscription>> postings) {
+        final Map<String, Subscription[]> frozen = new HashMap<>(postings.size() * 4 / 3 + 1);
+        for (final Map.Entry<String, List<Subscription>> entry : postings.entrySet()) {
+            frozen.put(entry.getKey(), entry.getValue().toArray(new Subscription[0]));
+        }
+        return frozen;
+    }
+
+    private static class Postings {
+        Postings(final int size, final Subscription[] unconditional, final Map<String, Subscription[]> classPostings, final Map<StructuredEventField, Map<String, Subscription[]>> fieldPostings, final Map<String, Map<String, Subscription[]>> eventSpecificPostings) {
+            _size = size;
+            _unconditional = unconditional;
+            _classPostings = classPostings;
+            _fieldPostings = fieldPostings;
+            _eventSpecificPostings = eventSpecificPostings;
+        }
+
+        int getSize() {
+            return _size;
+        }
+
+        Subscription[] getUnconditional() {
+            return _unconditional;
+        }
+
+        Map<String, Subscription[]> getClassPostings() {
+            return _classPostings;
+        }
+
+        Map<StructuredEventField, Map<String, Subscription[]>> getFieldPostings() {
+            return _fieldPostings;
+        }
+
+        Map<String, Map<String, Subscription[]>> getEventSpecificPostings() {
+            return _eventSpecificPostings;
+        }
+
+        private final int                                                    _size;
+        private final Subscription[]                                         _unconditional;
+        private final Map<String, Subscription[]>                            _classPostings;
+        private final Map<StructuredEventField, Map<String, Subscription[]>> _fieldPostings;
+        private final Map<String, Map<String, Subscription[]>>               _eventSpecificPostings;
+    }
+
+    private static final Logger _log = LoggerFactory.getLogger(StructuredEventSubscriptionIndex.class);
+
+    private final List<Subscription>                    _subscriptions = new ArrayList<>();
+    private final ConcurrentMap<Class<?>, List<String>> _classNames    = new ConcurrentHashMap<>();
+
+    private volatile Postings _postings = new Postings(0, new Subscription[0], Collections.<String, Subscription[]>emptyMap(), Collections.<StructuredEventField, Map<String, Subscription[]>>emptyMap(), Collections.<String, Map<String, Subscription[]>>emptyMap());
+}
@@ -0,0 +1,393 @@
+/*
+ * framework: org.nrg.framework.event.persist.FilterableValueIndex
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.event.persist;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.commons.lang3.StringUtils;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.nrg.framework.event.EventClass;
+import org.nrg.framework.event.Filterable;
+import org.nrg.framework.event.FilterableAccessor;
+import org.nrg.framework.event.FilterableAccessors;
+import org.nrg.framework.event.StructuredEventI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.annotation.AnnotationUtils;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Maintains the distinct values of the {@link Filterable filterable} properties of event classes, so that filter UIs
+ * can be populated without scanning the event tables. A property is indexed when its getter is annotated with {@link
+ * Filterable} and <b>includeValuesFromDatabase</b> is set. The event ID is indexed as the property <b>eventId</b> when
+ * the event class is annotated with {@link EventClass} and <b>includeValuesFromDatabase</b> is set.
+ *
+ * Property values are read through the event class's {@link FilterableAccessor}, so classes with a generated accessor
+ * are indexed without reflection.
+ *
+ * The index is updated incrementally by calling {@link #record(StructuredEventI)} as events are persisted. The {@link
+ * WriteBehindEventPersister} does this automatically when it's given an index. Values already in the database can be
+ * loaded with {@link #seed(SessionFactory, Class)} when the index is created. Each property keeps at most the
+ * configured maximum number of values: once that's reached, new values are ignored and the property is reported as
+ * {@link #isTruncated(Class, String) truncated}.
+ *
+ * Note the limits of this approach:
+ *
+ * <ul>
+ *     <li>
+ *         The index is held in memory and is local to the JVM. It only sees events recorded in this JVM and values
+ *         seeded from the database, so on a cluster, values persisted by other nodes since this index was seeded are
+ *         missing. Values are never removed when events are deleted, until the class is {@link #clear(Class) cleared}.
+ *     </li>
+ *     <li>
+ *         Seeding loads the lowest values of each property in sort order, so a truncated property is missing values
+ *         that sort after the last value loaded, as well as any values recorded after the limit was reached. Prefix
+ *         searches on a truncated property can miss matching values, so callers should check {@link
+ *         #isTruncated(Class, String)} and fall back to querying the database when it's set.
+ *     </li>
+ * </ul>
+ */
+public class FilterableValueIndex {
+    public static final String EVENT_ID_PROPERTY  = "eventId";
+    public static final int    DEFAULT_MAX_VALUES = 10000;
+
+    public FilterableValueIndex() {
+        this(DEFAULT_MAX_VALUES);
+    }
+
+    public FilterableValueIndex(final int maxValuesPerProperty) {
+        _maxValuesPerProperty = maxValuesPerProperty;
+    }
+
+    /**
+     * Adds the values of the event's indexed properties to the index.
+     *
+     * @param event The event to record.
+     */
+    public void record(final StructuredEventI event) {
+        if (event == null) {
+            return;
+        }
+        final Class<?>          eventClass = event.getClass();
+        final IndexedProperties indexed    = getIndexed(eventClass);
+        if (indexed.isEventId() && event.getEventId() != null) {
+            add(eventClass, EVENT_ID_PROPERTY, event.getEventId());
+        }
+        if (indexed.getFilterables().isEmpty()) {
+            return;
+        }
+        @SuppressWarnings("unchecked") final FilterableAccessor<StructuredEventI> accessor = (FilterableAccessor<StructuredEventI>) FilterableAccessors.forClass(eventClass);
+        for (final String property : indexed.getFilterables()) {
+            try {
+                final Object value = accessor.getValue(event, property);
+                if (value != null) {
+                    add(eventClass, property, value.toString());
+                }
+            } catch (RuntimeException e) {
+                _log.warn("Unable to get the value of the property {} from an event of type {}", property, eventClass.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Adds the values of all of the indexed properties of the events to the index.
+     *
+     * @param events The events to record.
+     */
+    public void recordAll(final Collection<? extends StructuredEventI> events) {
+        for (final StructuredEventI event : events) {
+            record(event);
+        }
+    }
+
+    /**
+     * Adds the submitted values to the index for the specified property.
+     *
+     * @param eventClass The event class.
+     * @param property   The property name.
+     * @param values     The values to add.
+     */
+    public void seed(final Class<?> eventClass, final String property, final Collection<?> values) {
+        for (final Object value : values) {
+            if (value != null) {
+                add(eventClass, property, value.toString());
+            }
+        }
+    }
+
+    /**
+     * Loads the distinct values of each of the indexed properties of the event class from the database. Properties that
+     * aren't mapped to a column for the event class are skipped. When a property has more values than the index keeps,
+     * the lowest values in sort order are loaded and the property is marked as truncated.
+     *
+     * @param sessionFactory The session factory to use.
+     * @param eventClass     The mapped event class.
+     */
+    public void seed(final SessionFactory sessionFactory, final Class<? extends PersistentEventImplementerI> eventClass) {
+        final Session session = sessionFactory.openSession();
+        try {
+            for (final String property : getIndexed(eventClass).getAll()) {
+                try {
+                    final List<?> values = session.createCriteria(eventClass)
+                                                  .add(Restrictions.isNotNull(property))
+                                                  .setProjection(Projections.distinct(Projections.property(property)))
+                                                  .addOrder(Order.asc(property))
+                                                  .setMaxResults(_maxValuesPerProperty + 1)
+                                                  .list();
+                    seed(eventClass, property, values);
+                    _log.debug("Seeded {} values for the property {} of the event class {}", values.size(), property, eventClass.getName());
+                } catch (Exception e) {
+                    _log.info("Unable to load values for the property {} of the event class {} from the database, it may not be mapped", property, eventClass.getName(), e);
+                }
+            }
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Gets the names of the indexed properties for the event class.
+     *
+     * @param eventClass The event class.
+     *
+     * @return The names of the indexed properties.
+     */
+    public Set<String> getIndexedProperties(final Class<?> eventClass) {
+        return getIndexed(eventClass).getAll();
+    }
+
+    /**
+     * Gets the values of the property that start with the specified prefix in sorted order.
+     *
+     * @param eventClass The event class.
+     * @param property   The property name.
+     * @param prefix     The prefix to search for. Blank returns all values.
+     * @param offset     The number of matching values to skip.
+     * @param limit      The maximum number of values to return.
+     *
+     * @return The matching values.
+     */
+    public List<String> getValues(final Class<?> eventClass, final String property, final String prefix, final int offset, final int limit) {
+        final PropertyValues values = getPropertyValues(eventClass, property);
+        if (values == null || limit < 1) {
+            return Collections.emptyList();
+        }
+        final List<String> results = new ArrayList<>(Math.min(limit, values.size()));
+        int                skipped = 0;
+        for (final String value : values.startingWith(prefix)) {
+            if (skipped++ < offset) {
+                continue;
+            }
+            results.add(value);
+            if (results.size() == limit) {
+                break;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Gets all of the values of the property in sorted order.
+     *
+     * @param eventClass The event class.
+     * @param property   The property name.
+     *
+     * @return All of the values for the property.
+     */
+    public List<String> getValues(final Class<?> eventClass, final String property) {
+        final PropertyValues values = getPropertyValues(eventClass, property);
+        return values == null ? Collections.<String>emptyList() : ImmutableList.copyOf(values.startingWith(null));
+    }
+
+    /**
+     * Counts the values of the property that start with the specified prefix.
+     *
+     * @param eventClass The event class.
+     * @param property   The property name.
+     * @param prefix     The prefix to search for. Blank counts all values.
+     *
+     * @return The number of matching values.
+     */
+    public int countValues(final Class<?> eventClass, final String property, final String prefix) {
+        final PropertyValues values = getPropertyValues(eventClass, property);
+        if (values == null) {
+            return 0;
+        }
+        if (StringUtils.isBlank(prefix)) {
+            return values.size();
+        }
+        int count = 0;
+        for (final String ignored : values.startingWith(prefix)) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Indicates whether values for the property have been dropped because the maximum number of values was reached.
+     *
+     * @param eventClass The event class.
+     * @param property   The property name.
+     *
+     * @return Returns <b>true</b> if the property's values are incomplete.
+     */
+    public boolean isTruncated(final Class<?> eventClass, final String property) {
+        final PropertyValues values = getPropertyValues(eventClass, property);
+        return values != null && values.isTruncated();
+    }
+
+    /**
+     * Removes all values for the event class from the index.
+     *
+     * @param eventClass The event class.
+     */
+    public void clear(final Class<?> eventClass) {
+        _values.remove(eventClass.getName());
+    }
+
+    private void add(final Class<?> eventClass, final String property, final String value) {
+        ConcurrentMap<String, PropertyValues> properties = _values.get(eventClass.getName());
+        if (properties == null) {
+            final ConcurrentMap<String, PropertyValues> created = new ConcurrentHashMap<>();
+            properties = _values.putIfAbsent(eventClass.getName(), created);
+            if (properties == null) {
+                properties = created;
+            }
+        }
+        PropertyValues values = properties.get(property);
+        if (values == null) {
+            final PropertyValues created = new PropertyValues(_maxValuesPerProperty);
+            values = properties.putIfAbsent(property, created);
+            if (values == null) {
+                values = created;
+            }
+        }
+        values.add(value);
+    }
+
+    private PropertyValues getPropertyValues(final Class<?> eventClass, final String property) {
+        final ConcurrentMap<String, PropertyValues> properties = _values.get(eventClass.getName());
+        return properties == null ? null : properties.get(property);
+    }
+
+    private IndexedProperties getIndexed(final Class<?> eventClass) {
+        final IndexedProperties cached = _indexed.get(eventClass);
+        if (cached != null) {
+            return cached;
+        }
+        final Set<String> properties = new TreeSet<>();
+        for (final Method method : eventClass.getMethods()) {
+            if (method.getParameterTypes().length > 0 || method.getReturnType() == Void.TYPE || Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            final Filterable filterable = AnnotationUtils.findAnnotation(method, Filterable.class);
+            if (filterable != null && filterable.includeValuesFromDatabase()) {
+                properties.add(FilterableAccessors.getPropertyName(method.getName()));
+            }
+        }
+        final EventClass        annotation = AnnotationUtils.findAnnotation(eventClass, EventClass.class);
+        final boolean           eventId    = annotation != null && annotation.includeValuesFromDatabase() && StructuredEventI.class.isAssignableFrom(eventClass) && !properties.contains(EVENT_ID_PROPERTY);
+        final IndexedProperties indexed    = new IndexedProperties(properties, eventId);
+        final IndexedProperties existing   = _indexed.putIfAbsent(eventClass, indexed);
+        return existing != null ? existing : indexed;
+    }
+
+    private static class IndexedProperties {
+        IndexedProperties(final Set<String> filterables, final boolean eventId) {
+            _filterables = Collections.unmodifiableSet(filterables);
+            final Set<String> all = new TreeSet<>(filterables);
+            if (eventId) {
+                all.add(EVENT_ID_PROPERTY);
+            }
+            _all = Collections.unmodifiableSet(all);
+            _eventId = eventId;
+        }
+
+        Set<String> getFilterables() {
+            return _filterables;
+        }
+
+        Set<String> getAll() {
+            return _all;
+        }
+
+        boolean isEventId() {
+            return _eventId;
+        }
+
+        private final Set<String> _filterables;
+        private final Set<String> _all;
+        private final boolean     _eventId;
+    }
+
+    private static class PropertyValues {
+        PropertyValues(final int maxValues) {
+            _maxValues = maxValues;
+        }
+
+        void add(final String value) {
+            if (_values.contains(value)) {
+                return;
+            }
+            // Reserve a slot before adding the value so that concurrent adds can't push the set over the maximum.
+            int size;
+            do {
+                size = _size.get();
+                if (size >= _maxValues) {
+                    _truncated = true;
+                    return;
+                }
+            } while (!_size.compareAndSet(size, size + 1));
+            if (!_values.add(value)) {
+                // Another thread added the same value in the meantime, so release the slot.
+                _size.decrementAndGet();
+            }
+        }
+
+        int size() {
+            return _size.get();
+        }
+
+        boolean isTruncated() {
+            return _truncated;
+        }
+
+        Iterable<String> startingWith(final String prefix) {
+            if (StringUtils.isEmpty(prefix)) {
+                return _values;
+            }
+            // Every string that starts with the prefix sorts between the prefix and the prefix followed by the
+            // highest possible character.
+            return _values.subSet(prefix, true, prefix + Character.MAX_VALUE, false);
+        }
+
+        private final ConcurrentSkipListSet<String> _values = new ConcurrentSkipListSet<>();
+        private final AtomicInteger                 _size   = new AtomicInteger();
+        private final int                           _maxValues;
+
+        private volatile boolean _truncated;
+    }
+
+    private static final Logger _log = LoggerFactory.getLogger(FilterableValueIndex.class);
+
+    private final ConcurrentMap<Class<?>, IndexedProperties>                   _indexed   = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ConcurrentMap<String, PropertyValues>> _values    = new ConcurrentHashMap<>();
+    private final int                                                          _maxValuesPerProperty;
+}
@@ -0,0 +1,54 @@
+/*
+ * framework: org.nrg.framework.event.persist.JournaledStructuredEvent
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.event.persist;
+
+import org.nrg.framework.event.StructuredEvent;
+
+/**
+ * The Class JournaledStructuredEvent.
+ *
+ * This is used by the {@link StructuredEventJournal} to replay an event when the event's original class isn't available
+ * or can't be instantiated with a default constructor. It carries the structured event fields and event-specific fields
+ * of the original event, along with the name of the original event class.
+ */
+public class JournaledStructuredEvent extends StructuredEvent {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = -1820964417281557139L;
+
+	/** The name of the original event class. */
+	private final String journaledClass;
+
+	/**
+	 * Instantiates a new journaled structured event.
+	 *
+	 * @param journaledClass the name of the original event class
+	 */
+	public JournaledStructuredEvent(final String journaledClass) {
+		this.journaledClass = journaledClass;
+	}
+
+	/**
+	 * Gets the name of the class of the original event.
+	 *
+	 * @return the journaled class
+	 */
+	public String getJournaledClass() {
+		return journaledClass;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "JournaledStructuredEvent [journaledClass=" + journaledClass + ", eventId=" + getEventId() + ", entityType=" + getEntityType() + ", entityId=" + getEntityId() + "]";
+	}
+}
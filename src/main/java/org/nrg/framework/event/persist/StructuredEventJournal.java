@@ -0,0 +1,742 @@
+/*
+ * framework: org.nrg.framework.event.persist.StructuredEventJournal
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.event.persist;
+
+import org.nrg.framework.event.StructuredEvent;
+import org.nrg.framework.event.StructuredEventI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.fn.Consumer;
+
+import java.io.*;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of structured events that can be replayed after a listener outage. The journal is stored in a
+ * directory as a series of fixed-size, memory-mapped segment files, each named for the offset of its first record.
+ * Every appended event is assigned the next sequential offset. Records hold the structured event fields and
+ * event-specific fields in a compact binary encoding, along with the time the event was journaled and the description
+ * and class notification flag the event was triggered with, and are protected by a checksum so that a partially
+ * written record at the end of the journal is discarded when the journal is reopened.
+ *
+ * Events can be replayed from a particular offset or from the first event journaled at or after a particular time.
+ * Named consumers can {@link #commit(String, long) commit} the offset they've processed up to, and {@link
+ * #replay(String, Consumer)} replays the events a consumer hasn't yet processed. Replayed events are instances of the
+ * original event class when it's available and has a default constructor, and {@link JournaledStructuredEvent} otherwise.
+ *
+ * Segments are unmapped as soon as they're deleted or the journal is closed, rather than when their buffers are
+ * garbage collected. Deleting segments and closing the journal wait for any replays in progress to finish, so a replay
+ * never reads a segment that's being deleted. This means that a replay handler mustn't delete segments or close the
+ * journal itself, which would never return.
+ *
+ * Only one journal instance should have a directory open at a time.
+ */
+public class StructuredEventJournal implements Closeable {
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * An event read from the journal.
+     */
+    public static final class Entry {
+        Entry(final long offset, final long timestamp, final String description, final boolean notifyClassListeners, final StructuredEventI event) {
+            _offset = offset;
+            _timestamp = timestamp;
+            _description = description;
+            _notifyClassListeners = notifyClassListeners;
+            _event = event;
+        }
+
+        public long getOffset() {
+            return _offset;
+        }
+
+        public long getTimestamp() {
+            return _timestamp;
+        }
+
+        public String getDescription() {
+            return _description;
+        }
+
+        public boolean isNotifyClassListeners() {
+            return _notifyClassListeners;
+        }
+
+        public StructuredEventI getEvent() {
+            return _event;
+        }
+
+        private final long             _offset;
+        private final long             _timestamp;
+        private final String           _description;
+        private final boolean          _notifyClassListeners;
+        private final StructuredEventI _event;
+    }
+
+    public StructuredEventJournal(final File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public StructuredEventJournal(final File directory, final int segmentSize) throws IOException {
+        if (segmentSize < HEADER_SIZE * 2) {
+            throw new IllegalArgumentException("The segment size must be at least " + HEADER_SIZE * 2 + " bytes");
+        }
+        _directory = directory;
+        _consumers = new File(directory, "consumers");
+        _segmentSize = segmentSize;
+        if (!_consumers.isDirectory() && !_consumers.mkdirs()) {
+            throw new IOException("Unable to create the journal directory " + _consumers);
+        }
+
+        final File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(final File dir, final String name) {
+                return SEGMENT_NAME.matcher(name).matches();
+            }
+        });
+        if (files != null) {
+            for (final File file : files) {
+                final long baseOffset = Long.parseLong(file.getName().substring(0, file.getName().indexOf('.')));
+                _segments.put(baseOffset, new Segment(file, baseOffset));
+            }
+        }
+        if (_segments.isEmpty()) {
+            _active = createSegment(0);
+        } else {
+            _active = _segments.lastEntry().getValue();
+            _active.openForAppend();
+        }
+        _log.info("Opened the event journal in {} with {} segments, offsets {} to {}", directory, _segments.size(), getStartOffset(), getEndOffset());
+    }
+
+    /**
+     * Appends the event to the journal.
+     *
+     * @param event The event to append.
+     *
+     * @return The offset assigned to the event.
+     *
+     * @throws IOException When a new segment is needed and can't be created.
+     */
+    public long append(final StructuredEventI event) throws IOException {
+        return append(event, null, false);
+    }
+
+    /**
+     * Appends the event to the journal, along with the description and class notification flag it was triggered with.
+     *
+     * @param event                The event to append.
+     * @param description          The event description, which may be null.
+     * @param notifyClassListeners Whether class listeners were notified.
+     *
+     * @return The offset assigned to the event.
+     *
+     * @throws IOException When a new segment is needed and can't be created.
+     */
+    public synchronized long append(final StructuredEventI event, final String description, final boolean notifyClassListeners) throws IOException {
+        if (_closed) {
+            throw new IllegalStateException("The event journal in " + _directory + " is closed");
+        }
+        final byte[] payload = encode(event, description, notifyClassListeners);
+        if (HEADER_SIZE + payload.length > _segmentSize - HEADER_SIZE) {
+            throw new IllegalArgumentException("The encoded event is " + payload.length + " bytes, which is too large for the journal segment size of " + _segmentSize + " bytes");
+        }
+        if (!_active.hasRoomFor(payload.length)) {
+            _active.seal();
+            _active = createSegment(_active.getEndOffset());
+        }
+        return _active.append(System.currentTimeMillis(), payload);
+    }
+
+    /**
+     * Replays the events starting at the specified offset.
+     *
+     * @param fromOffset The offset of the first event to replay. If this is before the start of the journal, replay
+     *                   starts with the oldest available event.
+     * @param handler    The handler to which the events are passed.
+     *
+     * @return The offset following the last replayed event.
+     */
+    public long replay(final long fromOffset, final Consumer<Entry> handler) {
+        _retention.readLock().lock();
+        try {
+            checkOpen();
+            final long start = Math.max(fromOffset, getStartOffset());
+            long       next  = start;
+            for (final Segment segment : getSegmentsFrom(start)) {
+                final ByteBuffer buffer = segment.getReadBuffer();
+                long             offset = segment.getBaseOffset();
+                while (readHeader(buffer, segment)) {
+                    if (offset >= start) {
+                        handler.accept(readEntry(buffer, offset));
+                        next = offset + 1;
+                    } else {
+                        skipRecord(buffer);
+                    }
+                    offset++;
+                }
+            }
+            return next;
+        } finally {
+            _retention.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replays the events journaled at or after the specified time.
+     *
+     * @param timestamp The time in milliseconds since the epoch.
+     * @param handler   The handler to which the events are passed.
+     *
+     * @return The offset following the last replayed event.
+     */
+    public long replayFromTimestamp(final long timestamp, final Consumer<Entry> handler) {
+        return replay(findOffset(timestamp), handler);
+    }
+
+    /**
+     * Replays the events that the named consumer hasn't yet committed, committing the consumer's offset as events are
+     * handled. If the handler throws an exception, the offset of the event that failed remains uncommitted, so that it's
+     * replayed again on the next call.
+     *
+     * @param consumer The name of the consumer.
+     * @param handler  The handler to which the events are passed.
+     *
+     * @return The offset following the last replayed event.
+     *
+     * @throws IOException When the consumer's offset can't be committed.
+     */
+    public long replay(final String consumer, final Consumer<Entry> handler) throws IOException {
+        final long[] committed = {getCommittedOffset(consumer)};
+        try {
+            replay(committed[0], new Consumer<Entry>() {
+                @Override
+                public void accept(final Entry entry) {
+                    handler.accept(entry);
+                    committed[0] = entry.getOffset() + 1;
+                    if (committed[0] % COMMIT_INTERVAL == 0) {
+                        commitQuietly(consumer, committed[0]);
+                    }
+                }
+            });
+        } finally {
+            commit(consumer, committed[0]);
+        }
+        return committed[0];
+    }
+
+    /**
+     * Finds the offset of the first event journaled at or after the specified time.
+     *
+     * @param timestamp The time in milliseconds since the epoch.
+     *
+     * @return The offset of the first matching event, or the end offset if there are no matching events.
+     */
+    public long findOffset(final long timestamp) {
+        _retention.readLock().lock();
+        try {
+            checkOpen();
+            final List<Segment> segments = getSegmentsFrom(getStartOffset());
+            // Start with the last segment whose first event was journaled before the timestamp.
+            int first = 0;
+            for (int index = 0; index < segments.size(); index++) {
+                final ByteBuffer buffer = segments.get(index).getReadBuffer();
+                if (!readHeader(buffer, segments.get(index)) || buffer.getLong(buffer.position() + 8) >= timestamp) {
+                    break;
+                }
+                first = index;
+            }
+            for (final Segment segment : segments.subList(first, segments.size())) {
+                final ByteBuffer buffer = segment.getReadBuffer();
+                long             offset = segment.getBaseOffset();
+                while (readHeader(buffer, segment)) {
+                    if (buffer.getLong(buffer.position() + 8) >= timestamp) {
+                        return offset;
+                    }
+                    skipRecord(buffer);
+                    offset++;
+                }
+            }
+            return getEndOffset();
+        } finally {
+            _retention.readLock().unlock();
+        }
+    }
+
+    /**
+     * Records that the named consumer has processed all events before the specified offset.
+     *
+     * @param consumer The name of the consumer.
+     * @param offset   The offset of the next event the consumer should process.
+     *
+     * @throws IOException When the offset can't be written.
+     */
+    public void commit(final String consumer, final long offset) throws IOException {
+        final File file = getConsumerFile(consumer);
+        final File temp = new File(file.getPath() + ".tmp");
+        try (final DataOutputStream output = new DataOutputStream(new FileOutputStream(temp))) {
+            output.writeLong(offset);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Gets the offset of the next event the named consumer should process. For consumers that haven't committed an
+     * offset, this is the start of the journal.
+     *
+     * @param consumer The name of the consumer.
+     *
+     * @return The consumer's committed offset.
+     *
+     * @throws IOException When the offset can't be read.
+     */
+    public long getCommittedOffset(final String consumer) throws IOException {
+        final File file = getConsumerFile(consumer);
+        if (!file.exists()) {
+            return getStartOffset();
+        }
+        try (final DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+            return Math.max(input.readLong(), getStartOffset());
+        }
+    }
+
+    /**
+     * Deletes the segments containing only events before the specified offset. The active segment is never deleted.
+     * This waits for any replays in progress to finish, so it mustn't be called from a replay handler.
+     *
+     * @param offset The offset before which events may be deleted.
+     *
+     * @return The number of segments deleted.
+     */
+    public int deleteSegmentsBefore(final long offset) {
+        // The retention lock is taken before the journal's monitor, as replays do, so the two can't deadlock.
+        _retention.writeLock().lock();
+        try {
+            synchronized (this) {
+                int deleted = 0;
+                for (final Iterator<Segment> iterator = _segments.values().iterator(); iterator.hasNext(); ) {
+                    final Segment segment = iterator.next();
+                    if (segment == _active || segment.getEndOffset() > offset) {
+                        break;
+                    }
+                    iterator.remove();
+                    segment.release();
+                    if (!segment.getFile().delete()) {
+                        _log.warn("Unable to delete the journal segment {}", segment.getFile());
+                    }
+                    deleted++;
+                }
+                return deleted;
+            }
+        } finally {
+            _retention.writeLock().unlock();
+        }
+    }
+
+    public long getStartOffset() {
+        synchronized (this) {
+            return _segments.firstKey();
+        }
+    }
+
+    public long getEndOffset() {
+        synchronized (this) {
+            return _active.getEndOffset();
+        }
+    }
+
+    public int getSegmentCount() {
+        synchronized (this) {
+            return _segments.size();
+        }
+    }
+
+    /**
+     * Forces any appended events to be written to storage.
+     */
+    public synchronized void flush() {
+        _active.force();
+    }
+
+    /**
+     * Closes the journal, forcing appended events to storage and unmapping the segments. This waits for any replays in
+     * progress to finish, so it mustn't be called from a replay handler.
+     */
+    @Override
+    public void close() {
+        _retention.writeLock().lock();
+        try {
+            synchronized (this) {
+                if (!_closed) {
+                    _closed = true;
+                    _active.force();
+                    for (final Segment segment : _segments.values()) {
+                        segment.release();
+                    }
+                }
+            }
+        } finally {
+            _retention.writeLock().unlock();
+        }
+    }
+
+    private synchronized void checkOpen() {
+        if (_closed) {
+            throw new IllegalStateException("The event journal in " + _directory + " is closed");
+        }
+    }
+
+    private synchronized List<Segment> getSegmentsFrom(final long offset) {
+        final Long floor = _segments.floorKey(offset);
+        return new ArrayList<>(_segments.tailMap(floor == null ? _segments.firstKey() : floor, true).values());
+    }
+
+    private Segment createSegment(final long baseOffset) throws IOException {
+        final Segment segment = new Segment(new File(_directory, String.format("%020d.journal", baseOffset)), baseOffset);
+        segment.openForAppend();
+        _segments.put(baseOffset, segment);
+        return segment;
+    }
+
+    private File getConsumerFile(final String consumer) {
+        if (!CONSUMER_NAME.matcher(consumer).matches()) {
+            throw new IllegalArgumentException("Journal consumer names can contain only letters, numbers, periods, underscores, and dashes: " + consumer);
+        }
+        return new File(_consumers, consumer + ".offset");
+    }
+
+    private void commitQuietly(final String consumer, final long offset) {
+        try {
+            commit(consumer, offset);
+        } catch (IOException e) {
+            _log.warn("Unable to commit offset {} for the journal consumer {}", offset, consumer, e);
+        }
+    }
+
+    /**
+     * Checks whether a valid record starts at the buffer's current position, without moving the position.
+     */
+    private static boolean readHeader(final ByteBuffer buffer, final Segment segment) {
+        final int position = buffer.position();
+        if (position + HEADER_SIZE > buffer.limit()) {
+            return false;
+        }
+        final int length = buffer.getInt(position);
+        if (length <= 0 || position + HEADER_SIZE + length > buffer.limit()) {
+            return false;
+        }
+        if (checksum(buffer, position + 8, 8 + length) != buffer.getInt(position + 4)) {
+            _log.warn("Found a corrupt record at position {} of journal segment {}, ignoring the remainder of the segment", position, segment.getFile());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Unmaps the buffer immediately rather than leaving it mapped until it's garbage collected, so that the address
+     * space of deleted segments is released and the segment files can be deleted on Windows. There's no public API for
+     * this, so the JDK internals are used reflectively, falling back to the garbage collector if they're unavailable.
+     * The buffer and any of its duplicates mustn't be used after this is called.
+     */
+    private static void unmap(final ByteBuffer buffer) {
+        if (!(buffer instanceof MappedByteBuffer)) {
+            return;
+        }
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = null;
+            try {
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (NoSuchMethodException ignored) {
+                // This is Java 8, which has the buffer's cleaner instead.
+            }
+            if (invokeCleaner != null) {
+                final Field unsafe = unsafeClass.getDeclaredField("theUnsafe");
+                unsafe.setAccessible(true);
+                invokeCleaner.invoke(unsafe.get(null), buffer);
+            } else {
+                final Method getCleaner = buffer.getClass().getMethod("cleaner");
+                getCleaner.setAccessible(true);
+                final Object cleaner = getCleaner.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (Exception e) {
+            _log.debug("Unable to unmap a journal segment, it will be unmapped when it's garbage collected", e);
+        }
+    }
+
+    private static void skipRecord(final ByteBuffer buffer) {
+        buffer.position(buffer.position() + HEADER_SIZE + buffer.getInt(buffer.position()));
+    }
+
+    private static int checksum(final ByteBuffer buffer, final int position, final int length) {
+        final CRC32      crc   = new CRC32();
+        final ByteBuffer slice = buffer.duplicate();
+        slice.limit(position + length).position(position);
+        crc.update(slice);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] encode(final StructuredEventI event, final String description, final boolean notifyClassListeners) throws IOException {
+        final ByteArrayOutputStream bytes  = new ByteArrayOutputStream(256);
+        final DataOutputStream      output = new DataOutputStream(bytes);
+        writeString(output, event.getClass().getName());
+        writeString(output, description);
+        output.writeBoolean(notifyClassListeners);
+        writeString(output, event.getSrcEventClass());
+        writeString(output, event.getSrcStringifiedId());
+        writeString(output, event.getEventId());
+        output.writeBoolean(event.getUserId() != null);
+        if (event.getUserId() != null) {
+            output.writeInt(event.getUserId());
+        }
+        writeString(output, event.getExternalId());
+        writeString(output, event.getEntityId());
+        writeString(output, event.getEntityType());
+        final Map<String, String> fields = event instanceof StructuredEvent ? ((StructuredEvent) event).getEventSpecificFieldsAsMap() : Collections.<String, String>emptyMap();
+        output.writeInt(fields.size());
+        for (final Map.Entry<String, String> field : fields.entrySet()) {
+            writeString(output, field.getKey());
+            writeString(output, field.getValue());
+        }
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Entry readEntry(final ByteBuffer buffer, final long offset) {
+        final int  length    = buffer.getInt();
+        buffer.getInt();
+        final long timestamp = buffer.getLong();
+        final int  end       = buffer.position() + length;
+
+        final String           className            = readString(buffer);
+        final String           description          = readString(buffer);
+        final boolean          notifyClassListeners = buffer.get() != 0;
+        final StructuredEvent  event                = instantiate(className);
+        event.setSrcEventClass(readString(buffer));
+        event.setSrcStringifiedId(readString(buffer));
+        event.setEventId(readString(buffer));
+        event.setUserId(buffer.get() != 0 ? buffer.getInt() : null);
+        event.setExternalId(readString(buffer));
+        event.setEntityId(readString(buffer));
+        event.setEntityType(readString(buffer));
+        final int fieldCount = buffer.getInt();
+        if (fieldCount > 0) {
+            final Map<String, String> fields = new HashMap<>(fieldCount * 4 / 3 + 1);
+            for (int index = 0; index < fieldCount; index++) {
+                fields.put(readString(buffer), readString(buffer));
+            }
+            event.setEventSpecificFieldsAsMap(fields);
+        }
+        buffer.position(end);
+        return new Entry(offset, timestamp, description, notifyClassListeners, event);
+    }
+
+    private static StructuredEvent instantiate(final String className) {
+        try {
+            final Class<?> eventClass = Class.forName(className);
+            if (StructuredEvent.class.isAssignableFrom(eventClass)) {
+                return (StructuredEvent) eventClass.getConstructor().newInstance();
+            }
+        } catch (ReflectiveOperationException | LinkageError ignored) {
+            // Fall through to the generic journaled event.
+        }
+        return new JournaledStructuredEvent(className);
+    }
+
+    private static void writeString(final DataOutputStream output, final String value) throws IOException {
+        if (value == null) {
+            output.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(final ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A single segment file. Only the active segment is mapped for writing: sealed segments are mapped read-only when
+     * they're first read.
+     */
+    private class Segment {
+        Segment(final File file, final long baseOffset) {
+            _file = file;
+            _baseOffset = baseOffset;
+        }
+
+        File getFile() {
+            return _file;
+        }
+
+        long getBaseOffset() {
+            return _baseOffset;
+        }
+
+        long getEndOffset() {
+            if (_buffer == null) {
+                scan();
+            }
+            return _baseOffset + _count;
+        }
+
+        /**
+         * Maps the segment for writing and finds the end of the valid records, discarding any partially written record.
+         */
+        void openForAppend() throws IOException {
+            try (final RandomAccessFile file = new RandomAccessFile(_file, "rw")) {
+                if (file.length() < _segmentSize) {
+                    file.setLength(_segmentSize);
+                }
+                _buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+            }
+            _writable = true;
+            scan();
+            // Clear anything left after the last valid record, such as a partially written record, so that it can't
+            // be read as part of a record appended later.
+            for (int position = _writePosition; position < _buffer.capacity(); position++) {
+                if (_buffer.get(position) != 0) {
+                    _buffer.put(position, (byte) 0);
+                }
+            }
+        }
+
+        boolean hasRoomFor(final int payloadLength) {
+            // Leave room for an empty header after the record, which marks the end of the segment for readers.
+            return _writePosition + HEADER_SIZE + payloadLength + HEADER_SIZE <= _buffer.capacity();
+        }
+
+        long append(final long timestamp, final byte[] payload) {
+            final ByteBuffer buffer = _buffer.duplicate();
+            buffer.position(_writePosition + 4);
+            buffer.putInt(0);
+            buffer.putLong(timestamp);
+            buffer.put(payload);
+            buffer.putInt(_writePosition + 4, checksum(buffer, _writePosition + 8, 8 + payload.length));
+            // Write the length last so that readers never see a record before it's complete.
+            buffer.putInt(_writePosition, payload.length);
+            _writePosition += HEADER_SIZE + payload.length;
+            return _baseOffset + _count++;
+        }
+
+        ByteBuffer getReadBuffer() {
+            if (_released) {
+                return ByteBuffer.allocate(0);
+            }
+            if (_buffer == null) {
+                scan();
+            }
+            final ByteBuffer mapped = _buffer;
+            if (mapped == null) {
+                return ByteBuffer.allocate(0);
+            }
+            final ByteBuffer buffer = mapped.duplicate();
+            buffer.limit(_writePosition);
+            buffer.position(0);
+            return buffer;
+        }
+
+        void seal() {
+            force();
+            _writable = false;
+        }
+
+        void force() {
+            if (_writable && _buffer instanceof MappedByteBuffer) {
+                ((MappedByteBuffer) _buffer).force();
+            }
+        }
+
+        /**
+         * Drops and unmaps the segment's buffer. The segment can't be read or appended to afterwards.
+         */
+        synchronized void release() {
+            _released = true;
+            _writable = false;
+            final ByteBuffer buffer = _buffer;
+            _buffer = null;
+            if (buffer != null) {
+                unmap(buffer);
+            }
+        }
+
+        private synchronized void scan() {
+            if (_released) {
+                // The segment's been deleted or the journal closed, so keep the last known position and count.
+                return;
+            }
+            if (_buffer == null) {
+                try (final FileChannel channel = FileChannel.open(_file.toPath(), StandardOpenOption.READ)) {
+                    _buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                } catch (IOException e) {
+                    _log.error("Unable to map the journal segment {}, its events are unavailable", _file, e);
+                    _buffer = ByteBuffer.allocate(0);
+                }
+            }
+            final ByteBuffer buffer = _buffer.duplicate();
+            int              count  = 0;
+            while (readHeader(buffer, this)) {
+                skipRecord(buffer);
+                count++;
+            }
+            _writePosition = buffer.position();
+            _count = count;
+        }
+
+        private final File _file;
+        private final long _baseOffset;
+
+        private volatile ByteBuffer _buffer;
+        private volatile int        _writePosition;
+        private volatile int        _count;
+        private volatile boolean    _writable;
+        private volatile boolean    _released;
+    }
+
+    private static final Logger _log = LoggerFactory.getLogger(StructuredEventJournal.class);
+
+    private static final int     HEADER_SIZE     = 16;
+    private static final int     COMMIT_INTERVAL = 1000;
+    private static final Pattern SEGMENT_NAME    = Pattern.compile("^\\d{20}\\.journal$");
+    private static final Pattern CONSUMER_NAME   = Pattern.compile("^[A-Za-z0-9._-]+$");
+
+    private final TreeMap<Long, Segment> _segments  = new TreeMap<>();
+    private final ReadWriteLock          _retention = new ReentrantReadWriteLock();
+    private final File                   _directory;
+    private final File                   _consumers;
+    private final int                    _segmentSize;
+
+    private Segment _active;
+    private boolean _closed;
+}
@@ -0,0 +1,479 @@
+/*
+ * framework: org.nrg.framework.event.persist.WriteBehindEventPersister
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.event.persist;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Persists {@link PersistentEventImplementerI persistent events} asynchronously, moving the database work off of the
+ * thread that generated the event. Events are placed on a bounded queue and written by a single writer thread in
+ * batches. Each batch is saved in a single transaction, with the session flushed and cleared every
+ * <b>hibernate.jdbc.batch_size</b> events so that Hibernate can group the inserts into JDBC batches and the session
+ * doesn't grow without bound. Note that Hibernate can't batch inserts for entities that use identity ID generation,
+ * so the benefit of JDBC batching depends on the ID generation strategy of the mapped event classes.
+ *
+ * Events that can't be queued because the queue is full, events that can't be written to the database, and any events
+ * still queued when the persister is shut down are written to a local spill file. The spill file is replayed the next
+ * time the persister is started, so events aren't lost across restarts. The spill file is moved aside while it's
+ * replayed and only deleted once all of its events have been written or spilled again, so if the persister stops
+ * during a replay, the replay is finished on the next start. Events replayed that way may be written twice.
+ *
+ * Events are only lost if they can't be written to the spill file either, which is reported by {@link
+ * #getLostCount()}.
+ *
+ * If a {@link FilterableValueIndex} is set, it's updated with the values from each batch once the batch is committed.
+ * Errors updating the index are logged and don't affect the batch.
+ */
+public class WriteBehindEventPersister implements InitializingBean, DisposableBean {
+    public static final String PROPERTY_JDBC_BATCH_SIZE = "hibernate.jdbc.batch_size";
+    public static final int    DEFAULT_BATCH_SIZE       = 50;
+    public static final int    DEFAULT_CAPACITY         = 10000;
+    public static final long   DEFAULT_SHUTDOWN_TIMEOUT = 30000L;
+
+    public WriteBehindEventPersister(final SessionFactory sessionFactory, final Properties hibernateProperties, final File spillFile) {
+        this(sessionFactory, hibernateProperties, spillFile, DEFAULT_CAPACITY);
+    }
+
+    public WriteBehindEventPersister(final SessionFactory sessionFactory, final Properties hibernateProperties, final File spillFile, final int capacity) {
+        _sessionFactory = sessionFactory;
+        _spillFile = spillFile;
+        _queue = new ArrayBlockingQueue<>(capacity);
+        _batchSize = Math.max(1, NumberUtils.toInt(hibernateProperties == null ? null : hibernateProperties.getProperty(PROPERTY_JDBC_BATCH_SIZE), DEFAULT_BATCH_SIZE));
+        _maxTransactionSize = _batchSize * 20;
+    }
+
+    /**
+     * Replays any events left in the spill file and starts the writer thread.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        replaySpillFile();
+        _writer = new ThreadFactoryBuilder().setNameFormat("nrg-event-persister-%d").setDaemon(true).build().newThread(new Writer());
+        _writer.start();
+    }
+
+    /**
+     * Stops accepting events, waits up to the {@link #setShutdownTimeout(long) shutdown timeout} for queued events to
+     * be written, then spills any remaining events to the spill file.
+     */
+    @Override
+    public void destroy() {
+        // Once the write lock is released, no call to persist() can queue another event.
+        _lifecycle.writeLock().lock();
+        try {
+            _running = false;
+        } finally {
+            _lifecycle.writeLock().unlock();
+        }
+        if (_writer != null) {
+            try {
+                _writer.join(_shutdownTimeout);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        final List<PersistentEventImplementerI> remaining = new ArrayList<>();
+        _queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            _log.warn("Spilling {} unwritten events to {} on shutdown", remaining.size(), _spillFile);
+            spill(remaining);
+        }
+    }
+
+    /**
+     * Queues the event to be persisted. If the queue is full or the persister is shutting down, the event is written to
+     * the spill file instead and will be persisted when the persister is next started.
+     *
+     * @param event The event to persist.
+     */
+    public void persist(final PersistentEventImplementerI event) {
+        _queued.incrementAndGet();
+        final boolean queued;
+        _lifecycle.readLock().lock();
+        try {
+            queued = _running && _queue.offer(event);
+        } finally {
+            _lifecycle.readLock().unlock();
+        }
+        if (!queued) {
+            _log.debug("Unable to queue event for persistence, writing to the spill file: {}", event);
+            spill(Collections.singletonList(event));
+        }
+    }
+
+    /**
+     * Sets the index to be updated with the filterable values of each event once it has been persisted.
+     *
+     * @param valueIndex The index to update.
+     */
+    public void setValueIndex(final FilterableValueIndex valueIndex) {
+        _valueIndex = valueIndex;
+    }
+
+    public void setShutdownTimeout(final long shutdownTimeout) {
+        _shutdownTimeout = shutdownTimeout;
+    }
+
+    public int getBatchSize() {
+        return _batchSize;
+    }
+
+    public int getQueueDepth() {
+        return _queue.size();
+    }
+
+    public long getQueuedCount() {
+        return _queued.get();
+    }
+
+    public long getPersistedCount() {
+        return _persisted.get();
+    }
+
+    /**
+     * Gets the number of events that couldn't be written to the database and were written to the spill file instead.
+     *
+     * @return The number of failed events.
+     */
+    public long getFailedCount() {
+        return _failed.get();
+    }
+
+    public long getSpilledCount() {
+        return _spilled.get();
+    }
+
+    /**
+     * Gets the number of events that couldn't be written to the database or the spill file.
+     *
+     * @return The number of lost events.
+     */
+    public long getLostCount() {
+        return _lost.get();
+    }
+
+    /**
+     * Saves the events in a single transaction, flushing and clearing the session every {@link #getBatchSize() batch
+     * size} events. If the events can't be saved, the transaction is rolled back and the exception is thrown. Before
+     * the exception is thrown, the identifiers and versions that Hibernate assigned to the events and to any new
+     * entities saved along with them, e.g. their event-specific fields, are reset to their unsaved values. Otherwise
+     * the events would keep the identifiers of the rolled-back inserts, and saving them again when they're retried or
+     * replayed from the spill file would try to update rows that don't exist.
+     *
+     * @param events The events to save.
+     *
+     * @throws Exception When the events can't be saved.
+     */
+    protected void save(final List<PersistentEventImplementerI> events) throws Exception {
+        final Session                session     = _sessionFactory.openSession();
+        Map<Object, EntityPersister> transients  = Collections.emptyMap();
+        Transaction                  transaction = null;
+        try {
+            transients = findTransientEntities((SessionImplementor) session, events);
+            transaction = session.beginTransaction();
+            int count = 0;
+            for (final PersistentEventImplementerI event : events) {
+                session.save(event);
+                if (++count % _batchSize == 0) {
+                    session.flush();
+                    session.clear();
+                }
+            }
+            session.flush();
+            transaction.commit();
+        } catch (Exception e) {
+            if (transaction != null) {
+                try {
+                    transaction.rollback();
+                } catch (Exception rollback) {
+                    _log.warn("An error occurred rolling back a failed event batch", rollback);
+                }
+            }
+            resetIdentifiers((SessionImplementor) session, transients);
+            throw e;
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Finds the events and the entities reachable from them that will be inserted when the events are saved, along
+     * with the persister for each. Associations of entities that are already persistent aren't followed, nor are
+     * uninitialized proxies or collections.
+     *
+     * @param session The session in which the events will be saved.
+     * @param events  The events to be saved.
+     *
+     * @return The transient entities and their persisters.
+     */
+    private static Map<Object, EntityPersister> findTransientEntities(final SessionImplementor session, final List<PersistentEventImplementerI> events) {
+        final Map<Object, EntityPersister> transients = new IdentityHashMap<>();
+        for (final PersistentEventImplementerI event : events) {
+            findTransientEntities(session, event, transients);
+        }
+        return transients;
+    }
+
+    private static void findTransientEntities(final SessionImplementor session, final Object entity, final Map<Object, EntityPersister> transients) {
+        if (entity == null || transients.containsKey(entity) || !Hibernate.isInitialized(entity)) {
+            return;
+        }
+        final ClassMetadata metadata = session.getFactory().getClassMetadata(entity.getClass());
+        if (!(metadata instanceof EntityPersister)) {
+            return;
+        }
+        final EntityPersister persister = (EntityPersister) metadata;
+        if (!Boolean.TRUE.equals(persister.isTransient(entity, session))) {
+            return;
+        }
+        transients.put(entity, persister);
+
+        final Type[]   types  = persister.getPropertyTypes();
+        final Object[] values = persister.getPropertyValues(entity);
+        for (int index = 0; index < types.length; index++) {
+            final Object value = values[index];
+            if (types[index].isEntityType()) {
+                findTransientEntities(session, value, transients);
+            } else if (types[index].isCollectionType() && Hibernate.isInitialized(value)) {
+                final Collection<?> elements = value instanceof Map ? ((Map<?, ?>) value).values() : value instanceof Collection ? (Collection<?>) value : Collections.emptyList();
+                for (final Object element : elements) {
+                    findTransientEntities(session, element, transients);
+                }
+            }
+        }
+    }
+
+    private static void resetIdentifiers(final SessionImplementor session, final Map<Object, EntityPersister> transients) {
+        for (final Map.Entry<Object, EntityPersister> entry : transients.entrySet()) {
+            final Object          entity    = entry.getKey();
+            final EntityPersister persister = entry.getValue();
+            try {
+                persister.resetIdentifier(entity, persister.getIdentifier(entity, session), persister.isVersioned() ? persister.getVersion(entity) : null, session);
+            } catch (Exception e) {
+                _log.warn("Unable to reset the identifier of an entity from a failed event batch: {}", entity, e);
+            }
+        }
+    }
+
+    private void write(final List<PersistentEventImplementerI> events) {
+        if (!writeBatch(events)) {
+            // Something in the batch failed, so try each event on its own so one bad event doesn't hold up the others.
+            final List<PersistentEventImplementerI> failed = new ArrayList<>();
+            for (final PersistentEventImplementerI event : events) {
+                if (!writeBatch(Collections.singletonList(event))) {
+                    failed.add(event);
+                }
+            }
+            if (!failed.isEmpty()) {
+                _failed.addAndGet(failed.size());
+                _log.error("Unable to persist {} events, writing them to the spill file {}", failed.size(), _spillFile);
+                spill(failed);
+            }
+        }
+    }
+
+    private boolean writeBatch(final List<PersistentEventImplementerI> events) {
+        try {
+            save(events);
+        } catch (Exception e) {
+            _log.warn("An error occurred persisting a batch of {} events", events.size(), e);
+            return false;
+        }
+        _persisted.addAndGet(events.size());
+        if (_valueIndex != null) {
+            // The batch is committed at this point, so a failure here mustn't cause the events to be written again.
+            try {
+                _valueIndex.recordAll(events);
+            } catch (Exception e) {
+                _log.warn("Unable to update the filterable value index with a batch of {} persisted events", events.size(), e);
+            }
+        }
+        return true;
+    }
+
+    private void spill(final List<PersistentEventImplementerI> events) {
+        final List<byte[]> records = new ArrayList<>(events.size());
+        for (final PersistentEventImplementerI event : events) {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (final ObjectOutputStream objects = new ObjectOutputStream(bytes)) {
+                objects.writeObject(event);
+            } catch (IOException e) {
+                _lost.incrementAndGet();
+                _log.error("Unable to serialize an event for the spill file {}, the event is lost: {}", _spillFile, event, e);
+                continue;
+            }
+            records.add(bytes.toByteArray());
+        }
+        append(records);
+    }
+
+    private synchronized void append(final List<byte[]> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        try (final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(_spillFile, true)))) {
+            for (final byte[] record : records) {
+                output.writeInt(record.length);
+                output.write(record);
+            }
+        } catch (IOException e) {
+            _lost.addAndGet(records.size());
+            _log.error("Unable to write {} events to the spill file {}, these events are lost", records.size(), _spillFile, e);
+            return;
+        }
+        _spilled.addAndGet(records.size());
+    }
+
+    /**
+     * Moves the spill file aside and writes its events. Events that can't be written or restored are spilled again.
+     * If a previous replay was interrupted, that replay is finished instead, and the current spill file is replayed on
+     * the next start.
+     */
+    private void replaySpillFile() {
+        final File replaying = new File(_spillFile.getPath() + REPLAYING_SUFFIX);
+        if (replaying.exists()) {
+            _log.info("Finishing an interrupted replay of {}, the spill file {} will be replayed the next time the persister is started", replaying, _spillFile);
+        } else if (!_spillFile.exists()) {
+            return;
+        } else if (!_spillFile.renameTo(replaying)) {
+            _log.error("Unable to move the spill file {} to {} to replay it, it will be replayed the next time the persister is started", _spillFile, replaying);
+            return;
+        }
+
+        final List<PersistentEventImplementerI> events   = new ArrayList<>();
+        final boolean                           complete = readSpillFile(replaying, events);
+        _log.info("Replaying {} events from the spill file {}", events.size(), replaying);
+        for (int index = 0; index < events.size(); index += _maxTransactionSize) {
+            write(events.subList(index, Math.min(events.size(), index + _maxTransactionSize)));
+        }
+
+        if (!complete) {
+            final File damaged = new File(_spillFile.getPath() + "." + System.currentTimeMillis() + DAMAGED_SUFFIX);
+            _log.error("The spill file {} couldn't be read completely, moving it to {} so the remaining events can be recovered manually", replaying, damaged);
+            if (!replaying.renameTo(damaged)) {
+                _log.error("Unable to move the spill file {} to {}, it will be replayed again the next time the persister is started", replaying, damaged);
+            }
+        } else if (!replaying.delete()) {
+            _log.warn("Unable to delete the spill file {} after replaying it, its events may be replayed again", replaying);
+        }
+    }
+
+    /**
+     * Reads the events from the spill file. Events that can't be restored, e.g. because their classes aren't available
+     * yet, are copied back to the spill file as they are.
+     *
+     * @return Returns <b>true</b> if the whole file was read, <b>false</b> if reading stopped because of an error.
+     */
+    private boolean readSpillFile(final File file, final List<PersistentEventImplementerI> events) {
+        final List<byte[]> unrestorable = new ArrayList<>();
+        try (final DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                final int length;
+                try {
+                    length = input.readInt();
+                } catch (EOFException e) {
+                    return true;
+                }
+                final byte[] buffer = new byte[length];
+                input.readFully(buffer);
+                try (final ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(buffer))) {
+                    events.add((PersistentEventImplementerI) objects.readObject());
+                } catch (ClassNotFoundException | ClassCastException e) {
+                    _log.error("Found an event in the spill file {} that can't be restored, keeping it in the spill file", file, e);
+                    unrestorable.add(buffer);
+                }
+            }
+        } catch (IOException e) {
+            _log.error("An error occurred reading the spill file {}, recovered {} events before the error", file, events.size(), e);
+            return false;
+        } finally {
+            append(unrestorable);
+        }
+    }
+
+    private class Writer implements Runnable {
+        @Override
+        public void run() {
+            final List<PersistentEventImplementerI> batch = new ArrayList<>(_maxTransactionSize);
+            while (_running || !_queue.isEmpty()) {
+                try {
+                    final PersistentEventImplementerI first = _queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    _queue.drainTo(batch, _maxTransactionSize - 1);
+                    write(batch);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    _log.warn("The event persister thread was interrupted, remaining events will be spilled on shutdown");
+                    return;
+                } catch (Throwable e) {
+                    _log.error("An unexpected error occurred writing {} events", batch.size(), e);
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    private static final Logger _log = LoggerFactory.getLogger(WriteBehindEventPersister.class);
+
+    private static final long   POLL_INTERVAL    = 250L;
+    private static final String REPLAYING_SUFFIX = ".replaying";
+    private static final String DAMAGED_SUFFIX   = ".damaged";
+
+    private final SessionFactory                             _sessionFactory;
+    private final File                                       _spillFile;
+    private final BlockingQueue<PersistentEventImplementerI> _queue;
+    private final int                                        _batchSize;
+    private final int                                        _maxTransactionSize;
+
+    private final AtomicLong    _queued    = new AtomicLong();
+    private final AtomicLong    _persisted = new AtomicLong();
+    private final AtomicLong    _failed    = new AtomicLong();
+    private final AtomicLong    _spilled   = new AtomicLong();
+    private final AtomicLong    _lost      = new AtomicLong();
+    private final ReadWriteLock _lifecycle = new ReentrantReadWriteLock();
+
+    private Thread               _writer;
+    private FilterableValueIndex _valueIndex;
+    private long                 _shutdownTimeout = DEFAULT_SHUTDOWN_TIMEOUT;
+
+    private volatile boolean _running = true;
+}
@@ -15,8 +15,10 @@ import org.apache.commons.text.StringSubstitutor;
 import org.hibernate.*;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Example;
+import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.engine.spi.SessionImplementor;
 import org.hibernate.envers.AuditReader;
 import org.hibernate.envers.AuditReaderFactory;
 import org.nrg.framework.generics.AbstractParameterizedWorker;
@@ -25,15 +27,26 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @SuppressWarnings({"unchecked", "WeakerAccess"})
 abstract public class AbstractHibernateDAO<E extends BaseHibernateEntity> extends AbstractParameterizedWorker<E> implements BaseHibernateDAO<E> {
 
-    public static final String DEFAULT_CACHE_REGION = "nrg";
+    public static final String DEFAULT_CACHE_REGION     = "nrg";
+    public static final int    DEFAULT_STREAM_PAGE_SIZE = 500;
 
     protected AbstractHibernateDAO() {
         this(null, null);
@@ -151,6 +164,38 @@ abstract public class AbstractHibernateDAO<E extends BaseHibernateEntity> extend
         return criteria.list();
     }
 
+    /**
+     * @see BaseHibernateDAO#streamAll()
+     */
+    @Override
+    public Stream<E> streamAll() {
+        return streamAll(DEFAULT_STREAM_PAGE_SIZE);
+    }
+
+    /**
+     * @see BaseHibernateDAO#streamAll(int)
+     */
+    @Override
+    public Stream<E> streamAll(final int pageSize) {
+        return streamByCriteria(pageSize);
+    }
+
+    /**
+     * @see BaseHibernateDAO#streamAllEnabled()
+     */
+    @Override
+    public Stream<E> streamAllEnabled() {
+        return streamAllEnabled(DEFAULT_STREAM_PAGE_SIZE);
+    }
+
+    /**
+     * @see BaseHibernateDAO#streamAllEnabled(int)
+     */
+    @Override
+    public Stream<E> streamAllEnabled(final int pageSize) {
+        return streamByCriteria(pageSize, Restrictions.eq("enabled", true));
+    }
+
     @Override
     public long countAll() {
         final Criteria criteria = getCriteriaForType();
@@ -409,6 +454,22 @@ abstract public class AbstractHibernateDAO<E extends BaseHibernateEntity> extend
         return criteria.list();
     }
 
+    /**
+     * Streams the entities matching the criteria in order of ID, as described for {@link BaseHibernateDAO#streamAll(int)}.
+     * Use this inside subclasses to stream the results of queries that could return too many entities to load at once.
+     *
+     * @param pageSize  The number of entities to load at a time.
+     * @param criterion The criteria on which you want to search.
+     *
+     * @return A stream of the matching entities.
+     */
+    protected Stream<E> streamByCriteria(final int pageSize, final Criterion... criterion) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("The page size must be at least 1");
+        }
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new KeysetIterator(pageSize, criterion), Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
     /**
      * Gets a {@link Criteria Criteria object} for the parameterized type of the concrete definition. Default standard
      * values are set for the criteria object, including {@link Criteria#setCacheable(boolean)} set to <b>true</b>.
@@ -461,6 +522,101 @@ abstract public class AbstractHibernateDAO<E extends BaseHibernateEntity> extend
         return StringSubstitutor.replace(hqlExistsBody, parameters(type, name));
     }
 
+    /**
+     * Iterates over the entities matching the criteria a page at a time. Each page is loaded in two queries: one for
+     * the IDs of the page, which uses the primary key index and limits the rows returned, and one for the entities with
+     * those IDs. Limiting the entity query itself would cut off the rows of eagerly fetched collections.
+     *
+     * Evicting an entity only cascades to associations mapped with an evict cascade, so the iterator notes every entity
+     * that the entity query added to the session, including eagerly fetched associations, and evicts them all along
+     * with the page. Entities that were already in the session are left alone unless they're part of the page.
+     */
+    private class KeysetIterator implements Iterator<E> {
+        KeysetIterator(final int pageSize, final Criterion... criterion) {
+            _pageSize = pageSize;
+            _criterion = criterion;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!_page.hasNext() && !_exhausted) {
+                loadNextPage();
+            }
+            return _page.hasNext();
+        }
+
+        @Override
+        public E next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return _page.next();
+        }
+
+        private void loadNextPage() {
+            final Session session = getSession();
+            evictPage(session);
+
+            final Criteria idCriteria = session.createCriteria(getParameterizedType());
+            for (final Criterion criterion : _criterion) {
+                idCriteria.add(criterion);
+            }
+            if (_lastId != null) {
+                idCriteria.add(Restrictions.gt("id", _lastId));
+            }
+            final List<Long> ids = idCriteria.setProjection(Projections.id()).addOrder(Order.asc("id")).setMaxResults(_pageSize).list();
+            if (ids.size() < _pageSize) {
+                _exhausted = true;
+            }
+            if (ids.isEmpty()) {
+                _entities = Collections.emptyList();
+            } else {
+                final Criteria criteria = session.createCriteria(getParameterizedType()).add(Restrictions.in("id", ids)).addOrder(Order.asc("id"));
+                if (_addDistinctRootEntity) {
+                    criteria.setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY);
+                }
+                final Set<Object> existing = new HashSet<>(getEntitiesByKey(session).keySet());
+                _entities = criteria.list();
+                for (final Map.Entry<?, ?> entry : getEntitiesByKey(session).entrySet()) {
+                    if (!existing.contains(entry.getKey())) {
+                        _loaded.add(entry.getValue());
+                    }
+                }
+                _lastId = ids.get(ids.size() - 1);
+            }
+            _page = _entities.iterator();
+        }
+
+        private void evictPage(final Session session) {
+            if (_entities.isEmpty()) {
+                return;
+            }
+            session.flush();
+            for (final E entity : _entities) {
+                session.evict(entity);
+            }
+            for (final Object loaded : _loaded) {
+                if (session.contains(loaded)) {
+                    session.evict(loaded);
+                }
+            }
+            _loaded.clear();
+        }
+
+        private Map<?, ?> getEntitiesByKey(final Session session) {
+            return ((SessionImplementor) session).getPersistenceContext().getEntitiesByKey();
+        }
+
+        private final int          _pageSize;
+        private final Criterion[]  _criterion;
+        private final List<Object> _loaded = new ArrayList<>();
+
+        private List<E>     _entities = Collections.emptyList();
+        private Iterator<E> _page     = _entities.iterator();
+        private Long        _lastId;
+        private boolean     _exhausted;
+    }
+
     private static final Logger _log = LoggerFactory.getLogger(AbstractHibernateDAO.class);
 
     private static final String HQL_EXISTS_BODY  = "select 1 from ${type} where ";
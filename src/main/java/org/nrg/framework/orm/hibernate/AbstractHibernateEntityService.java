@@ -24,6 +24,7 @@ import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Nonnull;
@@ -34,6 +35,8 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 abstract public class AbstractHibernateEntityService<E extends BaseHibernateEntity, DAO extends BaseHibernateDAO<E>> extends AbstractParameterizedWorker<E> implements BaseHibernateService<E>, ApplicationContextAware, InitializingBean {
     public AbstractHibernateEntityService() {
@@ -203,6 +206,24 @@ abstract public class AbstractHibernateEntityService<E extends BaseHibernateEnti
         return list;
     }
 
+    /**
+     * Streams the enabled entities. This requires an existing transaction rather than starting one, since the stream
+     * loads its pages as it's consumed, which has to happen before the transaction ends.
+     */
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Stream<E> streamAll() {
+        _log.debug("Streaming all enabled entities");
+        return initializeAll(getDao().streamAllEnabled());
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Stream<E> streamAllWithDisabled() {
+        _log.debug("Streaming all enabled and disabled entities");
+        return initializeAll(getDao().streamAll());
+    }
+
     @Override
     @Transactional
     public long getCount() {
@@ -387,6 +408,23 @@ abstract public class AbstractHibernateEntityService<E extends BaseHibernateEnti
         getDao().initialize(entity);
     }
 
+    /**
+     * Initializes each entity as it's streamed, if the service is set to initialize entities. Each entity is
+     * initialized before the stream moves on, so before its page is evicted from the session.
+     */
+    private Stream<E> initializeAll(final Stream<E> stream) {
+        if (!_initialize) {
+            return stream;
+        }
+        return stream.map(new Function<E, E>() {
+            @Override
+            public E apply(final E entity) {
+                initialize(entity);
+                return entity;
+            }
+        });
+    }
+
     @Override
     public void setApplicationContext(@Nonnull final ApplicationContext context) throws BeansException {
         _context = context;
@@ -15,6 +15,7 @@ import org.nrg.framework.orm.hibernate.annotations.Auditable;
 import java.io.Serializable;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 @SuppressWarnings("unused")
 public interface BaseHibernateDAO<E extends BaseHibernateEntity> {
@@ -35,6 +36,62 @@ public interface BaseHibernateDAO<E extends BaseHibernateEntity> {
 
     List<E> findAllEnabled();
 
+    /**
+     * Streams all entities in order of ID, loading them a page at a time. See {@link #streamAll(int)}.
+     *
+     * The default implementation streams the results of {@link #findAll()}, so implementations that don't extend
+     * {@link AbstractHibernateDAO} keep working but load everything at once.
+     *
+     * @return A stream of all entities.
+     */
+    default Stream<E> streamAll() {
+        return findAll().stream();
+    }
+
+    /**
+     * Streams all entities in order of ID, loading them the specified number at a time. Each page is found by keyset
+     * pagination, i.e. by querying for the IDs following the last ID of the previous page, so loading a page costs the
+     * same no matter how far into the table it is. When a page is loaded, the session is flushed and the entities from
+     * the previous page are evicted, so memory use depends on the page size rather than the size of the table.
+     *
+     * Entities loaded into the session along with a page, such as eagerly fetched associations, are evicted with it.
+     * Lazy associations initialized while the stream is consumed aren't, so callers that initialize them for many
+     * entities should clear the session themselves.
+     *
+     * The stream must be consumed in the transaction it was created in. Changes to streamed entities are saved when
+     * their page is evicted, but once an entity is evicted, further changes to it aren't saved automatically.
+     *
+     * The default implementation ignores the page size and streams the results of {@link #findAll()}.
+     *
+     * @param pageSize The number of entities to load at a time.
+     *
+     * @return A stream of all entities.
+     */
+    default Stream<E> streamAll(int pageSize) {
+        return findAll().stream();
+    }
+
+    /**
+     * Streams all enabled entities in order of ID, loading them a page at a time. See {@link #streamAll(int)}.
+     *
+     * @return A stream of all enabled entities.
+     */
+    default Stream<E> streamAllEnabled() {
+        return findAllEnabled().stream();
+    }
+
+    /**
+     * Streams all enabled entities in order of ID, loading them the specified number at a time. See {@link
+     * #streamAll(int)}.
+     *
+     * @param pageSize The number of entities to load at a time.
+     *
+     * @return A stream of all enabled entities.
+     */
+    default Stream<E> streamAllEnabled(int pageSize) {
+        return findAllEnabled().stream();
+    }
+
     long countAll();
 
     long countAllEnabled();
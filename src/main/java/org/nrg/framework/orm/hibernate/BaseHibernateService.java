@@ -15,6 +15,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * Represents the basic functionality for a CRUD service in XNAT supporting {@link BaseHibernateEntity basic XNAT
@@ -113,6 +114,30 @@ public interface BaseHibernateService<E extends BaseHibernateEntity> extends Nrg
      */
     List<E> getAllWithDisabled();
 
+    /**
+     * Streams all active enabled objects of the service's parameterized type, loading them a page at a time so that
+     * memory use stays flat no matter how many objects there are. This must be called in a transaction, and the stream
+     * must be consumed before the transaction ends. See {@link BaseHibernateDAO#streamAll(int)}.
+     *
+     * The default implementation streams the results of {@link #getAll()}, so implementations that don't extend
+     * {@link AbstractHibernateEntityService} keep working but load everything at once.
+     *
+     * @return A stream of all of the active enabled objects of the service's parameterized type.
+     */
+    default Stream<E> streamAll() {
+        return getAll().stream();
+    }
+
+    /**
+     * Streams all objects of the service's parameterized type, including those that are inactive or disabled. Like
+     * {@link #streamAll()}, this must be called in a transaction.
+     *
+     * @return A stream of all of the objects of the service's parameterized type.
+     */
+    default Stream<E> streamAllWithDisabled() {
+        return getAllWithDisabled().stream();
+    }
+
     /**
      * Gives a count of the total number of enabled objects of the service's parameterized type.
      *
@@ -9,17 +9,45 @@
 
 package org.nrg.framework.processors;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.text.StringEscapeUtils;
 import org.kohsuke.MetaInfServices;
 import org.nrg.framework.event.EventClass;
+import org.nrg.framework.event.EventClassIndex;
+import org.nrg.framework.event.Filterable;
+import org.nrg.framework.event.FilterableAccessor;
+import org.nrg.framework.event.FilterableAccessors;
 
 import javax.annotation.processing.Processor;
+import javax.annotation.processing.RoundEnvironment;
 import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
 import java.util.Arrays;
-import java.util.Date;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Processes the {@link EventClass} annotation and generates the plugin's properties file that used by XNAT for event
@@ -30,11 +58,47 @@ import java.util.Map;
  * <a href="http://metainf-services.kohsuke.org">META-INF/services generator</a>. This does the same basic thing but
  * generates a file named "META-INF/xnat/{event-name}-event.properties", where the <i>event-name</i> is taken from the 
  * event name defined in this annotation.
+ *
+ * In addition to the per-event properties files, this processor generates a single index of all of the event classes
+ * in the compilation unit, including the {@link Filterable filterable} methods of each class, into the resource
+ * {@link EventClassIndex#INDEX_RESOURCE}. This is read at runtime by {@link EventClassIndex}, so that discovering
+ * event classes takes one resource read per jar rather than one per event class. When only some of the event classes
+ * are compiled, as in an incremental build, entries from the existing index for the other classes are kept. Entries
+ * for classes that have been deleted or are no longer annotated are dropped, but only when the index is next written,
+ * which happens when at least one event class is compiled.
+ *
+ * A {@link FilterableAccessor} implementation is also generated for each accessible, non-generic event class. This
+ * returns the values of the class's filterable properties with direct method calls and is located at runtime by {@link
+ * FilterableAccessors}.
+ *
+ * As with the reflection-based accessor, a method is filterable when it or any method that it overrides in a superclass
+ * or interface is annotated with {@link Filterable}.
  */
 @MetaInfServices(Processor.class)
 @SupportedAnnotationTypes("org.nrg.framework.event.EventClass")
 public class EventClassAnnotationProcessor extends NrgAbstractAnnotationProcessor<EventClass> {
 
+    /* (non-Javadoc)
+     * @see org.nrg.framework.processors.NrgAbstractAnnotationProcessor#process(java.util.Set, javax.annotation.processing.RoundEnvironment)
+     */
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            if (!_indexEntries.isEmpty()) {
+                writeIndex();
+            }
+            return false;
+        }
+        for (final Element element : roundEnv.getElementsAnnotatedWith(EventClass.class)) {
+            if (element instanceof TypeElement) {
+                final TypeElement typeElement = (TypeElement) element;
+                _indexEntries.put(typeElement.getQualifiedName().toString(), getIndexEntry(typeElement, typeElement.getAnnotation(EventClass.class)));
+                writeAccessor(typeElement);
+            }
+        }
+        return super.process(annotations, roundEnv);
+    }
+
     /* (non-Javadoc)
      * @see org.nrg.framework.processors.NrgAbstractAnnotationProcessor#processAnnotation(javax.lang.model.element.TypeElement, java.lang.annotation.Annotation)
      */
@@ -54,8 +118,250 @@ public class EventClassAnnotationProcessor extends NrgAbstractAnnotationProcesso
      */
     @Override
     protected String getPropertiesName(final TypeElement element, final EventClass plugin) {
-    	final String eventName = plugin.name();
-        return String.format("META-INF/xnat/event/%s-event.properties", eventName.length() > 0 ? eventName : "EV" + Long.toString(new Date().getTime()));
+        final String eventName = plugin.name();
+        return String.format("META-INF/xnat/event/%s-event.properties", eventName.length() > 0 ? eventName : element.getQualifiedName().toString());
     }
-    
+
+    /**
+     * Converts the event class and its filterable methods into the JSON object for its entry in the event class index.
+     *
+     * @param element The annotated class element.
+     * @param event   The annotation instance.
+     *
+     * @return The JSON for the index entry.
+     */
+    private ObjectNode getIndexEntry(final TypeElement element, final EventClass event) {
+        final ObjectNode entry = MAPPER.createObjectNode();
+        entry.put(EventClass.EVENT_CLASS, element.getQualifiedName().toString());
+        entry.put(EventClass.EVENT_NAME, event.name());
+        entry.put(EventClass.EVENT_DESC, event.description());
+        entry.set(EventClass.EVENT_DEFAULTIDS, toArray(event.defaultEventIds()));
+        entry.put(EventClass.EVENT_INCLUDEFROMDATABASE, event.includeValuesFromDatabase());
+        final ArrayNode filterables = entry.putArray(EventClassIndex.FILTERABLES);
+        for (final Element member : processingEnv.getElementUtils().getAllMembers(element)) {
+            if (member.getKind() != ElementKind.METHOD) {
+                continue;
+            }
+            final Filterable filterable = findFilterable(element, (ExecutableElement) member);
+            if (filterable == null) {
+                continue;
+            }
+            final String     method = ((ExecutableElement) member).getSimpleName().toString();
+            final ObjectNode node   = filterables.addObject();
+            node.put("method", method);
+            node.put("property", FilterableAccessors.getPropertyName(method));
+            node.set("initialValues", toArray(filterable.initialValues()));
+            node.put("defaultValue", filterable.defaultValue());
+            node.put("filterRequired", filterable.filterRequired());
+            node.put("includeValuesFromDatabase", filterable.includeValuesFromDatabase());
+        }
+        return entry;
+    }
+
+    /**
+     * Generates the {@link FilterableAccessor} implementation for the event class. Accessors aren't generated for
+     * generic classes or for classes that can't be referenced from their own package, which use the reflection-based
+     * accessor instead. Only public, non-static filterable methods that take no parameters and return a value are
+     * included in the generated accessor, which matches the methods used by the reflection-based accessor. Checked
+     * exceptions thrown by a method are wrapped in an {@link IllegalStateException}, as the reflection-based accessor
+     * does.
+     *
+     * @param element The annotated class element.
+     */
+    private void writeAccessor(final TypeElement element) {
+        if (!element.getTypeParameters().isEmpty() || !element.getKind().isClass() || !isAccessible(element)) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "Not generating a filterable accessor for " + element + ", it's generic or not accessible from its package.");
+            return;
+        }
+        final Map<String, ExecutableElement> methods = new LinkedHashMap<>();
+        for (final Element member : processingEnv.getElementUtils().getAllMembers(element)) {
+            if (member.getKind() != ElementKind.METHOD || !member.getModifiers().contains(Modifier.PUBLIC) || member.getModifiers().contains(Modifier.STATIC)) {
+                continue;
+            }
+            final ExecutableElement method = (ExecutableElement) member;
+            if (!method.getParameters().isEmpty() || method.getReturnType().getKind() == TypeKind.VOID || findFilterable(element, method) == null) {
+                continue;
+            }
+            final String property = FilterableAccessors.getPropertyName(method.getSimpleName().toString());
+            if (!methods.containsKey(property)) {
+                methods.put(property, method);
+            }
+        }
+
+        final String packageName   = processingEnv.getElementUtils().getPackageOf(element).getQualifiedName().toString();
+        final String accessorName  = FilterableAccessors.getAccessorClassName(processingEnv.getElementUtils().getBinaryName(element).toString());
+        final String simpleName    = accessorName.substring(accessorName.lastIndexOf('.') + 1);
+        final String eventClass    = element.getQualifiedName().toString();
+        final String accessorIface = FilterableAccessor.class.getName();
+
+        try (final PrintWriter writer = new PrintWriter(processingEnv.getFiler().createSourceFile(accessorName, element).openWriter())) {
+            if (!packageName.isEmpty()) {
+                writer.println("package " + packageName + ";");
+                writer.println();
+            }
+            writer.println("/**");
+            writer.println(" * Filterable accessor for {@link " + eventClass + "}, generated by " + getClass().getName() + ".");
+            writer.println(" */");
+            writer.println("public final class " + simpleName + " implements " + accessorIface + "<" + eventClass + "> {");
+            writer.println("    @Override");
+            writer.println("    public Class<" + eventClass + "> getEventClass() {");
+            writer.println("        return " + eventClass + ".class;");
+            writer.println("    }");
+            writer.println();
+            writer.println("    @Override");
+            writer.println("    public java.util.List<String> getProperties() {");
+            writer.println("        return PROPERTIES;");
+            writer.println("    }");
+            writer.println();
+            writer.println("    @Override");
+            writer.println("    public Object getValue(final " + eventClass + " event, final String property) {");
+            writer.println("        switch (property) {");
+            for (final Map.Entry<String, ExecutableElement> method : methods.entrySet()) {
+                final String name = method.getValue().getSimpleName().toString();
+                writer.println("            case " + quote(method.getKey()) + ":");
+                if (method.getValue().getThrownTypes().isEmpty()) {
+                    writer.println("                return event." + name + "();");
+                } else {
+                    writer.println("                try {");
+                    writer.println("                    return event." + name + "();");
+                    writer.println("                } catch (RuntimeException e) {");
+                    writer.println("                    throw e;");
+                    writer.println("                } catch (Error e) {");
+                    writer.println("                    throw e;");
+                    writer.println("                } catch (Throwable e) {");
+                    writer.println("                    throw new IllegalStateException(" + quote("An error occurred calling the filterable method " + eventClass + "." + name + "()") + ", e);");
+                    writer.println("                }");
+                }
+            }
+            writer.println("            default:");
+            writer.println("                throw new IllegalArgumentException(\"The property \" + property + \" isn't a filterable property of the event class " + eventClass + "\");");
+            writer.println("        }");
+            writer.println("    }");
+            writer.println();
+            final StringBuilder properties = new StringBuilder();
+            for (final String property : methods.keySet()) {
+                properties.append(properties.length() > 0 ? ", " : "").append(quote(property));
+            }
+            writer.println("    private static final java.util.List<String> PROPERTIES = java.util.Collections.unmodifiableList(java.util.Arrays.asList(new String[]{" + properties + "}));");
+            writer.println("}");
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to write the filterable accessor for " + eventClass + ": " + e);
+        }
+    }
+
+    /**
+     * Writes the event class index. Entries from an existing index in the class output folder are kept for classes that
+     * weren't part of this compilation, as long as they're still available and annotated with {@link EventClass}, so
+     * incremental builds that only compile some of the event classes don't drop the others from the index.
+     */
+    private void writeIndex() {
+        final Map<String, ObjectNode> entries = new LinkedHashMap<>();
+        for (final JsonNode existing : readExistingIndex()) {
+            final String eventClass = existing.path(EventClass.EVENT_CLASS).asText();
+            if (existing instanceof ObjectNode && !_indexEntries.containsKey(eventClass) && isEventClass(eventClass)) {
+                entries.put(eventClass, (ObjectNode) existing);
+            }
+        }
+        entries.putAll(_indexEntries);
+
+        final ObjectNode index = MAPPER.createObjectNode();
+        index.put(EventClassIndex.VERSION, EventClassIndex.INDEX_VERSION);
+        index.putArray(EventClassIndex.EVENTS).addAll(entries.values());
+
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "Writing event class index with " + entries.size() + " classes to " + EventClassIndex.INDEX_RESOURCE);
+        try (final OutputStream output = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", EventClassIndex.INDEX_RESOURCE).openOutputStream()) {
+            MAPPER.writerWithDefaultPrettyPrinter().writeValue(output, index);
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to write the event class index: " + e);
+        }
+    }
+
+    /**
+     * Reads the entries from the event class index left in the class output folder by a previous compilation.
+     *
+     * @return The existing entries, or an empty node if there's no existing index or it can't be read.
+     */
+    private JsonNode readExistingIndex() {
+        try (final InputStream input = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", EventClassIndex.INDEX_RESOURCE).openInputStream()) {
+            final JsonNode index = MAPPER.readTree(input);
+            if (index != null && index.path(EventClassIndex.VERSION).asInt() == EventClassIndex.INDEX_VERSION) {
+                return index.path(EventClassIndex.EVENTS);
+            }
+        } catch (IOException | IllegalArgumentException ignored) {
+            // There's no existing index or it isn't usable, so it's replaced with the classes from this compilation.
+        }
+        return MAPPER.createArrayNode();
+    }
+
+    /**
+     * Gets the {@link Filterable} annotation for the method, which may be on the method itself or on a method that it
+     * overrides in one of the class's superclasses or interfaces.
+     *
+     * @param element The class containing the method.
+     * @param method  The method to check.
+     *
+     * @return The annotation, or <b>null</b> if the method isn't filterable.
+     */
+    private Filterable findFilterable(final TypeElement element, final ExecutableElement method) {
+        final Filterable filterable = method.getAnnotation(Filterable.class);
+        if (filterable != null) {
+            return filterable;
+        }
+        final Elements           elements  = processingEnv.getElementUtils();
+        final Types              types     = processingEnv.getTypeUtils();
+        final Set<String>        visited   = new HashSet<>();
+        final Deque<TypeElement> remaining = new ArrayDeque<>();
+        remaining.add(element);
+        while (!remaining.isEmpty()) {
+            final TypeElement current = remaining.remove();
+            for (final TypeMirror supertype : types.directSupertypes(current.asType())) {
+                final Element supertypeElement = types.asElement(supertype);
+                if (supertypeElement instanceof TypeElement && visited.add(((TypeElement) supertypeElement).getQualifiedName().toString())) {
+                    remaining.add((TypeElement) supertypeElement);
+                }
+            }
+            if (current == element) {
+                continue;
+            }
+            for (final Element candidate : current.getEnclosedElements()) {
+                if (candidate.getKind() == ElementKind.METHOD && candidate.getSimpleName().equals(method.getSimpleName()) && elements.overrides(method, (ExecutableElement) candidate, element)) {
+                    final Filterable overridden = candidate.getAnnotation(Filterable.class);
+                    if (overridden != null) {
+                        return overridden;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean isEventClass(final String eventClass) {
+        final TypeElement element = processingEnv.getElementUtils().getTypeElement(eventClass);
+        return element != null && element.getAnnotation(EventClass.class) != null;
+    }
+
+    private static boolean isAccessible(final TypeElement element) {
+        for (Element current = element; current != null && !(current instanceof PackageElement); current = current.getEnclosingElement()) {
+            if (current.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ArrayNode toArray(final String[] values) {
+        final ArrayNode array = MAPPER.createArrayNode();
+        for (final String value : values) {
+            array.add(value);
+        }
+        return array;
+    }
+
+    private static String quote(final String value) {
+        return "\"" + StringEscapeUtils.escapeJava(value) + "\"";
+    }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Map<String, ObjectNode> _indexEntries = new LinkedHashMap<>();
 }
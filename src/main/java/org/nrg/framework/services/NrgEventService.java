@@ -15,14 +15,43 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.nrg.framework.concurrency.LoggingThreadPoolExecutor;
+import org.nrg.framework.event.BatchEventListenerI;
 import org.nrg.framework.event.EventI;
+import org.nrg.framework.event.StructuredEventI;
+import org.nrg.framework.event.dispatch.AsyncEventDispatcher;
+import org.nrg.framework.event.dispatch.BulkheadConsumer;
+import org.nrg.framework.event.dispatch.ExecutorConsumer;
+import org.nrg.framework.event.dispatch.DispatchPlan;
+import org.nrg.framework.event.persist.PersistentEventImplementerI;
+import org.nrg.framework.event.persist.StructuredEventJournal;
+import org.nrg.framework.event.persist.WriteBehindEventPersister;
+import org.nrg.framework.utilities.CallerTrace;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import reactor.bus.Bus;
 import reactor.bus.Event;
 import reactor.bus.EventBus;
+import reactor.bus.registry.Registration;
+import reactor.bus.selector.Selector;
+import reactor.fn.Consumer;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static lombok.AccessLevel.PRIVATE;
 
@@ -44,6 +73,256 @@ public class NrgEventService {
         _eventBus = eventBus;
     }
 
+    /**
+     * Sets the dispatcher to use for asynchronous event dispatch. When a dispatcher is set, calls to the
+     * <b>triggerEvent()</b> methods queue the notification to the event bus and return immediately, with the
+     * notification performed on one of the dispatcher's threads. When no dispatcher is set (the default), event bus
+     * notifications are performed on the calling thread. Note that this doesn't affect the <b>sendEvent()</b> methods,
+     * which always dispatch synchronously.
+     *
+     * @param asyncEventDispatcher The dispatcher to use or null to dispatch events synchronously.
+     */
+    @Autowired(required = false)
+    public void setAsyncEventDispatcher(final AsyncEventDispatcher asyncEventDispatcher) {
+        _asyncEventDispatcher = asyncEventDispatcher;
+        log.info("Event dispatch is now {}", asyncEventDispatcher == null ? "synchronous" : "asynchronous");
+    }
+
+    /**
+     * Sets the journal to which structured events are appended as they're triggered. When a journal is set, every
+     * {@link StructuredEventI structured event} triggered through this service is appended to the journal before it's
+     * dispatched, so that it can be replayed with {@link #replayJournal(long)} after a listener outage. Failures to
+     * append to the journal are logged and don't prevent the event from being dispatched.
+     *
+     * @param eventJournal The journal to use or null to disable journaling.
+     */
+    @Autowired(required = false)
+    public void setEventJournal(final StructuredEventJournal eventJournal) {
+        _eventJournal = eventJournal;
+    }
+
+    /**
+     * Sets the persister to which {@link PersistentEventImplementerI persistent events} are handed as they're
+     * triggered. When a persister is set, every persistent event triggered through this service is queued to be saved
+     * to the database in the background before it's dispatched. Events replayed from the journal aren't persisted
+     * again.
+     *
+     * @param eventPersister The persister to use or null to leave persistence to the event listeners.
+     */
+    @Autowired(required = false)
+    public void setEventPersister(final WriteBehindEventPersister eventPersister) {
+        _eventPersister = eventPersister;
+    }
+
+    /**
+     * Re-dispatches the journaled events starting at the specified offset to the event bus, using the description and
+     * class notification setting each event was originally triggered with. Replayed events are dispatched on the
+     * calling thread and aren't journaled again.
+     *
+     * @param fromOffset The journal offset of the first event to replay.
+     *
+     * @return The journal offset following the last replayed event.
+     */
+    public long replayJournal(final long fromOffset) {
+        final StructuredEventJournal journal = getEventJournal();
+        if (journal == null) {
+            throw new IllegalStateException("No event journal has been configured for this service.");
+        }
+        return journal.replay(fromOffset, new Consumer<StructuredEventJournal.Entry>() {
+            @Override
+            public void accept(final StructuredEventJournal.Entry entry) {
+                final StructuredEventI event = entry.getEvent();
+                final Object           key   = StringUtils.isNotBlank(entry.getDescription()) ? entry.getDescription() : event.getClass();
+                log.debug("Replaying journaled event {}: {}", entry.getOffset(), event);
+                notifyEventBus(Event.wrap(event), key, event.getClass(), entry.isNotifyClassListeners());
+            }
+        });
+    }
+
+    /**
+     * Sets how often the caller's stack frames are captured when trace logging is enabled. A value of 1 or less (the
+     * default) captures the caller for every event. A value of <i>n</i> greater than 1 captures the caller for one in
+     * every <i>n</i> events, with the remaining events logged without the caller frames.
+     *
+     * @param traceSampleRate The sample rate for capturing callers.
+     */
+    public void setTraceSampleRate(final int traceSampleRate) {
+        _traceSampleRate = traceSampleRate;
+    }
+
+    /**
+     * Sets the maximum number of stack frames examined when capturing the caller for trace logging. Only frames from
+     * <b>org.nrg</b> classes within this limit are included in the trace output.
+     *
+     * @param traceFrameLimit The maximum number of frames to examine.
+     */
+    public void setTraceFrameLimit(final int traceFrameLimit) {
+        if (traceFrameLimit < 1) {
+            throw new IllegalArgumentException("The trace frame limit must be greater than zero.");
+        }
+        _traceFrameLimit = traceFrameLimit;
+    }
+
+    /**
+     * Sets whether events triggered through this service should be delivered through cached dispatch plans. Plans are
+     * disabled by default. When enabled, the consumers that match each event bus key are resolved once and cached, and
+     * events are delivered by invoking the cached consumers directly on the dispatching thread. This changes how events
+     * are delivered in ways that callers must accept before enabling plans:
+     *
+     * <ul>
+     *     <li>
+     *         Events don't go through the event bus's dispatcher or router, so a custom router (e.g. one that filters
+     *         consumers) isn't applied.
+     *     </li>
+     *     <li>
+     *         Exceptions thrown by consumers are logged by the plan rather than passed to the event bus's dispatch
+     *         error handler.
+     *     </li>
+     *     <li>
+     *         Cached plans are only discarded when consumers are registered or unregistered through this service's
+     *         {@link #registerListener(Selector, Consumer)} and {@link #unregisterListener(Registration)} methods. The
+     *         event bus doesn't report registrations made directly with <b>EventBus.on()</b>, so consumers registered
+     *         that way don't receive events for keys that already have a cached plan until {@link
+     *         #invalidateDispatchPlans()} is called.
+     *     </li>
+     * </ul>
+     *
+     * @param useDispatchPlans Whether cached dispatch plans should be used.
+     */
+    public void setUseDispatchPlans(final boolean useDispatchPlans) {
+        _useDispatchPlans = useDispatchPlans;
+        invalidateDispatchPlans();
+    }
+
+    /**
+     * Indicates whether events triggered through this service are delivered through cached dispatch plans.
+     *
+     * @return Returns <b>true</b> if cached dispatch plans are used.
+     */
+    public boolean isUseDispatchPlans() {
+        return _useDispatchPlans;
+    }
+
+    /**
+     * Registers the consumer on the event bus for events with keys that match the selector and invalidates any cached
+     * dispatch plans.
+     *
+     * @param selector The selector for the events the consumer should receive.
+     * @param consumer The consumer to register.
+     * @param <T>      The type of event handled by the consumer.
+     *
+     * @return The registration for the consumer.
+     */
+    @SuppressWarnings("rawtypes")
+    public <T extends Event<?>> Registration<Object, Consumer<? extends Event<?>>> registerListener(final Selector selector, final Consumer<T> consumer) {
+        final Registration<Object, Consumer<? extends Event<?>>> registration = getEventBus().on(selector, consumer);
+        invalidateDispatchPlans();
+        return registration;
+    }
+
+    /**
+     * Registers the consumer on the event bus so that each event is handled by the consumer on the specified executor
+     * rather than on the notifying thread. For consumers that block on JDBC or HTTP calls, use the executor from {@link
+     * LoggingThreadPoolExecutor#newVirtualThreadPerTaskExecutor()}, which handles each event on its own virtual thread
+     * when the JVM supports them.
+     *
+     * @param selector The selector for the events the consumer should receive.
+     * @param consumer The consumer to register.
+     * @param executor The executor to run the consumer on.
+     * @param <T>      The type of event handled by the consumer.
+     *
+     * @return The registration for the consumer.
+     */
+    @SuppressWarnings("rawtypes")
+    public <T extends Event<?>> Registration<Object, Consumer<? extends Event<?>>> registerListener(final Selector selector, final Consumer<T> consumer, final Executor executor) {
+        return registerListener(selector, new ExecutorConsumer<>(consumer, executor));
+    }
+
+    /**
+     * Registers the consumer on the event bus behind a {@link BulkheadConsumer bulkhead} with the default queue
+     * capacity, concurrency, backpressure policy, and slow consumer threshold. The consumer handles events on its own
+     * threads, so that it can't stall the event bus or other consumers. When its queue is full, the oldest queued event
+     * is dropped. Use {@link #registerIsolatedListener(Selector, BulkheadConsumer)} to choose another policy.
+     *
+     * @param selector The selector for the events the consumer should receive.
+     * @param name     The name of the consumer, used for its threads and metrics.
+     * @param consumer The consumer to register.
+     * @param <T>      The type of event handled by the consumer.
+     *
+     * @return The registration for the consumer.
+     */
+    @SuppressWarnings("rawtypes")
+    public <T extends Event<?>> Registration<Object, Consumer<? extends Event<?>>> registerIsolatedListener(final Selector selector, final String name, final Consumer<T> consumer) {
+        return registerIsolatedListener(selector, new BulkheadConsumer<>(name, consumer));
+    }
+
+    /**
+     * Registers the bulkhead on the event bus. The bulkhead's metrics are available from {@link #getBulkheadMetrics()}
+     * until it's unregistered with {@link #unregisterListener(Registration)}, which also shuts the bulkhead down.
+     *
+     * @param selector The selector for the events the consumer should receive.
+     * @param bulkhead The bulkhead wrapping the consumer to register.
+     * @param <T>      The type of event handled by the consumer.
+     *
+     * @return The registration for the consumer.
+     */
+    @SuppressWarnings("rawtypes")
+    public <T extends Event<?>> Registration<Object, Consumer<? extends Event<?>>> registerIsolatedListener(final Selector selector, final BulkheadConsumer<T> bulkhead) {
+        if (getBulkheads().putIfAbsent(bulkhead.getName(), bulkhead) != null) {
+            throw new IllegalArgumentException("There is already an isolated listener registered with the name " + bulkhead.getName());
+        }
+        return registerListener(selector, bulkhead);
+    }
+
+    /**
+     * Cancels the registration and invalidates any cached dispatch plans. If the registered consumer is a {@link
+     * BulkheadConsumer}, it's shut down after waiting briefly for its queued events to be handled.
+     *
+     * @param registration The registration to cancel.
+     */
+    public void unregisterListener(final Registration<?, ?> registration) {
+        registration.cancel();
+        invalidateDispatchPlans();
+        final Object consumer = registration.getObject();
+        if (consumer instanceof BulkheadConsumer) {
+            final BulkheadConsumer<?> bulkhead = (BulkheadConsumer<?>) consumer;
+            getBulkheads().remove(bulkhead.getName(), bulkhead);
+            if (!bulkhead.shutdown(BULKHEAD_SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                log.warn("The isolated listener {} was unregistered with {} events still queued", bulkhead.getName(), bulkhead.getQueueDepth());
+            }
+        }
+    }
+
+    /**
+     * Gets the metrics for each of the registered isolated listeners, keyed by listener name.
+     *
+     * @return The metrics for the isolated listeners.
+     */
+    public Map<String, Map<String, Number>> getBulkheadMetrics() {
+        final Map<String, Map<String, Number>> metrics = new LinkedHashMap<>();
+        for (final BulkheadConsumer<?> bulkhead : getBulkheads().values()) {
+            metrics.put(bulkhead.getName(), bulkhead.getMetrics());
+        }
+        return metrics;
+    }
+
+    /**
+     * Discards all cached dispatch plans, so that they're rebuilt from the event bus's consumer registry on next use.
+     */
+    public void invalidateDispatchPlans() {
+        getPlanGeneration().incrementAndGet();
+        getDispatchPlans().clear();
+    }
+
+    /**
+     * Indicates whether events triggered through this service are dispatched asynchronously.
+     *
+     * @return Returns <b>true</b> if an {@link AsyncEventDispatcher} has been configured for this service.
+     */
+    public boolean isAsyncDispatch() {
+        return _asyncEventDispatcher != null;
+    }
+
     /**
      * Trigger event.
      *
@@ -120,6 +399,74 @@ public class NrgEventService {
         triggerEventInternal(event, null, null);
     }
 
+    /**
+     * Trigger events.
+     *
+     * @param events the events
+     */
+    public void triggerEvents(final Collection<? extends EventI> events) {
+        triggerEventsInternal(events, null, false);
+    }
+
+    /**
+     * Trigger events.
+     *
+     * @param description          the event desc
+     * @param events               the events
+     * @param notifyClassListeners Notify class listeners?
+     */
+    public void triggerEvents(final String description, final Collection<? extends EventI> events, final boolean notifyClassListeners) {
+        triggerEventsInternal(events, description, notifyClassListeners);
+    }
+
+    /**
+     * Registers a listener that receives all events of the specified class (or any subclass) triggered through a
+     * single call to one of the <b>triggerEvents()</b> methods in a single call. Like class listeners on the event bus,
+     * the listener receives batches triggered without a description, and batches triggered with a description when
+     * class listeners are notified. Batch listeners are not notified of events triggered individually through the
+     * <b>triggerEvent()</b> methods.
+     *
+     * If the listener is also registered as a consumer on the event bus, it isn't sent the events it received in the
+     * batch again as individual events.
+     *
+     * @param eventClass The class of events the listener handles.
+     * @param listener   The listener.
+     * @param <T>        The type of event handled by the listener.
+     */
+    public <T extends EventI> void registerBatchListener(final Class<T> eventClass, final BatchEventListenerI<T> listener) {
+        getBatchListeners().add(new BatchListenerRegistration(null, eventClass, listener));
+    }
+
+    /**
+     * Registers a listener that receives all events of the specified class (or any subclass) triggered with the
+     * specified description through a single call to one of the <b>triggerEvents()</b> methods. See {@link
+     * #registerBatchListener(Class, BatchEventListenerI)} for more information.
+     *
+     * @param description The description of the batches the listener handles.
+     * @param eventClass  The class of events the listener handles.
+     * @param listener    The listener.
+     * @param <T>         The type of event handled by the listener.
+     */
+    public <T extends EventI> void registerBatchListener(final String description, final Class<T> eventClass, final BatchEventListenerI<T> listener) {
+        if (StringUtils.isBlank(description)) {
+            throw new IllegalArgumentException("The description for a batch listener can't be blank.");
+        }
+        getBatchListeners().add(new BatchListenerRegistration(description, eventClass, listener));
+    }
+
+    /**
+     * Unregisters the batch listener.
+     *
+     * @param listener The listener to unregister.
+     */
+    public void unregisterBatchListener(final BatchEventListenerI<?> listener) {
+        for (final BatchListenerRegistration registration : getBatchListeners()) {
+            if (registration.getListener() == listener) {
+                getBatchListeners().remove(registration);
+            }
+        }
+    }
+
     /**
      * Send event.
      *
@@ -169,31 +516,183 @@ public class NrgEventService {
     private void triggerEventInternal(@Nonnull final Event event, final String description, final Boolean notifyClassListeners) {
         final Object data = event.getData();
         final Class<?> dataClass;
-        if (data != null && EventI.class.isAssignableFrom(data.getClass())) {
+        if (data instanceof EventI) {
             dataClass = data.getClass();
         } else {
             dataClass = event.getClass();
         }
 
-        if (log.isTraceEnabled()) {
-            final StringBuilder stackTraceDisplay = new StringBuilder();
-            final StackTraceElement[] stackTrace = Thread.currentThread().getStackTrace();
-            for (int index = 2; index < stackTrace.length; index++) {
-                final StackTraceElement element = stackTrace[index];
-                final String            className = element.getClassName();
-                if (className.startsWith("org.nrg")) {
-                    stackTraceDisplay.append("    at ").append(className).append(".").append(element.getMethodName()).append("(), line ").append(element.getLineNumber()).append("\n");
+        final boolean hasDescription = StringUtils.isNotBlank(description);
+        if (log.isDebugEnabled()) {
+            final String eventName  = hasDescription ? description : dataClass.getName();
+            final Object eventData  = ObjectUtils.defaultIfNull(data, event);
+            final int    sampleRate = getTraceSampleRate();
+            if (log.isTraceEnabled() && (sampleRate <= 1 || getTraceCounter().getAndIncrement() % sampleRate == 0)) {
+                log.trace("Triggering '{}' event: {}\n{}", eventName, eventData, CallerTrace.capture(1, getTraceFrameLimit(), TRACE_PACKAGE_PREFIX));
+            } else {
+                log.debug("Triggering '{}' event: {}", eventName, eventData);
+            }
+        }
+
+        final Object  key         = hasDescription ? description : dataClass;
+        final boolean notifyClass = BooleanUtils.toBooleanDefaultIfNull(notifyClassListeners, false);
+        journal(data, description, notifyClass);
+        persist(data);
+
+        final AsyncEventDispatcher dispatcher = getAsyncEventDispatcher();
+        if (dispatcher == null) {
+            notifyEventBus(event, key, dataClass, notifyClass);
+        } else {
+            dispatcher.submit(new Runnable() {
+                @Override
+                public void run() {
+                    notifyEventBus(event, key, dataClass, notifyClass);
+                }
+            });
+        }
+    }
+
+    private void triggerEventsInternal(final Collection<? extends EventI> events, final String description, final boolean notifyClassListeners) {
+        if (events == null || events.isEmpty()) {
+            return;
+        }
+
+        final List<EventI> batch = Collections.unmodifiableList(new ArrayList<EventI>(events));
+        log.debug("Triggering batch of {} events with description '{}'", batch.size(), description);
+        for (final EventI event : batch) {
+            journal(event, description, notifyClassListeners);
+            persist(event);
+        }
+
+        final AsyncEventDispatcher dispatcher = getAsyncEventDispatcher();
+        if (dispatcher == null) {
+            notifyBatch(batch, description, notifyClassListeners);
+        } else {
+            dispatcher.submit(new Runnable() {
+                @Override
+                public void run() {
+                    notifyBatch(batch, description, notifyClassListeners);
                 }
+            });
+        }
+    }
+
+    /**
+     * Sends each batch listener the events it handles, then sends each event to the event bus in the order the events
+     * were triggered. Batch listeners that are also registered on the event bus are skipped for the events they've
+     * already received.
+     */
+    @SuppressWarnings("unchecked")
+    private void notifyBatch(final List<EventI> events, final String description, final boolean notifyClassListeners) {
+        final Map<EventI, Set<Object>> served = new IdentityHashMap<>();
+        for (final BatchListenerRegistration registration : getBatchListeners()) {
+            final List<EventI> handled = registration.select(events, description, notifyClassListeners);
+            if (handled.isEmpty()) {
+                continue;
             }
-            log.trace("Triggering '{}' event: {}\n{}", StringUtils.isNotBlank(description) ? description : dataClass.getName(), ObjectUtils.defaultIfNull(data, event), stackTraceDisplay);
+            try {
+                ((BatchEventListenerI<EventI>) registration.getListener()).handleEvents(Collections.unmodifiableList(handled));
+            } catch (Throwable e) {
+                log.error("An error occurred in batch listener {} handling {} events", registration.getListener(), handled.size(), e);
+            }
+            for (final EventI event : handled) {
+                Set<Object> listeners = served.get(event);
+                if (listeners == null) {
+                    listeners = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+                    served.put(event, listeners);
+                }
+                listeners.add(registration.getListener());
+            }
+        }
+
+        final boolean hasDescription = StringUtils.isNotBlank(description);
+        for (final EventI event : events) {
+            final Class<?>    eventClass = event.getClass();
+            final Set<Object> excluded   = served.get(event);
+            notifyEventBus(Event.wrap(event), hasDescription ? description : eventClass, eventClass, notifyClassListeners, excluded == null ? Collections.emptySet() : excluded);
+        }
+    }
+
+    private void journal(final Object data, final String description, final boolean notifyClassListeners) {
+        final StructuredEventJournal journal = getEventJournal();
+        if (journal == null || !(data instanceof StructuredEventI)) {
+            return;
+        }
+        try {
+            journal.append((StructuredEventI) data, description, notifyClassListeners);
+        } catch (IOException | RuntimeException e) {
+            log.error("Unable to append the event to the event journal, it will be dispatched but can't be replayed: {}", data, e);
+        }
+    }
+
+    private void persist(final Object data) {
+        final WriteBehindEventPersister persister = getEventPersister();
+        if (persister != null && data instanceof PersistentEventImplementerI) {
+            persister.persist((PersistentEventImplementerI) data);
+        }
+    }
+
+    private void notifyEventBus(final Event event, final Object key, final Class<?> dataClass, final boolean notifyClassListeners) {
+        notifyKey(key, event);
+        if (notifyClassListeners) {
+            notifyKey(dataClass, event);
+        }
+    }
+
+    private void notifyEventBus(final Event event, final Object key, final Class<?> dataClass, final boolean notifyClassListeners, final Set<?> excluded) {
+        notifyKey(key, event, excluded);
+        if (notifyClassListeners) {
+            notifyKey(dataClass, event, excluded);
+        }
+    }
+
+    /**
+     * Notifies the consumers for the key except for the excluded consumers. If any consumers are excluded, the event is
+     * delivered to the remaining consumers through a one-off {@link DispatchPlan dispatch plan}, since the event bus
+     * can't skip consumers.
+     */
+    private void notifyKey(final Object key, final Event event, final Set<?> excluded) {
+        if (excluded.isEmpty()) {
+            notifyKey(key, event);
+            return;
+        }
+        final List<Registration<Object, ? extends Consumer<? extends Event<?>>>> registrations = getEventBus().getConsumerRegistry().select(key);
+        final List<Registration<?, ?>>                                          remaining     = new ArrayList<>(registrations.size());
+        for (final Registration<?, ?> registration : registrations) {
+            if (!excluded.contains(registration.getObject())) {
+                remaining.add(registration);
+            }
+        }
+        if (remaining.size() == registrations.size()) {
+            notifyKey(key, event);
         } else {
-            log.debug("Triggering '{}' event: {}", StringUtils.isNotBlank(description) ? description : dataClass.getName(), ObjectUtils.defaultIfNull(data, event));
+            new DispatchPlan(key, remaining, getPlanGeneration().get()).dispatch(event);
+        }
+    }
+
+    private void notifyKey(final Object key, final Event event) {
+        if (!isUseDispatchPlans()) {
+            getEventBus().notify(key, event);
+            return;
+        }
+        final DispatchPlan plan = getDispatchPlan(key);
+        if (!plan.dispatch(event)) {
+            getDispatchPlans().remove(key, plan);
         }
+    }
 
-        getEventBus().notify(StringUtils.isNotBlank(description) ? description : dataClass, event);
-        if (BooleanUtils.toBooleanDefaultIfNull(notifyClassListeners, false)) {
-            getEventBus().notify(dataClass, event);
+    private DispatchPlan getDispatchPlan(final Object key) {
+        final long   generation = getPlanGeneration().get();
+        DispatchPlan plan       = getDispatchPlans().get(key);
+        if (plan == null || plan.getGeneration() != generation) {
+            plan = new DispatchPlan(key, getEventBus().getConsumerRegistry().select(key), generation);
+            if (getDispatchPlans().size() >= MAX_DISPATCH_PLANS) {
+                log.debug("The number of cached dispatch plans reached the maximum of {}, clearing the cache", MAX_DISPATCH_PLANS);
+                getDispatchPlans().clear();
+            }
+            getDispatchPlans().put(key, plan);
         }
+        return plan;
     }
 
     private void sendEventInternal(@Nonnull final Event event, final Class<? extends EventI> eventClass, final String description, final Bus replyTo, final boolean notifyClassListeners) {
@@ -220,5 +719,59 @@ public class NrgEventService {
         }
     }
 
-    private final EventBus _eventBus;
+    private static class BatchListenerRegistration {
+        BatchListenerRegistration(final String description, final Class<? extends EventI> eventClass, final BatchEventListenerI<?> listener) {
+            _description = description;
+            _eventClass = eventClass;
+            _listener = listener;
+        }
+
+        /**
+         * Gets the events in the batch that the listener handles, in the order they were triggered. This uses the same
+         * keys the events are sent to on the event bus: a listener registered for a description only handles batches
+         * triggered with that description, while a listener registered for a class handles batches sent to the class.
+         */
+        List<EventI> select(final List<EventI> events, final String description, final boolean notifyClassListeners) {
+            final boolean matches = _description != null ? _description.equals(description) : StringUtils.isBlank(description) || notifyClassListeners;
+            if (!matches) {
+                return Collections.emptyList();
+            }
+            final List<EventI> selected = new ArrayList<>();
+            for (final EventI event : events) {
+                if (_eventClass.isInstance(event)) {
+                    selected.add(event);
+                }
+            }
+            return selected;
+        }
+
+        BatchEventListenerI<?> getListener() {
+            return _listener;
+        }
+
+        private final String                  _description;
+        private final Class<? extends EventI> _eventClass;
+        private final BatchEventListenerI<?>  _listener;
+    }
+
+    private static final String TRACE_PACKAGE_PREFIX      = "org.nrg";
+    private static final int    DEFAULT_TRACE_SAMPLE_RATE = 1;
+    private static final int    DEFAULT_TRACE_FRAME_LIMIT = 64;
+    private static final int    MAX_DISPATCH_PLANS        = 4096;
+    private static final long   BULKHEAD_SHUTDOWN_TIMEOUT = 5000L;
+
+    private final EventBus   _eventBus;
+    private final AtomicLong _traceCounter   = new AtomicLong();
+    private final AtomicLong _planGeneration = new AtomicLong();
+
+    private final ConcurrentMap<Object, DispatchPlan>        _dispatchPlans  = new ConcurrentHashMap<>();
+    private final List<BatchListenerRegistration>            _batchListeners = new CopyOnWriteArrayList<>();
+    private final ConcurrentMap<String, BulkheadConsumer<?>> _bulkheads      = new ConcurrentHashMap<>();
+
+    private volatile AsyncEventDispatcher      _asyncEventDispatcher;
+    private volatile StructuredEventJournal    _eventJournal;
+    private volatile WriteBehindEventPersister _eventPersister;
+    private volatile int                       _traceSampleRate = DEFAULT_TRACE_SAMPLE_RATE;
+    private volatile int                       _traceFrameLimit = DEFAULT_TRACE_FRAME_LIMIT;
+    private volatile boolean                   _useDispatchPlans;
 }
@@ -9,10 +9,14 @@
 
 package org.nrg.framework.services;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.Module;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.type.TypeFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
@@ -37,6 +41,11 @@ public class SerializerService {
         _builder = builder;
     }
 
+    private SerializerService(final ObjectMapper objectMapper) {
+        _builder = null;
+        _objectMapper = objectMapper;
+    }
+
     public JsonNode deserializeJson(final String json) throws IOException {
         return getObjectMapper().readTree(json);
     }
@@ -97,6 +106,55 @@ public class SerializerService {
         return getObjectMapper().getTypeFactory();
     }
 
+    /**
+     * Gets a JSON reader for the specified type. Readers are immutable and thread-safe, so callers that deserialize the
+     * same type repeatedly should keep the reader rather than calling this for each value.
+     *
+     * @param type The type to read.
+     *
+     * @return A reader for the type.
+     */
+    public ObjectReader getReader(final JavaType type) {
+        return getObjectMapper().readerFor(type);
+    }
+
+    /**
+     * Gets a JSON writer for the specified type. Like readers, writers are immutable and thread-safe.
+     *
+     * @param type The type to write.
+     *
+     * @return A writer for the type.
+     */
+    public ObjectWriter getWriter(final JavaType type) {
+        return getObjectMapper().writerFor(type);
+    }
+
+    /**
+     * Creates a JSON streaming parser for the input. The parser reads values with this service's configuration when
+     * {@link JsonParser#readValueAs(Class)} or {@link JsonParser#readValueAsTree()} is called.
+     *
+     * @param input The input to parse.
+     *
+     * @return The parser.
+     *
+     * @throws IOException When an error occurs reading the start of the input.
+     */
+    public JsonParser createParser(final InputStream input) throws IOException {
+        return getObjectMapper().getFactory().createParser(input);
+    }
+
+    /**
+     * Creates a serializer service that's configured like this one, but also has the specified module registered. This
+     * service is unaffected.
+     *
+     * @param module The module to register.
+     *
+     * @return The new serializer service.
+     */
+    public SerializerService withModule(final Module module) {
+        return new SerializerService(getObjectMapper().copy().registerModule(module));
+    }
+
     private ObjectMapper getObjectMapper() {
         return _objectMapper == null ? _objectMapper = _builder.build() : _objectMapper;
     }
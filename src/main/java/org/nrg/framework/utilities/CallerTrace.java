@@ -0,0 +1,149 @@
+/*
+ * framework: org.nrg.framework.utilities.CallerTrace
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.utilities;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Captures a limited view of the current thread's call stack for diagnostic logging. Only frames from classes whose
+ * names start with the specified prefix are kept, and no more than the specified number of frames are examined. On
+ * JVMs that provide <b>java.lang.StackWalker</b>, frames are walked lazily so that the cost of the capture is
+ * proportional to the frame limit rather than the depth of the stack. On older JVMs, the stack trace is captured in
+ * full and then filtered.
+ *
+ * Formatting the captured frames is deferred until {@link #toString()} is called, so a trace instance can be passed
+ * as a logging parameter without incurring any formatting cost when the log level is disabled.
+ */
+public final class CallerTrace {
+    /**
+     * Captures the caller frames of the current thread.
+     *
+     * @param skip   The number of frames to skip, not counting the frame for this method.
+     * @param limit  The maximum number of frames to examine.
+     * @param prefix Only frames whose class names start with this prefix are kept. Blank keeps all frames.
+     *
+     * @return The captured trace.
+     */
+    public static CallerTrace capture(final int skip, final int limit, final String prefix) {
+        final List<StackTraceElement> frames = STACK_WALKER != null ? walk(skip + 1, limit, prefix) : filter(new Throwable().getStackTrace(), skip + 1, limit, prefix);
+        return new CallerTrace(frames);
+    }
+
+    /**
+     * Indicates whether the lazy stack walker is available on the current JVM.
+     *
+     * @return Returns <b>true</b> if <b>java.lang.StackWalker</b> is used to capture frames.
+     */
+    public static boolean isStackWalkerAvailable() {
+        return STACK_WALKER != null;
+    }
+
+    public List<StackTraceElement> getFrames() {
+        return _frames;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buffer = new StringBuilder();
+        for (final StackTraceElement element : _frames) {
+            buffer.append("    at ").append(element.getClassName()).append(".").append(element.getMethodName()).append("(), line ").append(element.getLineNumber()).append("\n");
+        }
+        return buffer.toString();
+    }
+
+    private CallerTrace(final List<StackTraceElement> frames) {
+        _frames = Collections.unmodifiableList(frames);
+    }
+
+    private static List<StackTraceElement> filter(final StackTraceElement[] stackTrace, final int first, final int limit, final String prefix) {
+        final List<StackTraceElement> frames = new ArrayList<>();
+        final int                     last   = Math.min(stackTrace.length, first + limit);
+        for (int index = first; index < last; index++) {
+            if (matches(stackTrace[index].getClassName(), prefix)) {
+                frames.add(stackTrace[index]);
+            }
+        }
+        return frames;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<StackTraceElement> walk(final int skip, final int limit, final String prefix) {
+        try {
+            // Skip one more here for this method's frame.
+            return (List<StackTraceElement>) STACK_WALKER_WALK.invoke(STACK_WALKER, new Function<Stream<?>, List<StackTraceElement>>() {
+                @Override
+                public List<StackTraceElement> apply(final Stream<?> stream) {
+                    final List<StackTraceElement> frames   = new ArrayList<>();
+                    final Iterator<?>             iterator = stream.iterator();
+                    for (int index = 0; index < skip + 1 + limit && iterator.hasNext(); index++) {
+                        final Object frame = iterator.next();
+                        if (index > skip) {
+                            final StackTraceElement element = toStackTraceElement(frame);
+                            if (element != null && matches(element.getClassName(), prefix)) {
+                                frames.add(element);
+                            }
+                        }
+                    }
+                    return frames;
+                }
+            });
+        } catch (ReflectiveOperationException e) {
+            _log.debug("Unable to walk the stack with StackWalker, falling back to a full stack trace", e);
+            return filter(new Throwable().getStackTrace(), skip + 1, limit, prefix);
+        }
+    }
+
+    private static StackTraceElement toStackTraceElement(final Object frame) {
+        try {
+            return (StackTraceElement) STACK_FRAME_TO_ELEMENT.invoke(frame);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static boolean matches(final String className, final String prefix) {
+        return StringUtils.isBlank(prefix) || className.startsWith(prefix);
+    }
+
+    private static final Logger _log = LoggerFactory.getLogger(CallerTrace.class);
+
+    private static final Object STACK_WALKER;
+    private static final Method STACK_WALKER_WALK;
+    private static final Method STACK_FRAME_TO_ELEMENT;
+
+    static {
+        Object walker = null;
+        Method walk = null;
+        Method toElement = null;
+        try {
+            final Class<?> walkerClass = Class.forName("java.lang.StackWalker");
+            walker = walkerClass.getMethod("getInstance").invoke(null);
+            walk = walkerClass.getMethod("walk", Function.class);
+            toElement = Class.forName("java.lang.StackWalker$StackFrame").getMethod("toStackTraceElement");
+        } catch (ReflectiveOperationException e) {
+            walker = null;
+        }
+        STACK_WALKER = walker;
+        STACK_WALKER_WALK = walk;
+        STACK_FRAME_TO_ELEMENT = toElement;
+    }
+
+    private final List<StackTraceElement> _frames;
+}
@@ -0,0 +1,88 @@
+/*
+ * framework: org.nrg.framework.concurrency.TestLoggingThreadPoolExecutor
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.concurrency;
+
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.Logger;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class TestLoggingThreadPoolExecutor {
+    @After
+    public void tearDown() {
+        LoggingThreadPoolExecutor.setUseLoggingExecutor(false);
+    }
+
+    @Test
+    public void testVirtualThreadPerTaskExecutorRunsBlockingTasksConcurrently() throws InterruptedException {
+        final ExecutorService executor = LoggingThreadPoolExecutor.newVirtualThreadPerTaskExecutor();
+        final int             tasks    = 200;
+        final CountDownLatch  started  = new CountDownLatch(tasks);
+        final CountDownLatch  release  = new CountDownLatch(1);
+        try {
+            for (int index = 0; index < tasks; index++) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        started.countDown();
+                        try {
+                            release.await(5, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+
+            // Every task blocks until all of them have started, which only works if each one has its own thread.
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            release.countDown();
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testVirtualThreadPerTaskExecutorUsesExceptionHandlers() throws InterruptedException {
+        LoggingThreadPoolExecutor.setUseLoggingExecutor(true);
+        final AtomicReference<Throwable> handled = new AtomicReference<>();
+        final CountDownLatch             latch   = new CountDownLatch(1);
+        final ExecutorService executor = LoggingThreadPoolExecutor.newVirtualThreadPerTaskExecutor(new AbstractExceptionHandler() {
+            @Override
+            public boolean handles(final Throwable throwable) {
+                return throwable instanceof IllegalStateException;
+            }
+
+            @Override
+            public void handle(final Throwable throwable, final Logger logger) {
+                handled.set(throwable);
+                latch.countDown();
+            }
+        });
+        assertTrue(executor instanceof LoggingThreadPoolExecutor);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("Expected failure");
+            }
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals("Expected failure", handled.get().getMessage());
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * framework: org.nrg.framework.datacache.DataCacheCodecsPerformanceTest
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+@Ignore // Remove @Ignore to run these benchmarks. They only log timings, so they're kept out of the regular build.
+public class DataCacheCodecsPerformanceTest {
+    /**
+     * Round trips a large value through each codec with and without compression, logging the encoded size and the
+     * average encode and decode times for comparison.
+     */
+    @Test
+    public void testCompareEncodings() throws IOException {
+        final HashMap<String, String> value = new HashMap<>();
+        for (int index = 0; index < 2000; index++) {
+            value.put("1.2.840.113619.2.55.3." + index, "{\"project\":\"project" + (index % 10) + "\",\"user\":\"user" + (index % 5) + "\"}");
+        }
+
+        final DataCacheCodec[] codecs = {new JacksonDataCacheCodec("jackson", new ObjectMapper()), new JavaSerializationDataCacheCodec()};
+        for (final DataCacheCodec codec : codecs) {
+            for (final boolean compress : new boolean[]{false, true}) {
+                byte[] stored = null;
+                long   encode = 0;
+                long   decode = 0;
+                for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+                    long start = System.nanoTime();
+                    stored = compress ? DataCacheCodecs.compress(codec.encode(value)) : codec.encode(value);
+                    encode += System.nanoTime() - start;
+
+                    start = System.nanoTime();
+                    final HashMap<?, ?> decoded = codec.decode(compress ? DataCacheCodecs.decompress(stored) : stored, HashMap.class);
+                    decode += System.nanoTime() - start;
+                    assertEquals(value, decoded);
+                }
+                _log.info("{}{}: {} bytes, {} us to encode, {} us to decode", codec.getName(), compress ? DataCacheCodecs.DEFLATE_SUFFIX : "", stored.length,
+                          TimeUnit.NANOSECONDS.toMicros(encode / ITERATIONS), TimeUnit.NANOSECONDS.toMicros(decode / ITERATIONS));
+                if (compress) {
+                    assertTrue(stored.length < codec.encode(value).length / 2);
+                }
+            }
+        }
+    }
+
+    private static final Logger _log = LoggerFactory.getLogger(DataCacheCodecsPerformanceTest.class);
+
+    private static final int ITERATIONS = 20;
+}
@@ -0,0 +1,86 @@
+/*
+ * framework: org.nrg.framework.datacache.DataCacheCodecsTest
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DataCacheCodecsTest {
+    @Test
+    public void testEncodingNames() {
+        assertTrue(DataCacheCodecs.isJson(null));
+        assertTrue(DataCacheCodecs.isJson("json+deflate"));
+        assertFalse(DataCacheCodecs.isJson("java"));
+        assertTrue(DataCacheCodecs.isCompressed("java+deflate"));
+        assertFalse(DataCacheCodecs.isCompressed("java"));
+        assertEquals("java", DataCacheCodecs.getCodecName("java+deflate"));
+
+        final DataCacheCodecs codecs = new DataCacheCodecs();
+        assertTrue(codecs.getCodec("java+deflate") instanceof JavaSerializationDataCacheCodec);
+        assertNull(codecs.getCodec("json"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReservedNameIsRejected() {
+        new DataCacheCodecs().register(new JacksonDataCacheCodec(DataCacheCodecs.JSON, new ObjectMapper()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownDefaultEncodingIsRejected() {
+        new DataCacheCodecs().setDefaultEncoding("smile");
+    }
+
+    @Test
+    public void testCompressionThreshold() {
+        final DataCacheCodecs codecs = new DataCacheCodecs();
+        codecs.setCompressionThreshold(100);
+        assertFalse(codecs.shouldCompress(99));
+        assertTrue(codecs.shouldCompress(100));
+        codecs.setCompressionThreshold(-1);
+        assertFalse(codecs.shouldCompress(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testCompressionIsOptIn() {
+        final DataCacheCodecs codecs = new DataCacheCodecs();
+        assertFalse(codecs.isCompressionEnabled());
+        assertFalse(codecs.shouldCompress(Integer.MAX_VALUE));
+        assertNull(codecs.compressIfSmaller(new byte[100000]));
+    }
+
+    @Test
+    public void testOnlyCompressesWhenSmaller() {
+        final DataCacheCodecs codecs = new DataCacheCodecs();
+        codecs.setCompressionThreshold(100);
+        assertNull(codecs.compressIfSmaller(new byte[99]));
+
+        final byte[] compressed = codecs.compressIfSmaller(new byte[1000]);
+        assertNotNull(compressed);
+        assertTrue(compressed.length < 1000);
+
+        // Random bytes don't compress, so they're stored as they are.
+        final byte[] random = new byte[1000];
+        new Random(42).nextBytes(random);
+        assertNull(codecs.compressIfSmaller(random));
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptDataIsRejected() throws IOException {
+        final byte[] compressed = DataCacheCodecs.compress(new byte[1000]);
+        final byte[] truncated  = new byte[compressed.length / 2];
+        System.arraycopy(compressed, 0, truncated, 0, truncated.length);
+        DataCacheCodecs.decompress(truncated);
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * framework: org.nrg.framework.datacache.DataCacheInvalidationBusTest
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class DataCacheInvalidationBusTest {
+    @Before
+    public void setUp() {
+        final LoopbackDataCacheInvalidationTransport.Channel channel = new LoopbackDataCacheInvalidationTransport.Channel();
+
+        _first = new DataCacheInvalidationBus(new LoopbackDataCacheInvalidationTransport(channel));
+        _second = new DataCacheInvalidationBus(new LoopbackDataCacheInvalidationTransport(channel));
+        _first.setHeartbeatInterval(0);
+        _second.setHeartbeatInterval(0);
+        _first.register(_firstCache);
+        _second.register(_secondCache);
+        _first.afterPropertiesSet();
+        _second.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() {
+        _first.destroy();
+        _second.destroy();
+    }
+
+    @Test
+    public void testEncodeAndDecode() {
+        final DataCacheInvalidation key = new DataCacheInvalidation("node", 12, DataCacheInvalidation.Scope.KEY, "prefix:key");
+        assertEquals(key, DataCacheInvalidation.decode(key.encode()));
+
+        final DataCacheInvalidation all = new DataCacheInvalidation("node", 13, DataCacheInvalidation.Scope.ALL, null);
+        assertEquals(all, DataCacheInvalidation.decode(all.encode()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeInvalid() {
+        DataCacheInvalidation.decode("node:twelve:KEY:key");
+    }
+
+    @Test
+    public void testKeyInvalidationReachesOtherNodes() {
+        // The first message from each node doesn't count as a gap while nothing is cached.
+        _first.broadcastKey("unused");
+        _second.broadcastKey("unused");
+
+        cache("key");
+        _first.broadcastKey("key");
+        assertEquals("value", _firstCache.<String>get("key"));
+        assertNull(_secondCache.get("key"));
+        assertEquals(0L, _second.getMetrics().get("gaps"));
+        assertEquals(2L, _second.getMetrics().get("received"));
+    }
+
+    @Test
+    public void testAsyncInvalidationIsPublishedBeforeShutdown() {
+        _first.broadcastKey("unused");
+        _second.broadcastKey("unused");
+
+        cache("key");
+        _first.broadcastKeyAsync("key");
+        _first.destroy();
+        assertNull(_secondCache.get("key"));
+        assertEquals(0L, _second.getMetrics().get("gaps"));
+        assertEquals(2L, _second.getMetrics().get("received"));
+
+        // Once the bus is stopped, invalidations are published on the calling thread.
+        cache("key");
+        _first.broadcastKeyAsync("key");
+        assertNull(_secondCache.get("key"));
+        assertEquals(3L, _second.getMetrics().get("received"));
+    }
+
+    @Test
+    public void testInvalidateType() {
+        _first.broadcastKey("unused");
+        _second.broadcastKey("unused");
+
+        cache("key");
+        _firstCache.put("list", new ArrayList<String>(), 5, _firstCache.getGeneration());
+        _secondCache.put("list", new ArrayList<String>(), 5, _secondCache.getGeneration());
+        _first.invalidateType("java.util.ArrayList");
+        assertNull(_firstCache.get("list"));
+        assertNull(_secondCache.get("list"));
+        assertEquals("value", _firstCache.<String>get("key"));
+        assertEquals("value", _secondCache.<String>get("key"));
+    }
+
+    @Test
+    public void testMissedInvalidationInvalidatesAll() {
+        _first.broadcastKey("unused");
+        cache("key");
+
+        // Version 2 from the first node never arrives.
+        _second.onInvalidation(new DataCacheInvalidation(_first.getNodeId(), 3, DataCacheInvalidation.Scope.KEY, "other"));
+        assertNull(_secondCache.get("key"));
+        assertEquals(1L, _second.getMetrics().get("gaps"));
+
+        // Late delivery of an older version isn't a gap.
+        cache("key");
+        _second.onInvalidation(new DataCacheInvalidation(_first.getNodeId(), 2, DataCacheInvalidation.Scope.KEY, "other"));
+        assertEquals("value", _secondCache.<String>get("key"));
+        assertEquals(1L, _second.getMetrics().get("gaps"));
+    }
+
+    @Test
+    public void testHeartbeatDetectsMissedInvalidation() {
+        _first.broadcastKey("unused");
+        cache("key");
+
+        _second.onInvalidation(new DataCacheInvalidation(_first.getNodeId(), 1, DataCacheInvalidation.Scope.HEARTBEAT, null));
+        assertEquals("value", _secondCache.<String>get("key"));
+        _second.onInvalidation(new DataCacheInvalidation(_first.getNodeId(), 2, DataCacheInvalidation.Scope.HEARTBEAT, null));
+        assertNull(_secondCache.get("key"));
+    }
+
+    @Test
+    public void testFirstContactWithCachedValuesInvalidatesAll() {
+        cache("key");
+        _first.broadcastKey("other");
+        assertNull(_secondCache.get("key"));
+        assertEquals("value", _firstCache.<String>get("key"));
+        assertEquals(1, _second.getMetrics().get("nodes"));
+    }
+
+    private void cache(final String key) {
+        _firstCache.put(key, "value", 5, _firstCache.getGeneration());
+        _secondCache.put(key, "value", 5, _secondCache.getGeneration());
+    }
+
+    private final NearCache _firstCache  = new NearCache();
+    private final NearCache _secondCache = new NearCache();
+
+    private DataCacheInvalidationBus _first;
+    private DataCacheInvalidationBus _second;
+}
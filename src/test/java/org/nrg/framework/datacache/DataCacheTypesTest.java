@@ -0,0 +1,122 @@
+/*
+ * framework: org.nrg.framework.datacache.DataCacheTypesTest
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.junit.Test;
+import org.nrg.framework.services.SerializerService;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+public class DataCacheTypesTest {
+    @Test
+    public void testResolveClassName() throws ClassNotFoundException, IOException {
+        final DataCacheTypes              types    = new DataCacheTypes(new SerializerService(new Jackson2ObjectMapperBuilder()));
+        final DataCacheTypes.ResolvedType resolved = types.resolve(HashMap.class.getName());
+        assertEquals(HashMap.class, resolved.getRawClass());
+        assertSame(resolved, types.resolve(HashMap.class.getName()));
+
+        final HashMap<?, ?> value = resolved.getReader().readValue(JSON);
+        assertEquals(1, value.get("one"));
+    }
+
+    @Test
+    public void testResolveGenericType() throws ClassNotFoundException, IOException {
+        final DataCacheTypes types = new DataCacheTypes(new SerializerService(new Jackson2ObjectMapperBuilder()));
+        final String         name  = types.register(new TypeReference<HashMap<String, Long>>() {});
+        assertEquals("java.util.HashMap<java.lang.String,java.lang.Long>", name);
+
+        final HashMap<String, Long> value = types.resolve(name).getReader().readValue(JSON);
+        assertEquals(Long.valueOf(1), value.get("one"));
+        assertEquals(JSON, types.resolve(name).getWriter().writeValueAsString(value));
+
+        // Canonical names resolve without being registered first.
+        final DataCacheTypes unregistered = new DataCacheTypes(new SerializerService(new Jackson2ObjectMapperBuilder()));
+        assertEquals(Long.class, unregistered.resolve(name).getJavaType().getContentType().getRawClass());
+    }
+
+    @Test
+    public void testTypeNames() {
+        final DataCacheTypes types = new DataCacheTypes(new SerializerService(new Jackson2ObjectMapperBuilder()));
+        assertEquals(String.class.getName(), types.getTypeName(new TypeReference<String>() {}));
+        assertEquals("java.util.HashMap<java.lang.String,java.lang.String>", types.getTypeName(SerializerService.TYPE_REF_MAP_STRING_STRING));
+    }
+
+    @Test(expected = ClassNotFoundException.class)
+    public void testUnknownClassName() throws ClassNotFoundException {
+        new DataCacheTypes(new SerializerService(new Jackson2ObjectMapperBuilder())).resolve("org.nrg.framework.datacache.DoesNotExist");
+    }
+
+    @Test(expected = ClassNotFoundException.class)
+    public void testUnknownTypeParameter() throws ClassNotFoundException {
+        new DataCacheTypes(new SerializerService(new Jackson2ObjectMapperBuilder())).resolve("java.util.HashMap<java.lang.String,org.nrg.framework.datacache.DoesNotExist>");
+    }
+
+    @Test
+    public void testResolvedTypesAreCachedPerClassLoader() throws ClassNotFoundException {
+        final DataCacheTypes types  = new DataCacheTypes(new SerializerService(new Jackson2ObjectMapperBuilder()));
+        final String         name   = HashMap.class.getName();
+        final ClassLoader    loader = DataCacheTypes.getClassLoader();
+        final ClassLoader    other  = new URLClassLoader(new URL[0], loader);
+        assertFalse(types.isCached(name, loader));
+
+        final DataCacheTypes.ResolvedType resolved = types.resolve(name);
+        assertTrue(types.isCached(name, loader));
+        assertSame(resolved, types.resolve(name));
+        assertSame(resolved, types.resolve(name, loader));
+
+        assertFalse(types.isCached(name, other));
+        final DataCacheTypes.ResolvedType fromOther = types.resolve(name, other);
+        assertNotSame(resolved, fromOther);
+        assertTrue(types.isCached(name, other));
+        assertSame(fromOther, types.resolve(name, other));
+
+        types.clear();
+        assertFalse(types.isCached(name, loader));
+        assertFalse(types.isCached(name, other));
+    }
+
+    @Test
+    public void testRegisteredTypesAreKeptPerClassLoader() throws ClassNotFoundException {
+        final DataCacheTypes types  = new DataCacheTypes(new SerializerService(new Jackson2ObjectMapperBuilder()));
+        final ClassLoader    other  = new URLClassLoader(new URL[0], DataCacheTypes.getClassLoader());
+        final String         name   = types.register(new TypeReference<HashMap<String, Long>>() {});
+        assertTrue(types.isCached(name, DataCacheTypes.getClassLoader()));
+        assertFalse(types.isCached(name, other));
+        assertEquals(Long.class, types.resolve(name, other).getJavaType().getContentType().getRawClass());
+    }
+
+    @Test
+    public void testFallsBackToDefiningClassLoader() throws ClassNotFoundException {
+        final DataCacheTypes types    = new DataCacheTypes(new SerializerService(new Jackson2ObjectMapperBuilder()));
+        final String         name     = "java.util.HashMap<java.lang.String," + SerializerRegistry.class.getName() + ">";
+        final ClassLoader    isolated = new URLClassLoader(new URL[0], null);
+
+        // Like the common fork-join pool's threads, the isolated class loader can't see the application's classes.
+        final Thread      thread   = Thread.currentThread();
+        final ClassLoader original = thread.getContextClassLoader();
+        thread.setContextClassLoader(isolated);
+        try {
+            assertSame(isolated, DataCacheTypes.getClassLoader());
+            assertSame(SerializerRegistry.class, types.resolve(name).getJavaType().getContentType().getRawClass());
+            assertTrue(types.isCached(name, isolated));
+        } finally {
+            thread.setContextClassLoader(original);
+        }
+    }
+
+    private static final String JSON = "{\"one\":1,\"two\":2}";
+}
@@ -0,0 +1,137 @@
+/*
+ * framework: org.nrg.framework.datacache.NearCacheTest
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache;
+
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class NearCacheTest {
+    @Test
+    public void testGetAndInvalidate() {
+        final NearCache cache = new NearCache();
+        assertNull(cache.get("key"));
+        assertTrue(cache.put("key", "value", 5, cache.getGeneration()));
+        assertEquals("value", cache.<String>get("key"));
+        cache.invalidate("key");
+        assertNull(cache.get("key"));
+        assertEquals(1, cache.getStats().hitCount());
+        assertEquals(2, cache.getStats().missCount());
+    }
+
+    @Test
+    public void testStaleLoadIsNotCached() {
+        final NearCache cache      = new NearCache();
+        final long      generation = cache.getGeneration();
+
+        // A write invalidates the key after the read started loading from the store but before the read finished.
+        cache.invalidate("key");
+        assertFalse(cache.put("key", "stale", 5, generation));
+        assertNull(cache.get("key"));
+        assertTrue(cache.put("key", "fresh", 5, cache.getGeneration()));
+        assertEquals("fresh", cache.<String>get("key"));
+    }
+
+    @Test
+    public void testEvictsByWeight() {
+        final NearCache cache = new NearCache(100);
+        for (int index = 0; index < 20; index++) {
+            final HashMap<String, Integer> value = new HashMap<>();
+            value.put("index", index);
+            cache.put("key" + index, value, 20, cache.getGeneration());
+        }
+        assertTrue(cache.size() < 20);
+        assertTrue(cache.getStats().evictionCount() > 0);
+        assertEquals(cache.getStats().evictionCount(), cache.getMetrics().get("evictions"));
+        assertNotNull(cache.get("key19"));
+    }
+
+    @Test
+    public void testExpiredEntriesAreNotReturned() {
+        final NearCache cache = new NearCache();
+        assertTrue(cache.put("expired", "value", 5, System.currentTimeMillis() - 1000, cache.getGeneration()));
+        assertTrue(cache.put("current", "value", 5, System.currentTimeMillis() + 60000, cache.getGeneration()));
+        assertNull(cache.get("expired"));
+        assertEquals("value", cache.<String>get("current"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testInvalidateType() {
+        final NearCache cache = new NearCache();
+        cache.put("string", "value", 5, cache.getGeneration());
+        cache.put("map", new HashMap<String, Integer>(), 5, cache.getGeneration());
+        cache.invalidateType("java.util.HashMap<java.lang.String,java.lang.Integer>");
+        assertNull(cache.get("map"));
+        assertEquals("value", cache.<String>get("string"));
+    }
+
+    @Test
+    public void testEntryHasUpdatedTime() {
+        final NearCache cache = new NearCache();
+        assertTrue(cache.put("key", "value", 5, 0, 12345L, cache.getGeneration()));
+        final NearCache.Entry entry = cache.getEntry("key");
+        assertEquals("value", entry.getValue());
+        assertEquals(12345L, entry.getUpdated());
+        assertNull(cache.getEntry("missing"));
+    }
+
+    @Test
+    public void testCopiesMutableValues() {
+        final NearCache               cache = new NearCache();
+        final HashMap<String, String> value = new HashMap<>();
+        value.put("project", "project-1");
+        assertTrue(cache.put("map", value, 20, cache.getGeneration()));
+        assertTrue(cache.put("string", "value", 5, cache.getGeneration()));
+
+        final HashMap<String, String> copy = cache.copy("map", cache.<HashMap<String, String>>get("map"));
+        assertNotSame(value, copy);
+        assertEquals(value, copy);
+        copy.put("project", "changed");
+        assertEquals("project-1", cache.<HashMap<String, String>>get("map").get("project"));
+
+        final String string = cache.get("string");
+        assertSame(string, cache.copy("string", string));
+        assertSame(TimeUnit.SECONDS, cache.copy("unit", TimeUnit.SECONDS));
+
+        cache.setCopyOnRead(false);
+        assertSame(value, cache.copy("map", cache.<HashMap<String, String>>get("map")));
+    }
+
+    @Test
+    public void testUncopyableValuesAreNotCached() {
+        final NearCache  cache = new NearCache();
+        final Uncopyable value = new Uncopyable();
+        assertTrue(cache.put("key", value, 5, cache.getGeneration()));
+
+        // The value can't be copied, so it's handed out as is but no longer cached.
+        assertSame(value, cache.copy("key", cache.<Uncopyable>get("key")));
+        assertNull(cache.get("key"));
+        assertFalse(cache.put("key", new Uncopyable(), 5, cache.getGeneration()));
+    }
+
+    @Test
+    public void testDisabled() {
+        final NearCache cache = new NearCache(0);
+        assertFalse(cache.put("key", "value", 5, cache.getGeneration()));
+        assertNull(cache.get("key"));
+    }
+
+    private static class Uncopyable implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        @SuppressWarnings("unused")
+        private final Object _lock = new Object();
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * framework: org.nrg.framework.datacache.SerializerRegistryTest
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import org.junit.Test;
+import org.nrg.framework.services.SerializerService;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+
+import static org.junit.Assert.*;
+
+public class SerializerRegistryTest {
+    @Test
+    public void testLookupIsMemoized() throws Exception {
+        final SerializerRegistry registry = new SerializerRegistry();
+        registry.put(Point.class, PointSerializer.class.getName());
+
+        final JsonSerializer<? extends Point> serializer = registry.getSerializer(Point.class);
+        assertTrue(serializer instanceof PointSerializer);
+        assertSame(serializer, registry.getSerializer(Point.class));
+        assertSame(serializer, registry.getSerializer(LabeledPoint.class));
+        assertNull(registry.getSerializer(String.class));
+
+        registry.put(LabeledPoint.class, PointSerializer.class.getName());
+        assertNotSame(serializer, registry.getSerializer(LabeledPoint.class));
+    }
+
+    @Test
+    public void testAllChangesDiscardLookups() throws Exception {
+        final SerializerRegistry registry = new SerializerRegistry();
+        final String             name     = PointSerializer.class.getName();
+        final BiFunction<Class<?>, String, String> same = new BiFunction<Class<?>, String, String>() {
+            @Override
+            public String apply(final Class<?> clazz, final String serializer) {
+                return serializer;
+            }
+        };
+
+        assertNull(registry.putIfAbsent(Point.class, name));
+        JsonSerializer<? extends Point> serializer = registry.getSerializer(Point.class);
+        assertNotNull(serializer);
+
+        assertEquals(name, registry.replace(Point.class, name));
+        serializer = assertReplaced(registry, serializer);
+        assertTrue(registry.replace(Point.class, name, name));
+        serializer = assertReplaced(registry, serializer);
+        registry.compute(Point.class, same);
+        serializer = assertReplaced(registry, serializer);
+        registry.merge(Point.class, name, new BiFunction<String, String, String>() {
+            @Override
+            public String apply(final String existing, final String serializer) {
+                return serializer;
+            }
+        });
+        serializer = assertReplaced(registry, serializer);
+        registry.replaceAll(same);
+        serializer = assertReplaced(registry, serializer);
+        registry.entrySet().iterator().next().setValue(name);
+        assertReplaced(registry, serializer);
+
+        assertTrue(registry.keySet().remove(Point.class));
+        assertNull(registry.getSerializer(Point.class));
+
+        registry.put(Point.class, name);
+        assertNotNull(registry.getSerializer(Point.class));
+        assertTrue(registry.values().remove(name));
+        assertNull(registry.getSerializer(Point.class));
+
+        registry.put(Point.class, name);
+        assertNotNull(registry.getSerializer(Point.class));
+        final Iterator<Map.Entry<Class<?>, String>> iterator = registry.entrySet().iterator();
+        iterator.next();
+        iterator.remove();
+        assertTrue(registry.isEmpty());
+        assertNull(registry.getSerializer(Point.class));
+
+        registry.put(Point.class, name);
+        assertNotNull(registry.getSerializer(Point.class));
+        registry.computeIfPresent(Point.class, new BiFunction<Class<?>, String, String>() {
+            @Override
+            public String apply(final Class<?> clazz, final String serializer) {
+                return null;
+            }
+        });
+        assertFalse(registry.containsKey(Point.class));
+        assertNull(registry.getSerializer(Point.class));
+    }
+
+    @Test
+    public void testInterfaceLookup() throws Exception {
+        final SerializerRegistry registry = new SerializerRegistry();
+        registry.put(Map.class, PointSerializer.class.getName());
+        assertNotNull(registry.getSerializer(HashMap.class));
+        assertNull(registry.getSerializer(ArrayList.class));
+    }
+
+    @Test(expected = InstantiationException.class)
+    public void testInvalidSerializer() throws Exception {
+        final SerializerRegistry registry = new SerializerRegistry();
+        registry.put(Point.class, String.class.getName());
+        registry.getSerializer(Point.class);
+    }
+
+    @Test
+    public void testModuleSkipsInvalidSerializers() throws Exception {
+        final SerializerRegistry registry = new SerializerRegistry();
+        final DataCacheTypes     types    = new DataCacheTypes(new SerializerService(new Jackson2ObjectMapperBuilder()), registry);
+        registry.put(Point.class, PointSerializer.class.getName());
+        registry.put(LabeledPoint.class, String.class.getName());
+        registry.putDeserializer(Point.class, "org.nrg.framework.datacache.DoesNotExist");
+
+        assertNotNull(registry.getModule());
+        assertSame(registry.getModule(), registry.getModule());
+        assertEquals("\"3,4\"", types.resolve(Point.class.getName()).getWriter().writeValueAsString(new Point(3, 4)));
+    }
+
+    @Test
+    public void testNulls() throws Exception {
+        final SerializerRegistry registry = new SerializerRegistry();
+        registry.put(Point.class, PointSerializer.class.getName());
+        assertNull(registry.get(null));
+        assertFalse(registry.containsKey(null));
+        assertFalse(registry.containsValue(null));
+        assertNull(registry.remove(null));
+        assertNull(registry.getSerializer(null));
+        assertNull(registry.getDeserializer(null));
+
+        registry.put(Point.class, null);
+        assertFalse(registry.containsKey(Point.class));
+        assertNull(registry.getSerializer(Point.class));
+
+        final Map<Class<?>, String> seed = new HashMap<>();
+        seed.put(Point.class, PointSerializer.class.getName());
+        seed.put(LabeledPoint.class, null);
+        assertEquals(1, new SerializerRegistry(seed).size());
+
+        try {
+            registry.put(null, PointSerializer.class.getName());
+            fail("Expected a NullPointerException when registering a null class");
+        } catch (NullPointerException ignored) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testConcurrentLookups() throws Exception {
+        final SerializerRegistry registry = new SerializerRegistry();
+        registry.put(Point.class, PointSerializer.class.getName());
+
+        final ExecutorService                   executor = Executors.newFixedThreadPool(8);
+        final List<Callable<JsonSerializer<?>>> tasks    = new ArrayList<>();
+        for (int index = 0; index < 64; index++) {
+            tasks.add(new Callable<JsonSerializer<?>>() {
+                @Override
+                public JsonSerializer<?> call() throws Exception {
+                    return registry.getSerializer(LabeledPoint.class);
+                }
+            });
+        }
+        try {
+            final JsonSerializer<?> expected = registry.getSerializer(Point.class);
+            for (final Future<JsonSerializer<?>> future : executor.invokeAll(tasks)) {
+                assertSame(expected, future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCustomSerializersAreUsedByDataCacheTypes() throws Exception {
+        final SerializerRegistry registry = new SerializerRegistry();
+        final DataCacheTypes     types    = new DataCacheTypes(new SerializerService(new Jackson2ObjectMapperBuilder()), registry);
+        final Point              point    = new Point(3, 4);
+
+        assertEquals("{\"x\":3,\"y\":4}", types.resolve(Point.class.getName()).getWriter().writeValueAsString(point));
+
+        registry.put(Point.class, PointSerializer.class.getName());
+        registry.putDeserializer(Point.class, PointDeserializer.class.getName());
+        final String json = types.resolve(Point.class.getName()).getWriter().writeValueAsString(point);
+        assertEquals("\"3,4\"", json);
+        assertEquals(point, types.resolve(Point.class.getName()).getReader().readValue(json));
+        assertEquals("\"5,6\"", types.resolve(LabeledPoint.class.getName()).getWriter().writeValueAsString(new LabeledPoint(5, 6)));
+    }
+
+    private static JsonSerializer<? extends Point> assertReplaced(final SerializerRegistry registry, final JsonSerializer<? extends Point> previous) throws Exception {
+        final JsonSerializer<? extends Point> serializer = registry.getSerializer(Point.class);
+        assertNotNull(serializer);
+        assertNotSame(previous, serializer);
+        return serializer;
+    }
+
+    public static class Point implements Serializable {
+        public Point() {
+        }
+
+        public Point(final int x, final int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            return other instanceof Point && ((Point) other).x == x && ((Point) other).y == y;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * x + y;
+        }
+
+        public int x;
+        public int y;
+    }
+
+    public static class LabeledPoint extends Point {
+        public LabeledPoint(final int x, final int y) {
+            super(x, y);
+        }
+
+        public String label = "point";
+    }
+
+    public static class PointSerializer extends JsonSerializer<Point> {
+        @Override
+        public void serialize(final Point point, final JsonGenerator generator, final SerializerProvider provider) throws IOException {
+            generator.writeString(point.x + "," + point.y);
+        }
+    }
+
+    public static class PointDeserializer extends JsonDeserializer<Point> {
+        @Override
+        public Point deserialize(final JsonParser parser, final DeserializationContext context) throws IOException {
+            final String[] coordinates = parser.getValueAsString().split(",");
+            return new Point(Integer.parseInt(coordinates[0]), Integer.parseInt(coordinates[1]));
+        }
+    }
+}
@@ -9,25 +9,51 @@
 
 package org.nrg.framework.datacache;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.nrg.framework.configuration.FrameworkConfig;
 import org.nrg.framework.exceptions.NrgServiceException;
+import org.nrg.framework.exceptions.NrgServiceRuntimeException;
 import org.nrg.framework.test.OrmTestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import javax.inject.Inject;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 @RunWith(SpringJUnit4ClassRunner.class)
-@ContextConfiguration(classes = {OrmTestConfiguration.class, FrameworkConfig.class})
+@ContextConfiguration(classes = {OrmTestConfiguration.class, FrameworkConfig.class, TestDataCacheService.CompressionConfiguration.class})
 public class TestDataCacheService {
     public static final String KEY1 = "key1";
     public static final String KEY2 = "key2";
@@ -44,6 +70,9 @@ public class TestDataCacheService {
     public static final String UID1 = "1.2.3.4.5.6.7";
     public static final String UID2 = "2.3.4.5.6.7.8";
     public static final String UID3 = "3.4.5.6.7.8.9";
+    // Long enough that the entry can't expire before the test first reads it, even on a slow build machine.
+    public static final long TIME_TO_LIVE = 2000;
+    public static final int COMPRESSION_THRESHOLD = 4096;
 
     @Test
     public void testSimpleItem() throws NrgServiceException {
@@ -67,6 +96,347 @@ public class TestDataCacheService {
         assertEquals(STR3, received.get(KEY3));
     }
 
+    @Test
+    public void testNearCache() throws NrgServiceException {
+        _service.put("near", STR1);
+        assertEquals(STR1, _service.get("near"));
+        final long hits = _service.getNearCacheMetrics().get("hits").longValue();
+        assertEquals(STR1, _service.get("near"));
+        assertEquals(hits + 1, _service.getNearCacheMetrics().get("hits").longValue());
+
+        // Updating the value must invalidate the near cache entry.
+        _service.put("near", STR2);
+        assertEquals(STR2, _service.get("near"));
+        assertEquals(STR2, _service.remove("near"));
+        assertNull(_service.get("near"));
+    }
+
+    @Test
+    public void testNearCacheReturnsCopies() throws NrgServiceException {
+        _service.put("near-map", MAP_VAL);
+        final HashMap<String, String> first = _service.get("near-map");
+        first.put(KEY1, "changed");
+        final HashMap<String, String> second = _service.get("near-map");
+        assertEquals(MAP_VAL, second);
+        second.remove(KEY2);
+        assertEquals(MAP_VAL, _service.<HashMap<String, String>>getAll(Collections.singletonList("near-map")).get("near-map"));
+        _service.remove("near-map");
+    }
+
+    @Test
+    public void testExpiration() throws NrgServiceException, InterruptedException {
+        _service.put("expiring", STR1, TIME_TO_LIVE, TimeUnit.MILLISECONDS);
+        _service.put("renewed", STR3, TIME_TO_LIVE, TimeUnit.MILLISECONDS);
+        // Each entry expires no later than this, since its expiration time was set before put() returned.
+        final long expired = System.currentTimeMillis() + TIME_TO_LIVE + 1;
+        _service.put("lasting", STR2, 1, TimeUnit.HOURS);
+        // A plain put() replaces the entry with one that doesn't expire.
+        _service.put("renewed", STR3);
+        assertEquals(STR1, _service.get("expiring"));
+
+        for (long remaining = expired - System.currentTimeMillis(); remaining > 0; remaining = expired - System.currentTimeMillis()) {
+            Thread.sleep(remaining);
+        }
+        assertNull(_service.get("expiring"));
+        assertEquals(STR2, _service.get("lasting"));
+        assertEquals(STR3, _service.get("renewed"));
+
+        // The expired entry is still in the table until the cache is cleaned.
+        assertEquals(1, _service.clean(10));
+        assertEquals(0, _service.clean(10));
+        assertEquals(STR2, _service.remove("lasting"));
+        assertEquals(STR3, _service.remove("renewed"));
+    }
+
+    @Test
+    public void testBulkOperations() throws NrgServiceException {
+        final Map<String, String> values = new LinkedHashMap<>();
+        for (int index = 0; index < 700; index++) {
+            values.put("bulk" + index, "value" + index);
+        }
+        final Map<String, Long> ids = _service.putAll(values);
+        assertEquals(700, ids.size());
+
+        // Updates existing entries and inserts new ones in the same call.
+        final Map<String, String> updates = new LinkedHashMap<>();
+        updates.put("bulk0", "updated");
+        updates.put("bulk700", "value700");
+        _service.putAll(updates);
+
+        final List<String> keys = new ArrayList<>(values.keySet());
+        keys.add("bulk700");
+        keys.add("missing");
+        final Map<String, String> received = _service.getAll(keys);
+        assertEquals(701, received.size());
+        assertEquals("updated", received.get("bulk0"));
+        assertEquals("value699", received.get("bulk699"));
+        assertEquals("value700", received.get("bulk700"));
+        assertFalse(received.containsKey("missing"));
+
+        final Map<String, String> removed = _service.removeAll(keys);
+        assertEquals(701, removed.size());
+        assertTrue(_service.getAll(keys).isEmpty());
+    }
+
+    @Test
+    public void testLargeValueIsCompressed() throws NrgServiceException {
+        final HashMap<String, String> large = new HashMap<>();
+        for (int index = 0; index < 500; index++) {
+            large.put(KEY1 + index, STR1 + index);
+        }
+        final DataCacheItem item = _service.retrieve(_service.put("large", large));
+        assertEquals(DataCacheCodecs.JSON + DataCacheCodecs.DEFLATE_SUFFIX, item.getEncoding());
+        assertNull(item.getValue());
+        assertEquals(large, _service.remove("large"));
+    }
+
+    @Test
+    public void testCompressionThresholdCountsBytes() throws NrgServiceException {
+        // Fewer characters than the threshold, but more bytes once encoded as UTF-8.
+        final String accented = StringUtils.repeat('\u00e9', COMPRESSION_THRESHOLD * 2 / 3);
+        final DataCacheItem item = _service.retrieve(_service.put("accented", accented));
+        assertEquals(DataCacheCodecs.JSON + DataCacheCodecs.DEFLATE_SUFFIX, item.getEncoding());
+        assertEquals(accented, _service.remove("accented"));
+    }
+
+    @Test
+    public void testSmallValueIsNotCompressed() throws NrgServiceException {
+        final DataCacheItem item = _service.retrieve(_service.put("small", MAP_VAL));
+        assertNull(item.getEncoding());
+        assertNotNull(item.getValue());
+        assertEquals(MAP_VAL, _service.remove("small"));
+    }
+
+    @Test
+    public void testGenericType() throws NrgServiceException {
+        final HashMap<String, Long> sizes = new HashMap<>();
+        sizes.put(KEY1, 1L);
+        sizes.put(KEY2, 2L);
+        final DataCacheItem item = _service.retrieve(_service.put("sizes", sizes, new TypeReference<HashMap<String, Long>>() {}));
+        assertEquals("java.util.HashMap<java.lang.String,java.lang.Long>", item.getType());
+        // Read as a raw HashMap, the values would come back as integers rather than longs.
+        assertEquals(sizes, _service.remove("sizes"));
+    }
+
+    @Test
+    public void testConcurrentPutsToTheSameKey() throws Exception {
+        final ExecutorService      executor = Executors.newFixedThreadPool(8);
+        final List<Callable<Long>> tasks    = new ArrayList<>();
+        for (int index = 0; index < 32; index++) {
+            final String value = STR1 + index;
+            tasks.add(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    return _service.put("contended", value);
+                }
+            });
+        }
+        try {
+            final List<Future<Long>> results = executor.invokeAll(tasks);
+            final long               id      = results.get(0).get();
+            for (final Future<Long> result : results) {
+                assertEquals(id, (long) result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        final String value = _service.remove("contended");
+        assertTrue(value.startsWith(STR1));
+    }
+
+    @Test(expected = NrgServiceRuntimeException.class)
+    public void testPutWithDifferentType() {
+        _service.put("typed", STR1);
+        try {
+            _service.put("typed", 1L);
+        } finally {
+            _service.remove("typed");
+        }
+    }
+
+    @Test
+    public void testGetOrComputeLoadsOnce() throws Exception {
+        final AtomicInteger           loads  = new AtomicInteger();
+        final DataCacheLoader<String> loader = new DataCacheLoader<String>() {
+            @Override
+            public String load(final String key) throws InterruptedException {
+                Thread.sleep(200);
+                return STR1 + loads.incrementAndGet();
+            }
+        };
+        final ExecutorService        executor = Executors.newFixedThreadPool(8);
+        final List<Callable<String>> tasks    = new ArrayList<>();
+        for (int index = 0; index < 16; index++) {
+            tasks.add(new Callable<String>() {
+                @Override
+                public String call() {
+                    return _service.getOrCompute("computed", loader, 1, TimeUnit.MINUTES);
+                }
+            });
+        }
+        try {
+            for (final Future<String> result : executor.invokeAll(tasks)) {
+                assertEquals(STR1 + 1, result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(STR1 + 1, _service.getOrCompute("computed", loader, 1, TimeUnit.MINUTES));
+        assertEquals(1, loads.get());
+        _service.remove("computed");
+    }
+
+    @Test(expected = NrgServiceRuntimeException.class)
+    public void testReentrantGetOrComputeFails() {
+        _service.getOrCompute("reentrant", new DataCacheLoader<String>() {
+            @Override
+            public String load(final String key) {
+                return _service.getOrCompute(key, this, 1, TimeUnit.MINUTES);
+            }
+        }, 1, TimeUnit.MINUTES);
+    }
+
+    @Test
+    public void testLoaderCanComputeOtherKeys() {
+        final String value = _service.getOrCompute("outer", new DataCacheLoader<String>() {
+            @Override
+            public String load(final String key) {
+                return key + ":" + _service.getOrCompute("inner", new DataCacheLoader<String>() {
+                    @Override
+                    public String load(final String key) {
+                        return key;
+                    }
+                }, 1, TimeUnit.MINUTES);
+            }
+        }, 1, TimeUnit.MINUTES);
+        assertEquals("outer:inner", value);
+        _service.removeAll(Arrays.asList("outer", "inner"));
+    }
+
+    @Test
+    public void testGetOrComputeServesStaleValueWhileRefreshing() throws Exception {
+        final AtomicInteger           loads  = new AtomicInteger();
+        final DataCacheLoader<String> loader = new DataCacheLoader<String>() {
+            @Override
+            public String load(final String key) {
+                return STR1 + loads.incrementAndGet();
+            }
+        };
+        assertEquals(STR1 + 1, _service.getOrCompute("refreshed", loader, 1, 60, TimeUnit.SECONDS));
+        Thread.sleep(1100);
+
+        // The value is stale, so it's returned while it's refreshed in the background.
+        assertEquals(STR1 + 1, _service.getOrCompute("refreshed", loader, 1, 60, TimeUnit.SECONDS));
+        for (int attempt = 0; attempt < 50 && loads.get() < 2; attempt++) {
+            Thread.sleep(100);
+        }
+        Thread.sleep(100);
+        assertEquals(STR1 + 2, _service.getOrCompute("refreshed", loader, 1, 60, TimeUnit.SECONDS));
+        assertEquals(2, loads.get());
+        _service.remove("refreshed");
+    }
+
+    @Test
+    public void testGetOrComputeDoesNotCacheNull() {
+        final AtomicInteger           loads  = new AtomicInteger();
+        final DataCacheLoader<String> loader = new DataCacheLoader<String>() {
+            @Override
+            public String load(final String key) {
+                loads.incrementAndGet();
+                return null;
+            }
+        };
+        assertNull(_service.getOrCompute("absent", loader, 1, TimeUnit.MINUTES));
+        assertNull(_service.getOrCompute("absent", loader, 1, TimeUnit.MINUTES));
+        assertEquals(2, loads.get());
+        assertNull(_service.get("absent"));
+    }
+
+    @Test
+    public void testStreamedValue() {
+        // Over a megabyte, so the value is split across several chunks.
+        final int length = 5 * 256 * 1024 + 17;
+        _service.putStream("streamed", new DataCacheStreamWriter() {
+            @Override
+            public void write(final OutputStream output) throws IOException {
+                for (int index = 0; index < length; index++) {
+                    output.write(index % 251);
+                }
+            }
+        });
+        final Long read = _service.getStream("streamed", new DataCacheStreamReader<Long>() {
+            @Override
+            public Long read(final InputStream input) throws IOException {
+                long count = 0;
+                int  value;
+                while ((value = input.read()) >= 0) {
+                    assertEquals(count % 251, value);
+                    count++;
+                }
+                return count;
+            }
+        });
+        assertEquals(length, (long) read);
+        assertNull(_service.remove("streamed"));
+        assertNull(_service.getStream("streamed", new DataCacheStreamReader<Long>() {
+            @Override
+            public Long read(final InputStream input) {
+                return 0L;
+            }
+        }));
+    }
+
+    @Test
+    public void testStreamedJson() {
+        putJsonStream("[1, 2, 3]");
+        putJsonStream("[4, 5, 6, 7]");
+        final Integer sum = _service.getParser("json", new DataCacheParserReader<Integer>() {
+            @Override
+            public Integer read(final JsonParser parser) throws IOException {
+                assertEquals(JsonToken.START_ARRAY, parser.nextToken());
+                int sum = 0;
+                while (parser.nextToken() == JsonToken.VALUE_NUMBER_INT) {
+                    sum += parser.getIntValue();
+                }
+                return sum;
+            }
+        });
+        assertEquals(22, (int) sum);
+        _service.remove("json");
+    }
+
+    @Test(expected = NrgServiceRuntimeException.class)
+    public void testStreamedValueCantBeReadWithGet() {
+        putJsonStream("[1]");
+        try {
+            _service.get("json");
+        } finally {
+            _service.remove("json");
+        }
+    }
+
+    @Test
+    public void testGetAllSkipsStreamedValues() throws NrgServiceException {
+        putJsonStream("[1]");
+        _service.put("plain", STR1);
+        try {
+            final Map<String, String> values = _service.getAll(Arrays.asList("json", "plain"));
+            assertEquals(Collections.singletonMap("plain", STR1), values);
+        } finally {
+            _service.removeAll(Arrays.asList("json", "plain"));
+        }
+    }
+
+    private void putJsonStream(final String json) {
+        _service.putStream("json", new DataCacheStreamWriter() {
+            @Override
+            public void write(final OutputStream output) throws IOException {
+                output.write(json.getBytes(StandardCharsets.UTF_8));
+            }
+        });
+    }
+
     /**
      * This test was the main motivation for the data cache service (storing study instance UIDs with project
      * associations), so it's just explicitly testing that requirement.
@@ -133,6 +503,19 @@ public class TestDataCacheService {
 
     private static final SimpleDateFormat FORMATTER = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss a");
 
+    /**
+     * Compression is off by default, so it's turned on here to test reading and writing compressed values.
+     */
+    @Configuration
+    public static class CompressionConfiguration {
+        @Bean
+        public DataCacheCodecs dataCacheCodecs() {
+            final DataCacheCodecs codecs = new DataCacheCodecs();
+            codecs.setCompressionThreshold(COMPRESSION_THRESHOLD);
+            return codecs;
+        }
+    }
+
     @Inject
     private DataCacheService _service;
 }
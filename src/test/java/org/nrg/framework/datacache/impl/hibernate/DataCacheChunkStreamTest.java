@@ -0,0 +1,106 @@
+/*
+ * framework: org.nrg.framework.datacache.impl.hibernate.DataCacheChunkStreamTest
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache.impl.hibernate;
+
+import org.junit.Test;
+import org.nrg.framework.datacache.DataCacheChunk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class DataCacheChunkStreamTest {
+    @Test
+    public void testRoundTrip() throws IOException {
+        final byte[] data = new byte[1000];
+        for (int index = 0; index < data.length; index++) {
+            data[index] = (byte) index;
+        }
+        final DataCacheChunkOutputStream output = new DataCacheChunkOutputStream(_dao, "stream", 64);
+        output.write(data, 0, 500);
+        output.write(data[500]);
+        output.write(data, 501, 499);
+        output.close();
+
+        assertEquals(1000, output.getLength());
+        assertEquals(16, _dao.chunks.size());
+        assertTrue(_dao.chunks.get(15).isLastChunk());
+        assertFalse(_dao.chunks.get(14).isLastChunk());
+        assertArrayEquals(data, readAll(new DataCacheChunkInputStream(_dao, "key", "stream")));
+    }
+
+    @Test
+    public void testFullLastChunk() throws IOException {
+        final DataCacheChunkOutputStream output = new DataCacheChunkOutputStream(_dao, "stream", 4);
+        output.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        output.close();
+
+        assertEquals(2, _dao.chunks.size());
+        assertTrue(_dao.chunks.get(1).isLastChunk());
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}, readAll(new DataCacheChunkInputStream(_dao, "key", "stream")));
+    }
+
+    @Test
+    public void testEmptyStream() throws IOException {
+        new DataCacheChunkOutputStream(_dao, "stream", 4).close();
+
+        assertEquals(1, _dao.chunks.size());
+        assertEquals(-1, new DataCacheChunkInputStream(_dao, "key", "stream").read());
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingChunkFails() throws IOException {
+        final DataCacheChunkOutputStream output = new DataCacheChunkOutputStream(_dao, "stream", 4);
+        output.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9});
+        output.close();
+
+        // The stream is deleted after its first chunk has been read.
+        _dao.chunks.remove(1);
+        readAll(new DataCacheChunkInputStream(_dao, "key", "stream"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testWriteAfterCloseFails() throws IOException {
+        final DataCacheChunkOutputStream output = new DataCacheChunkOutputStream(_dao, "stream", 4);
+        output.close();
+        output.write(1);
+    }
+
+    private static byte[] readAll(final InputStream input) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final byte[]                buffer = new byte[100];
+        int                         read;
+        while ((read = input.read(buffer, 0, buffer.length)) >= 0) {
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+
+    private static class InMemoryChunkDAO extends DataCacheChunkDAO {
+        @Override
+        public void write(final String stream, final int chunkIndex, final byte[] data, final boolean lastChunk) {
+            chunks.put(chunkIndex, new DataCacheChunk(stream, chunkIndex, Arrays.copyOf(data, data.length), lastChunk));
+        }
+
+        @Override
+        public DataCacheChunk read(final String stream, final int chunkIndex) {
+            return chunks.get(chunkIndex);
+        }
+
+        final Map<Integer, DataCacheChunk> chunks = new HashMap<>();
+    }
+
+    private final InMemoryChunkDAO _dao = new InMemoryChunkDAO();
+}
@@ -0,0 +1,159 @@
+/*
+ * framework: org.nrg.framework.datacache.impl.jdbc.PolledDataCacheInvalidationTransportTest
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.datacache.impl.jdbc;
+
+import org.apache.commons.lang3.StringUtils;
+import org.h2.Driver;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nrg.framework.datacache.DataCacheInvalidation;
+import org.nrg.framework.datacache.DataCacheInvalidation.Scope;
+import org.nrg.framework.datacache.DataCacheInvalidationListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class PolledDataCacheInvalidationTransportTest {
+    @Before
+    public void setUp() {
+        _dataSource = new SimpleDriverDataSource(new Driver(), "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        _template = new JdbcTemplate(_dataSource);
+    }
+
+    @After
+    public void tearDown() {
+        for (final PolledDataCacheInvalidationTransport transport : _transports) {
+            transport.stop();
+        }
+        _template.execute("SHUTDOWN");
+    }
+
+    @Test
+    public void testInvalidationsAreDeliveredOnce() {
+        final RecordingListener                    first     = new RecordingListener();
+        final RecordingListener                    second    = new RecordingListener();
+        final PolledDataCacheInvalidationTransport publisher = start(first);
+        final PolledDataCacheInvalidationTransport receiver  = start(second);
+
+        final DataCacheInvalidation key       = new DataCacheInvalidation("first", 1, Scope.KEY, "key");
+        final DataCacheInvalidation heartbeat = new DataCacheInvalidation("first", 2, Scope.HEARTBEAT, null);
+        publisher.publish(key);
+        publisher.publish(heartbeat);
+
+        receiver.poll();
+        assertEquals(Arrays.asList(key, heartbeat), second.getReceived());
+
+        // Invalidations within the look-back period are read again but not delivered again.
+        receiver.poll();
+        assertEquals(Arrays.asList(key, heartbeat), second.getReceived());
+
+        // The sender receives its own invalidations too, which the bus ignores.
+        publisher.poll();
+        assertEquals(Arrays.asList(key, heartbeat), first.getReceived());
+        assertEquals(0, second.getMissed());
+    }
+
+    @Test
+    public void testLongNamesInvalidateAll() {
+        final RecordingListener                    listener  = new RecordingListener();
+        final PolledDataCacheInvalidationTransport transport = start(listener);
+
+        transport.publish(new DataCacheInvalidation("first", 1, Scope.KEY, StringUtils.repeat('k', 5000)));
+        transport.poll();
+        assertEquals(Collections.singletonList(new DataCacheInvalidation("first", 1, Scope.ALL, null)), listener.getReceived());
+    }
+
+    @Test
+    public void testExpiredInvalidationsAreDeleted() throws InterruptedException {
+        final RecordingListener                    listener  = new RecordingListener();
+        final PolledDataCacheInvalidationTransport transport = new PolledDataCacheInvalidationTransport(_dataSource, TABLE);
+        transport.setPollInterval(POLL_INTERVAL);
+        transport.setLookBack(50);
+        transport.setRetention(200);
+        transport.start(listener);
+        _transports.add(transport);
+
+        transport.publish(new DataCacheInvalidation("first", 1, Scope.KEY, "key"));
+        assertEquals(1, countRows());
+        Thread.sleep(300);
+        transport.poll();
+        assertEquals(1, listener.getReceived().size());
+        assertEquals(0, countRows());
+    }
+
+    @Test
+    public void testFailedPublishIsLogged() {
+        final RecordingListener                    listener  = new RecordingListener();
+        final PolledDataCacheInvalidationTransport transport = start(listener);
+
+        // The primary key rejects a duplicate version, which is logged rather than thrown to the caller.
+        transport.publish(new DataCacheInvalidation("first", 1, Scope.KEY, "key"));
+        transport.publish(new DataCacheInvalidation("first", 1, Scope.KEY, "other"));
+        transport.poll();
+        assertEquals(Collections.singletonList(new DataCacheInvalidation("first", 1, Scope.KEY, "key")), listener.getReceived());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidTableName() {
+        new PolledDataCacheInvalidationTransport(_dataSource, "invalidations; DROP TABLE data_cache");
+    }
+
+    private PolledDataCacheInvalidationTransport start(final DataCacheInvalidationListener listener) {
+        final PolledDataCacheInvalidationTransport transport = new PolledDataCacheInvalidationTransport(_dataSource, TABLE);
+        transport.setPollInterval(POLL_INTERVAL);
+        transport.start(listener);
+        _transports.add(transport);
+        return transport;
+    }
+
+    private int countRows() {
+        return _template.queryForObject("SELECT COUNT(*) FROM " + TABLE, Integer.class);
+    }
+
+    private static class RecordingListener implements DataCacheInvalidationListener {
+        @Override
+        public synchronized void onInvalidation(final DataCacheInvalidation invalidation) {
+            _received.add(invalidation);
+        }
+
+        @Override
+        public synchronized void onMissedInvalidations() {
+            _missed++;
+        }
+
+        synchronized List<DataCacheInvalidation> getReceived() {
+            return new ArrayList<>(_received);
+        }
+
+        synchronized int getMissed() {
+            return _missed;
+        }
+
+        private final List<DataCacheInvalidation> _received = new ArrayList<>();
+
+        private int _missed;
+    }
+
+    private static final String TABLE         = "test_invalidation";
+    private static final long   POLL_INTERVAL = 60000L;
+
+    private final List<PolledDataCacheInvalidationTransport> _transports = new ArrayList<>();
+
+    private SimpleDriverDataSource _dataSource;
+    private JdbcTemplate           _template;
+}
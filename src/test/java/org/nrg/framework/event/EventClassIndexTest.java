@@ -0,0 +1,115 @@
+/*
+ * framework: org.nrg.framework.event.EventClassIndexTest
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.event;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EventClassIndexTest {
+    @Before
+    public void setUp() throws IOException {
+        _folder = Files.createTempDirectory("event-index").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(_folder);
+    }
+
+    @Test
+    public void testLoadsIndexesFromEachJar() throws IOException {
+        final File first  = writeIndex("first", INDEX_1);
+        final File second = writeIndex("second", INDEX_2);
+
+        final EventClassIndex index = EventClassIndex.load(new URLClassLoader(new URL[]{first.toURI().toURL(), second.toURI().toURL()}, null));
+        final List<EventClassIndex.Entry> entries = index.getEventClasses();
+        assertEquals(2, entries.size());
+
+        final EventClassIndex.Entry demo = index.getEventClass("demo.Demo");
+        assertNotNull(demo);
+        assertEquals("", demo.getName());
+        assertEquals("A \"quoted\"\ndesc", demo.getDescription());
+        assertEquals(Arrays.asList("A", "B"), demo.getDefaultEventIds());
+        assertTrue(demo.isIncludeValuesFromDatabase());
+        assertEquals(2, demo.getFilterables().size());
+
+        final EventClassIndex.FilterableEntry modality = demo.getFilterables().get(0);
+        assertEquals("getModality", modality.getMethod());
+        assertEquals("modality", modality.getProperty());
+        assertEquals(Arrays.asList("MR", "CT"), modality.getInitialValues());
+        assertEquals("MR", modality.getDefaultValue());
+        assertTrue(modality.isFilterRequired());
+        assertTrue(modality.isIncludeValuesFromDatabase());
+        assertFalse(demo.getFilterables().get(1).isIncludeValuesFromDatabase());
+
+        final EventClassIndex.Entry other = index.getEventClass("demo.Other");
+        assertEquals("Other", other.getName());
+        assertEquals(Collections.<String>emptyList(), other.getFilterables());
+    }
+
+    @Test
+    public void testSkipsUnsupportedVersions() throws IOException {
+        final File future = writeIndex("future", INDEX_1.replace("\"version\": 1", "\"version\": 99"));
+        assertTrue(EventClassIndex.load(new URLClassLoader(new URL[]{future.toURI().toURL()}, null)).getEventClasses().isEmpty());
+    }
+
+    private File writeIndex(final String name, final String contents) throws IOException {
+        final File root = new File(_folder, name);
+        FileUtils.writeStringToFile(new File(root, EventClassIndex.INDEX_RESOURCE), contents, StandardCharsets.UTF_8);
+        return root;
+    }
+
+    private static final String INDEX_1 = "{\n" +
+                                          "  \"version\": 1,\n" +
+                                          "  \"events\": [\n" +
+                                          "    {\n" +
+                                          "      \"class\": \"demo.Demo\",\n" +
+                                          "      \"name\": \"\",\n" +
+                                          "      \"description\": \"A \\\"quoted\\\"\\ndesc\",\n" +
+                                          "      \"defaultEventIds\": [\"A\", \"B\"],\n" +
+                                          "      \"includeValuesFromDatabase\": true,\n" +
+                                          "      \"filterables\": [\n" +
+                                          "        {\"method\": \"getModality\", \"property\": \"modality\", \"initialValues\": [\"MR\", \"CT\"], \"defaultValue\": \"MR\", \"filterRequired\": true, \"includeValuesFromDatabase\": true},\n" +
+                                          "        {\"method\": \"isArchived\", \"property\": \"archived\", \"initialValues\": [], \"defaultValue\": \"\", \"filterRequired\": false, \"includeValuesFromDatabase\": false}\n" +
+                                          "      ]\n" +
+                                          "    }\n" +
+                                          "  ]\n" +
+                                          "}\n";
+
+    private static final String INDEX_2 = "{\n" +
+                                          "  \"version\": 1,\n" +
+                                          "  \"events\": [\n" +
+                                          "    {\n" +
+                                          "      \"class\": \"demo.Other\",\n" +
+                                          "      \"name\": \"Other\",\n" +
+                                          "      \"description\": \"\",\n" +
+                                          "      \"defaultEventIds\": [],\n" +
+                                          "      \"includeValuesFromDatabase\": true,\n" +
+                                          "      \"filterables\": []\n" +
+                                          "    }\n" +
+                                          "  ]\n" +
+                                          "}\n";
+
+    private File _folder;
+}
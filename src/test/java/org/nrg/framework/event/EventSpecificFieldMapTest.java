@@ -0,0 +1,114 @@
+/*
+ * framework: org.nrg.framework.event.EventSpecificFieldMapTest
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.event;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+import org.nrg.framework.event.entities.EventSpecificFields;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class EventSpecificFieldMapTest {
+    @Test
+    public void testLookups() {
+        final Map<String, String> map = EventSpecificFieldMap.copyOf(FIELDS);
+        assertEquals(FIELDS.size(), map.size());
+        assertEquals("XNAT_S00001", map.get("subject"));
+        assertEquals("MR", map.get("modality"));
+        assertNull(map.get("missing"));
+        assertNull(map.get(42));
+        assertTrue(map.containsKey("scanCount"));
+        assertFalse(map.containsKey("missing"));
+        assertEquals(FIELDS, map);
+        assertEquals(FIELDS.hashCode(), map.hashCode());
+    }
+
+    @Test
+    public void testIteratesInKeyOrder() {
+        final Map<String, String> map = EventSpecificFieldMap.copyOf(FIELDS);
+        assertArrayEquals(new String[]{"modality", "project", "scanCount", "subject"}, map.keySet().toArray());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutable() {
+        EventSpecificFieldMap.copyOf(FIELDS).put("foo", "bar");
+    }
+
+    @Test
+    public void testEntityRoundTrip() {
+        final Set<EventSpecificFields> entities = EventSpecificFieldMap.copyOf(FIELDS).toEntities();
+        assertEquals(FIELDS.size(), entities.size());
+        assertEquals(FIELDS, EventSpecificFieldMap.fromEntities(entities));
+    }
+
+    @Test
+    public void testEmpty() {
+        assertSame(EventSpecificFieldMap.EMPTY, EventSpecificFieldMap.copyOf(new HashMap<String, String>()));
+        assertSame(EventSpecificFieldMap.EMPTY, EventSpecificFieldMap.fromEntities(null));
+        assertTrue(EventSpecificFieldMap.EMPTY.isEmpty());
+    }
+
+    @Test
+    public void testStructuredEventFields() {
+        final TestStructuredEvent event = new TestStructuredEvent();
+        event.setEventSpecificFieldsAsMap(FIELDS);
+        assertEquals(FIELDS, event.getEventSpecificFieldsAsMap());
+        assertEquals(FIELDS.size(), event.getEventSpecificFields().size());
+
+        event.getEventSpecificFields().add(new EventSpecificFields("session", "XNAT_E00001"));
+        assertEquals("XNAT_E00001", event.getEventSpecificFieldsAsMap().get("session"));
+
+        event.setEventSpecificFields(null);
+        assertTrue(event.getEventSpecificFieldsAsMap().isEmpty());
+
+        event.setEventSpecificFields(new HashSet<>(Arrays.asList(new EventSpecificFields("project", "Other"))));
+        assertEquals("Other", event.getEventSpecificFieldsAsMap().get("project"));
+    }
+
+    @Test
+    public void testStructuredEventFieldsAreCreatedLazily() {
+        final TestStructuredEvent event = new TestStructuredEvent();
+        event.setEventSpecificFieldsAsMap(FIELDS);
+
+        // Getting the set doesn't change the event, so the map is kept until the set itself is changed.
+        final Map<String, String>      map    = event.getEventSpecificFieldsAsMap();
+        final Set<EventSpecificFields> fields = event.getEventSpecificFields();
+        assertSame(fields, event.getEventSpecificFields());
+        assertSame(map, event.getEventSpecificFieldsAsMap());
+        assertEquals(FIELDS.size(), fields.size());
+        assertSame(map, event.getEventSpecificFieldsAsMap());
+
+        final Iterator<EventSpecificFields> iterator = fields.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getFieldName().equals("modality")) {
+                iterator.remove();
+            }
+        }
+        assertNotSame(map, event.getEventSpecificFieldsAsMap());
+        assertFalse(event.getEventSpecificFieldsAsMap().containsKey("modality"));
+        assertEquals(FIELDS.size() - 1, event.getEventSpecificFieldsAsMap().size());
+
+        fields.clear();
+        assertTrue(event.getEventSpecificFieldsAsMap().isEmpty());
+    }
+
+    private static class TestStructuredEvent extends StructuredEvent {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final Map<String, String> FIELDS = ImmutableMap.of("subject", "XNAT_S00001", "project", "Project1", "modality", "MR", "scanCount", "12");
+}
@@ -0,0 +1,68 @@
+/*
+ * framework: org.nrg.framework.event.FilterableAccessorsTest
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.event;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class FilterableAccessorsTest {
+    @Test
+    public void testAccessorClassNames() {
+        assertEquals("org.nrg.xnat.ScanEvent_FilterableAccessor", FilterableAccessors.getAccessorClassName("org.nrg.xnat.ScanEvent"));
+        assertEquals("org.nrg.xnat.Events_Scan_FilterableAccessor", FilterableAccessors.getAccessorClassName("org.nrg.xnat.Events$Scan"));
+        assertEquals("ScanEvent_FilterableAccessor", FilterableAccessors.getAccessorClassName("ScanEvent"));
+    }
+
+    @Test
+    public void testPropertyNames() {
+        assertEquals("modality", FilterableAccessors.getPropertyName("getModality"));
+        assertEquals("archived", FilterableAccessors.getPropertyName("isArchived"));
+        assertEquals("URI", FilterableAccessors.getPropertyName("getURI"));
+        assertEquals("status", FilterableAccessors.getPropertyName("status"));
+    }
+
+    @Test
+    public void testAccessorValues() {
+        final FilterableAccessor<SessionEvent> accessor = FilterableAccessors.forClass(SessionEvent.class);
+        assertSame(accessor, FilterableAccessors.forClass(SessionEvent.class));
+        assertEquals(SessionEvent.class, accessor.getEventClass());
+        assertEquals(2, accessor.getProperties().size());
+        assertTrue(accessor.getProperties().containsAll(Arrays.asList("modality", "archived")));
+
+        final SessionEvent event = new SessionEvent();
+        assertEquals("MR", accessor.getValue(event, "modality"));
+        assertEquals(Boolean.TRUE, accessor.getValue(event, "archived"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownProperty() {
+        FilterableAccessors.forClass(SessionEvent.class).getValue(new SessionEvent(), "project");
+    }
+
+    @EventClass(name = "SessionEvent")
+    public static class SessionEvent extends StructuredEvent {
+        @Filterable
+        public String getModality() {
+            return "MR";
+        }
+
+        @Filterable
+        public boolean isArchived() {
+            return true;
+        }
+
+        public String getProject() {
+            return "project-1";
+        }
+    }
+}
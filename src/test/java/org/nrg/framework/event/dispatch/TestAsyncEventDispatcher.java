@@ -0,0 +1,187 @@
+/*
+ * framework: org.nrg.framework.event.dispatch.TestAsyncEventDispatcher
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.event.dispatch;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class TestAsyncEventDispatcher {
+    @Test
+    public void testDispatchesOnDispatcherThreads() throws InterruptedException {
+        final AsyncEventDispatcher      dispatcher = new AsyncEventDispatcher(16, 2, 4, BackpressurePolicy.BLOCK);
+        final CountDownLatch            latch      = new CountDownLatch(10);
+        final AtomicReference<String>   threadName = new AtomicReference<>();
+        for (int index = 0; index < 10; index++) {
+            dispatcher.submit(new Runnable() {
+                @Override
+                public void run() {
+                    threadName.set(Thread.currentThread().getName());
+                    latch.countDown();
+                }
+            });
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(threadName.get().startsWith("nrg-event-dispatcher-"));
+        assertTrue(dispatcher.shutdown(5, TimeUnit.SECONDS));
+        assertEquals(10, dispatcher.getSubmittedCount());
+        assertEquals(10, dispatcher.getDispatchedCount());
+        assertEquals(0, dispatcher.getQueueDepth());
+    }
+
+    @Test
+    public void testCallerRunsWhenFull() throws InterruptedException {
+        final AsyncEventDispatcher dispatcher = new AsyncEventDispatcher(1, 1, 1, BackpressurePolicy.CALLER_RUNS);
+        final CountDownLatch       blocker    = new CountDownLatch(1);
+        final CountDownLatch       started    = new CountDownLatch(1);
+        dispatcher.submit(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                await(blocker);
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // The dispatcher thread is busy, so this fills the single queue slot...
+        dispatcher.submit(NO_OP);
+
+        // ...and this one runs on the calling thread.
+        final AtomicReference<Thread> ranOn = new AtomicReference<>();
+        dispatcher.submit(new Runnable() {
+            @Override
+            public void run() {
+                ranOn.set(Thread.currentThread());
+            }
+        });
+        assertSame(Thread.currentThread(), ranOn.get());
+        assertEquals(1, dispatcher.getCallerRunsCount());
+
+        blocker.countDown();
+        assertTrue(dispatcher.shutdown(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDropOldestWhenFull() throws InterruptedException {
+        final AsyncEventDispatcher dispatcher = new AsyncEventDispatcher(2, 1, 1, BackpressurePolicy.DROP_OLDEST);
+        final CountDownLatch       blocker    = new CountDownLatch(1);
+        final CountDownLatch       started    = new CountDownLatch(1);
+        final AtomicInteger        counter    = new AtomicInteger();
+        dispatcher.submit(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                await(blocker);
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        for (int index = 0; index < 5; index++) {
+            dispatcher.submit(new Runnable() {
+                @Override
+                public void run() {
+                    counter.incrementAndGet();
+                }
+            });
+        }
+        assertEquals(3, dispatcher.getDroppedCount());
+        assertEquals(2, dispatcher.getQueueDepth());
+
+        blocker.countDown();
+        assertTrue(dispatcher.shutdown(5, TimeUnit.SECONDS));
+        assertEquals(2, counter.get());
+    }
+
+    @Test
+    public void testRunsOnCallerAfterShutdown() {
+        final AsyncEventDispatcher dispatcher = new AsyncEventDispatcher();
+        assertTrue(dispatcher.shutdown(5, TimeUnit.SECONDS));
+
+        final AtomicReference<Thread> ranOn = new AtomicReference<>();
+        dispatcher.submit(new Runnable() {
+            @Override
+            public void run() {
+                ranOn.set(Thread.currentThread());
+            }
+        });
+        assertSame(Thread.currentThread(), ranOn.get());
+    }
+
+    @Test
+    public void testNoNotificationsLostDuringShutdown() throws InterruptedException {
+        final AsyncEventDispatcher dispatcher = new AsyncEventDispatcher(4, 1, 2, BackpressurePolicy.BLOCK);
+        final AtomicInteger        counter    = new AtomicInteger();
+        final CountDownLatch       started    = new CountDownLatch(SUBMITTERS);
+        final Thread[]             submitters = new Thread[SUBMITTERS];
+        for (int index = 0; index < SUBMITTERS; index++) {
+            submitters[index] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    for (int count = 0; count < SUBMISSIONS; count++) {
+                        dispatcher.submit(new Runnable() {
+                            @Override
+                            public void run() {
+                                counter.incrementAndGet();
+                            }
+                        });
+                    }
+                }
+            });
+            submitters[index].start();
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(dispatcher.shutdown(5, TimeUnit.SECONDS));
+        for (final Thread submitter : submitters) {
+            submitter.join(5000);
+        }
+
+        // Everything submitted was either dispatched before shutdown completed or run on its submitting thread.
+        assertEquals(SUBMITTERS * SUBMISSIONS, counter.get());
+        assertEquals(0, dispatcher.getQueueDepth());
+    }
+
+    @Test
+    public void testDestroyShutsDown() throws InterruptedException {
+        final AsyncEventDispatcher dispatcher = new AsyncEventDispatcher();
+        final CountDownLatch       latch      = new CountDownLatch(1);
+        dispatcher.submit(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        dispatcher.destroy();
+        assertTrue(dispatcher.isShutdown());
+        assertTrue(latch.await(0, TimeUnit.SECONDS));
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final int SUBMITTERS  = 4;
+    private static final int SUBMISSIONS = 1000;
+
+    private static final Runnable NO_OP = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+}
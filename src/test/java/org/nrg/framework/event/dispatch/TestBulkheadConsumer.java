@@ -0,0 +1,149 @@
+/*
+ * framework: org.nrg.framework.event.dispatch.TestBulkheadConsumer
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.event.dispatch;
+
+import org.junit.Test;
+import reactor.bus.Event;
+import reactor.fn.Consumer;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class TestBulkheadConsumer {
+    @Test
+    public void testHandlesOnBulkheadThreads() throws InterruptedException {
+        final CountDownLatch          latch      = new CountDownLatch(5);
+        final AtomicReference<String> threadName = new AtomicReference<>();
+        final BulkheadConsumer<Event<String>> bulkhead = new BulkheadConsumer<>("counter", new Consumer<Event<String>>() {
+            @Override
+            public void accept(final Event<String> event) {
+                threadName.set(Thread.currentThread().getName());
+                latch.countDown();
+            }
+        });
+        for (int index = 0; index < 5; index++) {
+            bulkhead.accept(Event.wrap("event " + index));
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(bulkhead.shutdown(5, TimeUnit.SECONDS));
+        assertTrue(threadName.get().startsWith("nrg-bulkhead-counter-"));
+        assertEquals(5, bulkhead.getHandledCount());
+        assertEquals(0, bulkhead.getSlowCount());
+        assertFalse(bulkhead.isSlow());
+    }
+
+    @Test
+    public void testSlowConsumerDoesNotBlockOthers() throws InterruptedException {
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch fast    = new CountDownLatch(3);
+        final BulkheadConsumer<Event<String>> slowBulkhead = new BulkheadConsumer<>("slow", new Consumer<Event<String>>() {
+            @Override
+            public void accept(final Event<String> event) {
+                await(blocker);
+            }
+        }, 1, 1, BackpressurePolicy.DROP_OLDEST, 1000);
+        final BulkheadConsumer<Event<String>> fastBulkhead = new BulkheadConsumer<>("fast", new Consumer<Event<String>>() {
+            @Override
+            public void accept(final Event<String> event) {
+                fast.countDown();
+            }
+        });
+
+        // The notifying thread never waits on the slow consumer, even once its single queue slot overflows.
+        for (int index = 0; index < 3; index++) {
+            final Event<String> event = Event.wrap("event " + index);
+            slowBulkhead.accept(event);
+            fastBulkhead.accept(event);
+        }
+        assertTrue(fast.await(5, TimeUnit.SECONDS));
+        blocker.countDown();
+        assertTrue(slowBulkhead.shutdown(5, TimeUnit.SECONDS));
+        assertTrue(fastBulkhead.shutdown(5, TimeUnit.SECONDS));
+        assertEquals(3, fastBulkhead.getHandledCount());
+        assertEquals(3, slowBulkhead.getHandledCount() + slowBulkhead.getMetrics().get("dropped").longValue());
+    }
+
+    @Test
+    public void testDetectsSlowConsumer() throws InterruptedException {
+        final AtomicInteger handled = new AtomicInteger();
+        final BulkheadConsumer<Event<String>> bulkhead = new BulkheadConsumer<>("sleepy", new Consumer<Event<String>>() {
+            @Override
+            public void accept(final Event<String> event) {
+                if (handled.incrementAndGet() % 2 == 0) {
+                    sleep(20);
+                }
+            }
+        }, 16, 1, BackpressurePolicy.BLOCK, 10);
+        for (int index = 0; index < 4; index++) {
+            bulkhead.accept(Event.wrap("event " + index));
+        }
+        assertTrue(bulkhead.shutdown(5, TimeUnit.SECONDS));
+        assertEquals(4, bulkhead.getHandledCount());
+        assertEquals(2, bulkhead.getSlowCount());
+        assertTrue(bulkhead.isSlow());
+
+        final Map<String, Number> metrics = bulkhead.getMetrics();
+        assertTrue(metrics.get("p99HandlingMicros").longValue() >= 20000);
+        assertTrue(metrics.get("p50HandlingMicros").longValue() < 10000);
+        assertEquals(2L, metrics.get("slow"));
+    }
+
+    @Test
+    public void testDefaultPolicyDoesNotBlockPublisher() throws InterruptedException {
+        final CountDownLatch          blocker    = new CountDownLatch(1);
+        final AtomicReference<String> threadName = new AtomicReference<>();
+        final BulkheadConsumer<Event<String>> bulkhead = new BulkheadConsumer<>("100% stalled", new Consumer<Event<String>>() {
+            @Override
+            public void accept(final Event<String> event) {
+                threadName.set(Thread.currentThread().getName());
+                await(blocker);
+            }
+        });
+        assertEquals(BackpressurePolicy.DROP_OLDEST, bulkhead.getPolicy());
+
+        final Thread publisher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int index = 0; index < BulkheadConsumer.DEFAULT_QUEUE_CAPACITY * 2; index++) {
+                    bulkhead.accept(Event.wrap("event " + index));
+                }
+            }
+        });
+        publisher.start();
+        publisher.join(5000);
+        final boolean blocked = publisher.isAlive();
+        blocker.countDown();
+        assertFalse(blocked);
+        assertTrue(bulkhead.shutdown(5, TimeUnit.SECONDS));
+        assertTrue(bulkhead.getHandledCount() <= BulkheadConsumer.DEFAULT_QUEUE_CAPACITY + 1);
+        assertTrue(threadName.get().startsWith("nrg-bulkhead-100% stalled-"));
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * framework: org.nrg.framework.event.dispatch.TestDispatchPlan
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.event.dispatch;
+
+import org.junit.Test;
+import reactor.bus.Event;
+import reactor.bus.registry.Registration;
+import reactor.bus.selector.Selector;
+import reactor.fn.Consumer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestDispatchPlan {
+    @Test
+    public void testDispatchToAllConsumers() {
+        final List<String>     received = new ArrayList<>();
+        final TestRegistration first    = new TestRegistration(new RecordingConsumer("first", received));
+        final TestRegistration second   = new TestRegistration(new RecordingConsumer("second", received));
+        final DispatchPlan     plan     = new DispatchPlan("key", Arrays.asList(first, second), 1);
+
+        assertEquals(2, plan.size());
+        assertTrue(plan.dispatch(Event.wrap("data")));
+        assertEquals(Arrays.asList("first", "second"), received);
+    }
+
+    @Test
+    public void testPausedConsumerIsSkipped() {
+        final List<String>     received = new ArrayList<>();
+        final TestRegistration first    = new TestRegistration(new RecordingConsumer("first", received));
+        final TestRegistration second   = new TestRegistration(new RecordingConsumer("second", received));
+        first.pause();
+
+        final DispatchPlan plan = new DispatchPlan("key", Arrays.asList(first, second), 1);
+        assertTrue(plan.dispatch(Event.wrap("data")));
+        assertEquals(Arrays.asList("second"), received);
+    }
+
+    @Test
+    public void testCancelledConsumerInvalidatesPlan() {
+        final List<String>     received = new ArrayList<>();
+        final TestRegistration first    = new TestRegistration(new RecordingConsumer("first", received));
+        final TestRegistration second   = new TestRegistration(new RecordingConsumer("second", received));
+        final DispatchPlan     plan     = new DispatchPlan("key", Arrays.asList(first, second), 1);
+        first.cancel();
+
+        assertFalse(plan.dispatch(Event.wrap("data")));
+        assertEquals(Arrays.asList("second"), received);
+    }
+
+    @Test
+    public void testFailingConsumerDoesNotStopDelivery() {
+        final List<String>     received = new ArrayList<>();
+        final TestRegistration failing  = new TestRegistration(new Consumer<Event<?>>() {
+            @Override
+            public void accept(final Event<?> event) {
+                throw new RuntimeException("Failing on purpose");
+            }
+        });
+        final TestRegistration second = new TestRegistration(new RecordingConsumer("second", received));
+        final DispatchPlan     plan   = new DispatchPlan("key", Arrays.asList(failing, second), 1);
+
+        assertTrue(plan.dispatch(Event.wrap("data")));
+        assertEquals(Arrays.asList("second"), received);
+    }
+
+    private static class RecordingConsumer implements Consumer<Event<?>> {
+        RecordingConsumer(final String name, final List<String> received) {
+            _name = name;
+            _received = received;
+        }
+
+        @Override
+        public void accept(final Event<?> event) {
+            _received.add(_name);
+        }
+
+        private final String       _name;
+        private final List<String> _received;
+    }
+
+    private static class TestRegistration implements Registration<Object, Consumer<Event<?>>> {
+        TestRegistration(final Consumer<Event<?>> consumer) {
+            _consumer = consumer;
+        }
+
+        @Override
+        public Selector<Object> getSelector() {
+            return null;
+        }
+
+        @Override
+        public Consumer<Event<?>> getObject() {
+            return _consumer;
+        }
+
+        @Override
+        public Registration<Object, Consumer<Event<?>>> cancelAfterUse() {
+            _cancelAfterUse = true;
+            return this;
+        }
+
+        @Override
+        public boolean isCancelAfterUse() {
+            return _cancelAfterUse;
+        }
+
+        @Override
+        public Registration<Object, Consumer<Event<?>>> cancel() {
+            _cancelled = true;
+            return this;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return _cancelled;
+        }
+
+        @Override
+        public Registration<Object, Consumer<Event<?>>> pause() {
+            _paused = true;
+            return this;
+        }
+
+        @Override
+        public boolean isPaused() {
+            return _paused;
+        }
+
+        @Override
+        public Registration<Object, Consumer<Event<?>>> resume() {
+            _paused = false;
+            return this;
+        }
+
+        private final Consumer<Event<?>> _consumer;
+
+        private boolean _cancelAfterUse;
+        private boolean _cancelled;
+        private boolean _paused;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * framework: org.nrg.framework.event.dispatch.TestStructuredEventCoalescer
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.event.dispatch;
+
+import org.junit.Test;
+import org.nrg.framework.event.StructuredEvent;
+import org.nrg.framework.services.NrgEventService;
+import reactor.bus.Event;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TestStructuredEventCoalescer {
+    @Test
+    public void testCollapsesDuplicatesByCount() {
+        final RecordingEventService    service   = new RecordingEventService();
+        final StructuredEventCoalescer coalescer = new StructuredEventCoalescer(service, TimeUnit.MINUTES.toMillis(1), 5);
+        for (int index = 0; index < 10; index++) {
+            coalescer.trigger(createEvent("Session", "XNAT_E00001", "UPDATED"));
+        }
+        assertEquals(2, service.getDelivered().size());
+        assertEquals(5, StructuredEventCoalescer.getCoalescedCount(service.getDelivered().get(0)));
+        assertEquals(5, StructuredEventCoalescer.getCoalescedCount(service.getDelivered().get(1)));
+        assertEquals(10, coalescer.getReceivedCount());
+        assertEquals(2, coalescer.getDeliveredCount());
+        coalescer.shutdown();
+    }
+
+    @Test
+    public void testDistinctKeysAreNotCollapsed() {
+        final RecordingEventService    service   = new RecordingEventService();
+        final StructuredEventCoalescer coalescer = new StructuredEventCoalescer(service, TimeUnit.MINUTES.toMillis(1), 100);
+        coalescer.trigger(createEvent("Session", "XNAT_E00001", "UPDATED"));
+        coalescer.trigger(createEvent("Session", "XNAT_E00002", "UPDATED"));
+        coalescer.trigger(createEvent("Session", "XNAT_E00001", "UPDATED"));
+        assertEquals(2, coalescer.getOpenWindowCount());
+        assertTrue(service.getDelivered().isEmpty());
+
+        coalescer.flush();
+        assertEquals(2, service.getDelivered().size());
+        assertEquals(0, coalescer.getOpenWindowCount());
+        coalescer.shutdown();
+    }
+
+    @Test
+    public void testDeliversWhenWindowElapses() throws InterruptedException {
+        final RecordingEventService    service   = new RecordingEventService();
+        final StructuredEventCoalescer coalescer = new StructuredEventCoalescer(service, 50, 100);
+        coalescer.trigger(createEvent("Session", "XNAT_E00001", "UPDATED"));
+        coalescer.trigger(createEvent("Session", "XNAT_E00001", "UPDATED"));
+        coalescer.trigger(createEvent("Session", "XNAT_E00001", "UPDATED"));
+
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (service.getDelivered().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, service.getDelivered().size());
+        assertEquals(3, StructuredEventCoalescer.getCoalescedCount(service.getDelivered().get(0)));
+        coalescer.shutdown();
+    }
+
+    @Test
+    public void testDeliversImmediatelyAfterShutdown() {
+        final RecordingEventService    service   = new RecordingEventService();
+        final StructuredEventCoalescer coalescer = new StructuredEventCoalescer(service, TimeUnit.MINUTES.toMillis(1), 100);
+        coalescer.trigger(createEvent("Session", "XNAT_E00001", "UPDATED"));
+        coalescer.shutdown();
+        assertEquals(1, service.getDelivered().size());
+
+        coalescer.trigger(createEvent("Session", "XNAT_E00002", "UPDATED"));
+        coalescer.trigger(createEvent("Session", "XNAT_E00002", "UPDATED"));
+        assertEquals(3, service.getDelivered().size());
+        assertEquals(1, StructuredEventCoalescer.getCoalescedCount(service.getDelivered().get(2)));
+        assertEquals(0, coalescer.getOpenWindowCount());
+    }
+
+    private static TestStructuredEvent createEvent(final String entityType, final String entityId, final String eventId) {
+        final TestStructuredEvent event = new TestStructuredEvent();
+        event.setEntityType(entityType);
+        event.setEntityId(entityId);
+        event.setEventId(eventId);
+        return event;
+    }
+
+    private static class TestStructuredEvent extends StructuredEvent {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static class RecordingEventService extends NrgEventService {
+        RecordingEventService() {
+            super(null);
+        }
+
+        @SuppressWarnings("rawtypes")
+        @Override
+        public void triggerEvent(final Event event) {
+            _delivered.add(event);
+        }
+
+        List<Event<?>> getDelivered() {
+            return _delivered;
+        }
+
+        private final List<Event<?>> _delivered = new CopyOnWriteArrayList<>();
+    }
+}
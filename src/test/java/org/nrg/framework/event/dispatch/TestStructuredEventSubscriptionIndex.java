@@ -0,0 +1,119 @@
+/*
+ * framework: org.nrg.framework.event.dispatch.TestStructuredEventSubscriptionIndex
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.event.dispatch;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+import org.nrg.framework.event.StructuredEvent;
+import org.nrg.framework.event.StructuredEventField;
+import org.nrg.framework.event.StructuredEventI;
+import reactor.bus.Event;
+import reactor.fn.Consumer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class TestStructuredEventSubscriptionIndex {
+    @Test
+    public void testMatchesConjunctionsOfFields() {
+        final StructuredEventSubscriptionIndex index = new StructuredEventSubscriptionIndex();
+
+        final StructuredEventSubscriptionIndex.Subscription archived = index.subscribe(ImmutableMap.of(StructuredEventField.EVENT_ID, "ARCHIVED"), NOOP);
+        final StructuredEventSubscriptionIndex.Subscription project  = index.subscribe(ImmutableMap.of(StructuredEventField.EVENT_ID, "ARCHIVED", StructuredEventField.EXTERNAL_ID, "project-1"), NOOP);
+        final StructuredEventSubscriptionIndex.Subscription user     = index.subscribe(ImmutableMap.of(StructuredEventField.USER_ID, 42), NOOP);
+        final StructuredEventSubscriptionIndex.Subscription all      = index.subscribe(Collections.<StructuredEventField, Object>emptyMap(), NOOP);
+        assertEquals(4, index.getSubscriptionCount());
+
+        assertMatches(index.match(createEvent("ARCHIVED", "project-1", 42)), archived, project, user, all);
+        assertMatches(index.match(createEvent("ARCHIVED", "project-2", 42)), archived, user, all);
+        assertMatches(index.match(createEvent("DELETED", "project-1", 7)), all);
+
+        project.cancel();
+        assertEquals(3, index.getSubscriptionCount());
+        assertMatches(index.match(createEvent("ARCHIVED", "project-1", 42)), archived, user, all);
+    }
+
+    @Test
+    public void testMatchesEventClassAndEventSpecificFields() {
+        final StructuredEventSubscriptionIndex index = new StructuredEventSubscriptionIndex();
+
+        final Map<String, String> completed = ImmutableMap.of("status", "COMPLETED");
+        final StructuredEventSubscriptionIndex.Subscription scans    = index.subscribe(ScanEvent.class, Collections.<StructuredEventField, Object>emptyMap(), Collections.<String, String>emptyMap(), NOOP);
+        final StructuredEventSubscriptionIndex.Subscription any      = index.subscribe(StructuredEvent.class, ImmutableMap.of(StructuredEventField.EVENT_ID, "ARCHIVED"), Collections.<String, String>emptyMap(), NOOP);
+        final StructuredEventSubscriptionIndex.Subscription finished = index.subscribe(null, ImmutableMap.of(StructuredEventField.EVENT_ID, "ARCHIVED"), completed, NOOP);
+
+        final TestStructuredEvent plain = createEvent("ARCHIVED", "project-1", 42);
+        assertMatches(index.match(plain), any);
+
+        final ScanEvent scan = new ScanEvent();
+        scan.setEventId("ARCHIVED");
+        scan.setEventSpecificFieldsAsMap(completed);
+        assertMatches(index.match(scan), scans, any, finished);
+
+        scan.setEventSpecificFieldsAsMap(ImmutableMap.of("status", "FAILED"));
+        assertMatches(index.match(scan), scans, any);
+    }
+
+    @Test
+    public void testDeliversEventBusEvents() {
+        final StructuredEventSubscriptionIndex index    = new StructuredEventSubscriptionIndex();
+        final List<StructuredEventI>           received = new ArrayList<>();
+        index.subscribe(ImmutableMap.of(StructuredEventField.EVENT_ID, "ARCHIVED"), new Consumer<StructuredEventI>() {
+            @Override
+            public void accept(final StructuredEventI event) {
+                received.add(event);
+            }
+        });
+        index.subscribe(ImmutableMap.of(StructuredEventField.EVENT_ID, "ARCHIVED"), new Consumer<StructuredEventI>() {
+            @Override
+            public void accept(final StructuredEventI event) {
+                throw new RuntimeException("Failing handler");
+            }
+        });
+
+        final TestStructuredEvent event = createEvent("ARCHIVED", "project-1", 42);
+        index.accept(Event.wrap(event));
+        index.accept(Event.wrap("not a structured event"));
+        assertEquals(Collections.<StructuredEventI>singletonList(event), received);
+    }
+
+    private static void assertMatches(final List<StructuredEventSubscriptionIndex.Subscription> matches, final StructuredEventSubscriptionIndex.Subscription... expected) {
+        assertEquals(expected.length, matches.size());
+        for (final StructuredEventSubscriptionIndex.Subscription subscription : expected) {
+            assertTrue("Expected a match for " + subscription, matches.contains(subscription));
+        }
+    }
+
+    private static TestStructuredEvent createEvent(final String eventId, final String externalId, final Integer userId) {
+        final TestStructuredEvent event = new TestStructuredEvent();
+        event.setEventId(eventId);
+        event.setExternalId(externalId);
+        event.setUserId(userId);
+        return event;
+    }
+
+    private static final Consumer<StructuredEventI> NOOP = new Consumer<StructuredEventI>() {
+        @Override
+        public void accept(final StructuredEventI event) {
+        }
+    };
+
+    private static class TestStructuredEvent extends StructuredEvent {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static class ScanEvent extends StructuredEvent {
+        private static final long serialVersionUID = 1L;
+    }
+}
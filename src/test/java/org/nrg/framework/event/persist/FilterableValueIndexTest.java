@@ -0,0 +1,116 @@
+/*
+ * framework: org.nrg.framework.event.persist.FilterableValueIndexTest
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.event.persist;
+
+import org.junit.Test;
+import org.nrg.framework.event.EventClass;
+import org.nrg.framework.event.Filterable;
+import org.nrg.framework.event.StructuredEvent;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class FilterableValueIndexTest {
+    @Test
+    public void testIndexedProperties() {
+        final FilterableValueIndex index = new FilterableValueIndex();
+        assertEquals(new TreeSet<>(Arrays.asList("eventId", "modality")), index.getIndexedProperties(ScanEvent.class));
+    }
+
+    @Test
+    public void testRecordAndPrefixSearch() {
+        final FilterableValueIndex index = new FilterableValueIndex();
+        for (final String modality : Arrays.asList("MR", "CT", "MRS", "PET", "MR", "CT")) {
+            index.record(new ScanEvent("SCAN_ARCHIVED", modality, "project-1"));
+        }
+        assertEquals(Arrays.asList("CT", "MR", "MRS", "PET"), index.getValues(ScanEvent.class, "modality"));
+        assertEquals(Arrays.asList("MR", "MRS"), index.getValues(ScanEvent.class, "modality", "MR", 0, 10));
+        assertEquals(Collections.singletonList("MRS"), index.getValues(ScanEvent.class, "modality", "MR", 1, 10));
+        assertEquals(Arrays.asList("CT", "MR"), index.getValues(ScanEvent.class, "modality", null, 0, 2));
+        assertEquals(Arrays.asList("MRS", "PET"), index.getValues(ScanEvent.class, "modality", "", 2, 2));
+        assertEquals(2, index.countValues(ScanEvent.class, "modality", "MR"));
+        assertEquals(4, index.countValues(ScanEvent.class, "modality", null));
+        assertEquals(Collections.singletonList("SCAN_ARCHIVED"), index.getValues(ScanEvent.class, "eventId"));
+        assertTrue(index.getValues(ScanEvent.class, "project").isEmpty());
+    }
+
+    @Test
+    public void testTruncation() {
+        final FilterableValueIndex index = new FilterableValueIndex(2);
+        index.seed(ScanEvent.class, "modality", Arrays.asList("MR", "CT", "PET"));
+        assertEquals(Arrays.asList("CT", "MR"), index.getValues(ScanEvent.class, "modality"));
+        assertTrue(index.isTruncated(ScanEvent.class, "modality"));
+
+        index.clear(ScanEvent.class);
+        assertEquals(0, index.countValues(ScanEvent.class, "modality", null));
+        assertFalse(index.isTruncated(ScanEvent.class, "modality"));
+    }
+
+    @Test
+    public void testConcurrentAddsRespectMaximum() throws InterruptedException {
+        final FilterableValueIndex index   = new FilterableValueIndex(MAX_VALUES);
+        final CountDownLatch       start   = new CountDownLatch(1);
+        final Thread[]             threads = new Thread[THREADS];
+        for (int thread = 0; thread < THREADS; thread++) {
+            final int offset = thread;
+            threads[thread] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    for (int value = 0; value < MAX_VALUES; value++) {
+                        index.seed(ScanEvent.class, "modality", Collections.singletonList("M" + (value * THREADS + offset)));
+                    }
+                }
+            });
+            threads[thread].start();
+        }
+        start.countDown();
+        for (final Thread thread : threads) {
+            thread.join(5000);
+        }
+        assertEquals(MAX_VALUES, index.countValues(ScanEvent.class, "modality", null));
+        assertEquals(MAX_VALUES, index.getValues(ScanEvent.class, "modality").size());
+        assertTrue(index.isTruncated(ScanEvent.class, "modality"));
+    }
+
+    @EventClass(name = "ScanEvent", includeValuesFromDatabase = true)
+    public static class ScanEvent extends StructuredEvent {
+        ScanEvent(final String eventId, final String modality, final String project) {
+            setEventId(eventId);
+            _modality = modality;
+            _project = project;
+        }
+
+        @Filterable
+        public String getModality() {
+            return _modality;
+        }
+
+        @Filterable(includeValuesFromDatabase = false)
+        public String getProject() {
+            return _project;
+        }
+
+        private final String _modality;
+        private final String _project;
+    }
+
+    private static final int THREADS    = 4;
+    private static final int MAX_VALUES = 1000;
+}
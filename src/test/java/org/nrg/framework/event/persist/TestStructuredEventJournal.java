@@ -0,0 +1,320 @@
+/*
+ * framework: org.nrg.framework.event.persist.TestStructuredEventJournal
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.event.persist;
+
+import com.google.common.collect.ImmutableMap;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nrg.framework.event.StructuredEvent;
+import reactor.fn.Consumer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TestStructuredEventJournal {
+    @Before
+    public void setUp() throws IOException {
+        _directory = Files.createTempDirectory("event-journal").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(_directory);
+    }
+
+    @Test
+    public void testAppendAndReplay() throws IOException {
+        try (final StructuredEventJournal journal = new StructuredEventJournal(_directory, SEGMENT_SIZE)) {
+            for (int index = 0; index < 100; index++) {
+                assertEquals(index, journal.append(createEvent(index), index % 2 == 0 ? "even" : null, index % 2 == 0));
+            }
+            assertTrue(journal.getSegmentCount() > 1);
+            assertEquals(0, journal.getStartOffset());
+            assertEquals(100, journal.getEndOffset());
+
+            final List<StructuredEventJournal.Entry> entries = new ArrayList<>();
+            assertEquals(100, journal.replay(42, collect(entries)));
+            assertEquals(58, entries.size());
+
+            final StructuredEventJournal.Entry first = entries.get(0);
+            assertEquals(42, first.getOffset());
+            assertEquals("even", first.getDescription());
+            assertTrue(first.isNotifyClassListeners());
+            assertTrue(first.getEvent() instanceof SessionEvent);
+            assertEquals("ARCHIVED", first.getEvent().getEventId());
+            assertEquals("XNAT_E42", first.getEvent().getEntityId());
+            assertEquals(Integer.valueOf(42), first.getEvent().getUserId());
+            assertNull(first.getEvent().getSrcEventClass());
+            assertEquals(ImmutableMap.of("scan", "42", "status", "DONE"), ((StructuredEvent) first.getEvent()).getEventSpecificFieldsAsMap());
+            assertNull(entries.get(1).getDescription());
+            assertFalse(entries.get(1).isNotifyClassListeners());
+        }
+    }
+
+    @Test
+    public void testReopenContinuesOffsetsAndDropsPartialRecords() throws IOException {
+        try (final StructuredEventJournal journal = new StructuredEventJournal(_directory, SEGMENT_SIZE)) {
+            for (int index = 0; index < 10; index++) {
+                journal.append(createEvent(index));
+            }
+        }
+        try (final StructuredEventJournal journal = new StructuredEventJournal(_directory, SEGMENT_SIZE)) {
+            assertEquals(10, journal.getEndOffset());
+        }
+
+        // Corrupt the last record of the last segment, as if the process died while it was being written.
+        File newest = null;
+        for (final File segment : _directory.listFiles()) {
+            if (segment.getName().endsWith(".journal") && (newest == null || segment.getName().compareTo(newest.getName()) > 0)) {
+                newest = segment;
+            }
+        }
+        assertNotNull(newest);
+        final int lastRecord = findLastRecord(newest);
+        try (final RandomAccessFile file = new RandomAccessFile(newest, "rw")) {
+            file.seek(lastRecord + 20);
+            file.write(new byte[]{1, 2, 3, 4});
+        }
+
+        try (final StructuredEventJournal journal = new StructuredEventJournal(_directory, SEGMENT_SIZE)) {
+            assertEquals(9, journal.getEndOffset());
+            assertEquals(9, journal.append(createEvent(99)));
+            final List<StructuredEventJournal.Entry> entries = new ArrayList<>();
+            journal.replay(8, collect(entries));
+            assertEquals(2, entries.size());
+            assertEquals("XNAT_E99", entries.get(1).getEvent().getEntityId());
+        }
+    }
+
+    @Test
+    public void testConsumerOffsets() throws IOException {
+        try (final StructuredEventJournal journal = new StructuredEventJournal(_directory, SEGMENT_SIZE)) {
+            for (int index = 0; index < 20; index++) {
+                journal.append(createEvent(index));
+            }
+            assertEquals(0, journal.getCommittedOffset("automation"));
+
+            final List<StructuredEventJournal.Entry> entries = new ArrayList<>();
+            assertEquals(20, journal.replay("automation", collect(entries)));
+            assertEquals(20, entries.size());
+            assertEquals(20, journal.getCommittedOffset("automation"));
+
+            journal.append(createEvent(20));
+            entries.clear();
+            journal.replay("automation", collect(entries));
+            assertEquals(1, entries.size());
+            assertEquals(20, entries.get(0).getOffset());
+
+            journal.append(createEvent(21));
+            journal.append(createEvent(22));
+            try {
+                journal.replay("automation", new Consumer<StructuredEventJournal.Entry>() {
+                    @Override
+                    public void accept(final StructuredEventJournal.Entry entry) {
+                        if (entry.getOffset() == 22) {
+                            throw new IllegalStateException("Listener failed");
+                        }
+                    }
+                });
+                fail("Expected the handler failure to be thrown");
+            } catch (IllegalStateException ignored) {
+                // Expected.
+            }
+            assertEquals(22, journal.getCommittedOffset("automation"));
+        }
+        try (final StructuredEventJournal journal = new StructuredEventJournal(_directory, SEGMENT_SIZE)) {
+            assertEquals(22, journal.getCommittedOffset("automation"));
+        }
+    }
+
+    @Test
+    public void testReplayFromTimestampAndRetention() throws IOException, InterruptedException {
+        try (final StructuredEventJournal journal = new StructuredEventJournal(_directory, SEGMENT_SIZE)) {
+            for (int index = 0; index < 50; index++) {
+                journal.append(createEvent(index));
+            }
+            Thread.sleep(20);
+            final long timestamp = System.currentTimeMillis();
+            for (int index = 50; index < 60; index++) {
+                journal.append(createEvent(index));
+            }
+            assertEquals(50, journal.findOffset(timestamp));
+
+            final List<StructuredEventJournal.Entry> entries = new ArrayList<>();
+            journal.replayFromTimestamp(timestamp, collect(entries));
+            assertEquals(10, entries.size());
+            assertEquals(50, entries.get(0).getOffset());
+
+            final int segments = journal.getSegmentCount();
+            final int deleted  = journal.deleteSegmentsBefore(50);
+            assertTrue(deleted > 0);
+            assertEquals(segments - deleted, journal.getSegmentCount());
+            assertTrue(journal.getStartOffset() > 0);
+            assertTrue(journal.getStartOffset() <= 50);
+            entries.clear();
+            journal.replay(0, collect(entries));
+            assertEquals(journal.getStartOffset(), entries.get(0).getOffset());
+        }
+    }
+
+    @Test
+    public void testUnavailableClassesAreReplayedAsJournaledEvents() throws IOException {
+        try (final StructuredEventJournal journal = new StructuredEventJournal(_directory, SEGMENT_SIZE)) {
+            final HiddenEvent event = new HiddenEvent("ignored");
+            event.setEventId("HIDDEN");
+            journal.append(event);
+
+            final List<StructuredEventJournal.Entry> entries = new ArrayList<>();
+            journal.replay(0, collect(entries));
+            assertTrue(entries.get(0).getEvent() instanceof JournaledStructuredEvent);
+            assertEquals(HiddenEvent.class.getName(), ((JournaledStructuredEvent) entries.get(0).getEvent()).getJournaledClass());
+            assertEquals("HIDDEN", entries.get(0).getEvent().getEventId());
+        }
+    }
+
+    @Test
+    public void testDeletionWaitsForReplay() throws Exception {
+        try (final StructuredEventJournal journal = new StructuredEventJournal(_directory, SEGMENT_SIZE)) {
+            for (int index = 0; index < 100; index++) {
+                journal.append(createEvent(index));
+            }
+            final int            segments = journal.getSegmentCount();
+            final CountDownLatch started  = new CountDownLatch(1);
+            final CountDownLatch release  = new CountDownLatch(1);
+            final List<StructuredEventJournal.Entry> entries = Collections.synchronizedList(new ArrayList<StructuredEventJournal.Entry>());
+            final Thread replay = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    journal.replay(0, new Consumer<StructuredEventJournal.Entry>() {
+                        @Override
+                        public void accept(final StructuredEventJournal.Entry entry) {
+                            if (entry.getOffset() == 0) {
+                                started.countDown();
+                                await(release);
+                            }
+                            entries.add(entry);
+                        }
+                    });
+                }
+            });
+            replay.start();
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            final AtomicInteger deleted  = new AtomicInteger(-1);
+            final Thread        deletion = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    deleted.set(journal.deleteSegmentsBefore(90));
+                }
+            });
+            deletion.start();
+            deletion.join(200);
+            assertEquals(-1, deleted.get());
+            assertEquals(segments, journal.getSegmentCount());
+
+            release.countDown();
+            replay.join(5000);
+            deletion.join(5000);
+            assertEquals(100, entries.size());
+            assertTrue(deleted.get() > 0);
+            assertEquals(segments - deleted.get(), journal.getSegmentCount());
+            assertEquals(segments - deleted.get(), countSegmentFiles());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReplayAfterCloseFails() throws IOException {
+        final StructuredEventJournal journal = new StructuredEventJournal(_directory, SEGMENT_SIZE);
+        journal.append(createEvent(1));
+        journal.close();
+        assertEquals(1, journal.getEndOffset());
+        journal.replay(0, collect(new ArrayList<StructuredEventJournal.Entry>()));
+    }
+
+    private int countSegmentFiles() {
+        final String[] names = _directory.list();
+        int            count = 0;
+        for (final String name : names == null ? new String[0] : names) {
+            if (name.endsWith(".journal")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int findLastRecord(final File segment) throws IOException {
+        final byte[] bytes    = FileUtils.readFileToByteArray(segment);
+        int          position = 0;
+        int          last     = 0;
+        while (true) {
+            final int length = ((bytes[position] & 0xff) << 24) | ((bytes[position + 1] & 0xff) << 16) | ((bytes[position + 2] & 0xff) << 8) | (bytes[position + 3] & 0xff);
+            if (length == 0) {
+                return last;
+            }
+            last = position;
+            position += 16 + length;
+        }
+    }
+
+    private static Consumer<StructuredEventJournal.Entry> collect(final List<StructuredEventJournal.Entry> entries) {
+        return new Consumer<StructuredEventJournal.Entry>() {
+            @Override
+            public void accept(final StructuredEventJournal.Entry entry) {
+                entries.add(entry);
+            }
+        };
+    }
+
+    private static SessionEvent createEvent(final int index) {
+        final SessionEvent event = new SessionEvent();
+        event.setEventId("ARCHIVED");
+        event.setEntityType("xnat:mrSessionData");
+        event.setEntityId("XNAT_E" + index);
+        event.setExternalId("project-1");
+        event.setUserId(index);
+        event.setEventSpecificFieldsAsMap(ImmutableMap.of("scan", Integer.toString(index), "status", "DONE"));
+        return event;
+    }
+
+    public static class SessionEvent extends StructuredEvent {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static class HiddenEvent extends StructuredEvent {
+        HiddenEvent(final String value) {
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    private File _directory;
+}
@@ -0,0 +1,277 @@
+/*
+ * framework: org.nrg.framework.event.persist.TestWriteBehindEventPersister
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.event.persist;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nrg.framework.event.StructuredEvent;
+import org.nrg.framework.event.StructuredEventI;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class TestWriteBehindEventPersister {
+    @Before
+    public void setUp() throws IOException {
+        _directory = Files.createTempDirectory("event-persister").toFile();
+        _spillFile = new File(_directory, "events.spill");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(_directory);
+    }
+
+    @Test
+    public void testWritesQueuedEventsInBatches() throws InterruptedException {
+        final TestPersister persister = new TestPersister(false);
+        for (int index = 0; index < 120; index++) {
+            persister.persist(createEvent("ARCHIVED", index));
+        }
+        persister.afterPropertiesSet();
+        waitFor(persister, 120);
+        persister.destroy();
+
+        assertEquals(120, persister.getSaved().size());
+        assertEquals(Collections.singletonList(120), persister.getBatchSizes());
+        assertEquals(0, persister.getFailedCount());
+        assertFalse(_spillFile.exists());
+    }
+
+    @Test
+    public void testFailedEventsAreRetriedAloneAndSpilled() throws InterruptedException {
+        final TestPersister persister = new TestPersister(false);
+        for (int index = 0; index < 5; index++) {
+            persister.persist(createEvent(index == 2 ? BAD : "ARCHIVED", index));
+        }
+        persister.afterPropertiesSet();
+        waitFor(persister, 4);
+        persister.destroy();
+
+        assertEquals(4, persister.getSaved().size());
+        assertEquals(6, persister.getBatchSizes().size());
+        assertEquals(1, persister.getFailedCount());
+        assertEquals(1, persister.getSpilledCount());
+        assertEquals(0, persister.getLostCount());
+        assertTrue(_spillFile.exists());
+    }
+
+    @Test
+    public void testValueIndexErrorsDontRewriteBatch() throws InterruptedException {
+        final TestPersister persister = new TestPersister(false);
+        persister.setValueIndex(new FilterableValueIndex() {
+            @Override
+            public void recordAll(final Collection<? extends StructuredEventI> events) {
+                throw new IllegalStateException("The index is broken");
+            }
+        });
+        for (int index = 0; index < 5; index++) {
+            persister.persist(createEvent("ARCHIVED", index));
+        }
+        persister.afterPropertiesSet();
+        waitFor(persister, 5);
+        persister.destroy();
+
+        assertEquals(5, persister.getSaved().size());
+        assertEquals(Collections.singletonList(5), persister.getBatchSizes());
+        assertEquals(5, persister.getPersistedCount());
+        assertEquals(0, persister.getFailedCount());
+        assertFalse(_spillFile.exists());
+    }
+
+    @Test
+    public void testSpilledEventsAreReplayedOnStart() throws InterruptedException {
+        final TestPersister unavailable = new TestPersister(true);
+        for (int index = 0; index < 3; index++) {
+            unavailable.persist(createEvent("ARCHIVED", index));
+        }
+        unavailable.afterPropertiesSet();
+        waitForSpilled(unavailable, 3);
+        unavailable.destroy();
+        assertTrue(unavailable.getSaved().isEmpty());
+
+        final TestPersister available = new TestPersister(false);
+        available.afterPropertiesSet();
+        available.destroy();
+        assertEquals(3, available.getSaved().size());
+        assertFalse(_spillFile.exists());
+        assertFalse(getReplayingFile().exists());
+    }
+
+    @Test
+    public void testFailedReplayIsSpilledAgain() {
+        final TestPersister stopped = new TestPersister(false);
+        stopped.destroy();
+        for (int index = 0; index < 3; index++) {
+            stopped.persist(createEvent("ARCHIVED", index));
+        }
+        assertEquals(3, stopped.getSpilledCount());
+
+        final TestPersister unavailable = new TestPersister(true);
+        unavailable.afterPropertiesSet();
+        unavailable.destroy();
+        assertEquals(3, unavailable.getFailedCount());
+        assertEquals(3, unavailable.getSpilledCount());
+        assertTrue(_spillFile.exists());
+        assertFalse(getReplayingFile().exists());
+
+        final TestPersister available = new TestPersister(false);
+        available.afterPropertiesSet();
+        available.destroy();
+        assertEquals(3, available.getSaved().size());
+        assertFalse(_spillFile.exists());
+    }
+
+    @Test
+    public void testInterruptedReplayIsFinishedFirst() {
+        final TestPersister first = new TestPersister(false);
+        first.destroy();
+        first.persist(createEvent("ARCHIVED", 1));
+        first.persist(createEvent("ARCHIVED", 2));
+        assertTrue(_spillFile.renameTo(getReplayingFile()));
+        first.persist(createEvent("ARCHIVED", 3));
+
+        final TestPersister second = new TestPersister(false);
+        second.afterPropertiesSet();
+        second.destroy();
+        assertEquals(2, second.getSaved().size());
+        assertFalse(getReplayingFile().exists());
+        assertTrue(_spillFile.exists());
+
+        final TestPersister third = new TestPersister(false);
+        third.afterPropertiesSet();
+        third.destroy();
+        assertEquals(1, third.getSaved().size());
+        assertEquals("XNAT_E3", third.getSaved().get(0).getEntityId());
+    }
+
+    @Test
+    public void testShutdownLosesNoEvents() throws InterruptedException {
+        final TestPersister  persister = new TestPersister(false);
+        final CountDownLatch started   = new CountDownLatch(THREADS);
+        final List<Thread>   threads   = new ArrayList<>();
+        persister.afterPropertiesSet();
+        for (int thread = 0; thread < THREADS; thread++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    for (int index = 0; index < EVENTS_PER_THREAD; index++) {
+                        persister.persist(createEvent("ARCHIVED", index));
+                    }
+                }
+            }));
+        }
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+        started.await();
+        persister.destroy();
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(THREADS * EVENTS_PER_THREAD, persister.getQueuedCount());
+        assertEquals(THREADS * EVENTS_PER_THREAD, persister.getPersistedCount() + persister.getSpilledCount());
+        assertEquals(0, persister.getQueueDepth());
+        assertEquals(0, persister.getLostCount());
+    }
+
+    private File getReplayingFile() {
+        return new File(_spillFile.getPath() + ".replaying");
+    }
+
+    private static void waitFor(final WriteBehindEventPersister persister, final long persisted) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (persister.getPersistedCount() < persisted && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(persisted, persister.getPersistedCount());
+    }
+
+    private static void waitForSpilled(final WriteBehindEventPersister persister, final long spilled) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (persister.getSpilledCount() < spilled && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(spilled, persister.getSpilledCount());
+    }
+
+    private static TestPersistentEvent createEvent(final String eventId, final int index) {
+        final TestPersistentEvent event = new TestPersistentEvent();
+        event.setEventId(eventId);
+        event.setEntityId("XNAT_E" + index);
+        return event;
+    }
+
+    /**
+     * Records the events it saves instead of saving them to a database. Saving fails for events with the {@link #BAD}
+     * event ID, or for all events when the database is unavailable.
+     */
+    private class TestPersister extends WriteBehindEventPersister {
+        TestPersister(final boolean unavailable) {
+            super(null, PROPERTIES, _spillFile);
+            _unavailable = unavailable;
+        }
+
+        @Override
+        protected void save(final List<PersistentEventImplementerI> events) throws Exception {
+            _batchSizes.add(events.size());
+            if (_unavailable) {
+                throw new Exception("The database is unavailable");
+            }
+            for (final PersistentEventImplementerI event : events) {
+                if (BAD.equals(event.getEventId())) {
+                    throw new Exception("Bad event " + event.getEntityId());
+                }
+            }
+            _saved.addAll(events);
+        }
+
+        List<PersistentEventImplementerI> getSaved() {
+            return _saved;
+        }
+
+        List<Integer> getBatchSizes() {
+            return _batchSizes;
+        }
+
+        private final boolean                           _unavailable;
+        private final List<PersistentEventImplementerI> _saved      = Collections.synchronizedList(new ArrayList<PersistentEventImplementerI>());
+        private final List<Integer>                     _batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+    }
+
+    private static class TestPersistentEvent extends StructuredEvent implements PersistentEventImplementerI {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final String     BAD               = "BAD";
+    private static final int        THREADS           = 4;
+    private static final int        EVENTS_PER_THREAD = 2000;
+    private static final Properties PROPERTIES        = new Properties();
+
+    static {
+        PROPERTIES.setProperty(WriteBehindEventPersister.PROPERTY_JDBC_BATCH_SIZE, "50");
+    }
+
+    private File _directory;
+    private File _spillFile;
+}
@@ -10,6 +10,8 @@
 package org.nrg.framework.orm.pacs;
 
 import com.google.common.collect.ImmutableMap;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.nrg.framework.orm.utils.TestDBUtils;
@@ -19,6 +21,10 @@ import org.springframework.transaction.annotation.Transactional;
 
 import javax.inject.Inject;
 import javax.validation.ConstraintViolationException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
 
 import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.*;
@@ -71,9 +77,66 @@ public class PacsEntityServiceTest {
         assertFalse(pacsEntityService.exists(ImmutableMap.<String, Object>of("aeTitle", "garbage", "host", HOST, "storagePort", STORAGE_PORT)));
     }
 
+    @Test
+    public void testStreamAll() {
+        final List<Long> ids = new ArrayList<>();
+        for (int index = 0; index < 7; index++) {
+            final Pacs pacs = buildTestPacs(AE_TITLE + "-" + index);
+            pacsEntityService.create(pacs);
+            ids.add(pacs.getId());
+        }
+
+        // A page size of 3 needs three pages, the last of them partly filled.
+        assertEquals(ids, getIds(pacsDAO.streamAll(3)));
+        assertEquals(ids, getIds(pacsDAO.streamAllEnabled(7)));
+        assertEquals(7, pacsEntityService.streamAll().count());
+
+        final Pacs disabled = pacsEntityService.retrieve(ids.get(3));
+        disabled.setEnabled(false);
+        pacsEntityService.update(disabled);
+        assertEquals(6, pacsDAO.streamAllEnabled(2).count());
+        assertEquals(6, pacsEntityService.streamAll().count());
+        assertEquals(7, pacsEntityService.streamAllWithDisabled().count());
+    }
+
+    @Test
+    public void testStreamAllEvictsPreviousPages() {
+        for (int index = 0; index < 5; index++) {
+            pacsEntityService.create(buildTestPacs(AE_TITLE + "-" + index));
+        }
+        final Session session = sessionFactory.getCurrentSession();
+        session.flush();
+        session.clear();
+
+        final Iterator<Pacs> iterator = pacsDAO.streamAll(2).iterator();
+        final Pacs           first    = iterator.next();
+        assertTrue(session.contains(first));
+        iterator.next();
+        final Pacs third = iterator.next();
+        assertFalse(session.contains(first));
+        assertTrue(session.contains(third));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStreamAllInvalidPageSize() {
+        pacsDAO.streamAll(0);
+    }
+
+    private static List<Long> getIds(final Stream<Pacs> stream) {
+        final List<Long> ids = new ArrayList<>();
+        for (final Iterator<Pacs> iterator = stream.iterator(); iterator.hasNext(); ) {
+            ids.add(iterator.next().getId());
+        }
+        return ids;
+    }
+
     private Pacs buildTestPacs() {
+        return buildTestPacs(AE_TITLE);
+    }
+
+    private Pacs buildTestPacs(final String aeTitle) {
         Pacs pacs = new Pacs();
-        pacs.setAeTitle(AE_TITLE);
+        pacs.setAeTitle(aeTitle);
         pacs.setHost(HOST);
         pacs.setStoragePort(STORAGE_PORT);
         pacs.setQueryRetrievePort(QUERY_RETRIEVE_PORT);
@@ -83,4 +146,10 @@ public class PacsEntityServiceTest {
 
     @Inject
     private PacsEntityService pacsEntityService;
+
+    @Inject
+    private PacsDAO pacsDAO;
+
+    @Inject
+    private SessionFactory sessionFactory;
 }
@@ -0,0 +1,352 @@
+/*
+ * framework: org.nrg.framework.processors.EventClassAnnotationProcessorTest
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.processors;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nrg.framework.event.EventClass;
+import org.nrg.framework.event.EventClassIndex;
+import org.nrg.framework.event.FilterableAccessor;
+import org.nrg.framework.event.FilterableAccessors;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeNotNull;
+
+public class EventClassAnnotationProcessorTest {
+    @Before
+    public void setUp() throws IOException {
+        _compiler = ToolProvider.getSystemJavaCompiler();
+        assumeNotNull(_compiler);
+        _folder = Files.createTempDirectory("event-processor").toFile();
+        _sources = new File(_folder, "sources");
+        _classes = new File(_folder, "classes");
+        assertTrue(_classes.mkdirs());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (_folder != null) {
+            FileUtils.deleteDirectory(_folder);
+        }
+    }
+
+    @Test
+    public void testWritesIndex() throws Exception {
+        compile("fixtures/ScanEvent.java", SCAN_EVENT);
+
+        final EventClassIndex.Entry scan = loadIndex().getEventClass("fixtures.ScanEvent");
+        assertNotNull(scan);
+        assertEquals("ScanEvent", scan.getName());
+        assertEquals("A \"scan\" event\n\twith a \\ and \u00e9", scan.getDescription());
+        assertEquals(Arrays.asList("ARCHIVED", "DELETED"), scan.getDefaultEventIds());
+        assertFalse(scan.isIncludeValuesFromDatabase());
+        assertEquals(2, scan.getFilterables().size());
+
+        final EventClassIndex.FilterableEntry modality = getFilterable(scan, "modality");
+        assertEquals("getModality", modality.getMethod());
+        assertEquals(Arrays.asList("MR", "CT"), modality.getInitialValues());
+        assertEquals("MR", modality.getDefaultValue());
+        assertTrue(modality.isFilterRequired());
+        assertTrue(modality.isIncludeValuesFromDatabase());
+
+        final EventClassIndex.FilterableEntry archived = getFilterable(scan, "archived");
+        assertEquals("isArchived", archived.getMethod());
+        assertEquals(Collections.<String>emptyList(), archived.getInitialValues());
+        assertFalse(archived.isIncludeValuesFromDatabase());
+    }
+
+    @Test
+    public void testIncrementalCompilationKeepsOtherClasses() throws Exception {
+        compile("fixtures/ScanEvent.java", SCAN_EVENT);
+        compile("fixtures/SessionEvent.java", SESSION_EVENT);
+        assertEquals(Arrays.asList("fixtures.ScanEvent", "fixtures.SessionEvent"), getClassNames(loadIndex()));
+
+        // Recompiling a class replaces its entry rather than adding another.
+        compile("fixtures/ScanEvent.java", SCAN_EVENT.replace("name = \"ScanEvent\"", "name = \"RenamedScanEvent\""));
+        final EventClassIndex index = loadIndex();
+        assertEquals(Arrays.asList("fixtures.SessionEvent", "fixtures.ScanEvent"), getClassNames(index));
+        assertEquals("RenamedScanEvent", index.getEventClass("fixtures.ScanEvent").getName());
+
+        // Classes that no longer exist are dropped.
+        assertTrue(new File(_classes, "fixtures/ScanEvent.class").delete());
+        compile("fixtures/SessionEvent.java", SESSION_EVENT);
+        assertEquals(Collections.singletonList("fixtures.SessionEvent"), getClassNames(loadIndex()));
+    }
+
+    @Test
+    public void testGeneratedAccessorMatchesReflection() throws Exception {
+        compile("fixtures/ScanEvent.java", SCAN_EVENT);
+        assertTrue(new File(_classes, "fixtures/ScanEvent_FilterableAccessor.class").exists());
+
+        // The same event class without its generated accessor, which is read reflectively.
+        final File reflective = new File(_folder, "reflective");
+        FileUtils.copyFile(new File(_classes, "fixtures/ScanEvent.class"), new File(reflective, "fixtures/ScanEvent.class"));
+
+        final Class<?> generatedClass  = new URLClassLoader(new URL[]{_classes.toURI().toURL()}, getClass().getClassLoader()).loadClass("fixtures.ScanEvent");
+        final Class<?> reflectiveClass = new URLClassLoader(new URL[]{reflective.toURI().toURL()}, getClass().getClassLoader()).loadClass("fixtures.ScanEvent");
+        assertTrue(FilterableAccessors.isGenerated(generatedClass));
+        assertFalse(FilterableAccessors.isGenerated(reflectiveClass));
+
+        final FilterableAccessor<Object> generated  = getAccessor(generatedClass);
+        final FilterableAccessor<Object> reflection = getAccessor(reflectiveClass);
+        assertEquals("fixtures.ScanEvent_FilterableAccessor", generated.getClass().getName());
+        assertSame(generatedClass, generated.getEventClass());
+        assertEquals(new HashSet<>(Arrays.asList("modality", "archived")), new HashSet<>(generated.getProperties()));
+        assertEquals(new HashSet<>(reflection.getProperties()), new HashSet<>(generated.getProperties()));
+
+        for (final Object[] arguments : new Object[][]{{"MR", true}, {"CT", false}, {null, false}}) {
+            final Object generatedEvent  = generatedClass.getConstructor(String.class, boolean.class).newInstance(arguments);
+            final Object reflectiveEvent = reflectiveClass.getConstructor(String.class, boolean.class).newInstance(arguments);
+            for (final String property : generated.getProperties()) {
+                assertEquals(reflection.getValue(reflectiveEvent, property), generated.getValue(generatedEvent, property));
+            }
+        }
+
+        try {
+            generated.getValue(generatedClass.getConstructor(String.class, boolean.class).newInstance("MR", true), "project");
+            fail("Expected an IllegalArgumentException for a property that isn't filterable");
+        } catch (IllegalArgumentException ignored) {
+            // Expected, as with the reflective accessor.
+        }
+    }
+
+    @Test
+    public void testAccessorSkipsVoidMethodsAndWrapsCheckedExceptions() throws Exception {
+        compile("fixtures/AuditEvent.java", AUDIT_EVENT);
+        final FilterableAccessor<Object> generated  = getAccessor(loadClass(_classes, "fixtures.AuditEvent"));
+        final FilterableAccessor<Object> reflection = getAccessor(loadReflectively("fixtures.AuditEvent"));
+        assertTrue(FilterableAccessors.isGenerated(generated.getEventClass()));
+        assertFalse(FilterableAccessors.isGenerated(reflection.getEventClass()));
+        assertFalse(generated.getProperties().contains("reset"));
+        assertEquals(new HashSet<>(reflection.getProperties()), new HashSet<>(generated.getProperties()));
+
+        final Object generatedEvent  = generated.getEventClass().getConstructor(String.class).newInstance("label-1");
+        final Object reflectiveEvent = reflection.getEventClass().getConstructor(String.class).newInstance("label-1");
+        assertEquals("label-1", generated.getValue(generatedEvent, "checked"));
+        assertEquals(reflection.getValue(reflectiveEvent, "checked"), generated.getValue(generatedEvent, "checked"));
+
+        final Object generatedFailure  = generated.getEventClass().getConstructor(String.class).newInstance((Object) null);
+        final Object reflectiveFailure = reflection.getEventClass().getConstructor(String.class).newInstance((Object) null);
+        assertEquals(IOException.class, getValueFailure(generated, generatedFailure, "checked").getCause().getClass());
+        assertEquals(IOException.class, getValueFailure(reflection, reflectiveFailure, "checked").getCause().getClass());
+    }
+
+    @Test
+    public void testAccessorIncludesOverriddenFilterables() throws Exception {
+        compile("fixtures/AuditEvent.java", AUDIT_EVENT);
+        final FilterableAccessor<Object> generated  = getAccessor(loadClass(_classes, "fixtures.AuditEvent"));
+        final FilterableAccessor<Object> reflection = getAccessor(loadReflectively("fixtures.AuditEvent"));
+        assertEquals(new HashSet<>(Arrays.asList("label", "site", "checked")), new HashSet<>(generated.getProperties()));
+        assertEquals(new HashSet<>(reflection.getProperties()), new HashSet<>(generated.getProperties()));
+
+        final Object generatedEvent  = generated.getEventClass().getConstructor(String.class).newInstance("label-1");
+        final Object reflectiveEvent = reflection.getEventClass().getConstructor(String.class).newInstance("label-1");
+        for (final String property : generated.getProperties()) {
+            assertEquals(reflection.getValue(reflectiveEvent, property), generated.getValue(generatedEvent, property));
+        }
+
+        // The index lists the overriding methods too.
+        final EventClassIndex.Entry audit = loadIndex().getEventClass("fixtures.AuditEvent");
+        assertEquals("getLabel", getFilterable(audit, "label").getMethod());
+        assertEquals("getSite", getFilterable(audit, "site").getMethod());
+    }
+
+    private void compile(final String path, final String source) throws IOException, URISyntaxException {
+        final File file = new File(_sources, path);
+        FileUtils.writeStringToFile(file, source, StandardCharsets.UTF_8);
+
+        final String classpath = new File(EventClass.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath() + File.pathSeparator + _classes.getPath();
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (final StandardJavaFileManager fileManager = _compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+            final JavaCompiler.CompilationTask task = _compiler.getTask(null, fileManager, diagnostics, Arrays.asList("-classpath", classpath, "-d", _classes.getPath(), "-encoding", "UTF-8"), null, fileManager.getJavaFileObjects(file));
+            task.setProcessors(Collections.singletonList(new EventClassAnnotationProcessor()));
+            final boolean succeeded = task.call();
+            final StringBuilder errors = new StringBuilder();
+            for (final Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                    errors.append(diagnostic).append("\n");
+                }
+            }
+            assertTrue("Compilation failed:\n" + errors, succeeded);
+        }
+    }
+
+    /**
+     * Loads the class from a copy of the compiled fixtures without the generated accessors, so that it's read
+     * reflectively.
+     */
+    private Class<?> loadReflectively(final String className) throws IOException, ClassNotFoundException {
+        final File reflective = new File(_folder, "reflective");
+        for (final File file : FileUtils.listFiles(_classes, new String[]{"class"}, true)) {
+            if (!file.getName().endsWith("_FilterableAccessor.class")) {
+                FileUtils.copyFile(file, new File(reflective, _classes.toURI().relativize(file.toURI()).getPath()));
+            }
+        }
+        return loadClass(reflective, className);
+    }
+
+    private Class<?> loadClass(final File folder, final String className) throws IOException, ClassNotFoundException {
+        return new URLClassLoader(new URL[]{folder.toURI().toURL()}, getClass().getClassLoader()).loadClass(className);
+    }
+
+    private static IllegalStateException getValueFailure(final FilterableAccessor<Object> accessor, final Object event, final String property) {
+        try {
+            accessor.getValue(event, property);
+        } catch (IllegalStateException e) {
+            return e;
+        }
+        fail("Expected an IllegalStateException getting the property " + property);
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static FilterableAccessor<Object> getAccessor(final Class<?> eventClass) {
+        return (FilterableAccessor<Object>) FilterableAccessors.forClass(eventClass);
+    }
+
+    private EventClassIndex loadIndex() throws IOException {
+        return EventClassIndex.load(new URLClassLoader(new URL[]{_classes.toURI().toURL()}, null));
+    }
+
+    private static List<String> getClassNames(final EventClassIndex index) {
+        final List<String> names = new ArrayList<>();
+        for (final EventClassIndex.Entry entry : index.getEventClasses()) {
+            names.add(entry.getClassName());
+        }
+        return names;
+    }
+
+    private static EventClassIndex.FilterableEntry getFilterable(final EventClassIndex.Entry entry, final String property) {
+        for (final EventClassIndex.FilterableEntry filterable : entry.getFilterables()) {
+            if (property.equals(filterable.getProperty())) {
+                return filterable;
+            }
+        }
+        fail("No filterable property " + property + " found for the event class " + entry.getClassName());
+        return null;
+    }
+
+    private static final String SCAN_EVENT = "package fixtures;\n"
+                                             + "\n"
+                                             + "import org.nrg.framework.event.EventClass;\n"
+                                             + "import org.nrg.framework.event.Filterable;\n"
+                                             + "\n"
+                                             + "@EventClass(name = \"ScanEvent\", description = \"A \\\"scan\\\" event\\n\\twith a \\\\ and \\u00e9\", defaultEventIds = {\"ARCHIVED\", \"DELETED\"}, includeValuesFromDatabase = false)\n"
+                                             + "public class ScanEvent {\n"
+                                             + "    public ScanEvent(final String modality, final boolean archived) {\n"
+                                             + "        _modality = modality;\n"
+                                             + "        _archived = archived;\n"
+                                             + "    }\n"
+                                             + "\n"
+                                             + "    @Filterable(initialValues = {\"MR\", \"CT\"}, defaultValue = \"MR\", filterRequired = true)\n"
+                                             + "    public String getModality() {\n"
+                                             + "        return _modality;\n"
+                                             + "    }\n"
+                                             + "\n"
+                                             + "    @Filterable(includeValuesFromDatabase = false)\n"
+                                             + "    public boolean isArchived() {\n"
+                                             + "        return _archived;\n"
+                                             + "    }\n"
+                                             + "\n"
+                                             + "    public String getProject() {\n"
+                                             + "        return \"project-1\";\n"
+                                             + "    }\n"
+                                             + "\n"
+                                             + "    private final String  _modality;\n"
+                                             + "    private final boolean _archived;\n"
+                                             + "}\n";
+
+    private static final String SESSION_EVENT = "package fixtures;\n"
+                                                + "\n"
+                                                + "import org.nrg.framework.event.EventClass;\n"
+                                                + "import org.nrg.framework.event.Filterable;\n"
+                                                + "\n"
+                                                + "@EventClass(name = \"SessionEvent\")\n"
+                                                + "public class SessionEvent {\n"
+                                                + "    @Filterable\n"
+                                                + "    public String getProject() {\n"
+                                                + "        return \"project-1\";\n"
+                                                + "    }\n"
+                                                + "}\n";
+
+    private static final String AUDIT_EVENT = "package fixtures;\n"
+                                              + "\n"
+                                              + "import org.nrg.framework.event.EventClass;\n"
+                                              + "import org.nrg.framework.event.Filterable;\n"
+                                              + "\n"
+                                              + "import java.io.IOException;\n"
+                                              + "\n"
+                                              + "interface Labeled {\n"
+                                              + "    @Filterable\n"
+                                              + "    String getLabel();\n"
+                                              + "}\n"
+                                              + "\n"
+                                              + "abstract class SiteEvent {\n"
+                                              + "    @Filterable\n"
+                                              + "    public abstract String getSite();\n"
+                                              + "}\n"
+                                              + "\n"
+                                              + "@EventClass(name = \"AuditEvent\")\n"
+                                              + "public class AuditEvent extends SiteEvent implements Labeled {\n"
+                                              + "    public AuditEvent(final String label) {\n"
+                                              + "        _label = label;\n"
+                                              + "    }\n"
+                                              + "\n"
+                                              + "    @Override\n"
+                                              + "    public String getLabel() {\n"
+                                              + "        return _label;\n"
+                                              + "    }\n"
+                                              + "\n"
+                                              + "    @Override\n"
+                                              + "    public String getSite() {\n"
+                                              + "        return \"site-1\";\n"
+                                              + "    }\n"
+                                              + "\n"
+                                              + "    @Filterable\n"
+                                              + "    public void reset() {\n"
+                                              + "    }\n"
+                                              + "\n"
+                                              + "    @Filterable\n"
+                                              + "    public String getChecked() throws IOException {\n"
+                                              + "        if (_label == null) {\n"
+                                              + "            throw new IOException(\"There's no label\");\n"
+                                              + "        }\n"
+                                              + "        return _label;\n"
+                                              + "    }\n"
+                                              + "\n"
+                                              + "    private final String _label;\n"
+                                              + "}\n";
+
+    private JavaCompiler _compiler;
+    private File         _folder;
+    private File         _sources;
+    private File         _classes;
+}
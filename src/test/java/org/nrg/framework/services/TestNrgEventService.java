@@ -0,0 +1,202 @@
+/*
+ * framework: org.nrg.framework.services.TestNrgEventService
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.services;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.nrg.framework.event.BatchEventListenerI;
+import org.nrg.framework.event.EventI;
+import reactor.bus.Event;
+import reactor.bus.EventBus;
+import reactor.bus.registry.Registration;
+import reactor.bus.selector.Selectors;
+import reactor.core.dispatch.SynchronousDispatcher;
+import reactor.fn.Consumer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestNrgEventService {
+    @Before
+    public void setUp() {
+        _eventBus = new EventBus(SynchronousDispatcher.INSTANCE);
+        _service = new NrgEventService(_eventBus);
+    }
+
+    @Test
+    public void testDispatchPlansFollowRegistrations() {
+        _service.setUseDispatchPlans(true);
+
+        final List<String> received = new ArrayList<>();
+        final Registration<Object, Consumer<? extends Event<?>>> first = _service.registerListener(Selectors.type(TestEvent.class), new RecordingConsumer("first", received));
+        _service.triggerEvent(new TestEvent("one"));
+        assertEquals(Collections.singletonList("first:one"), received);
+
+        _service.registerListener(Selectors.type(TestEvent.class), new RecordingConsumer("second", received));
+        _service.triggerEvent(new TestEvent("two"));
+        assertEquals(Arrays.asList("first:one", "first:two", "second:two"), received);
+
+        _service.unregisterListener(first);
+        _service.triggerEvent(new TestEvent("three"));
+        assertEquals(Arrays.asList("first:one", "first:two", "second:two", "second:three"), received);
+    }
+
+    @Test
+    public void testDispatchPlansDeliverByDescription() {
+        _service.setUseDispatchPlans(true);
+
+        final List<String> received = new ArrayList<>();
+        _service.registerListener(Selectors.$("archived"), new RecordingConsumer("description", received));
+        _service.registerListener(Selectors.type(TestEvent.class), new RecordingConsumer("class", received));
+        _service.triggerEvent("archived", new TestEvent("one"), false);
+        _service.triggerEvent("archived", new TestEvent("two"), true);
+        assertEquals(Arrays.asList("description:one", "description:two", "class:two"), received);
+    }
+
+    @Test
+    public void testDirectRegistrationsRequireInvalidation() {
+        _service.setUseDispatchPlans(true);
+
+        final List<String> received = new ArrayList<>();
+        _service.registerListener(Selectors.type(TestEvent.class), new RecordingConsumer("service", received));
+        _service.triggerEvent(new TestEvent("one"));
+
+        // The cached plan for the key doesn't know about consumers registered directly on the event bus.
+        _eventBus.on(Selectors.type(TestEvent.class), new RecordingConsumer("direct", received));
+        _service.triggerEvent(new TestEvent("two"));
+        assertEquals(Arrays.asList("service:one", "service:two"), received);
+
+        _service.invalidateDispatchPlans();
+        _service.triggerEvent(new TestEvent("three"));
+        assertEquals(Arrays.asList("service:one", "service:two", "service:three", "direct:three"), received);
+    }
+
+    @Test
+    public void testBatchKeepsTriggeredOrder() {
+        final List<String> batches  = new ArrayList<>();
+        final List<String> received = new ArrayList<>();
+        _service.registerBatchListener(TestEvent.class, new RecordingBatchListener<TestEvent>("all", batches));
+        _service.registerBatchListener(OtherEvent.class, new RecordingBatchListener<OtherEvent>("other", batches));
+        _service.registerListener(Selectors.type(TestEvent.class), new RecordingConsumer("bus", received));
+
+        _service.triggerEvents(Arrays.asList(new TestEvent("one"), new OtherEvent("two"), new TestEvent("three")));
+        assertEquals(Arrays.asList("all:one,two,three", "other:two"), batches);
+        assertEquals(Arrays.asList("bus:one", "bus:two", "bus:three"), received);
+    }
+
+    @Test
+    public void testBatchListenersHonorDescription() {
+        final List<String> batches = new ArrayList<>();
+        _service.registerBatchListener("archived", TestEvent.class, new RecordingBatchListener<TestEvent>("archived", batches));
+        _service.registerBatchListener("deleted", TestEvent.class, new RecordingBatchListener<TestEvent>("deleted", batches));
+        _service.registerBatchListener(TestEvent.class, new RecordingBatchListener<TestEvent>("class", batches));
+
+        _service.triggerEvents("archived", Collections.singletonList(new TestEvent("one")), false);
+        assertEquals(Collections.singletonList("archived:one"), batches);
+
+        _service.triggerEvents("archived", Collections.singletonList(new TestEvent("two")), true);
+        assertEquals(Arrays.asList("archived:one", "archived:two", "class:two"), batches);
+
+        _service.triggerEvents(Collections.singletonList(new TestEvent("three")));
+        assertEquals(Arrays.asList("archived:one", "archived:two", "class:two", "class:three"), batches);
+    }
+
+    @Test
+    public void testBatchListenerOnBusReceivesEventsOnce() {
+        final List<String>     batches  = new ArrayList<>();
+        final List<String>     received = new ArrayList<>();
+        final BatchAndConsumer listener = new BatchAndConsumer(batches, received);
+        _service.registerBatchListener(OtherEvent.class, listener);
+        _service.registerListener(Selectors.type(TestEvent.class), listener);
+        _service.registerListener(Selectors.type(TestEvent.class), new RecordingConsumer("bus", received));
+
+        _service.triggerEvents(Arrays.asList(new OtherEvent("one"), new TestEvent("two")));
+        assertEquals(Collections.singletonList("both:one"), batches);
+        assertEquals(Arrays.asList("bus:one", "both:two", "bus:two"), received);
+    }
+
+    private static class TestEvent implements EventI {
+        TestEvent(final String name) {
+            _name = name;
+        }
+
+        String getName() {
+            return _name;
+        }
+
+        private static final long serialVersionUID = 1L;
+
+        private final String _name;
+    }
+
+    private static class OtherEvent extends TestEvent {
+        OtherEvent(final String name) {
+            super(name);
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static class RecordingBatchListener<T extends TestEvent> implements BatchEventListenerI<T> {
+        RecordingBatchListener(final String name, final List<String> batches) {
+            _name = name;
+            _batches = batches;
+        }
+
+        @Override
+        public void handleEvents(final List<T> events) {
+            final List<String> names = new ArrayList<>();
+            for (final T event : events) {
+                names.add(event.getName());
+            }
+            _batches.add(_name + ":" + StringUtils.join(names, ","));
+        }
+
+        private final String       _name;
+        private final List<String> _batches;
+    }
+
+    private static class BatchAndConsumer extends RecordingBatchListener<OtherEvent> implements Consumer<Event<TestEvent>> {
+        BatchAndConsumer(final List<String> batches, final List<String> received) {
+            super("both", batches);
+            _received = received;
+        }
+
+        @Override
+        public void accept(final Event<TestEvent> event) {
+            _received.add("both:" + event.getData().getName());
+        }
+
+        private final List<String> _received;
+    }
+
+    private static class RecordingConsumer implements Consumer<Event<TestEvent>> {
+        RecordingConsumer(final String name, final List<String> received) {
+            _name = name;
+            _received = received;
+        }
+
+        @Override
+        public void accept(final Event<TestEvent> event) {
+            _received.add(_name + ":" + event.getData().getName());
+        }
+
+        private final String       _name;
+        private final List<String> _received;
+    }
+
+    private EventBus        _eventBus;
+    private NrgEventService _service;
+}
@@ -0,0 +1,83 @@
+/*
+ * framework: org.nrg.framework.services.TestNrgEventServicePerformance
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.services;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.nrg.framework.event.EventI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.bus.Event;
+import reactor.bus.EventBus;
+import reactor.bus.selector.Selectors;
+import reactor.core.dispatch.SynchronousDispatcher;
+import reactor.fn.Consumer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+@Ignore // Remove @Ignore to run these benchmarks. They only log timings, so they're kept out of the regular build.
+public class TestNrgEventServicePerformance {
+    /**
+     * Triggers events through the event bus and through cached dispatch plans with 1, 10, and 100 registered
+     * listeners, logging the average time per event for comparison.
+     */
+    @Test
+    public void testCompareDispatchPaths() {
+        for (final int listeners : new int[]{1, 10, 100}) {
+            for (final boolean useDispatchPlans : new boolean[]{false, true}) {
+                final NrgEventService service = new NrgEventService(new EventBus(SynchronousDispatcher.INSTANCE));
+                service.setUseDispatchPlans(useDispatchPlans);
+                final AtomicLong received = new AtomicLong();
+                for (int index = 0; index < listeners; index++) {
+                    service.registerListener(Selectors.type(BenchmarkEvent.class), new CountingConsumer(received));
+                }
+
+                final BenchmarkEvent event = new BenchmarkEvent();
+                for (int iteration = 0; iteration < WARM_UP; iteration++) {
+                    service.triggerEvent(event);
+                }
+                received.set(0);
+
+                final long start = System.nanoTime();
+                for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+                    service.triggerEvent(event);
+                }
+                final long elapsed = System.nanoTime() - start;
+
+                assertEquals((long) listeners * ITERATIONS, received.get());
+                _log.info("{} listeners, {}: {} ns per event", listeners, useDispatchPlans ? "dispatch plans" : "event bus", elapsed / ITERATIONS);
+            }
+        }
+    }
+
+    private static class BenchmarkEvent implements EventI {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static class CountingConsumer implements Consumer<Event<BenchmarkEvent>> {
+        CountingConsumer(final AtomicLong received) {
+            _received = received;
+        }
+
+        @Override
+        public void accept(final Event<BenchmarkEvent> event) {
+            _received.incrementAndGet();
+        }
+
+        private final AtomicLong _received;
+    }
+
+    private static final Logger _log = LoggerFactory.getLogger(TestNrgEventServicePerformance.class);
+
+    private static final int WARM_UP    = 10000;
+    private static final int ITERATIONS = 100000;
+}
@@ -0,0 +1,52 @@
+/*
+ * framework: org.nrg.framework.utilities.CallerTraceTest
+ * XNAT http://www.xnat.org
+ * Copyright (c) 2017, Washington University School of Medicine
+ * All Rights Reserved
+ *
+ * Released under the Simplified BSD.
+ */
+
+package org.nrg.framework.utilities;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CallerTraceTest {
+    @Test
+    public void testCaptureStartsAtCaller() {
+        final List<StackTraceElement> frames = CallerTrace.capture(0, 10, "org.nrg").getFrames();
+        assertFalse(frames.isEmpty());
+        assertEquals(CallerTraceTest.class.getName(), frames.get(0).getClassName());
+        assertEquals("testCaptureStartsAtCaller", frames.get(0).getMethodName());
+    }
+
+    @Test
+    public void testSkipAndFilter() {
+        final List<StackTraceElement> frames = captureFromHelper();
+        assertFalse(frames.isEmpty());
+        assertEquals("testSkipAndFilter", frames.get(0).getMethodName());
+        for (final StackTraceElement frame : frames) {
+            assertTrue(frame.getClassName().startsWith("org.nrg"));
+        }
+    }
+
+    @Test
+    public void testFrameLimit() {
+        assertTrue(CallerTrace.capture(0, 1, null).getFrames().size() <= 1);
+        assertTrue(CallerTrace.capture(0, 3, null).getFrames().size() <= 3);
+    }
+
+    @Test
+    public void testFormatting() {
+        final String display = CallerTrace.capture(0, 1, null).toString();
+        assertTrue(display.startsWith("    at " + CallerTraceTest.class.getName() + ".testFormatting(), line "));
+    }
+
+    private static List<StackTraceElement> captureFromHelper() {
+        return CallerTrace.capture(1, 20, "org.nrg").getFrames();
+    }
+}